@@ -562,7 +562,14 @@ implements ShowStatus
 	    Graphics g = pj.getGraphics();
 	    // direct method may mess up because of front/back order problems
 	    // and slow maybe because of font drawing
-	    cnud.getParent().printComponents(g);
+	    // prints need finished images instead of placeholders
+	    boolean savedCompletePainting =
+	      DisplayComponent.setCompletePainting(true);
+	    try {
+	      cnud.getParent().printComponents(g);
+	    } finally {
+	      DisplayComponent.setCompletePainting(savedCompletePainting);
+	    }
 	    // intermediate image faster, no order problems but poorer fonts
 	    //g.drawImage(cnud.toImage(null, null),0,0,null);
 	    g.dispose();
@@ -2198,7 +2205,8 @@ implements ShowStatus
   /**
    * Searches for and returns any object associated with a file
    * if read anew is off.  Returns <code>null</code> if no object is
-   * found or read anew is on.  Searches current view object, current
+   * found or read anew is on.  File names are first looked up in the
+   * shared data cache then searches current view object, current
    * color models, currently displayed objects, undo/redo lists and
    * all existing dialogs.  Objects searched for must be as noted by
    * parameter sameFileObject.  Dialogs searched must implement the
@@ -2222,6 +2230,8 @@ implements ShowStatus
     if(sameFileAsObject instanceof String) {
       sameFileAsObject = ((String)sameFileAsObject).trim();
       if(sameFileAsObject.equals("")) return null;
+      Object cached = CNUDataCache.getSharedCache().get((String) sameFileAsObject);
+      if(cached != null) return cached;
     }
     Object obj = null;
     // check current viewObject
@@ -2263,12 +2273,14 @@ implements ShowStatus
   }
   /**
    * Creates or retrieves a data or an image object associated with a file.
+   * File types are tried in the order ranked by their probes.
    *
    * @param filename		file associated with data or image object
    * @param fileClassTypes	array of file types to try reading file as
    *				if <code>null</code> getFileTypes() is
    *				is queried
    * @see #getFileTypes()
+   * @see iiv.io.FileTypeProbe
    */
   public Object getDataOrImage(String filename, Object[] fileClassTypes) {
     if(filename == null) return null;
@@ -2283,10 +2295,14 @@ implements ShowStatus
     }
     CNUFile filetmp = new CNUFile(filename);
     if( filetmp.isDirectory() ) {
-      Toolkit.getDefaultToolkit().beep();
-      return null;
+      // directories may only be read as a series of DICOM files
+      fileClassTypes = new Object[] { DICOMSeriesImgFile.class };
     }
     Object obj = getFileObject(filename);
+    // a background prefetch of this file may be almost done
+    if(obj == null && ! getReadAnewState() &&
+       FilePrefetcher.getSharedPrefetcher().waitFor(filename))
+      obj = getFileObject(filename);
     if(obj == null) {
       if(fileClassTypes == null) fileClassTypes = getFileTypes();
       if((fileClassTypes == null) || (fileClassTypes.length == 0)) {
@@ -2294,6 +2310,8 @@ implements ShowStatus
 	showStatus("Empty file class list");
 	return null;
       }
+      // try the types whose probes recognize the file first
+      fileClassTypes = FileTypeProbe.rank(fileClassTypes, filename);
       // params needed to build any image file data
       Vector<Object> fileClassConstParams = new Vector<Object>(1);
       fileClassConstParams.addElement(filename);
@@ -2342,7 +2360,10 @@ implements ShowStatus
       obj = null;
     }
     else if(obj == null) showStatus("Error reading file=" + filename);
-    else addToFilenames(filename, obj.getClass());
+    else {
+      CNUDataCache.getSharedCache().put(obj, filename);
+      addToFilenames(filename, obj.getClass());
+    }
     return obj;
   }
   /**
@@ -2653,6 +2674,16 @@ implements ShowStatus
 	Object[] classTypes = new Object[1];
 	classTypes[0] = fle.getFileClass();
 	threadSetFile(fle.getFileName(), classTypes);
+	// read the following files in the background
+	if(! getReadAnewState()) {
+	  FilePrefetcher prefetcher = FilePrefetcher.getSharedPrefetcher();
+	  int count = Math.min(prefetcher.getPrefetchCount(),
+			       cnuviewerActions.fileNameList.getSize() - index - 1);
+	  FileListElement[] next = new FileListElement[Math.max(0, count)];
+	  for(int i = 0; i < next.length; i++)
+	    next[i] = (FileListElement) cnuviewerActions.fileNameList.getElementAt(index + 1 + i);
+	  prefetcher.prefetch(fle, next);
+	}
       }
       else Toolkit.getDefaultToolkit().beep();
     }
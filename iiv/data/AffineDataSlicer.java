@@ -1,5 +1,6 @@
 package iiv.data;
 import iiv.script.*;
+import iiv.util.*;
 import java.awt.Point;
 /**
  * Class to convert data array into slices.
@@ -25,6 +26,10 @@ public class AffineDataSlicer implements CNUDataSlicer {
 
   private XYZDouble inputxstep;
   private XYZDouble inputystep;
+  private ResliceEngine resliceEngine;
+  private volatile int interpolationType = ResliceEngine.NEAREST_NEIGHBOR;
+  /** Fewest output voxels per task when slicing rows in parallel. */
+  public final static int MIN_PARALLEL_VOXELS = 16384;
 
   /**
    * Constructs a new instance of PrimaryOrthoDataSlicer.
@@ -75,6 +80,7 @@ public class AffineDataSlicer implements CNUDataSlicer {
     }
     else this.reslicedDataDims = calcMinBoundingDimensions(inDataDims, affineMatrix, this.reslicedOrig);
 
+    resliceEngine = new ResliceEngine(this.inDataDims);
     sliceDim = PrimaryOrthoDataSlicer.getSliceNumberDimension(this.reslicedDataDims, sliceViewMode);
     sliceDims = PrimaryOrthoDataSlicer.getSliceDimensions(this.reslicedDataDims, sliceViewMode, outType);
     inc = PrimaryOrthoDataSlicer.getInputToSliceIncrements(this.reslicedDataDims, sliceViewMode);
@@ -96,8 +102,44 @@ public class AffineDataSlicer implements CNUDataSlicer {
   public CNUDataSlicer getEquivalentDataSlicer(CNUDimensions newDims) {
     if(newDims == null) return null;
     if(newDims.equals(inDataDims)) return this;
-    return new AffineDataSlicer(newDims, affineMatrix, reslicedDataDimsSpecified ? reslicedDataDims : null,
-				reslicedOrigSpecified ? reslicedOrig : null, sliceViewMode, outType);
+    AffineDataSlicer ads =
+      new AffineDataSlicer(newDims, affineMatrix, reslicedDataDimsSpecified ? reslicedDataDims : null,
+			   reslicedOrigSpecified ? reslicedOrig : null, sliceViewMode, outType);
+    ads.setInterpolationType(getInterpolationType());
+    return ads;
+  }
+  /**
+   * Sets the interpolation used to sample the input data.  Displays
+   * using this data slicer need their slices grabbed again to show the
+   * change.
+   *
+   * @param interpolationType	ResliceEngine.NEAREST_NEIGHBOR, TRILINEAR,
+   *				CUBIC_BSPLINE or LANCZOS
+   */
+  public void setInterpolationType(int interpolationType) {
+    switch (interpolationType) {
+    case ResliceEngine.NEAREST_NEIGHBOR:
+    case ResliceEngine.TRILINEAR:
+    case ResliceEngine.CUBIC_BSPLINE:
+    case ResliceEngine.LANCZOS:
+      if(this.interpolationType != interpolationType) {
+	this.interpolationType = interpolationType;
+	// planes grabbed with the old interpolation are no longer valid
+	SlicePlaneCache.getSharedCache().remove(this);
+      }
+      break;
+    default:
+      throw new IllegalArgumentException("invalid interpolation type=" +
+					 interpolationType);
+    }
+  }
+  /**
+   * Gets the interpolation used to sample the input data.
+   *
+   * @return	interpolation type
+   */
+  public int getInterpolationType() {
+    return interpolationType;
   }
   /**
    * Returns the affine matrix used by this data slicer.
@@ -269,7 +311,8 @@ public class AffineDataSlicer implements CNUDataSlicer {
    * @param iValue i dimension relative to input data to copy slice from
    * @param singlePlane plane to copy data into.  if <code>null</code> creates and copies into a new CNUData object.
    * @param sc scale object for converting input data type to output data type.  May be <code>null</code>.
-   * @return CNUData object with scaled copy of slice data.
+   * @return CNUData object with scaled copy of slice data or
+   *	     <code>null</code> if interrupted before the slice was filled.
    */
   public CNUData grabSliceData(CNUData inData, int slice, int iValue, CNUData singlePlane, CNUScale sc) {
     // check input data
@@ -299,30 +342,93 @@ public class AffineDataSlicer implements CNUDataSlicer {
     // calc inputstart
     XYZDouble inputxloc = affineMatrix.inverseProduct(sliceOrig, (XYZDouble) null);
 
-
-    XYZDouble inputyloc = new XYZDouble();
-    int[] inpoint = new int[4];
-    if(iValue > 0) inpoint[3] = iValue;
-    else inpoint[3] = 0;
-    int[] outpoint = new int[2];
+    // unlocked conversions for the whole slice
+    CNUScaleSnapshot scs = (sc == null) ? null : sc.getSnapshot();
+    if(scs != null && scs.identity()) scs = null;
     int xdim = sliceDims.xdim();
     int ydim = sliceDims.ydim();
-    for(outpoint[0]=0; outpoint[0]<xdim;  outpoint[0]++, inputxloc.add(inputxstep)) {
-      //System.out.println("AffineDataSlicer.grabSliceData outpoint[0]=" + outpoint[0] + " inputxloc=" + inputxloc + "\n");
-      inputyloc.setValues(inputxloc);
-      for(outpoint[1]=0;  outpoint[1]<ydim;  outpoint[1]++, inputyloc.add(inputystep)) {
-	inpoint[0] = (int) Math.round(inputyloc.x);
-	inpoint[1] = (int) Math.round(inputyloc.y);
-	inpoint[2] = (int) Math.round(inputyloc.z);
-	if(inDataDims.contains(inpoint)) {
-	  if(sc == null) singlePlane.setPixel(outpoint, inData.getPixelAsDouble(inpoint));
-	  else singlePlane.setPixel(outpoint, sc.convert(inData.getPixelAsDouble(inpoint)));
-	}
-	else singlePlane.setPixel(outpoint, 0);
-      }
+    Object inArray = inData.getDataArray();
+    if(iValue < 0) iValue = 0;
+    int interpolationType = getInterpolationType();
+    resliceEngine.prepare(inArray, iValue, interpolationType);
+    // split rows into bands with enough work to be worth a task
+    long work = (long) xdim * ydim *
+      ResliceEngine.getNumberOfTaps(interpolationType) *
+      ResliceEngine.getNumberOfTaps(interpolationType) *
+      ResliceEngine.getNumberOfTaps(interpolationType);
+    int nbands = (int) Math.min(Math.min(ydim, 4 * WorkerPool.getNumberOfThreads()),
+				Math.max(1, work / MIN_PARALLEL_VOXELS));
+    Runnable[] bands = new Runnable[nbands];
+    for(int band = 0; band < nbands; band++) {
+      bands[band] = new ResliceBand(inArray, iValue, interpolationType,
+				    inputxloc, scs, singlePlane,
+				    band * ydim / nbands,
+				    (band + 1) * ydim / nbands);
     }
+    // a partly filled plane must not be used or cached
+    // runAll restores the interrupt state
+    if(! WorkerPool.runAll(bands)) return null;
     return singlePlane;
   }
+  /**
+   * Reslices a band of output rows.
+   */
+  private class ResliceBand implements Runnable {
+    private Object inArray;
+    private int iValue;
+    private int interpolationType;
+    private XYZDouble inputxloc;
+    private CNUScaleSnapshot scs;
+    private CNUData singlePlane;
+    private int firstRow;
+    private int endRow;
+    /**
+     * Constructs a new instance of ResliceBand.
+     *
+     * @param inArray		input data array
+     * @param iValue		i dimension to slice
+     * @param interpolationType	interpolation type
+     * @param inputxloc		input location of the first output voxel
+     * @param scs		scale snapshot or <code>null</code>
+     * @param singlePlane	plane to write to
+     * @param firstRow		first output row
+     * @param endRow		one past the last output row
+     */
+    ResliceBand(Object inArray, int iValue, int interpolationType,
+		XYZDouble inputxloc, CNUScaleSnapshot scs,
+		CNUData singlePlane, int firstRow, int endRow) {
+      this.inArray = inArray;
+      this.iValue = iValue;
+      this.interpolationType = interpolationType;
+      this.inputxloc = inputxloc;
+      this.scs = scs;
+      this.singlePlane = singlePlane;
+      this.firstRow = firstRow;
+      this.endRow = endRow;
+    }
+    /**
+     * Reslices the rows.
+     */
+    public void run() {
+      CNUDimensions outdims = singlePlane.getDimensions();
+      Object outArray = singlePlane.getDataArray();
+      int outType = outdims.getType();
+      int outOffset = outdims.getOffset();
+      int outRowInc = outdims.getIncrement(1);
+      int xdim = sliceDims.xdim();
+      double[] values = new double[xdim];
+      int[] range = new int[2];
+      for(int y = firstRow; y < endRow; y++) {
+	resliceEngine.resliceRow(inArray, iValue, interpolationType,
+				 inputxloc.x + y * inputystep.x,
+				 inputxloc.y + y * inputystep.y,
+				 inputxloc.z + y * inputystep.z,
+				 inputxstep.x, inputxstep.y, inputxstep.z, xdim,
+				 scs, values, range,
+				 outArray, outOffset + y * outRowInc, outType);
+      }
+    }
+  }
   /**
    * Determines a minimum dimension (x, y or z) to cover the whole area from a given input dimension transformed by an affine matrix.
    *
@@ -440,6 +546,8 @@ public class AffineDataSlicer implements CNUDataSlicer {
     sb.append("inc=").append(CNUTypes.arrayToString(inc)).append("\n");
     sb.append("inputxstep=").append(inputxstep.toString()).append("\n");
     sb.append("inputystep=").append(inputystep.toString()).append("\n");
+    sb.append("interpolationType=");
+    sb.append(ResliceEngine.interpolationToString(getInterpolationType())).append("\n");
     return sb.toString();
   }
   /**
@@ -474,6 +582,12 @@ public class AffineDataSlicer implements CNUDataSlicer {
       sb.append("iiv.data.CNUTypes.typeValueOf(\"");
       sb.append(CNUTypes.typeToString(outType));
       sb.append("\"));\n");
+      if(getInterpolationType() != ResliceEngine.NEAREST_NEIGHBOR) {
+	sb.append(variableName).append(".setInterpolationType(");
+	sb.append("iiv.data.ResliceEngine.interpolationValueOf(\"");
+	sb.append(ResliceEngine.interpolationToString(getInterpolationType()));
+	sb.append("\"));\n");
+      }
       sb.append("unset(\"indimstmp\");\n");
     }
     if(variableName != null) sb.append("script_rtn=").append(variableName).append(";\n");
@@ -1,6 +1,7 @@
 package iiv.data;
 import java.awt.*;
 import java.awt.image.*;
+import java.util.concurrent.*;
 /**
  * Class to store a multidimensional data array.
  *
@@ -13,6 +14,11 @@ public class CNUData {
   private Object dataArray = null;
   private CNUDimensions dims = null;
   private double factor=1;
+  private long modificationCount = 0;
+  private CNUDataStatistics statistics = null;
+  private long statisticsModificationCount = -1;
+  private FutureTask<CNUDataStatistics> statisticsTask = null;
+  private long statisticsTaskModificationCount = -1;
   /**
    * Constructs a new instance of CNUData.
    */
@@ -36,6 +42,7 @@ public class CNUData {
    */
   public synchronized void setDataArray( Object dataArray ) {
     this.dataArray = dataArray;
+    modificationCount++;
   }
   /**
    * Gets the data array.
@@ -76,6 +83,82 @@ public class CNUData {
   public synchronized void setDimensions( CNUDimensions dims ) {
     if(dims == null) this.dims = null;
     else this.dims = (CNUDimensions) dims.clone();
+    modificationCount++;
+  }
+  /**
+   * Notes that values in the data array were changed in place so
+   * anything derived from them, such as cached slices, is recomputed.
+   */
+  public synchronized void dataModified() {
+    modificationCount++;
+  }
+  /**
+   * Gets a count that changes whenever the data array, dimensions or
+   * values are changed through this object.
+   *
+   * @return	modification count
+   */
+  public synchronized long getModificationCount() {
+    return modificationCount;
+  }
+  /**
+   * Gets the statistics task for the current data, creating it if needed.
+   *
+   * @return	task or <code>null</code> if statistics are current
+   */
+  private synchronized FutureTask<CNUDataStatistics> getStatisticsTask() {
+    if(statistics != null && statisticsModificationCount == modificationCount)
+      return null;
+    if(statisticsTask == null ||
+       statisticsTaskModificationCount != modificationCount) {
+      final long count = modificationCount;
+      statisticsTaskModificationCount = count;
+      statisticsTask = new FutureTask<CNUDataStatistics>(new Callable<CNUDataStatistics>() {
+	  public CNUDataStatistics call() {
+	    CNUDataStatistics stats =
+	      CNUDataStatistics.compute(getDataArray(), getDimensions());
+	    synchronized (CNUData.this) {
+	      if(stats != null && count == modificationCount) {
+		statistics = stats;
+		statisticsModificationCount = count;
+	      }
+	    }
+	    return stats;
+	  }
+	});
+    }
+    return statisticsTask;
+  }
+  /**
+   * Starts computing statistics of the data on a background thread so
+   * they are ready by the time getStatistics is called.
+   */
+  public void startStatistics() {
+    FutureTask<CNUDataStatistics> task = getStatisticsTask();
+    if(task != null) CNUDataStatistics.getBackgroundExecutor().execute(task);
+  }
+  /**
+   * Gets statistics of the data, computing them if not current or
+   * waiting for them if started by startStatistics.
+   *
+   * @return	statistics or <code>null</code> if not available
+   */
+  public CNUDataStatistics getStatistics() {
+    FutureTask<CNUDataStatistics> task = getStatisticsTask();
+    if(task == null) synchronized (this) { return statistics; }
+    // runs on this thread unless already started elsewhere
+    task.run();
+    try {
+      return task.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ee) {
+      System.out.println("failed computing statistics: " + ee.getCause());
+    }
+    synchronized (this) {
+      if(statisticsTask == task) statisticsTask = null;
+    }
+    return null;
   }
   /**
    * Gets a copy of the dimensions.
@@ -116,6 +199,7 @@ public class CNUData {
   final synchronized public void setPixel(int[] point, int value) {
     CNUTypes.setArrayValue(value, getDataArray(),
 			   dims.getIndex(point), dims.getType());
+    modificationCount++;
   }
   /**
    * Returns a pixel value at point as an integer.
@@ -136,6 +220,7 @@ public class CNUData {
   final synchronized public void setPixel(int[] point, double value) {
     CNUTypes.setArrayValue(value, getDataArray(), dims.getIndex(point),
 			   dims.getType());
+    modificationCount++;
   }
   /**
    * Returns a pixel value at point location as a double.
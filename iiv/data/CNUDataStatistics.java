@@ -0,0 +1,345 @@
+package iiv.data;
+import iiv.util.*;
+import java.util.concurrent.*;
+/**
+ * Statistics of a data array computed once so fitting a scale to the
+ * data, or clipping it at percentiles, needs no pass over the voxels.
+ * Holds the minimum, maximum, mean and a HISTOGRAM_BINS bin histogram
+ * of the whole array and the minimum, maximum and mean of every slice,
+ * where a slice is one plane of the first two dimensions.  NaN and
+ * infinite values are skipped.  Integer data spanning no more than
+ * HISTOGRAM_BINS values gets one bin per value so its percentiles are
+ * exact.  Statistics are computed in parallel on the shared worker pool,
+ * for data read from files on a background thread right after reading.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUData#getStatistics()
+ * @see		CNUScale#setToFitDataInRange(CNUDataStatistics, double, double)
+ * @since	iiV1.187
+ */
+public class CNUDataStatistics {
+  /** Number of histogram bins. */
+  public final static int HISTOGRAM_BINS = 4096;
+  // fewer words than this per chunk are not worth a pool task
+  private final static int MIN_PARALLEL_WORDS = 65536;
+  // words converted to doubles at a time
+  private final static int BLOCK_WORDS = 4096;
+  private final static Object staticLock = new Object();
+  private static ExecutorService backgroundExecutor = null;
+
+  private final int type;
+  private final long count;
+  private final double min;
+  private final double max;
+  private final double mean;
+  private final long[] histogram;
+  private final double binOrigin;
+  private final double binWidth;
+  private final int sliceSize;
+  private final int slicesPerVolume;
+  private final double[] sliceMin;
+  private final double[] sliceMax;
+  private final double[] sliceMean;
+  /**
+   * Constructs a new instance of CNUDataStatistics.  Use compute.
+   */
+  private CNUDataStatistics(int type, long count, double min, double max,
+			    double mean, long[] histogram, double binOrigin,
+			    double binWidth, int sliceSize, int slicesPerVolume,
+			    double[] sliceMin, double[] sliceMax,
+			    double[] sliceMean) {
+    this.type = type;
+    this.count = count;
+    this.min = min;
+    this.max = max;
+    this.mean = mean;
+    this.histogram = histogram;
+    this.binOrigin = binOrigin;
+    this.binWidth = binWidth;
+    this.sliceSize = sliceSize;
+    this.slicesPerVolume = slicesPerVolume;
+    this.sliceMin = sliceMin;
+    this.sliceMax = sliceMax;
+    this.sliceMean = sliceMean;
+  }
+  /**
+   * Gets the single background thread statistics of data read from
+   * files are started on.  Separate from the shared worker pool so the
+   * computation itself may use the pool.
+   *
+   * @return	executor
+   */
+  public static ExecutorService getBackgroundExecutor() {
+    if(backgroundExecutor == null) synchronized (staticLock) {
+      if(backgroundExecutor == null)
+	backgroundExecutor =
+	  Executors.newSingleThreadExecutor(WorkerPool.createDaemonThreadFactory("iiV statistics"));
+    }
+    return backgroundExecutor;
+  }
+  /**
+   * Computes the statistics of a data array.
+   *
+   * @param dataArray	data array
+   * @param dims	dimensions of the data array
+   * @return	statistics or <code>null</code> if interrupted or the
+   *		type is not a number type
+   */
+  public static CNUDataStatistics compute(final Object dataArray,
+					  CNUDimensions dims) {
+    if(dataArray == null || dims == null) return null;
+    final int type = dims.getType();
+    if(CNUTypes.bytesPerWord(type) < 1) return null;
+    final int offset = dims.getOffset();
+    int length = dims.lengthInWords();
+    final int sliceSize = Math.max(1, dims.xdim() * dims.ydim());
+    int nslices = Math.max(1, length / sliceSize);
+    int slicesPerVolume = Math.max(1, dims.getDim(2));
+    final double[] sliceMin = new double[nslices];
+    final double[] sliceMax = new double[nslices];
+    final double[] sliceSum = new double[nslices];
+    final long[] sliceCount = new long[nslices];
+    // chunks of whole slices
+    int nchunks = (int) Math.min(nslices,
+				 Math.min(4L * WorkerPool.getNumberOfThreads(),
+					  Math.max(1L, (long) length / MIN_PARALLEL_WORDS)));
+    final int[] chunkStarts = new int[nchunks + 1];
+    for(int n = 0; n <= nchunks; n++)
+      chunkStarts[n] = (int) ((long) nslices * n / nchunks);
+    // first pass finds slice ranges and sums
+    Runnable[] tasks = new Runnable[nchunks];
+    for(int n = 0; n < nchunks; n++) {
+      final int fn = n;
+      tasks[n] = new Runnable() {
+	  public void run() {
+	    double[] block = new double[BLOCK_WORDS];
+	    for(int s = chunkStarts[fn]; s < chunkStarts[fn + 1]; s++) {
+	      double smin = Double.POSITIVE_INFINITY;
+	      double smax = Double.NEGATIVE_INFINITY;
+	      double ssum = 0;
+	      long scount = 0;
+	      int start = offset + s * sliceSize;
+	      for(int b = 0; b < sliceSize; b += BLOCK_WORDS) {
+		int cnt = Math.min(BLOCK_WORDS, sliceSize - b);
+		CNUTypes.readDoubles(dataArray, start + b, type, 1, block, cnt);
+		for(int i = 0; i < cnt; i++) {
+		  double v = block[i];
+		  // skips NaN and infinite values
+		  if(v - v != 0) continue;
+		  if(v < smin) smin = v;
+		  if(v > smax) smax = v;
+		  ssum += v;
+		  scount++;
+		}
+	      }
+	      sliceMin[s] = (scount == 0) ? Double.NaN : smin;
+	      sliceMax[s] = (scount == 0) ? Double.NaN : smax;
+	      sliceSum[s] = ssum;
+	      sliceCount[s] = scount;
+	    }
+	  }
+	};
+    }
+    if(! WorkerPool.runAll(tasks)) return null;
+    long count = 0;
+    double sum = 0;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    double[] sliceMean = new double[nslices];
+    for(int s = 0; s < nslices; s++) {
+      if(sliceCount[s] > 0) {
+	if(sliceMin[s] < min) min = sliceMin[s];
+	if(sliceMax[s] > max) max = sliceMax[s];
+      }
+      count += sliceCount[s];
+      sum += sliceSum[s];
+      sliceMean[s] = (sliceCount[s] == 0) ? Double.NaN : sliceSum[s] / sliceCount[s];
+    }
+    if(count == 0) {
+      return new CNUDataStatistics(type, 0, Double.NaN, Double.NaN, Double.NaN,
+				   new long[HISTOGRAM_BINS], 0, 0, sliceSize,
+				   slicesPerVolume, sliceMin, sliceMax, sliceMean);
+    }
+    // integer bins span whole values so small ranges get a bin per value
+    boolean integer = type != CNUTypes.FLOAT && type != CNUTypes.DOUBLE;
+    double range = integer ? max - min + 1 : max - min;
+    final double binOrigin = min;
+    final double binWidth = (range > 0) ? range / HISTOGRAM_BINS : 0;
+    final double binScale = (range > 0) ? HISTOGRAM_BINS / range : 0;
+    // second pass fills partial histograms merged after
+    final long[][] partials = new long[nchunks][];
+    for(int n = 0; n < nchunks; n++) {
+      final int fn = n;
+      tasks[n] = new Runnable() {
+	  public void run() {
+	    long[] hist = new long[HISTOGRAM_BINS];
+	    double[] block = new double[BLOCK_WORDS];
+	    int first = offset + chunkStarts[fn] * sliceSize;
+	    int end = offset + chunkStarts[fn + 1] * sliceSize;
+	    for(int b = first; b < end; b += BLOCK_WORDS) {
+	      int cnt = Math.min(BLOCK_WORDS, end - b);
+	      CNUTypes.readDoubles(dataArray, b, type, 1, block, cnt);
+	      for(int i = 0; i < cnt; i++) {
+		double v = block[i];
+		if(v - v != 0) continue;
+		int bin = (int) ((v - binOrigin) * binScale);
+		if(bin >= HISTOGRAM_BINS) bin = HISTOGRAM_BINS - 1;
+		hist[bin]++;
+	      }
+	    }
+	    partials[fn] = hist;
+	  }
+	};
+    }
+    if(! WorkerPool.runAll(tasks)) return null;
+    long[] histogram = partials[0];
+    for(int n = 1; n < nchunks; n++)
+      for(int bin = 0; bin < HISTOGRAM_BINS; bin++) histogram[bin] += partials[n][bin];
+    return new CNUDataStatistics(type, count, min, max, sum / count, histogram,
+				 binOrigin, binWidth, sliceSize, slicesPerVolume,
+				 sliceMin, sliceMax, sliceMean);
+  }
+  /**
+   * Gets the CNU data type of the data.
+   *
+   * @return	data type
+   */
+  public int getType() { return type; }
+  /**
+   * Gets the number of finite values.
+   *
+   * @return	count
+   */
+  public long getCount() { return count; }
+  /**
+   * Gets the minimum value.
+   *
+   * @return	minimum or NaN if no finite values
+   */
+  public double getMinimum() { return min; }
+  /**
+   * Gets the maximum value.
+   *
+   * @return	maximum or NaN if no finite values
+   */
+  public double getMaximum() { return max; }
+  /**
+   * Gets the mean value.
+   *
+   * @return	mean or NaN if no finite values
+   */
+  public double getMean() { return mean; }
+  /**
+   * Gets a copy of the histogram.
+   *
+   * @return	HISTOGRAM_BINS counts
+   */
+  public long[] getHistogram() {
+    return histogram.clone();
+  }
+  /**
+   * Gets the lowest value counted in a histogram bin.
+   *
+   * @param bin	bin number
+   * @return	lower edge of the bin
+   */
+  public double getBinLowerEdge(int bin) {
+    return binOrigin + bin * binWidth;
+  }
+  /**
+   * Gets the width of histogram bins.
+   *
+   * @return	bin width
+   */
+  public double getBinWidth() { return binWidth; }
+  /**
+   * Gets the value below which a percentage of the values fall,
+   * interpolated within the histogram bin holding it.
+   *
+   * @param percent	percentage from 0 to 100
+   * @return	value or NaN if no finite values
+   */
+  public double getPercentile(double percent) {
+    if(count == 0) return Double.NaN;
+    if(percent <= 0) return min;
+    if(percent >= 100) return max;
+    double target = count * percent / 100d;
+    long cumulative = 0;
+    int bin = 0;
+    for(; bin < HISTOGRAM_BINS - 1; bin++) {
+      if(histogram[bin] > 0 && cumulative + histogram[bin] >= target) break;
+      cumulative += histogram[bin];
+    }
+    double lowerEdge = getBinLowerEdge(bin);
+    double value;
+    // integer bins holding a single value give it exactly
+    if(type != CNUTypes.FLOAT && type != CNUTypes.DOUBLE && binWidth <= 1)
+      value = Math.ceil(lowerEdge);
+    else if(histogram[bin] == 0) value = lowerEdge;
+    else value = lowerEdge + binWidth * (target - cumulative) / histogram[bin];
+    if(value < min) value = min;
+    else if(value > max) value = max;
+    return value;
+  }
+  /**
+   * Gets the number of slices, planes of the first two dimensions.
+   *
+   * @return	number of slices over all volumes
+   */
+  public int getNumberOfSlices() { return sliceMin.length; }
+  /**
+   * Gets the index of a slice within the slice statistics.
+   *
+   * @param slice	slice number along the third dimension
+   * @param iValue	i dimension
+   * @return	index
+   */
+  private int getSliceIndex(int slice, int iValue) {
+    return slice + iValue * slicesPerVolume;
+  }
+  /**
+   * Gets the minimum value of a slice.
+   *
+   * @param slice	slice number along the third dimension
+   * @param iValue	i dimension
+   * @return	minimum or NaN if no finite values
+   */
+  public double getSliceMinimum(int slice, int iValue) {
+    return sliceMin[getSliceIndex(slice, iValue)];
+  }
+  /**
+   * Gets the maximum value of a slice.
+   *
+   * @param slice	slice number along the third dimension
+   * @param iValue	i dimension
+   * @return	maximum or NaN if no finite values
+   */
+  public double getSliceMaximum(int slice, int iValue) {
+    return sliceMax[getSliceIndex(slice, iValue)];
+  }
+  /**
+   * Gets the mean value of a slice.
+   *
+   * @param slice	slice number along the third dimension
+   * @param iValue	i dimension
+   * @return	mean or NaN if no finite values
+   */
+  public double getSliceMean(int slice, int iValue) {
+    return sliceMean[getSliceIndex(slice, iValue)];
+  }
+  /**
+   * Creates a string representation.
+   *
+   * @return	string representation
+   */
+  public String toString() {
+    StringBuffer sb = new StringBuffer();
+    sb.append("count=").append(count);
+    sb.append(" min=").append(min);
+    sb.append(" max=").append(max);
+    sb.append(" mean=").append(mean);
+    sb.append(" slices=").append(sliceMin.length);
+    return sb.toString();
+  }
+}
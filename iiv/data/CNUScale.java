@@ -44,6 +44,8 @@ public class CNUScale implements iiVScriptable {
   private int threshMaxIntValue = 0;
   private boolean quantificationState = false;
   private double quantification = 1.0;
+  // conversion parameters shared with unlocked loops, null after changes
+  private CNUScaleSnapshot snapshot = null;
   /**
    * Constructs a new instance of CNUScale.
    *
@@ -175,6 +177,35 @@ public class CNUScale implements iiVScriptable {
 		    (translation == 0.0) &&
 		    (! threshMinState) &&
 		    (! threshMaxState) );
+    snapshot = null;
+  }
+  /**
+   * Gets an immutable copy of the current conversion parameters that
+   * may be used by many threads without locking this scale.  The same
+   * snapshot is returned until a parameter changes.
+   *
+   * @return	snapshot of this scale
+   */
+  public synchronized CNUScaleSnapshot getSnapshot() {
+    if(snapshot == null)
+      snapshot = new CNUScaleSnapshot(scaleFactor, translation,
+				      threshMinState, threshMin, threshMinValue,
+				      threshMaxState, threshMax, threshMaxValue);
+    return snapshot;
+  }
+  /**
+   * Gets a lookup table of convert_to_int values for every value of an
+   * 8 or 16 bit input type.  The table is kept until a parameter changes
+   * and is shared with equal scales.
+   *
+   * @param inType	CNU data type
+   * @return	the table indexed by value plus
+   *		CNUScaleSnapshot.getLookupOffset(inType) or
+   *		<code>null</code> if the type is not 8 or 16 bit
+   * @see CNUScaleSnapshot#getIntLookupTable(int)
+   */
+  public int[] getIntLookupTable(int inType) {
+    return getSnapshot().getIntLookupTable(inType);
   }
   /**
    * Tests this scale factor for identity.
@@ -355,6 +386,27 @@ public class CNUScale implements iiVScriptable {
 
     setToFitDataInRange(minInValue, maxInValue, minValue, maxValue, true);
   }
+  /**
+   * Sets scale and translation to squeeze the range of data between two
+   * percentiles into an output range taken from current threshMinValue
+   * and threshMaxValue.  Percentiles of 0 and 100 fit the data minimum
+   * and maximum.
+   *
+   * @param stats		statistics of the data
+   * @param lowPercentile	percentile mapped to threshMinValue
+   * @param highPercentile	percentile mapped to threshMaxValue
+   */
+  public synchronized void setToFitDataInRange(CNUDataStatistics stats,
+					       double lowPercentile,
+					       double highPercentile) {
+    if(stats == null || stats.getCount() == 0) {
+      setToFitDataInRange(CNUTypes.SHORT);
+      return;
+    }
+    setToFitDataInRange(stats.getPercentile(lowPercentile),
+			stats.getPercentile(highPercentile),
+			getThreshMinValue(), getThreshMaxValue(), true);
+  }
   /**
    * Sets scale and translation to squeeze a range of input data into
    * an output range.
@@ -0,0 +1,408 @@
+package iiv.data;
+import java.util.*;
+/**
+ * Immutable copy of the conversion parameters of a CNUScale.  Conversions
+ * give the same results as CNUScale.convert and CNUScale.convert_to_int
+ * but need no locking so many threads may share one snapshot.  Changes
+ * to the CNUScale after the snapshot is taken are not seen.
+ * For 8 and 16 bit input types lookup tables of converted values may be
+ * built once and are shared by equal snapshots.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUScale#getSnapshot()
+ * @since	iiV1.187
+ */
+public final class CNUScaleSnapshot {
+  private final boolean identityState;
+  private final double scaleFactor;
+  private final double translation;
+  private final boolean threshMinState;
+  private final double threshMin;
+  private final double threshMinValue;
+  private final int threshMinIntValue;
+  private final boolean threshMaxState;
+  private final double threshMax;
+  private final double threshMaxValue;
+  private final int threshMaxIntValue;
+  /** Maximum number of snapshots whose lookup tables are kept. */
+  public final static int MAX_SHARED_TABLES = 8;
+  // lookup tables of recently used snapshots shared by equal snapshots
+  private final static LinkedHashMap<CNUScaleSnapshot, int[][]> sharedTables =
+    new LinkedHashMap<CNUScaleSnapshot, int[][]>(16, 0.75f, true);
+  // lookup tables indexed by getLookupSlot
+  private volatile int[][] intTables = null;
+  // copies counted by countLookupUse, races only delay building a table
+  private volatile int lookupUses = 0;
+  /**
+   * Constructs a new instance of CNUScaleSnapshot.
+   *
+   * @param scaleFactor		multiplication factor
+   * @param translation		amount added before multiplying
+   * @param threshMinState	<code>true</code> to apply the min threshold
+   * @param threshMin		minimum threshold
+   * @param threshMinValue	value for numbers below the minimum
+   * @param threshMaxState	<code>true</code> to apply the max threshold
+   * @param threshMax		maximum threshold
+   * @param threshMaxValue	value for numbers above the maximum
+   */
+  public CNUScaleSnapshot(double scaleFactor, double translation,
+			  boolean threshMinState, double threshMin,
+			  double threshMinValue,
+			  boolean threshMaxState, double threshMax,
+			  double threshMaxValue) {
+    this.scaleFactor = scaleFactor;
+    this.translation = translation;
+    this.threshMinState = threshMinState;
+    this.threshMin = threshMin;
+    this.threshMinValue = threshMinValue;
+    this.threshMinIntValue = (int)(threshMinValue + .5);
+    this.threshMaxState = threshMaxState;
+    this.threshMax = threshMax;
+    this.threshMaxValue = threshMaxValue;
+    this.threshMaxIntValue = (int)(threshMaxValue + .5);
+    this.identityState = (scaleFactor == 1.0) && (translation == 0.0) &&
+      ! threshMinState && ! threshMaxState;
+  }
+  /**
+   * Tests this snapshot for identity.
+   *
+   * @return	<code>true</code> if this scaling is an identity transform
+   */
+  public boolean identity() { return identityState; }
+  /**
+   * Gets the scale factor.
+   *
+   * @return	the scale factor
+   */
+  public double getScaleFactor() { return scaleFactor; }
+  /**
+   * Gets the translation amount.
+   *
+   * @return	amount of translation
+   */
+  public double getTranslation() { return translation; }
+  /**
+   * Gets the minimum threshold state.
+   *
+   * @return	<code>true</code> if min threshold applies
+   */
+  public boolean getThreshMinState() { return threshMinState; }
+  /**
+   * Gets the minimum threshold.
+   *
+   * @return	minimum threshold
+   */
+  public double getThreshMin() { return threshMin; }
+  /**
+   * Gets the minimum threshold value.
+   *
+   * @return	value used if a number falls below the minimum threshold
+   */
+  public double getThreshMinValue() { return threshMinValue; }
+  /**
+   * Gets the maximum threshold state.
+   *
+   * @return	<code>true</code> if maximum thresholding applies
+   */
+  public boolean getThreshMaxState() { return threshMaxState; }
+  /**
+   * Gets the maximum threshold.
+   *
+   * @return	maximum threshold
+   */
+  public double getThreshMax() { return threshMax; }
+  /**
+   * Gets the maximum threshold value.
+   *
+   * @return	maximum threshold value
+   */
+  public double getThreshMaxValue() { return threshMaxValue; }
+  /**
+   * Applies this scaling to a double value returning a double value.
+   *
+   * @param value	value to apply to
+   * @return		scaled value
+   */
+  public double convert(double value) {
+    if(identityState) return value;
+    if(threshMinState && (value < threshMin)) return threshMinValue;
+    if(threshMaxState && (value > threshMax)) return threshMaxValue;
+    return (value + translation) * scaleFactor;
+  }
+  /**
+   * Applies this scaling to a double value returning an integer value.
+   *
+   * @param value	value to apply to
+   * @return		scaled value
+   */
+  public int convert_to_int(double value) {
+    if(identityState) return (int) (value + 0.5);
+    if(threshMinState && (value < threshMin)) return threshMinIntValue;
+    if(threshMaxState && (value > threshMax)) return threshMaxIntValue;
+    return (int)( (value + translation) * scaleFactor + 0.5 );
+  }
+  /**
+   * Applies the inverse of this scaling to a double value.
+   *
+   * @param value	value to apply to
+   * @return		inverse scaled value
+   */
+  public double applyInverse(double value) {
+    if(identityState) return value;
+    return (value / scaleFactor) - translation;
+  }
+  /**
+   * Applies this scaling to an array of doubles.
+   *
+   * @param in		values to scale
+   * @param inOffset	location of first value
+   * @param out		array for scaled values, may be the input array
+   * @param outOffset	location to put first scaled value
+   * @param len		number of values
+   */
+  public void convert(double[] in, int inOffset,
+		      double[] out, int outOffset, int len) {
+    if(identityState) {
+      if((in != out) || (inOffset != outOffset))
+	System.arraycopy(in, inOffset, out, outOffset, len);
+    }
+    else if(! threshMinState && ! threshMaxState) {
+      for(int i = 0; i < len; i++)
+	out[outOffset + i] = (in[inOffset + i] + translation) * scaleFactor;
+    }
+    else {
+      for(int i = 0; i < len; i++) {
+	double value = in[inOffset + i];
+	if(threshMinState && (value < threshMin)) value = threshMinValue;
+	else if(threshMaxState && (value > threshMax)) value = threshMaxValue;
+	else value = (value + translation) * scaleFactor;
+	out[outOffset + i] = value;
+      }
+    }
+  }
+  /**
+   * Applies this scaling to an array of doubles returning integers.
+   *
+   * @param in		values to scale
+   * @param inOffset	location of first value
+   * @param out		array for scaled values
+   * @param outOffset	location to put first scaled value
+   * @param len		number of values
+   */
+  public void convert_to_int(double[] in, int inOffset,
+			     int[] out, int outOffset, int len) {
+    if(identityState) {
+      for(int i = 0; i < len; i++)
+	out[outOffset + i] = (int) (in[inOffset + i] + 0.5);
+    }
+    else if(! threshMinState && ! threshMaxState) {
+      for(int i = 0; i < len; i++)
+	out[outOffset + i] =
+	  (int)((in[inOffset + i] + translation) * scaleFactor + 0.5);
+    }
+    else {
+      for(int i = 0; i < len; i++) {
+	double value = in[inOffset + i];
+	int iValue;
+	if(threshMinState && (value < threshMin)) iValue = threshMinIntValue;
+	else if(threshMaxState && (value > threshMax)) iValue = threshMaxIntValue;
+	else iValue = (int)((value + translation) * scaleFactor + 0.5);
+	out[outOffset + i] = iValue;
+      }
+    }
+  }
+  /**
+   * Gets the table slot for an input type.
+   *
+   * @param inType	CNU data type
+   * @return	slot or <code>-1</code> if the type has no lookup table
+   */
+  private static int getLookupSlot(int inType) {
+    switch (inType) {
+    case CNUTypes.BYTE: return 0;
+    case CNUTypes.UNSIGNED_BYTE: return 1;
+    case CNUTypes.SHORT: return 2;
+    case CNUTypes.UNSIGNED_SHORT: return 3;
+    default: return -1;
+    }
+  }
+  /**
+   * Gets the amount added to an input value to index its lookup table.
+   *
+   * @param inType	CNU data type
+   * @return	<code>128</code> for BYTE, <code>32768</code> for SHORT
+   *		otherwise <code>0</code>
+   */
+  public static int getLookupOffset(int inType) {
+    if(inType == CNUTypes.BYTE) return 128;
+    else if(inType == CNUTypes.SHORT) return 32768;
+    return 0;
+  }
+  /**
+   * Gets the number of entries in the lookup table for an input type.
+   *
+   * @param inType	CNU data type
+   * @return	<code>256</code> for byte types, <code>65536</code> for
+   *		short types, otherwise <code>0</code>
+   */
+  public static int getLookupSize(int inType) {
+    int slot = getLookupSlot(inType);
+    if(slot < 0) return 0;
+    return (slot < 2) ? 256 : 65536;
+  }
+  /**
+   * Gets the lookup table of convert_to_int values for every value of an
+   * 8 or 16 bit input type, building it if needed.  Entry
+   * <code>value + getLookupOffset(inType)</code> holds the converted value.
+   * The returned table must not be modified.
+   *
+   * @param inType	CNU data type
+   * @return	the table or <code>null</code> if the type is not 8 or 16 bit
+   */
+  public int[] getIntLookupTable(int inType) {
+    int[] table = peekIntLookupTable(inType);
+    if(table != null) return table;
+    int slot = getLookupSlot(inType);
+    if(slot < 0) return null;
+    synchronized (sharedTables) {
+      int[][] tables = sharedTables.get(this);
+      if(tables != null && tables[slot] != null) {
+	intTables = tables;
+	return tables[slot];
+      }
+    }
+    int size = getLookupSize(inType);
+    int offset = getLookupOffset(inType);
+    table = new int[size];
+    for(int i = 0; i < size; i++) table[i] = convert_to_int((double) (i - offset));
+    synchronized (sharedTables) {
+      int[][] tables = sharedTables.get(this);
+      if(tables == null) tables = intTables;
+      if(tables == null) tables = new int[4][];
+      if(tables[slot] == null) {
+	// published table arrays are never modified so peeks need no lock
+	tables = tables.clone();
+	tables[slot] = table;
+      }
+      else table = tables[slot];
+      sharedTables.put(this, tables);
+      if(sharedTables.size() > MAX_SHARED_TABLES) {
+	Iterator<CNUScaleSnapshot> it = sharedTables.keySet().iterator();
+	it.next();
+	it.remove();
+      }
+      intTables = tables;
+    }
+    return table;
+  }
+  /**
+   * Gets the lookup table for an input type only if already built for
+   * or found by this snapshot.  Never locks.
+   *
+   * @param inType	CNU data type
+   * @return	the table or <code>null</code>
+   */
+  public int[] peekIntLookupTable(int inType) {
+    int slot = getLookupSlot(inType);
+    if(slot < 0) return null;
+    int[][] tables = intTables;
+    if(tables == null) return null;
+    return tables[slot];
+  }
+  /**
+   * Counts a copy that could use a lookup table of this snapshot.
+   *
+   * @return	number of copies counted including this one
+   */
+  int countLookupUse() {
+    return ++lookupUses;
+  }
+  /**
+   * Applies this scaling to an array of shorts returning integers.
+   *
+   * @param in		values to scale
+   * @param inOffset	location of first value
+   * @param unsigned	<code>true</code> to treat shorts as unsigned
+   * @param out		array for scaled values
+   * @param outOffset	location to put first scaled value
+   * @param len		number of values
+   */
+  public void convert_to_int(short[] in, int inOffset, boolean unsigned,
+			     int[] out, int outOffset, int len) {
+    int[] table = peekIntLookupTable(unsigned ? CNUTypes.UNSIGNED_SHORT : CNUTypes.SHORT);
+    if(table != null) {
+      if(unsigned) for(int i = 0; i < len; i++)
+	out[outOffset + i] = table[in[inOffset + i] & 0xffff];
+      else for(int i = 0; i < len; i++)
+	out[outOffset + i] = table[in[inOffset + i] + 32768];
+      return;
+    }
+    int mask = unsigned ? 0xffff : 0xffffffff;
+    if(identityState) {
+      for(int i = 0; i < len; i++)
+	out[outOffset + i] = (int) ((in[inOffset + i] & mask) + 0.5);
+    }
+    else if(! threshMinState && ! threshMaxState) {
+      for(int i = 0; i < len; i++)
+	out[outOffset + i] =
+	  (int)(((in[inOffset + i] & mask) + translation) * scaleFactor + 0.5);
+    }
+    else {
+      for(int i = 0; i < len; i++) {
+	double value = in[inOffset + i] & mask;
+	int iValue;
+	if(threshMinState && (value < threshMin)) iValue = threshMinIntValue;
+	else if(threshMaxState && (value > threshMax)) iValue = threshMaxIntValue;
+	else iValue = (int)((value + translation) * scaleFactor + 0.5);
+	out[outOffset + i] = iValue;
+      }
+    }
+  }
+  /**
+   * Checks if another object is a snapshot with the same conversions.
+   *
+   * @param obj	object to compare
+   * @return	<code>true</code> if equal
+   */
+  public boolean equals(Object obj) {
+    if(obj == this) return true;
+    if(! (obj instanceof CNUScaleSnapshot)) return false;
+    CNUScaleSnapshot cmp = (CNUScaleSnapshot) obj;
+    return (cmp.scaleFactor == scaleFactor) &&
+      (cmp.translation == translation) &&
+      (cmp.threshMinState == threshMinState) &&
+      (cmp.threshMin == threshMin) &&
+      (cmp.threshMinValue == threshMinValue) &&
+      (cmp.threshMaxState == threshMaxState) &&
+      (cmp.threshMax == threshMax) &&
+      (cmp.threshMaxValue == threshMaxValue);
+  }
+  /**
+   * Gets a hash code consistent with equals.
+   *
+   * @return	hash code
+   */
+  public int hashCode() {
+    long bits = Double.doubleToLongBits(scaleFactor + 0.0) * 31 +
+      Double.doubleToLongBits(translation + 0.0);
+    bits = bits * 31 + Double.doubleToLongBits(threshMin + 0.0);
+    bits = bits * 31 + Double.doubleToLongBits(threshMax + 0.0);
+    return (int) (bits ^ (bits >>> 32));
+  }
+  /**
+   * Creates a string representation.
+   *
+   * @return	string representation
+   */
+  public String toString() {
+    StringBuffer sb = new StringBuffer();
+    sb.append("scaleFactor=").append(scaleFactor);
+    sb.append(" translation=").append(translation);
+    if(threshMinState)
+      sb.append(" threshMin=").append(threshMin).append(" threshMinValue=").append(threshMinValue);
+    if(threshMaxState)
+      sb.append(" threshMax=").append(threshMax).append(" threshMaxValue=").append(threshMaxValue);
+    return sb.toString();
+  }
+}
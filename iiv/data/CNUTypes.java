@@ -471,143 +471,506 @@ public class CNUTypes implements CNUTypesConstants {
 	     int intype, int inInc,
 	     Object outarray, int outoffset, int outtype,
 	     int cnt, CNUScale sc) {
-    int outindex = outoffset;
-    int endoutindex = outindex + cnt;
-    int inindex = inoffset;
-    boolean noscale = (sc == null)? true : sc.identity();
-    if((outtype == intype) && noscale && (inInc == 1)) {
-      System.arraycopy(inarray, inoffset, outarray,
-		       outoffset, cnt);
+    copyArray(inarray, inoffset, intype, inInc,
+	      outarray, outoffset, outtype, cnt, getScaleSnapshot(sc, intype, cnt));
+  }
+  /**
+   * Copies an array of one data type into an array of possibly another
+   * with a scale snapshot.  Selects one input and one output
+   * kernel per call and converts through small buffers so no loop
+   * dispatches on type or locks the scale per word.
+   *
+   * @param inarray	input data array
+   * @param inoffset	location of input array to begin copying from
+   * @param intype	CNU data type of input array
+   * @param inInc	amount to increment to get to the next input word
+   * @param outarray	output data array
+   * @param outoffset	location of output array to begin copying to
+   * @param outtype	CNU data type of output array
+   * @param cnt		number of words to copy from input to output
+   * @param sp		scale snapshot or <code>null</code> for identity
+   */
+  private final static void
+  copyArray( Object inarray, int inoffset,
+	     int intype, int inInc,
+	     Object outarray, int outoffset, int outtype,
+	     int cnt, CNUScaleSnapshot sp) {
+    if(cnt <= 0) return;
+    if((outtype == intype) && (sp == null)) {
+      if(inInc == 1)
+	System.arraycopy(inarray, inoffset, outarray, outoffset, cnt);
+      else copyStrided(inarray, inoffset, inInc, outarray, outoffset, cnt);
       return;
     }
+    int chunk = Math.min(cnt, COPY_CHUNK);
     switch (outtype) {
-    case BYTE:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((byte [])outarray)[outindex] =
-	     IntToByte(getArrayValueAsInt(inarray, inindex, intype));
+    case FLOAT:
+    case DOUBLE:
+      {
+	double[] dbuf = new double[chunk];
+	for(int done = 0; done < cnt; done += chunk) {
+	  int len = Math.min(chunk, cnt - done);
+	  readDoubles(inarray, inoffset + done * inInc, intype, inInc, dbuf, len);
+	  if(sp != null) sp.convert(dbuf, 0, dbuf, 0, len);
+	  writeDoubles(dbuf, outarray, outoffset + done, outtype, len);
 	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((byte [])outarray)[outindex] = 
-	    IntToByte(
-	   sc.convert_to_int(getArrayValueAsDouble(inarray, inindex, intype)));
+      }
+      return;
+    case LONG:
+      if(sp == null) {
+	long[] lbuf = new long[chunk];
+	long[] out = (long[]) outarray;
+	for(int done = 0; done < cnt; done += chunk) {
+	  int len = Math.min(chunk, cnt - done);
+	  readLongs(inarray, inoffset + done * inInc, intype, inInc, lbuf, len);
+	  System.arraycopy(lbuf, 0, out, outoffset + done, len);
 	}
+	return;
+      }
+      // scaled long values are limited to integers
+      copyThroughInts(inarray, inoffset, intype, inInc,
+		      outarray, outoffset, outtype, cnt, sp, chunk);
       return;
+    case BYTE:
     case UNSIGNED_BYTE:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((byte [])outarray)[outindex] =
-	     IntToUnsignedByte(getArrayValueAsInt(inarray, inindex, intype));
-	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((byte [])outarray)[outindex] = 
-	    IntToUnsignedByte(
-		sc.convert_to_int(getArrayValueAsDouble(inarray, inindex, intype)));
-	}
+    case SHORT:
+    case UNSIGNED_SHORT:
+    case INTEGER:
+    case UNSIGNED_INTEGER:
+      copyThroughInts(inarray, inoffset, intype, inInc,
+		      outarray, outoffset, outtype, cnt, sp, chunk);
+      return;
+    default:
+      return;
+    }
+  }
+  /**
+   * Copies an array converting through an integer buffer, using the
+   * snapshot lookup table for the input type when built.
+   *
+   * @param inarray	input data array
+   * @param inoffset	location of input array to begin copying from
+   * @param intype	CNU data type of input array
+   * @param inInc	amount to increment to get to the next input word
+   * @param outarray	output data array
+   * @param outoffset	location of output array to begin copying to
+   * @param outtype	CNU data type of output array
+   * @param cnt		number of words to copy from input to output
+   * @param sp		scale snapshot or <code>null</code> for identity
+   * @param chunk	number of words converted at a time
+   */
+  private final static void
+  copyThroughInts( Object inarray, int inoffset,
+		   int intype, int inInc,
+		   Object outarray, int outoffset, int outtype,
+		   int cnt, CNUScaleSnapshot sp, int chunk) {
+    int[] ibuf = new int[chunk];
+    int[] lut = (sp == null) ? null : sp.peekIntLookupTable(intype);
+    double[] dbuf = (sp == null || lut != null) ? null : new double[chunk];
+    for(int done = 0; done < cnt; done += chunk) {
+      int len = Math.min(chunk, cnt - done);
+      int inindex = inoffset + done * inInc;
+      if(sp == null) readInts(inarray, inindex, intype, inInc, ibuf, len);
+      else if(lut != null)
+	lookupInts(inarray, inindex, intype, inInc, lut, ibuf, len);
+      else {
+	readDoubles(inarray, inindex, intype, inInc, dbuf, len);
+	sp.convert_to_int(dbuf, 0, ibuf, 0, len);
+      }
+      writeInts(ibuf, outarray, outoffset + done, outtype, len);
+    }
+  }
+  /** Number of words converted at a time through intermediate buffers. */
+  private final static int COPY_CHUNK = 4096;
+  /**
+   * Gets the snapshot of a scale for copy kernels, building its lookup
+   * table for 8 and 16 bit input when one copy converts at least as many
+   * words as the table has entries, or when the snapshot is used again
+   * for a copy large enough to make the table worthwhile.  Scales used
+   * for a single small copy convert directly.  Tables are kept with the
+   * snapshot so later copies with the same scale use them regardless
+   * of size.
+   *
+   * @param sc	scale, may be <code>null</code>
+   * @param intype	CNU data type of input array
+   * @param cnt		number of words to be copied
+   * @return	snapshot or <code>null</code> if no scaling applies
+   */
+  private final static CNUScaleSnapshot getScaleSnapshot(CNUScale sc,
+							 int intype, int cnt) {
+    if(sc == null) return null;
+    CNUScaleSnapshot scs = sc.getSnapshot();
+    if(scs.identity()) return null;
+    int size = CNUScaleSnapshot.getLookupSize(intype);
+    if(size > 0 && scs.peekIntLookupTable(intype) == null) {
+      if(cnt >= size ||
+	 (cnt >= size / LOOKUP_BUILD_RATIO && scs.countLookupUse() > 1))
+	scs.getIntLookupTable(intype);
+    }
+    return scs;
+  }
+  /**
+   * Minimum ratio of lookup table entries to words copied for
+   * building a table on a repeated use of a snapshot.
+   */
+  private final static int LOOKUP_BUILD_RATIO = 16;
+  /**
+   * Copies words between arrays of the same primitive type with an
+   * input increment.
+   *
+   * @param inarray	input data array
+   * @param inindex	location of first input word
+   * @param inInc	amount to increment to get to the next input word
+   * @param outarray	output data array
+   * @param outindex	location of first output word
+   * @param len		number of words
+   */
+  private final static void copyStrided(Object inarray, int inindex, int inInc,
+					Object outarray, int outindex, int len) {
+    if(inarray instanceof byte[]) {
+      byte[] in = (byte[]) inarray; byte[] out = (byte[]) outarray;
+      for(int i = 0; i < len; i++, inindex += inInc) out[outindex + i] = in[inindex];
+    }
+    else if(inarray instanceof short[]) {
+      short[] in = (short[]) inarray; short[] out = (short[]) outarray;
+      for(int i = 0; i < len; i++, inindex += inInc) out[outindex + i] = in[inindex];
+    }
+    else if(inarray instanceof int[]) {
+      int[] in = (int[]) inarray; int[] out = (int[]) outarray;
+      for(int i = 0; i < len; i++, inindex += inInc) out[outindex + i] = in[inindex];
+    }
+    else if(inarray instanceof float[]) {
+      float[] in = (float[]) inarray; float[] out = (float[]) outarray;
+      for(int i = 0; i < len; i++, inindex += inInc) out[outindex + i] = in[inindex];
+    }
+    else if(inarray instanceof long[]) {
+      long[] in = (long[]) inarray; long[] out = (long[]) outarray;
+      for(int i = 0; i < len; i++, inindex += inInc) out[outindex + i] = in[inindex];
+    }
+    else if(inarray instanceof double[]) {
+      double[] in = (double[]) inarray; double[] out = (double[]) outarray;
+      for(int i = 0; i < len; i++, inindex += inInc) out[outindex + i] = in[inindex];
+    }
+  }
+  /**
+   * Reads words as integers with the conversions of getArrayValueAsInt.
+   *
+   * @param inarray	input data array
+   * @param inindex	location of first input word
+   * @param intype	CNU data type of input array
+   * @param inInc	amount to increment to get to the next input word
+   * @param buf		array to put values in
+   * @param len		number of words
+   */
+  private final static void readInts(Object inarray, int inindex, int intype,
+				     int inInc, int[] buf, int len) {
+    switch (intype) {
+    case BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex] & 0xff;
+      }
       return;
     case SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
     case UNSIGNED_SHORT:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  // note - this truncates producing weird values
-	  // for things out of range
-	  ((short []) outarray)[outindex] = (short)
-	    getArrayValueAsInt(inarray, inindex, intype);
-	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  // note - this truncates producing weird values for
-	  // things out of range
-	  ((short []) outarray)[outindex] = (short)
-	    sc.convert_to_int(getArrayValueAsDouble(inarray, inindex,
-						    intype));
-	}
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex] & 0xffff;
+      }
       return;
     case INTEGER:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((int []) outarray)[outindex] =
-	    getArrayValueAsInt(inarray, inindex, intype);
-	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((int []) outarray)[outindex] =
-	    sc.convert_to_int(getArrayValueAsDouble(inarray, inindex, intype));
-	}
+    case UNSIGNED_INTEGER:
+      {
+	int[] in = (int[]) inarray;
+	if(inInc == 1) System.arraycopy(in, inindex, buf, 0, len);
+	else for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case FLOAT:
+      {
+	float[] in = (float[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = Math.round(in[inindex]);
+      }
       return;
+    case LONG:
+      {
+	long[] in = (long[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = (int) in[inindex];
+      }
+      return;
+    case DOUBLE:
+      {
+	double[] in = (double[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc)
+	  buf[i] = (int) Math.round(in[inindex]);
+      }
+      return;
+    default:
+      for(int i = 0; i < len; i++) buf[i] = Integer.MIN_VALUE;
+      return;
+    }
+  }
+  /**
+   * Reads 8 or 16 bit words converted through a lookup table.
+   *
+   * @param inarray	input data array
+   * @param inindex	location of first input word
+   * @param intype	BYTE, UNSIGNED_BYTE, SHORT or UNSIGNED_SHORT
+   * @param inInc	amount to increment to get to the next input word
+   * @param lut		table from CNUScaleSnapshot.getIntLookupTable
+   * @param buf		array to put values in
+   * @param len		number of words
+   */
+  private final static void lookupInts(Object inarray, int inindex, int intype,
+				       int inInc, int[] lut, int[] buf, int len) {
+    switch (intype) {
+    case BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = lut[in[inindex] + 128];
+      }
+      return;
+    case UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = lut[in[inindex] & 0xff];
+      }
+      return;
+    case SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = lut[in[inindex] + 32768];
+      }
+      return;
+    case UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = lut[in[inindex] & 0xffff];
+      }
+      return;
+    default:
+      return;
+    }
+  }
+  /**
+   * Reads words as longs with the conversions of getArrayValueAsLong.
+   *
+   * @param inarray	input data array
+   * @param inindex	location of first input word
+   * @param intype	CNU data type of input array
+   * @param inInc	amount to increment to get to the next input word
+   * @param buf		array to put values in
+   * @param len		number of words
+   */
+  private final static void readLongs(Object inarray, int inindex, int intype,
+				      int inInc, long[] buf, int len) {
+    switch (intype) {
+    case BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex] & 0xff;
+      }
+      return;
+    case SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex] & 0xffff;
+      }
+      return;
+    case INTEGER:
     case UNSIGNED_INTEGER:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((int []) outarray)[outindex] = (int)
-	    getArrayValueAsLong(inarray, inindex, intype);
-	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((int []) outarray)[outindex] =
-	    sc.convert_to_int(getArrayValueAsDouble(inarray, inindex, intype));
-	}
+      {
+	int[] in = (int[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case FLOAT:
+      {
+	float[] in = (float[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = Math.round(in[inindex]);
+      }
       return;
     case LONG:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	    inindex += inInc) {
-	  ((long []) outarray)[outindex] =
-	    getArrayValueAsLong(inarray, inindex, intype);
-	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	  inindex += inInc) {
-	  ((long []) outarray)[outindex] = (long)
-	    sc.convert_to_int(getArrayValueAsDouble(inarray,
-			      inindex, intype));
-        }
-    return;
+      {
+	long[] in = (long[]) inarray;
+	if(inInc == 1) System.arraycopy(in, inindex, buf, 0, len);
+	else for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case DOUBLE:
+      {
+	double[] in = (double[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = Math.round(in[inindex]);
+      }
+      return;
+    default:
+      for(int i = 0; i < len; i++) buf[i] = Long.MIN_VALUE;
+      return;
+    }
+  }
+  /**
+   * Reads words as doubles with the conversions of getArrayValueAsDouble.
+   *
+   * @param inarray	input data array
+   * @param inindex	location of first input word
+   * @param intype	CNU data type of input array
+   * @param inInc	amount to increment to get to the next input word
+   * @param buf		array to put values in
+   * @param len		number of words
+   */
+  final static void readDoubles(Object inarray, int inindex, int intype,
+				int inInc, double[] buf, int len) {
+    switch (intype) {
+    case BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex] & 0xff;
+      }
+      return;
+    case SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex] & 0xffff;
+      }
+      return;
+    case INTEGER:
+    case UNSIGNED_INTEGER:
+      {
+	int[] in = (int[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
     case FLOAT:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((float []) outarray)[outindex] = (float)
-	    getArrayValueAsDouble(inarray, inindex, intype);
-	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((float []) outarray)[outindex] = (float)
-	    sc.convert(getArrayValueAsDouble(inarray, inindex, intype));
-	}
+      {
+	float[] in = (float[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    case LONG:
+      {
+	long[] in = (long[]) inarray;
+	for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
       return;
     case DOUBLE:
-      if(noscale)
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((double []) outarray)[outindex] =
-	    getArrayValueAsDouble(inarray, inindex,
-				  intype);
+      {
+	double[] in = (double[]) inarray;
+	if(inInc == 1) System.arraycopy(in, inindex, buf, 0, len);
+	else for(int i = 0; i < len; i++, inindex += inInc) buf[i] = in[inindex];
+      }
+      return;
+    default:
+      for(int i = 0; i < len; i++) buf[i] = Double.NaN;
+      return;
+    }
+  }
+  /**
+   * Writes integers to an array of the given type with the conversions
+   * of setArrayValue(int, ...).
+   *
+   * @param buf		values to write
+   * @param outarray	output data array
+   * @param outindex	location of first output word
+   * @param outtype	CNU data type of output array
+   * @param len		number of words
+   */
+  private final static void writeInts(int[] buf, Object outarray, int outindex,
+				      int outtype, int len) {
+    switch (outtype) {
+    case BYTE:
+      {
+	byte[] out = (byte[]) outarray;
+	for(int i = 0; i < len; i++) {
+	  int value = buf[i];
+	  out[outindex + i] = (byte) ((value > 127) ? 127 :
+				      ((value < -128) ? -128 : value));
 	}
-      else
-	for(; outindex < endoutindex; outindex++,
-	      inindex += inInc) {
-	  ((double []) outarray)[outindex] =
-	    sc.convert(getArrayValueAsDouble(inarray,
-					     inindex, intype));
+      }
+      return;
+    case UNSIGNED_BYTE:
+      {
+	byte[] out = (byte[]) outarray;
+	for(int i = 0; i < len; i++) {
+	  int value = buf[i];
+	  out[outindex + i] = (byte) ((value >= 255) ? 255 :
+				      ((value <= 0) ? 0 : value));
 	}
+      }
+      return;
+    case SHORT:
+    case UNSIGNED_SHORT:
+      {
+	// note - this truncates producing weird values for things out of range
+	short[] out = (short[]) outarray;
+	for(int i = 0; i < len; i++) out[outindex + i] = (short) buf[i];
+      }
+      return;
+    case INTEGER:
+    case UNSIGNED_INTEGER:
+      System.arraycopy(buf, 0, outarray, outindex, len);
+      return;
+    case LONG:
+      {
+	long[] out = (long[]) outarray;
+	for(int i = 0; i < len; i++) out[outindex + i] = buf[i];
+      }
       return;
     default:
       return;
     }
   }
+  /**
+   * Writes doubles to a float or double array.
+   *
+   * @param buf		values to write
+   * @param outarray	output data array
+   * @param outindex	location of first output word
+   * @param outtype	FLOAT or DOUBLE
+   * @param len		number of words
+   */
+  private final static void writeDoubles(double[] buf, Object outarray,
+					 int outindex, int outtype, int len) {
+    if(outtype == DOUBLE) System.arraycopy(buf, 0, outarray, outindex, len);
+    else {
+      float[] out = (float[]) outarray;
+      for(int i = 0; i < len; i++) out[outindex + i] = (float) buf[i];
+    }
+  }
   /**
    * Copies a multi-dimensional square region from one data array to
    * completely fill another.  The amount of data copied is governed
@@ -639,10 +1002,37 @@ public class CNUTypes implements CNUTypesConstants {
 				      Object outArray, int outOffset,
 				      int outType, int[] outDims,
 				      int currentDim, CNUScale sc) {
+    int cnt = 1;
+    for(int i = 0; i <= currentDim; i++) cnt *= outDims[i];
+    return copyRegion(inArray, inOffset, inType, inInc,
+		      outArray, outOffset, outType, outDims,
+		      currentDim, getScaleSnapshot(sc, inType, cnt));
+  }
+  /**
+   * Copies a multi-dimensional region with one scale snapshot for the
+   * whole region.
+   *
+   * @param inArray	input data array
+   * @param inOffset	location of input array to begin copying from
+   * @param inType	CNU data type of input array
+   * @param inInc	array containing one increment for each dimension
+   * @param outArray	output data array
+   * @param outOffset	location of output array to begin copying to
+   * @param outType	CNU data type of output array
+   * @param outDims	array of output dimensions
+   * @param currentDim	index of dimension currently working with
+   * @param sp		scale snapshot or <code>null</code> for identity
+   * @return		the offset to the next location in the output array.
+   */ 
+  private final static int copyRegion (Object inArray, int inOffset,
+				       int inType, int[] inInc,
+				       Object outArray, int outOffset,
+				       int outType, int[] outDims,
+				       int currentDim, CNUScaleSnapshot sp) {
     if(currentDim == 0) {
       copyArray(inArray, inOffset, inType, inInc[currentDim],
 		outArray, outOffset, outType,
-		outDims[currentDim], sc);
+		outDims[currentDim], sp);
       return outDims[currentDim];
     } else {
       int wordsCopied = 0;
@@ -651,7 +1041,7 @@ public class CNUTypes implements CNUTypesConstants {
 	wordsCopied +=
 	  copyRegion(inArray, inOffset, inType, inInc,
 		     outArray, outOffset + wordsCopied, outType,
-		     outDims, currentDim - 1, sc);
+		     outDims, currentDim - 1, sp);
       }
       return wordsCopied;
     }
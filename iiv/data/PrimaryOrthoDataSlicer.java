@@ -212,13 +212,54 @@ public class PrimaryOrthoDataSlicer implements CNUDataSlicer {
     if(sliceOrig.length > 3 && iValue > 0) sliceOrig[3] = iValue;
     localoffset = dims.getIndex(sliceOrig);
 
-    CNUTypes.copyRegion(inData.getDataArray(),
+    Object inArray = null;
+    if(inData instanceof RegionReadable) {
+      RegionReadable regionData = (RegionReadable) inData;
+      if(regionData.isRegionReadable()) {
+	// only read the words spanned by this slice
+	int[] outDimensions = outdims.getDimensions();
+	int first = localoffset;
+	int last = localoffset;
+	for(int i = 0; i < outDimensions.length && i < inc.length; i++) {
+	  int span = (outDimensions[i] - 1) * inc[i];
+	  if(span < 0) first += span;
+	  else last += span;
+	}
+	inArray = regionData.readRegion(first, last - first + 1);
+	if(inArray != null) localoffset -= first;
+      }
+    }
+    if(inArray == null) inArray = inData.getDataArray();
+
+    CNUTypes.copyRegion(inArray,
 			localoffset, dims.getType(), inc,
 			singlePlane.getDataArray(), 0, outdims.getType(),
 			outdims.getDimensions(),
 			outdims.getNumberOfDimensions() - 1, sc);
     return singlePlane;
   }
+  /**
+   * Checks if another object is a primary ortho data slicer grabbing the
+   * same slices.
+   *
+   * @param obj	object to compare to
+   * @return	<code>true</code> if same dimensions, view mode and output type
+   */
+  public boolean equals(Object obj) {
+    if(obj == this) return true;
+    if(! (obj instanceof PrimaryOrthoDataSlicer)) return false;
+    PrimaryOrthoDataSlicer ds = (PrimaryOrthoDataSlicer) obj;
+    if(ds.sliceViewMode != sliceViewMode || ds.outType != outType) return false;
+    return dims.equals(ds.dims);
+  }
+  /**
+   * Gets a hash code consistent with equals.
+   *
+   * @return	hash code
+   */
+  public int hashCode() {
+    return sliceViewMode * 31 + outType * 17 + dims.lengthInWords();
+  }
   /**
    * Returns a string representation of this data slicer.
    *
@@ -0,0 +1,559 @@
+package iiv.data;
+import iiv.util.*;
+import java.lang.ref.*;
+import java.util.*;
+/**
+ * Projects a slab of slices from a data slicer onto a single plane by
+ * maximum, minimum, mean or sum.  The slab is split into chunks of
+ * consecutive slices reduced in parallel on the shared worker pool, each
+ * into its own partial plane of values (and for maximum and minimum the
+ * slice each value came from), and the partials are then merged in slab
+ * order so ties keep the slice nearest the start of the slab just as a
+ * serial pass would.  For slabs that move, such as a thick slab dragged
+ * through a volume, partials of fixed blocks of SLAB_BLOCK_SLICES slices
+ * may be softly cached so only the slices at the slab ends are grabbed
+ * again.  NaN voxels are skipped by maximum and minimum projections.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		iiv.display.IntensityProjectionImage
+ * @since	iiV1.187
+ */
+public class ProjectionEngine {
+  public final static int UNKNOWN_PROJECTION = 0;
+  public final static int MAXIMUM_PROJECTION = 1;
+  public final static int MINIMUM_PROJECTION = 2;
+  public final static int MEAN_PROJECTION = 3;
+  public final static int SUM_PROJECTION = 4;
+  public final static int[] PROJECTION_TYPES = {
+    MAXIMUM_PROJECTION,
+    MINIMUM_PROJECTION,
+    MEAN_PROJECTION,
+    SUM_PROJECTION
+  };
+  public final static String[] PROJECTION_NAMES = {
+    "MAXIMUM_PROJECTION",
+    "MINIMUM_PROJECTION",
+    "MEAN_PROJECTION",
+    "SUM_PROJECTION"
+  };
+  /** Number of slices in each cached block of a moving slab. */
+  public final static int SLAB_BLOCK_SLICES = 16;
+  // fewer voxels than this per chunk are not worth a pool task
+  private final static int MIN_PARALLEL_VOXELS = 16384;
+
+  /**
+   * Projection of a run of consecutive slices.  Extremes of integer
+   * types up to 32 bits are kept as ints, of LONG as longs and of
+   * floating types as doubles.  Sums are always doubles.
+   */
+  private static class Partial {
+    final int[] ints;
+    final long[] longs;
+    final double[] doubles;
+    // slices extreme values came from, null for mean and sum
+    final int[] slices;
+    Partial(int planeSize, int accumulatorType, boolean extreme) {
+      ints = (accumulatorType == CNUTypes.INTEGER) ? new int[planeSize] : null;
+      longs = (accumulatorType == CNUTypes.LONG) ? new long[planeSize] : null;
+      doubles = (accumulatorType == CNUTypes.DOUBLE) ? new double[planeSize] : null;
+      slices = extreme ? new int[planeSize] : null;
+    }
+    Partial copy() {
+      int planeSize = (ints != null) ? ints.length :
+	((longs != null) ? longs.length : doubles.length);
+      Partial partial = new Partial(planeSize,
+				    (ints != null) ? CNUTypes.INTEGER :
+				    ((longs != null) ? CNUTypes.LONG : CNUTypes.DOUBLE),
+				    slices != null);
+      if(ints != null) System.arraycopy(ints, 0, partial.ints, 0, planeSize);
+      if(longs != null) System.arraycopy(longs, 0, partial.longs, 0, planeSize);
+      if(doubles != null) System.arraycopy(doubles, 0, partial.doubles, 0, planeSize);
+      if(slices != null) System.arraycopy(slices, 0, partial.slices, 0, planeSize);
+      return partial;
+    }
+  }
+  private final CNUDataSlicer dataSlicer;
+  private final CNUData inData;
+  private final int iValue;
+  private final int projectionType;
+  private final CNUDimensions sliceDims;
+  private final int inType;
+  private final int accumulatorType;
+  private final int planeSize;
+  private boolean blockCaching = false;
+  private SoftReference<Hashtable<Integer, Partial>> blockCache = null;
+  /**
+   * Constructs a new instance of ProjectionEngine.
+   *
+   * @param dataSlicer		slicer to grab slices with
+   * @param inData		data to project
+   * @param iValue		i dimension to project slices from
+   * @param projectionType	MAXIMUM_PROJECTION, MINIMUM_PROJECTION,
+   *				MEAN_PROJECTION or SUM_PROJECTION
+   * @exception IllegalArgumentException	if the projection type is invalid
+   */
+  public ProjectionEngine(CNUDataSlicer dataSlicer, CNUData inData,
+			  int iValue, int projectionType) {
+    if(projectionToString(projectionType).equals("UNKNOWN_PROJECTION"))
+      throw new IllegalArgumentException("invalid projection type=" + projectionType);
+    this.dataSlicer = dataSlicer;
+    this.inData = inData;
+    this.iValue = iValue;
+    this.projectionType = projectionType;
+    inType = inData.getDimensions().getType();
+    sliceDims = (CNUDimensions) dataSlicer.getSliceDimensions().clone();
+    sliceDims.setType(inType);
+    planeSize = sliceDims.xdim() * sliceDims.ydim();
+    if(! tracksSlices()) accumulatorType = CNUTypes.DOUBLE;
+    else switch (inType) {
+    case CNUTypes.LONG:
+      accumulatorType = CNUTypes.LONG;
+      break;
+    case CNUTypes.FLOAT:
+    case CNUTypes.DOUBLE:
+      accumulatorType = CNUTypes.DOUBLE;
+      break;
+    default:
+      accumulatorType = CNUTypes.INTEGER;
+      break;
+    }
+  }
+  /**
+   * Gets the string representation of a projection type.
+   *
+   * @param projectionType	projection type
+   * @return	string representation
+   */
+  public static String projectionToString(int projectionType) {
+    for(int i=0; i<PROJECTION_TYPES.length; i++) {
+      if(PROJECTION_TYPES[i] == projectionType) return PROJECTION_NAMES[i];
+    }
+    return "UNKNOWN_PROJECTION";
+  }
+  /**
+   * Gets the projection type from a string representation.
+   *
+   * @param typeString	string representation
+   * @return	projection type or <code>UNKNOWN_PROJECTION</code>
+   *		if invalid string
+   */
+  public static int projectionValueOf(String typeString) {
+    if(typeString == null) return UNKNOWN_PROJECTION;
+    typeString = typeString.trim();
+    // this allows for stuff like "iiv.data.ProjectionEngine.MEAN_PROJECTION"
+    int index = typeString.lastIndexOf(".");
+    if(index >= 0) typeString = typeString.substring(index + 1);
+    for(int i=0; i<PROJECTION_TYPES.length; i++) {
+      if(PROJECTION_NAMES[i].equalsIgnoreCase(typeString))
+	return PROJECTION_TYPES[i];
+    }
+    return UNKNOWN_PROJECTION;
+  }
+  /**
+   * Gets the data slicer slices are grabbed with.
+   *
+   * @return	data slicer
+   */
+  public CNUDataSlicer getDataSlicer() { return dataSlicer; }
+  /**
+   * Gets the data projected.
+   *
+   * @return	data
+   */
+  public CNUData getData() { return inData; }
+  /**
+   * Gets the i dimension slices are projected from.
+   *
+   * @return	i value
+   */
+  public int getIValue() { return iValue; }
+  /**
+   * Gets the projection type.
+   *
+   * @return	projection type
+   */
+  public int getProjectionType() { return projectionType; }
+  /**
+   * Checks if the projection records the slice each value came from.
+   *
+   * @return	<code>true</code> for maximum and minimum projections
+   */
+  public boolean tracksSlices() {
+    return projectionType == MAXIMUM_PROJECTION ||
+      projectionType == MINIMUM_PROJECTION;
+  }
+  /**
+   * Gets the CNU data type of projected planes.  Maximum and minimum
+   * projections keep the input type while mean and sum are DOUBLE so
+   * they neither overflow nor round.
+   *
+   * @return	CNU data type
+   */
+  public int getProjectionDataType() {
+    if(tracksSlices()) return inType;
+    return CNUTypes.DOUBLE;
+  }
+  /**
+   * Sets whether partials of fixed blocks of slices are kept between
+   * projections.  Worth the memory only when the slab moves.
+   *
+   * @param blockCaching	<code>true</code> to keep block partials
+   */
+  public synchronized void setBlockCaching(boolean blockCaching) {
+    this.blockCaching = blockCaching;
+    if(! blockCaching) blockCache = null;
+  }
+  /**
+   * Checks if partials of fixed blocks of slices are kept.
+   *
+   * @return	<code>true</code> if block partials are kept
+   */
+  public synchronized boolean getBlockCaching() { return blockCaching; }
+  /**
+   * Gets the block partial cache, creating it if needed.
+   *
+   * @return	cache or <code>null</code> if not caching
+   */
+  private synchronized Hashtable<Integer, Partial> getBlockCache() {
+    if(! blockCaching) return null;
+    Hashtable<Integer, Partial> cache =
+      (blockCache == null) ? null : blockCache.get();
+    if(cache == null) {
+      cache = new Hashtable<Integer, Partial>();
+      blockCache = new SoftReference<Hashtable<Integer, Partial>>(cache);
+    }
+    return cache;
+  }
+  /**
+   * Projects a slab of slices.
+   *
+   * @param firstSlice	first slice of the slab
+   * @param lastSlice	last slice of the slab, may be less than firstSlice
+   *			to project in reverse order
+   * @param outPlane	plane to fill, sized like the slicer slices with
+   *			any type
+   * @param outSlices	array to fill with the slice each value came from,
+   *			ignored for mean and sum, may be <code>null</code>
+   * @return	<code>true</code> if projected,
+   *		<code>false</code> if interrupted leaving the outputs unchanged
+   */
+  public boolean project(int firstSlice, int lastSlice,
+			 CNUData outPlane, int[] outSlices) {
+    int step = (lastSlice < firstSlice) ? -1 : 1;
+    int count = (lastSlice - firstSlice) * step + 1;
+    // split the slab into runs of slices in slab order
+    Vector<int[]> runs = new Vector<int[]>();
+    Hashtable<Integer, Partial> cache = getBlockCache();
+    if(cache != null) {
+      int lo = Math.min(firstSlice, lastSlice);
+      int hi = Math.max(firstSlice, lastSlice);
+      int start = lo;
+      while(start <= hi) {
+	int end = Math.min(hi, (start / SLAB_BLOCK_SLICES + 1) * SLAB_BLOCK_SLICES - 1);
+	if(step < 0) runs.insertElementAt(new int[] {end, start}, 0);
+	else runs.addElement(new int[] {start, end});
+	start = end + 1;
+      }
+    }
+    else {
+      long voxels = (long) count * planeSize;
+      int nchunks = (int) Math.min(count,
+				   Math.min(WorkerPool.getNumberOfThreads(),
+					    Math.max(1L, voxels / MIN_PARALLEL_VOXELS)));
+      for(int n = 0; n < nchunks; n++) {
+	int first = (int) ((long) count * n / nchunks);
+	int last = (int) ((long) count * (n + 1) / nchunks) - 1;
+	runs.addElement(new int[] {firstSlice + first * step,
+				   firstSlice + last * step});
+      }
+    }
+    final Partial[] partials = new Partial[runs.size()];
+    Vector<Runnable> tasks = new Vector<Runnable>();
+    for(int n = 0; n < partials.length; n++) {
+      final int[] run = runs.elementAt(n);
+      final int fn = n;
+      final Integer key = isBlock(run) ? getBlockKey(run) : null;
+      if(key != null) partials[n] = cache.get(key);
+      if(partials[n] == null) {
+	final Hashtable<Integer, Partial> fcache = (key == null) ? null : cache;
+	tasks.addElement(new Runnable() {
+	    public void run() {
+	      Partial partial = reduce(run[0], run[1]);
+	      partials[fn] = partial;
+	      if(fcache != null && partial != null) fcache.put(key, partial);
+	    }
+	  });
+      }
+    }
+    Runnable[] taskArray = new Runnable[tasks.size()];
+    tasks.copyInto(taskArray);
+    if(! WorkerPool.runAll(taskArray)) return false;
+    for(int n = 0; n < partials.length; n++) if(partials[n] == null) return false;
+    // merge in slab order into the first partial - copied if cached
+    Partial merged = partials[0];
+    if(partials.length > 1 && cache != null && cache.contains(merged))
+      merged = merged.copy();
+    for(int n = 1; n < partials.length; n++) merge(merged, partials[n]);
+    // write the outputs
+    CNUDimensions outDims = outPlane.getDimensions();
+    Object outArray = outPlane.getDataArray();
+    int outType = outDims.getType();
+    int outOffset = outDims.getOffset();
+    if(merged.ints != null) {
+      int[] values = merged.ints;
+      for(int i = 0; i < planeSize; i++)
+	CNUTypes.setArrayValue(values[i], outArray, outOffset + i, outType);
+    }
+    else if(merged.longs != null) {
+      if(outType == CNUTypes.LONG)
+	System.arraycopy(merged.longs, 0, outArray, outOffset, planeSize);
+      else {
+	long[] values = merged.longs;
+	for(int i = 0; i < planeSize; i++)
+	  CNUTypes.setArrayValue((double) values[i], outArray, outOffset + i, outType);
+      }
+    }
+    else {
+      double[] values = merged.doubles;
+      double scale = (projectionType == MEAN_PROJECTION) ? 1d / count : 1d;
+      for(int i = 0; i < planeSize; i++)
+	CNUTypes.setArrayValue(values[i] * scale, outArray, outOffset + i, outType);
+    }
+    if(outSlices != null && merged.slices != null)
+      System.arraycopy(merged.slices, 0, outSlices, 0, planeSize);
+    return true;
+  }
+  /**
+   * Checks if a run of slices is a whole cacheable block.
+   *
+   * @param run	first and last slice of the run
+   * @return	<code>true</code> if the run is a whole block
+   */
+  private static boolean isBlock(int[] run) {
+    int lo = Math.min(run[0], run[1]);
+    int hi = Math.max(run[0], run[1]);
+    return (lo % SLAB_BLOCK_SLICES) == 0 && hi - lo + 1 == SLAB_BLOCK_SLICES;
+  }
+  /**
+   * Gets the cache key of a block, distinct for each direction because
+   * ties keep the slice nearest the start of the run.
+   *
+   * @param run	first and last slice of the block
+   * @return	key
+   */
+  private static Integer getBlockKey(int[] run) {
+    int block = Math.min(run[0], run[1]) / SLAB_BLOCK_SLICES;
+    return Integer.valueOf(2 * block + ((run[1] < run[0]) ? 1 : 0));
+  }
+  /**
+   * Reduces a run of consecutive slices to a partial.  Runs on worker
+   * threads with its own slice buffers.
+   *
+   * @param first	first slice
+   * @param last	last slice, may be less than first
+   * @return	partial or <code>null</code> if interrupted or a slice
+   *		could not be grabbed
+   */
+  private Partial reduce(int first, int last) {
+    int step = (last < first) ? -1 : 1;
+    boolean extreme = tracksSlices();
+    boolean minimum = projectionType == MINIMUM_PROJECTION;
+    Partial partial = new Partial(planeSize, accumulatorType, extreme);
+    if(extreme) {
+      // start from values every voxel replaces, or ties with from the first slice
+      Arrays.fill(partial.slices, first);
+      if(partial.ints != null)
+	Arrays.fill(partial.ints, minimum ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+      else if(partial.longs != null)
+	Arrays.fill(partial.longs, minimum ? Long.MAX_VALUE : Long.MIN_VALUE);
+      else Arrays.fill(partial.doubles, Double.NaN);
+    }
+    CNUData plane = new CNUData();
+    plane.initDataArray(sliceDims);
+    Object inArray = plane.getDataArray();
+    // values of narrower types are widened into these before reducing
+    int[] intRow = null;
+    double[] doubleRow = null;
+    Thread currentThread = Thread.currentThread();
+    for(int slice = first; ; slice += step) {
+      if(currentThread.isInterrupted()) return null;
+      if(dataSlicer.grabSliceData(inData, slice, iValue, plane, null) == null)
+	return null;
+      switch (inType) {
+      case CNUTypes.LONG:
+	if(extreme) reduceExtremes((long[]) inArray, partial, slice, minimum);
+	else {
+	  long[] in = (long[]) inArray;
+	  double[] sums = partial.doubles;
+	  for(int i = 0; i < planeSize; i++) sums[i] += in[i];
+	}
+	break;
+      case CNUTypes.FLOAT:
+      case CNUTypes.DOUBLE:
+	if(inType == CNUTypes.DOUBLE) doubleRow = (double[]) inArray;
+	else {
+	  if(doubleRow == null) doubleRow = new double[planeSize];
+	  float[] in = (float[]) inArray;
+	  for(int i = 0; i < planeSize; i++) doubleRow[i] = in[i];
+	}
+	if(extreme) reduceExtremes(doubleRow, partial, slice, minimum);
+	else {
+	  double[] sums = partial.doubles;
+	  for(int i = 0; i < planeSize; i++) sums[i] += doubleRow[i];
+	}
+	break;
+      default:
+	if(inType == CNUTypes.INTEGER || inType == CNUTypes.UNSIGNED_INTEGER)
+	  intRow = (int[]) inArray;
+	else {
+	  if(intRow == null) intRow = new int[planeSize];
+	  widen(inArray, inType, intRow, planeSize);
+	}
+	if(extreme) reduceExtremes(intRow, partial, slice, minimum);
+	else {
+	  double[] sums = partial.doubles;
+	  for(int i = 0; i < planeSize; i++) sums[i] += intRow[i];
+	}
+	break;
+      }
+      if(slice == last) break;
+    }
+    return partial;
+  }
+  /**
+   * Widens byte or short values to ints.  UNSIGNED_INTEGER values stay
+   * signed the way CNUTypes.getArrayValueAsDouble reads them.
+   *
+   * @param inArray	byte or short array
+   * @param inType	CNU data type of inArray
+   * @param out		ints to fill
+   * @param cnt		number of values
+   */
+  private static void widen(Object inArray, int inType, int[] out, int cnt) {
+    switch (inType) {
+    case CNUTypes.BYTE:
+      {
+	byte[] in = (byte[]) inArray;
+	for(int i = 0; i < cnt; i++) out[i] = in[i];
+      }
+      return;
+    case CNUTypes.UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) inArray;
+	for(int i = 0; i < cnt; i++) out[i] = in[i] & 0xff;
+      }
+      return;
+    case CNUTypes.SHORT:
+      {
+	short[] in = (short[]) inArray;
+	for(int i = 0; i < cnt; i++) out[i] = in[i];
+      }
+      return;
+    case CNUTypes.UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) inArray;
+	for(int i = 0; i < cnt; i++) out[i] = in[i] & 0xffff;
+      }
+      return;
+    default:
+      return;
+    }
+  }
+  /**
+   * Replaces partial extremes with greater, or lesser, values noting the
+   * slice or partial they came from.  Ties keep the existing value.
+   *
+   * @param in		values
+   * @param partial	partial to update
+   * @param slice	slice the values came from
+   * @param inSlices	slices each value came from instead of slice,
+   *			may be <code>null</code>
+   * @param minimum	<code>true</code> to keep lesser values
+   */
+  private static void reduceExtremes(int[] in, Partial partial, int slice,
+				     int[] inSlices, boolean minimum) {
+    int[] values = partial.ints;
+    int[] slices = partial.slices;
+    if(minimum) {
+      for(int i = 0; i < values.length; i++) if(in[i] < values[i]) {
+	values[i] = in[i];
+	slices[i] = (inSlices == null) ? slice : inSlices[i];
+      }
+    }
+    else {
+      for(int i = 0; i < values.length; i++) if(in[i] > values[i]) {
+	values[i] = in[i];
+	slices[i] = (inSlices == null) ? slice : inSlices[i];
+      }
+    }
+  }
+  private static void reduceExtremes(int[] in, Partial partial, int slice,
+				     boolean minimum) {
+    reduceExtremes(in, partial, slice, null, minimum);
+  }
+  /**
+   * Replaces partial extremes with greater, or lesser, long values.
+   *
+   * @see #reduceExtremes(int[], Partial, int, int[], boolean)
+   */
+  private static void reduceExtremes(long[] in, Partial partial, int slice,
+				     int[] inSlices, boolean minimum) {
+    long[] values = partial.longs;
+    int[] slices = partial.slices;
+    for(int i = 0; i < values.length; i++)
+      if(minimum ? in[i] < values[i] : in[i] > values[i]) {
+	values[i] = in[i];
+	slices[i] = (inSlices == null) ? slice : inSlices[i];
+      }
+  }
+  private static void reduceExtremes(long[] in, Partial partial, int slice,
+				     boolean minimum) {
+    reduceExtremes(in, partial, slice, null, minimum);
+  }
+  /**
+   * Replaces partial extremes with greater, or lesser, double values.
+   * NaN values never replace others and are replaced by the first
+   * value that is not NaN.
+   *
+   * @see #reduceExtremes(int[], Partial, int, int[], boolean)
+   */
+  private static void reduceExtremes(double[] in, Partial partial, int slice,
+				     int[] inSlices, boolean minimum) {
+    double[] values = partial.doubles;
+    int[] slices = partial.slices;
+    for(int i = 0; i < values.length; i++) {
+      double v = in[i];
+      if((minimum ? v < values[i] : v > values[i]) ||
+	 (values[i] != values[i] && v == v)) {
+	values[i] = v;
+	slices[i] = (inSlices == null) ? slice : inSlices[i];
+      }
+    }
+  }
+  private static void reduceExtremes(double[] in, Partial partial, int slice,
+				     boolean minimum) {
+    reduceExtremes(in, partial, slice, null, minimum);
+  }
+  /**
+   * Merges a partial of later slices into one of earlier slices.
+   *
+   * @param merged	partial of earlier slices to update
+   * @param later	partial of later slices
+   */
+  private void merge(Partial merged, Partial later) {
+    if(! tracksSlices()) {
+      double[] sums = merged.doubles;
+      double[] laterSums = later.doubles;
+      for(int i = 0; i < planeSize; i++) sums[i] += laterSums[i];
+      return;
+    }
+    boolean minimum = projectionType == MINIMUM_PROJECTION;
+    // strict compares keep the earlier slice on ties
+    if(merged.ints != null)
+      reduceExtremes(later.ints, merged, 0, later.slices, minimum);
+    else if(merged.longs != null)
+      reduceExtremes(later.longs, merged, 0, later.slices, minimum);
+    else reduceExtremes(later.doubles, merged, 0, later.slices, minimum);
+  }
+}
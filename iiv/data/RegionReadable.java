@@ -0,0 +1,29 @@
+package iiv.data;
+/**
+ * RegionReadable defines methods for data that may supply sections
+ * of its data array without the whole array being read into memory.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUData
+ * @see		PrimaryOrthoDataSlicer
+ * @since	iiV1.187
+ */
+public interface RegionReadable {
+  /**
+   * Checks if sections should currently be read with readRegion instead
+   * of getting the whole data array.
+   *
+   * @return	<code>true</code> if readRegion should be used
+   */
+  public boolean isRegionReadable();
+  /**
+   * Reads a contiguous range of words from the data array.
+   *
+   * @param offset	index in words of the first word to read
+   * @param length	number of words to read
+   * @return	array of the data type containing the words or
+   *		<code>null</code> if the region could not be read
+   */
+  public Object readRegion(int offset, int length);
+}
@@ -0,0 +1,1010 @@
+package iiv.data;
+import iiv.util.*;
+import java.lang.ref.*;
+/**
+ * Resamples rows of oblique slices from a volume without locks or
+ * allocation per voxel.  Each output row is a straight line through the
+ * input volume so the range of row locations inside the volume is found
+ * once per row by clipping the line against the volume bounds, then the
+ * row is sampled with a tight loop over the input array indexing it
+ * directly from the rounded input location.  Besides nearest neighbor
+ * sampling rows may be interpolated with trilinear, cubic B-spline or
+ * Lanczos (radius 3) kernels.  Interpolated voxels are still only
+ * produced where the nearest voxel is inside the volume, with kernel
+ * taps beyond the edges mirrored, or clamped for trilinear.  Cubic
+ * B-spline interpolation samples prefiltered coefficients computed once
+ * per volume and i value and softly cached.  An engine holds no other
+ * state so one may be shared by threads working on different rows as
+ * long as each passes its own buffers.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		AffineDataSlicer
+ * @since	iiV1.187
+ */
+public class ResliceEngine {
+  public final static int UNKNOWN_INTERPOLATION = 0;
+  public final static int NEAREST_NEIGHBOR = 1;
+  public final static int TRILINEAR = 2;
+  public final static int CUBIC_BSPLINE = 3;
+  public final static int LANCZOS = 4;
+  public final static int[] INTERPOLATION_TYPES = {
+    NEAREST_NEIGHBOR,
+    TRILINEAR,
+    CUBIC_BSPLINE,
+    LANCZOS
+  };
+  public final static String[] INTERPOLATION_NAMES = {
+    "NEAREST_NEIGHBOR",
+    "TRILINEAR",
+    "CUBIC_BSPLINE",
+    "LANCZOS"
+  };
+  /** Radius in voxels of the Lanczos kernel. */
+  public final static int LANCZOS_RADIUS = 3;
+  private final static double BSPLINE_POLE = Math.sqrt(3d) - 2d;
+  private final static double SIN_LANCZOS_STEP = Math.sin(Math.PI / LANCZOS_RADIUS);
+  private final static double COS_LANCZOS_STEP = Math.cos(Math.PI / LANCZOS_RADIUS);
+
+  /**
+   * Prefiltered cubic B-spline coefficients for one volume and i value.
+   */
+  private static class BSplineCoefficients {
+    final Object inArray;
+    final int iValue;
+    final float[] coefficients;
+    BSplineCoefficients(Object inArray, int iValue, float[] coefficients) {
+      this.inArray = inArray;
+      this.iValue = iValue;
+      this.coefficients = coefficients;
+    }
+  }
+  private SoftReference<BSplineCoefficients> bsplineCache = null;
+
+  private final int type;
+  private final int offset;
+  private final int xdim, ydim, zdim, idim;
+  private final int xinc, yinc, zinc, iinc;
+  /**
+   * Constructs a new instance of ResliceEngine.
+   *
+   * @param inDims	dimensions of the volumes to resample
+   */
+  public ResliceEngine(CNUDimensions inDims) {
+    type = inDims.getType();
+    offset = inDims.getOffset();
+    xdim = inDims.xdim();
+    ydim = inDims.getDim(1);
+    zdim = inDims.getDim(2);
+    idim = inDims.getDim(3);
+    xinc = inDims.getIncrement(0);
+    yinc = inDims.getIncrement(1);
+    zinc = inDims.getIncrement(2);
+    iinc = (inDims.getNumberOfDimensions() > 3) ? inDims.getIncrement(3) : 0;
+  }
+  /**
+   * Gets the CNU data type of the volumes resampled.
+   *
+   * @return	CNU data type
+   */
+  public int getType() { return type; }
+  /**
+   * Clips a line of locations <code>start + i * step</code> against one
+   * dimension of the volume where a location is inside if its rounded
+   * value is from <code>0</code> to <code>dim - 1</code>.
+   *
+   * @param start	location of <code>i = 0</code>
+   * @param step	change in location per step
+   * @param dim		size of the dimension
+   * @param range	range of <code>i</code> to narrow, range[0]
+   *			inclusive and range[1] exclusive
+   */
+  private static void clip(double start, double step, int dim, int[] range) {
+    // Math.round(v) is inside when 0 <= v + 0.5 < dim
+    double u = start + 0.5d;
+    int lo = range[0];
+    int hi = range[1];
+    if(step == 0) {
+      if(! (u >= 0 && u < dim)) hi = lo;
+    }
+    else {
+      double a = (0 - u) / step;
+      double b = (dim - u) / step;
+      double min = Math.min(a, b);
+      double max = Math.max(a, b);
+      if(min > lo) lo = (int) Math.max(lo, Math.min(hi, Math.floor(min)));
+      if(max < hi) hi = (int) Math.min(hi, Math.max(lo, Math.ceil(max) + 1));
+      // settle rounding at the ends with the same test the loop uses
+      while(lo < hi && ! inside(u, step, lo, dim)) lo++;
+      while(hi > lo && ! inside(u, step, hi - 1, dim)) hi--;
+    }
+    range[0] = lo;
+    range[1] = hi;
+  }
+  /**
+   * Checks if a step of a line is inside a dimension.
+   *
+   * @param u		location of <code>i = 0</code> plus one half
+   * @param step	change in location per step
+   * @param i		step number
+   * @param dim		size of the dimension
+   * @return	<code>true</code> if inside
+   */
+  private static boolean inside(double u, double step, int i, int dim) {
+    double v = u + i * step;
+    return v >= 0 && v < dim;
+  }
+  /**
+   * Finds the steps of a row that are inside the volume.
+   *
+   * @param x		input x location of the first output voxel
+   * @param y		input y location of the first output voxel
+   * @param z		input z location of the first output voxel
+   * @param dx		change in input x per output voxel
+   * @param dy		change in input y per output voxel
+   * @param dz		change in input z per output voxel
+   * @param n		number of output voxels in the row
+   * @param range	returns the first inside step in range[0] and
+   *			one past the last in range[1], equal if none
+   */
+  public void getInsideRange(double x, double y, double z,
+			     double dx, double dy, double dz,
+			     int n, int[] range) {
+    range[0] = 0;
+    range[1] = n;
+    clip(x, dx, xdim, range);
+    clip(y, dy, ydim, range);
+    clip(z, dz, zdim, range);
+  }
+  /**
+   * Samples the nearest input voxels along a row.  Only steps
+   * from range[0] up to range[1], as found by getInsideRange, are sampled.
+   *
+   * @param inArray	input data array
+   * @param iValue	i dimension to sample
+   * @param x		input x location of the first output voxel
+   * @param y		input y location of the first output voxel
+   * @param z		input z location of the first output voxel
+   * @param dx		change in input x per output voxel
+   * @param dy		change in input y per output voxel
+   * @param dz		change in input z per output voxel
+   * @param lo		first step to sample
+   * @param hi		one past the last step to sample
+   * @param values	returns sampled values at the step locations
+   */
+  public void sampleNearest(Object inArray, int iValue,
+			    double x, double y, double z,
+			    double dx, double dy, double dz,
+			    int lo, int hi, double[] values) {
+    int base = offset + iValue * iinc;
+    // adding one half makes truncation round to nearest for inside values
+    double ux = x + 0.5d, uy = y + 0.5d, uz = z + 0.5d;
+    switch (type) {
+    case CNUTypes.BYTE:
+      {
+	byte[] in = (byte[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc];
+      }
+      break;
+    case CNUTypes.UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc] & 0xff;
+      }
+      break;
+    case CNUTypes.SHORT:
+      {
+	short[] in = (short[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc];
+      }
+      break;
+    case CNUTypes.UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc] & 0xffff;
+      }
+      break;
+    case CNUTypes.INTEGER:
+    case CNUTypes.UNSIGNED_INTEGER:
+      {
+	// unsigned integers read as signed like getArrayValueAsDouble
+	int[] in = (int[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc];
+      }
+      break;
+    case CNUTypes.LONG:
+      {
+	long[] in = (long[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc];
+      }
+      break;
+    case CNUTypes.FLOAT:
+      {
+	float[] in = (float[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc];
+      }
+      break;
+    case CNUTypes.DOUBLE:
+      {
+	double[] in = (double[]) inArray;
+	for(int i = lo; i < hi; i++)
+	  values[i] = in[base + (int) (ux + i * dx) * xinc +
+			 (int) (uy + i * dy) * yinc + (int) (uz + i * dz) * zinc];
+      }
+      break;
+    default:
+      for(int i = lo; i < hi; i++) values[i] = Double.NaN;
+      break;
+    }
+  }
+  /**
+   * Writes a row of values to an output array the same way
+   * CNUTypes.setArrayValue would, with zeros outside a range.
+   *
+   * @param values	values to write
+   * @param lo		first value to write
+   * @param hi		one past the last value to write
+   * @param n		number of words in the row
+   * @param outArray	output data array
+   * @param outOffset	location of output array for the first word
+   * @param outType	CNU data type of output array
+   */
+  public static void writeRow(double[] values, int lo, int hi, int n,
+			      Object outArray, int outOffset, int outType) {
+    switch (outType) {
+    case CNUTypes.BYTE:
+    case CNUTypes.UNSIGNED_BYTE:
+      {
+	byte[] out = (byte[]) outArray;
+	boolean unsigned = (outType == CNUTypes.UNSIGNED_BYTE);
+	for(int i = 0; i < lo; i++) out[outOffset + i] = 0;
+	for(int i = lo; i < hi; i++) {
+	  int v = (int) Math.round(values[i]);
+	  out[outOffset + i] = unsigned ? CNUTypes.IntToUnsignedByte(v) :
+	    CNUTypes.IntToByte(v);
+	}
+	for(int i = hi; i < n; i++) out[outOffset + i] = 0;
+      }
+      return;
+    case CNUTypes.SHORT:
+    case CNUTypes.UNSIGNED_SHORT:
+      {
+	short[] out = (short[]) outArray;
+	for(int i = 0; i < lo; i++) out[outOffset + i] = 0;
+	for(int i = lo; i < hi; i++) out[outOffset + i] = (short) Math.round(values[i]);
+	for(int i = hi; i < n; i++) out[outOffset + i] = 0;
+      }
+      return;
+    case CNUTypes.INTEGER:
+    case CNUTypes.UNSIGNED_INTEGER:
+      {
+	int[] out = (int[]) outArray;
+	for(int i = 0; i < lo; i++) out[outOffset + i] = 0;
+	for(int i = lo; i < hi; i++) out[outOffset + i] = (int) Math.round(values[i]);
+	for(int i = hi; i < n; i++) out[outOffset + i] = 0;
+      }
+      return;
+    case CNUTypes.LONG:
+      {
+	long[] out = (long[]) outArray;
+	for(int i = 0; i < lo; i++) out[outOffset + i] = 0;
+	for(int i = lo; i < hi; i++) out[outOffset + i] = Math.round(values[i]);
+	for(int i = hi; i < n; i++) out[outOffset + i] = 0;
+      }
+      return;
+    case CNUTypes.FLOAT:
+      {
+	float[] out = (float[]) outArray;
+	for(int i = 0; i < lo; i++) out[outOffset + i] = 0;
+	for(int i = lo; i < hi; i++) out[outOffset + i] = (float) values[i];
+	for(int i = hi; i < n; i++) out[outOffset + i] = 0;
+      }
+      return;
+    case CNUTypes.DOUBLE:
+      {
+	double[] out = (double[]) outArray;
+	for(int i = 0; i < lo; i++) out[outOffset + i] = 0;
+	for(int i = lo; i < hi; i++) out[outOffset + i] = values[i];
+	for(int i = hi; i < n; i++) out[outOffset + i] = 0;
+      }
+      return;
+    default:
+      return;
+    }
+  }
+  /**
+   * Generates a string representation for an interpolation type.
+   *
+   * @param interpolationType	interpolation type
+   * @return	string name for the interpolation type
+   */
+  public static String interpolationToString(int interpolationType) {
+    for(int i=0; i<INTERPOLATION_TYPES.length; i++) {
+      if(INTERPOLATION_TYPES[i] == interpolationType) return INTERPOLATION_NAMES[i];
+    }
+    return "UNKNOWN_INTERPOLATION";
+  }
+  /**
+   * Gets the interpolation type from a string representation.
+   *
+   * @param typeString	string representation of an interpolation type
+   * @return	interpolation type or <code>UNKNOWN_INTERPOLATION</code>
+   *		if invalid string
+   */
+  public static int interpolationValueOf(String typeString) {
+    if(typeString == null) return UNKNOWN_INTERPOLATION;
+    typeString = typeString.trim();
+    // this allows for stuff like "iiv.data.ResliceEngine.TRILINEAR"
+    int index = typeString.lastIndexOf(".");
+    if(index >= 0) typeString = typeString.substring(index + 1);
+    for(int i=0; i<INTERPOLATION_TYPES.length; i++) {
+      if(INTERPOLATION_NAMES[i].equalsIgnoreCase(typeString))
+	return INTERPOLATION_TYPES[i];
+    }
+    return UNKNOWN_INTERPOLATION;
+  }
+  /**
+   * Gets the number of kernel taps per dimension of an interpolation type.
+   *
+   * @param interpolationType	interpolation type
+   * @return	number of taps
+   */
+  public static int getNumberOfTaps(int interpolationType) {
+    switch (interpolationType) {
+    case TRILINEAR:
+      return 2;
+    case CUBIC_BSPLINE:
+      return 4;
+    case LANCZOS:
+      return 2 * LANCZOS_RADIUS;
+    default:
+      return 1;
+    }
+  }
+  /**
+   * Mirrors an index into the range <code>0</code> to <code>n - 1</code>
+   * without repeating the edge voxel.
+   *
+   * @param i	index
+   * @param n	number of voxels
+   * @return	mirrored index
+   */
+  private static int mirror(int i, int n) {
+    if(i >= 0 && i < n) return i;
+    if(n < 2) return 0;
+    int period = 2 * n - 2;
+    if(i < 0) i = -i;
+    i %= period;
+    return (i < n) ? i : period - i;
+  }
+  /**
+   * Calculates the kernel taps for one location along a dimension.
+   *
+   * @param interpolationType	interpolation type
+   * @param v		location in voxels
+   * @param n		number of voxels in the dimension
+   * @param inc		increment between voxels in the dimension
+   * @param offsets	returns array offsets of the taps
+   * @param weights	returns weights of the taps
+   */
+  private static void getTaps(int interpolationType, double v, int n, int inc,
+			      int[] offsets, double[] weights) {
+    double f = Math.floor(v);
+    int i0 = (int) f;
+    double t = v - f;
+    switch (interpolationType) {
+    case TRILINEAR:
+      {
+	int i1 = i0 + 1;
+	if(i0 < 0) i0 = 0; else if(i0 >= n) i0 = n - 1;
+	if(i1 < 0) i1 = 0; else if(i1 >= n) i1 = n - 1;
+	offsets[0] = i0 * inc; offsets[1] = i1 * inc;
+	weights[0] = 1d - t; weights[1] = t;
+      }
+      return;
+    case CUBIC_BSPLINE:
+      {
+	double s = 1d - t;
+	double t2 = t * t;
+	double t3 = t2 * t;
+	weights[0] = s * s * s / 6d;
+	weights[1] = (3d * t3 - 6d * t2 + 4d) / 6d;
+	weights[2] = (-3d * t3 + 3d * t2 + 3d * t + 1d) / 6d;
+	weights[3] = t3 / 6d;
+	for(int k = 0; k < 4; k++) offsets[k] = mirror(i0 - 1 + k, n) * inc;
+      }
+      return;
+    case LANCZOS:
+      {
+	// tap k is d = t + R - 1 - k from v so sin(PI * d) only changes
+	// sign and sin(PI * d / R) rotates by PI / R per tap
+	double sinPiT = Math.sin(Math.PI * t);
+	double angle = Math.PI * (t + LANCZOS_RADIUS - 1) / LANCZOS_RADIUS;
+	double sinA = Math.sin(angle);
+	double cosA = Math.cos(angle);
+	double sum = 0;
+	for(int k = 0; k < 2 * LANCZOS_RADIUS; k++) {
+	  double d = t + LANCZOS_RADIUS - 1 - k;
+	  double w;
+	  if(d == 0) w = 1d;
+	  else if(d >= LANCZOS_RADIUS || d <= -LANCZOS_RADIUS) w = 0;
+	  else {
+	    double sinPiD = (((LANCZOS_RADIUS - 1 - k) & 1) == 0) ? sinPiT : -sinPiT;
+	    w = LANCZOS_RADIUS * sinPiD * sinA / (Math.PI * Math.PI * d * d);
+	  }
+	  weights[k] = w;
+	  sum += w;
+	  offsets[k] = mirror(i0 - LANCZOS_RADIUS + 1 + k, n) * inc;
+	  double nextSinA = sinA * COS_LANCZOS_STEP - cosA * SIN_LANCZOS_STEP;
+	  cosA = cosA * COS_LANCZOS_STEP + sinA * SIN_LANCZOS_STEP;
+	  sinA = nextSinA;
+	}
+	if(sum != 0) for(int k = 0; k < 2 * LANCZOS_RADIUS; k++) weights[k] /= sum;
+      }
+      return;
+    default:
+      {
+	int i = (int) Math.floor(v + 0.5d);
+	if(i < 0) i = 0; else if(i >= n) i = n - 1;
+	offsets[0] = i * inc;
+	weights[0] = 1d;
+      }
+      return;
+    }
+  }
+  /**
+   * Samples interpolated values along a row.  Only steps from lo up to hi,
+   * as found by getInsideRange, are sampled.
+   *
+   * @param inArray	input data array
+   * @param iValue	i dimension to sample
+   * @param interpolationType	TRILINEAR, CUBIC_BSPLINE or LANCZOS
+   * @param x		input x location of the first output voxel
+   * @param y		input y location of the first output voxel
+   * @param z		input z location of the first output voxel
+   * @param dx		change in input x per output voxel
+   * @param dy		change in input y per output voxel
+   * @param dz		change in input z per output voxel
+   * @param lo		first step to sample
+   * @param hi		one past the last step to sample
+   * @param values	returns sampled values at the step locations
+   */
+  public void sampleInterpolated(Object inArray, int iValue,
+				 int interpolationType,
+				 double x, double y, double z,
+				 double dx, double dy, double dz,
+				 int lo, int hi, double[] values) {
+    Object array = inArray;
+    int arrayType = type;
+    int base = offset + iValue * iinc;
+    int ax = xinc, ay = yinc, az = zinc;
+    if(interpolationType == CUBIC_BSPLINE) {
+      array = getBSplineCoefficients(inArray, iValue, false);
+      arrayType = CNUTypes.FLOAT;
+      base = 0;
+      ax = 1; ay = xdim; az = xdim * ydim;
+    }
+    if(interpolationType == TRILINEAR) {
+      sampleTrilinear(array, arrayType, base, x, y, z, dx, dy, dz, lo, hi, values);
+      return;
+    }
+    int taps = getNumberOfTaps(interpolationType);
+    int[] ox = new int[taps], oy = new int[taps], oz = new int[taps];
+    double[] wx = new double[taps], wy = new double[taps], wz = new double[taps];
+    for(int i = lo; i < hi; i++) {
+      getTaps(interpolationType, x + i * dx, xdim, ax, ox, wx);
+      getTaps(interpolationType, y + i * dy, ydim, ay, oy, wy);
+      getTaps(interpolationType, z + i * dz, zdim, az, oz, wz);
+      values[i] = kernelSum(array, arrayType, base, taps, ox, wx, oy, wy, oz, wz);
+    }
+  }
+  /**
+   * Sums the weighted neighborhood of one location with the conversions
+   * of getArrayValueAsDouble, switching on the type once per location.
+   *
+   * @param array	input data array
+   * @param arrayType	CNU data type of the array
+   * @param base	array offset of the first voxel
+   * @param taps	number of taps per dimension
+   * @param ox		x tap offsets
+   * @param wx		x tap weights
+   * @param oy		y tap offsets
+   * @param wy		y tap weights
+   * @param oz		z tap offsets
+   * @param wz		z tap weights
+   * @return	interpolated value
+   */
+  private static double kernelSum(Object array, int arrayType, int base,
+				  int taps, int[] ox, double[] wx,
+				  int[] oy, double[] wy,
+				  int[] oz, double[] wz) {
+    double sum = 0;
+    switch (arrayType) {
+    case CNUTypes.BYTE:
+      {
+	byte[] in = (byte[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * in[by + ox[kx]];
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * (in[by + ox[kx]] & 0xff);
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.SHORT:
+      {
+	short[] in = (short[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * in[by + ox[kx]];
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * (in[by + ox[kx]] & 0xffff);
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.INTEGER:
+    case CNUTypes.UNSIGNED_INTEGER:
+      {
+	int[] in = (int[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * in[by + ox[kx]];
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.LONG:
+      {
+	long[] in = (long[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * (double) in[by + ox[kx]];
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.FLOAT:
+      {
+	float[] in = (float[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * in[by + ox[kx]];
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    case CNUTypes.DOUBLE:
+      {
+	double[] in = (double[]) array;
+	for(int kz = 0; kz < taps; kz++) {
+	  if(wz[kz] == 0) continue;
+	  double sumy = 0;
+	  for(int ky = 0; ky < taps; ky++) {
+	    if(wy[ky] == 0) continue;
+	    int by = base + oz[kz] + oy[ky];
+	    double sumx = 0;
+	    for(int kx = 0; kx < taps; kx++) sumx += wx[kx] * in[by + ox[kx]];
+	    sumy += wy[ky] * sumx;
+	  }
+	  sum += wz[kz] * sumy;
+	}
+      }
+      return sum;
+    default:
+      return Double.NaN;
+    }
+  }
+  /**
+   * Reads words at a list of locations as doubles with the conversions
+   * of getArrayValueAsDouble.
+   *
+   * @param array	input data array
+   * @param arrayType	CNU data type of the array
+   * @param indices	locations to read
+   * @param buf		array to put values in
+   * @param len		number of locations
+   */
+  private static void gather(Object array, int arrayType, int[] indices,
+			     double[] buf, int len) {
+    switch (arrayType) {
+    case CNUTypes.BYTE:
+      {
+	byte[] in = (byte[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]];
+      }
+      return;
+    case CNUTypes.UNSIGNED_BYTE:
+      {
+	byte[] in = (byte[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]] & 0xff;
+      }
+      return;
+    case CNUTypes.SHORT:
+      {
+	short[] in = (short[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]];
+      }
+      return;
+    case CNUTypes.UNSIGNED_SHORT:
+      {
+	short[] in = (short[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]] & 0xffff;
+      }
+      return;
+    case CNUTypes.INTEGER:
+    case CNUTypes.UNSIGNED_INTEGER:
+      {
+	int[] in = (int[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]];
+      }
+      return;
+    case CNUTypes.LONG:
+      {
+	long[] in = (long[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]];
+      }
+      return;
+    case CNUTypes.FLOAT:
+      {
+	float[] in = (float[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]];
+      }
+      return;
+    case CNUTypes.DOUBLE:
+      {
+	double[] in = (double[]) array;
+	for(int i = 0; i < len; i++) buf[i] = in[indices[i]];
+      }
+      return;
+    default:
+      for(int i = 0; i < len; i++) buf[i] = Double.NaN;
+      return;
+    }
+  }
+  /**
+   * Samples trilinear interpolated values along a row with edge voxels
+   * repeated beyond the volume.
+   *
+   * @param array	input data array
+   * @param arrayType	CNU data type of the array
+   * @param base	array offset of the first voxel
+   * @param x		input x location of the first output voxel
+   * @param y		input y location of the first output voxel
+   * @param z		input z location of the first output voxel
+   * @param dx		change in input x per output voxel
+   * @param dy		change in input y per output voxel
+   * @param dz		change in input z per output voxel
+   * @param lo		first step to sample
+   * @param hi		one past the last step to sample
+   * @param values	returns sampled values at the step locations
+   */
+  private void sampleTrilinear(Object array, int arrayType, int base,
+			       double x, double y, double z,
+			       double dx, double dy, double dz,
+			       int lo, int hi, double[] values) {
+    int[] corners = new int[8];
+    double[] v = new double[8];
+    for(int i = lo; i < hi; i++) {
+      double vx = x + i * dx;
+      double vy = y + i * dy;
+      double vz = z + i * dz;
+      // inside locations are at least -0.5 so adding 1 truncates as floor
+      int x0 = (int) (vx + 1d) - 1;
+      int y0 = (int) (vy + 1d) - 1;
+      int z0 = (int) (vz + 1d) - 1;
+      double tx = vx - x0, ty = vy - y0, tz = vz - z0;
+      int x1 = x0 + 1, y1 = y0 + 1, z1 = z0 + 1;
+      if(x0 < 0) x0 = 0; if(x1 >= xdim) x1 = xdim - 1;
+      if(y0 < 0) y0 = 0; if(y1 >= ydim) y1 = ydim - 1;
+      if(z0 < 0) z0 = 0; if(z1 >= zdim) z1 = zdim - 1;
+      int ox0 = x0 * xinc, ox1 = x1 * xinc;
+      int b00 = base + y0 * yinc + z0 * zinc;
+      int b10 = base + y1 * yinc + z0 * zinc;
+      int b01 = base + y0 * yinc + z1 * zinc;
+      int b11 = base + y1 * yinc + z1 * zinc;
+      corners[0] = b00 + ox0; corners[1] = b00 + ox1;
+      corners[2] = b10 + ox0; corners[3] = b10 + ox1;
+      corners[4] = b01 + ox0; corners[5] = b01 + ox1;
+      corners[6] = b11 + ox0; corners[7] = b11 + ox1;
+      gather(array, arrayType, corners, v, 8);
+      double v00 = v[0] + tx * (v[1] - v[0]);
+      double v10 = v[2] + tx * (v[3] - v[2]);
+      double v01 = v[4] + tx * (v[5] - v[4]);
+      double v11 = v[6] + tx * (v[7] - v[6]);
+      v00 += ty * (v10 - v00);
+      v01 += ty * (v11 - v01);
+      values[i] = v00 + tz * (v01 - v00);
+    }
+  }
+  /**
+   * Prepares for sampling rows of a volume from several threads by
+   * computing anything shared by the rows, currently the cubic B-spline
+   * coefficients, on the shared worker pool.  Should be called before
+   * splitting rows among shared pool tasks because computing on demand
+   * from them is done serially under a lock.
+   *
+   * @param inArray	input data array
+   * @param iValue	i dimension
+   * @param interpolationType	interpolation type
+   */
+  public void prepare(Object inArray, int iValue, int interpolationType) {
+    if(interpolationType == CUBIC_BSPLINE && iValue >= 0 && iValue < idim)
+      getBSplineCoefficients(inArray, iValue, true);
+  }
+  /**
+   * Gets the prefiltered cubic B-spline coefficients of a volume,
+   * computing them if not cached.
+   *
+   * @param inArray	input data array
+   * @param iValue	i dimension
+   * @param parallel	<code>true</code> to compute on the shared pool
+   * @return	coefficients ordered x fastest with no offset
+   */
+  private float[] getBSplineCoefficients(Object inArray, int iValue,
+					 boolean parallel) {
+    synchronized (this) {
+      BSplineCoefficients cached =
+	(bsplineCache == null) ? null : bsplineCache.get();
+      if(cached != null && cached.inArray == inArray && cached.iValue == iValue)
+	return cached.coefficients;
+      final float[] c = new float[xdim * ydim * zdim];
+      final Object fin = inArray;
+      final int base = offset + iValue * iinc;
+      // copy and filter x and y lines a z plane at a time
+      Runnable[] tasks = new Runnable[zdim];
+      for(int zz = 0; zz < zdim; zz++) {
+	final int z = zz;
+	tasks[zz] = new Runnable() {
+	    public void run() {
+	      double[] line = new double[Math.max(xdim, ydim)];
+	      int plane = z * xdim * ydim;
+	      for(int y = 0; y < ydim; y++) {
+		CNUTypes.readDoubles(fin, base + z * zinc + y * yinc, type,
+				     xinc, line, xdim);
+		prefilter(line, xdim);
+		for(int x = 0; x < xdim; x++) c[plane + y * xdim + x] = (float) line[x];
+	      }
+	      if(ydim > 1) for(int x = 0; x < xdim; x++) {
+		for(int y = 0; y < ydim; y++) line[y] = c[plane + y * xdim + x];
+		prefilter(line, ydim);
+		for(int y = 0; y < ydim; y++) c[plane + y * xdim + x] = (float) line[y];
+	      }
+	    }
+	  };
+      }
+      boolean complete = runTasks(tasks, parallel);
+      // filter z lines a y row at a time
+      if(zdim > 1) {
+	tasks = new Runnable[ydim];
+	for(int yy = 0; yy < ydim; yy++) {
+	  final int y = yy;
+	  tasks[yy] = new Runnable() {
+	      public void run() {
+		double[] line = new double[zdim];
+		int planeSize = xdim * ydim;
+		for(int x = 0; x < xdim; x++) {
+		  int start = y * xdim + x;
+		  for(int z = 0; z < zdim; z++) line[z] = c[start + z * planeSize];
+		  prefilter(line, zdim);
+		  for(int z = 0; z < zdim; z++) c[start + z * planeSize] = (float) line[z];
+		}
+	      }
+	    };
+	}
+	complete = runTasks(tasks, parallel) && complete;
+      }
+      // interrupted results are used once but never cached
+      if(complete) bsplineCache = new SoftReference<BSplineCoefficients>(
+	new BSplineCoefficients(inArray, iValue, c));
+      return c;
+    }
+  }
+  /**
+   * Runs tasks on the shared pool or serially.
+   *
+   * @param tasks	tasks to run
+   * @param parallel	<code>true</code> to run on the shared pool
+   * @return	<code>false</code> if interrupted
+   */
+  private static boolean runTasks(Runnable[] tasks, boolean parallel) {
+    if(parallel) return WorkerPool.runAll(tasks);
+    for(int i = 0; i < tasks.length; i++) tasks[i].run();
+    return true;
+  }
+  /**
+   * Converts a line of samples to cubic B-spline coefficients in place
+   * with mirror boundaries (Unser's recursive filter).
+   *
+   * @param line	samples replaced with coefficients
+   * @param n		number of samples
+   */
+  private static void prefilter(double[] line, int n) {
+    if(n < 2) return;
+    double z = BSPLINE_POLE;
+    double lambda = (1d - z) * (1d - 1d / z);
+    for(int k = 0; k < n; k++) line[k] *= lambda;
+    // causal initialization
+    int horizon = (int) Math.ceil(Math.log(1e-9) / Math.log(Math.abs(z)));
+    if(horizon < n) {
+      double zk = z;
+      double sum = line[0];
+      for(int k = 1; k < horizon; k++) {
+	sum += zk * line[k];
+	zk *= z;
+      }
+      line[0] = sum;
+    }
+    else {
+      double zk = z;
+      double iz = 1d / z;
+      double zn = Math.pow(z, n - 1);
+      double z2n = zn * zn * iz;
+      double sum = line[0] + zn * line[n - 1];
+      for(int k = 1; k < n - 1; k++) {
+	sum += (zk + z2n) * line[k];
+	zk *= z;
+	z2n *= iz;
+      }
+      line[0] = sum / (1d - zn * zn);
+    }
+    for(int k = 1; k < n; k++) line[k] += z * line[k - 1];
+    // anticausal initialization
+    line[n - 1] = (z / (z * z - 1d)) * (z * line[n - 2] + line[n - 1]);
+    for(int k = n - 2; k >= 0; k--) line[k] = z * (line[k + 1] - line[k]);
+  }
+  /**
+   * Reslices one output row from the nearest input voxels.  Output
+   * voxels outside the volume are set to zero without scaling.
+   *
+   * @param inArray	input data array
+   * @param iValue	i dimension to sample
+   * @param x		input x location of the first output voxel
+   * @param y		input y location of the first output voxel
+   * @param z		input z location of the first output voxel
+   * @param dx		change in input x per output voxel
+   * @param dy		change in input y per output voxel
+   * @param dz		change in input z per output voxel
+   * @param n		number of output voxels in the row
+   * @param scs		scale snapshot or <code>null</code>
+   * @param values	work buffer of at least n values
+   * @param range	work array of at least 2 values
+   * @param outArray	output data array
+   * @param outOffset	location of output array for the first voxel
+   * @param outType	CNU data type of output array
+   */
+  public void resliceRow(Object inArray, int iValue,
+			 double x, double y, double z,
+			 double dx, double dy, double dz, int n,
+			 CNUScaleSnapshot scs, double[] values, int[] range,
+			 Object outArray, int outOffset, int outType) {
+    resliceRow(inArray, iValue, NEAREST_NEIGHBOR, x, y, z, dx, dy, dz, n,
+	       scs, values, range, outArray, outOffset, outType);
+  }
+  /**
+   * Reslices one output row with an interpolation type.  Output
+   * voxels outside the volume are set to zero without scaling.
+   *
+   * @param inArray	input data array
+   * @param iValue	i dimension to sample
+   * @param interpolationType	interpolation type
+   * @param x		input x location of the first output voxel
+   * @param y		input y location of the first output voxel
+   * @param z		input z location of the first output voxel
+   * @param dx		change in input x per output voxel
+   * @param dy		change in input y per output voxel
+   * @param dz		change in input z per output voxel
+   * @param n		number of output voxels in the row
+   * @param scs		scale snapshot or <code>null</code>
+   * @param values	work buffer of at least n values
+   * @param range	work array of at least 2 values
+   * @param outArray	output data array
+   * @param outOffset	location of output array for the first voxel
+   * @param outType	CNU data type of output array
+   */
+  public void resliceRow(Object inArray, int iValue, int interpolationType,
+			 double x, double y, double z,
+			 double dx, double dy, double dz, int n,
+			 CNUScaleSnapshot scs, double[] values, int[] range,
+			 Object outArray, int outOffset, int outType) {
+    if(iValue < 0 || iValue >= idim) range[0] = range[1] = 0;
+    else getInsideRange(x, y, z, dx, dy, dz, n, range);
+    int lo = range[0];
+    int hi = range[1];
+    if(lo < hi) {
+      switch (interpolationType) {
+      case TRILINEAR:
+      case CUBIC_BSPLINE:
+      case LANCZOS:
+	sampleInterpolated(inArray, iValue, interpolationType,
+			   x, y, z, dx, dy, dz, lo, hi, values);
+	break;
+      default:
+	sampleNearest(inArray, iValue, x, y, z, dx, dy, dz, lo, hi, values);
+	break;
+      }
+      if(scs != null) scs.convert(values, lo, values, lo, hi - lo);
+    }
+    writeRow(values, lo, hi, n, outArray, outOffset, outType);
+  }
+}
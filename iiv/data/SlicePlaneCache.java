@@ -0,0 +1,306 @@
+package iiv.data;
+import java.lang.ref.*;
+import java.util.*;
+/**
+ * Process wide cache of slice planes grabbed from data so redisplaying a
+ * slice, for zooming, a new color map or scrolling back over the same
+ * slices, does not extract it again.  Raw planes are keyed by data,
+ * data slicer, slice, i value and plane type, and scaled planes
+ * additionally by a snapshot of the scale.  Data is only weakly
+ * referenced and its modification count is part of the key so edited
+ * data is never served stale.  The estimated bytes of cached planes are
+ * kept below a limit by evicting the least recently used planes.  The
+ * limit defaults to the system property "CNU.planecache.mb" (megabytes)
+ * or a sixteenth of the maximum heap.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUDataSlicer#grabSliceData(CNUData, int, int, CNUData, CNUScale)
+ * @see		CNUData#dataModified()
+ * @since	iiV1.187
+ */
+public class SlicePlaneCache {
+  private final static Object staticLock = new Object();
+  private static SlicePlaneCache sharedCache = null;
+
+  private long maxBytes;
+  private long totalBytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  // access ordered so iteration starts at the least recently used
+  private LinkedHashMap<PlaneKey, CacheEntry> entries =
+    new LinkedHashMap<PlaneKey, CacheEntry>(64, 0.75f, true);
+
+  /**
+   * Key identifying a grabbed plane.
+   */
+  private static class PlaneKey {
+    final WeakReference<CNUData> data;
+    final int dataHash;
+    final long modificationCount;
+    final CNUDataSlicer dataSlicer;
+    final int slice;
+    final int iValue;
+    final int outType;
+    final CNUScaleSnapshot scs;
+    PlaneKey(CNUData data, CNUDataSlicer dataSlicer, int slice, int iValue,
+	     int outType, CNUScaleSnapshot scs) {
+      this.data = new WeakReference<CNUData>(data);
+      dataHash = System.identityHashCode(data);
+      modificationCount = data.getModificationCount();
+      this.dataSlicer = dataSlicer;
+      this.slice = slice;
+      this.iValue = iValue;
+      this.outType = outType;
+      this.scs = scs;
+    }
+    boolean isCleared() { return data.get() == null; }
+    public boolean equals(Object obj) {
+      if(obj == this) return true;
+      if(! (obj instanceof PlaneKey)) return false;
+      PlaneKey key = (PlaneKey) obj;
+      if(key.slice != slice || key.iValue != iValue ||
+	 key.outType != outType ||
+	 key.modificationCount != modificationCount) return false;
+      CNUData d = data.get();
+      if(d == null || d != key.data.get()) return false;
+      if(! dataSlicer.equals(key.dataSlicer)) return false;
+      return (scs == null) ? key.scs == null : scs.equals(key.scs);
+    }
+    public int hashCode() {
+      return dataHash ^ dataSlicer.hashCode() ^ slice * 31 ^ iValue * 1009 ^
+	outType * 17 ^ (int) modificationCount ^
+	((scs == null) ? 0 : scs.hashCode());
+    }
+  }
+  /**
+   * Entry holding a cached plane array and its size.
+   */
+  private static class CacheEntry {
+    final Object planeArray;
+    final long bytes;
+    CacheEntry(Object planeArray, long bytes) {
+      this.planeArray = planeArray;
+      this.bytes = bytes;
+    }
+  }
+  /**
+   * Constructs a new instance of SlicePlaneCache.
+   *
+   * @param maxBytes	maximum estimated bytes to hold
+   */
+  public SlicePlaneCache(long maxBytes) { this.maxBytes = maxBytes; }
+  /**
+   * Gets the shared cache, creating it on first use.
+   *
+   * @return	the shared cache
+   */
+  public static SlicePlaneCache getSharedCache() {
+    if(sharedCache == null) synchronized (staticLock) {
+      if(sharedCache == null) {
+	long maxBytes = Runtime.getRuntime().maxMemory() / 16;
+	String mb = System.getProperty("CNU.planecache.mb");
+	if(mb != null) try {
+	  maxBytes = Long.parseLong(mb.trim()) * 1024L * 1024L;
+	} catch (NumberFormatException nfe) {
+	  System.out.println("invalid CNU.planecache.mb=" + mb);
+	}
+	sharedCache = new SlicePlaneCache(maxBytes);
+      }
+    }
+    return sharedCache;
+  }
+  /**
+   * Sets the maximum estimated bytes to hold evicting planes if needed.
+   *
+   * @param maxBytes	maximum bytes, <code>0</code> disables caching
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict(0);
+  }
+  /**
+   * Gets the maximum estimated bytes to hold.
+   *
+   * @return	maximum bytes
+   */
+  public synchronized long getMaxBytes() { return maxBytes; }
+  /**
+   * Copies a single slice into a 2-dimensional CNUData array the same
+   * as <code>dataSlicer.grabSliceData</code> would, from the cache if
+   * the same plane was grabbed before.
+   *
+   * @param dataSlicer	slicer to grab the slice with
+   * @param inData	data to copy from
+   * @param slice	slice value relative to the data slicer
+   * @param iValue	i dimension relative to input data
+   * @param singlePlane	plane to copy data into.  if <code>null</code>
+   *			creates and copies into a new CNUData object.
+   * @param sc		scale object for converting input data type to
+   *			output data type.  May be <code>null</code>.
+   * @return	CNUData object with scaled copy of slice data or
+   *		<code>null</code> if the slicer could not grab the slice
+   */
+  public CNUData grabSliceData(CNUDataSlicer dataSlicer, CNUData inData,
+			       int slice, int iValue, CNUData singlePlane,
+			       CNUScale sc) {
+    if(dataSlicer == null || inData == null) return null;
+    if(getMaxBytes() <= 0)
+      return dataSlicer.grabSliceData(inData, slice, iValue, singlePlane, sc);
+    if(singlePlane == null) singlePlane = new CNUData();
+    CNUDimensions outDims = singlePlane.getDimensions();
+    if(outDims == null) {
+      outDims = dataSlicer.getSliceDimensions();
+      singlePlane.initDataArray(outDims);
+    }
+    CNUScaleSnapshot scs = (sc == null) ? null : sc.getSnapshot();
+    PlaneKey key = new PlaneKey(inData, dataSlicer, slice, iValue,
+				outDims.getType(), scs);
+    int length = outDims.lengthInWords();
+    Object cached = null;
+    synchronized (this) {
+      CacheEntry entry = entries.get(key);
+      if(entry != null &&
+	 java.lang.reflect.Array.getLength(entry.planeArray) == length) {
+	hits++;
+	cached = entry.planeArray;
+      }
+      else misses++;
+    }
+    if(cached != null) {
+      System.arraycopy(cached, 0, singlePlane.getDataArray(), 0, length);
+      return singlePlane;
+    }
+    if(dataSlicer.grabSliceData(inData, slice, iValue, singlePlane, sc) == null)
+      return null;
+    int bytesPerWord = Math.max(1, CNUTypes.bytesPerWord(outDims.getType()));
+    long bytes = (long) length * bytesPerWord;
+    Object planeArray = CNUTypes.arrayOf(outDims.getType(), length);
+    System.arraycopy(singlePlane.getDataArray(), 0, planeArray, 0, length);
+    synchronized (this) {
+      // single planes larger than a quarter of the limit are not worth it
+      if(bytes <= maxBytes / 4) {
+	CacheEntry old = entries.remove(key);
+	if(old != null) totalBytes -= old.bytes;
+	evict(bytes);
+	entries.put(key, new CacheEntry(planeArray, bytes));
+	totalBytes += bytes;
+      }
+    }
+    return singlePlane;
+  }
+  /**
+   * Removes all planes grabbed with a data slicer, for use when the
+   * slicer changes how it grabs slices.
+   *
+   * @param dataSlicer	data slicer
+   */
+  public synchronized void remove(CNUDataSlicer dataSlicer) {
+    Iterator<Map.Entry<PlaneKey, CacheEntry>> it = entries.entrySet().iterator();
+    while(it.hasNext()) {
+      Map.Entry<PlaneKey, CacheEntry> me = it.next();
+      if(me.getKey().dataSlicer == dataSlicer) {
+	it.remove();
+	totalBytes -= me.getValue().bytes;
+      }
+    }
+  }
+  /**
+   * Removes all planes grabbed from data.
+   *
+   * @param data	data
+   */
+  public synchronized void remove(CNUData data) {
+    Iterator<Map.Entry<PlaneKey, CacheEntry>> it = entries.entrySet().iterator();
+    while(it.hasNext()) {
+      Map.Entry<PlaneKey, CacheEntry> me = it.next();
+      CNUData keyData = me.getKey().data.get();
+      if(keyData == null || keyData == data) {
+	it.remove();
+	totalBytes -= me.getValue().bytes;
+      }
+    }
+  }
+  /**
+   * Removes all planes.  Statistics are not reset.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    totalBytes = 0;
+  }
+  /**
+   * Evicts planes of discarded data, then least recently used planes
+   * until an additional number of bytes fits.  Must be called while
+   * synchronized.
+   *
+   * @param neededBytes	bytes to make room for
+   */
+  private void evict(long neededBytes) {
+    Iterator<Map.Entry<PlaneKey, CacheEntry>> it = entries.entrySet().iterator();
+    while(it.hasNext()) {
+      Map.Entry<PlaneKey, CacheEntry> me = it.next();
+      if(me.getKey().isCleared()) {
+	it.remove();
+	totalBytes -= me.getValue().bytes;
+      }
+    }
+    it = entries.entrySet().iterator();
+    while(totalBytes + neededBytes > maxBytes && it.hasNext()) {
+      Map.Entry<PlaneKey, CacheEntry> me = it.next();
+      it.remove();
+      totalBytes -= me.getValue().bytes;
+      evictions++;
+    }
+  }
+  /**
+   * Gets the estimated bytes currently held.
+   *
+   * @return	bytes held
+   */
+  public synchronized long getTotalBytes() { return totalBytes; }
+  /**
+   * Gets the number of cached planes.
+   *
+   * @return	number of entries
+   */
+  public synchronized int getNumberOfEntries() { return entries.size(); }
+  /**
+   * Gets the number of grabs served from the cache.
+   *
+   * @return	hits
+   */
+  public synchronized long getHits() { return hits; }
+  /**
+   * Gets the number of grabs not served from the cache.
+   *
+   * @return	misses
+   */
+  public synchronized long getMisses() { return misses; }
+  /**
+   * Gets the number of planes evicted to stay within the limit.
+   *
+   * @return	evictions
+   */
+  public synchronized long getEvictions() { return evictions; }
+  /**
+   * Resets the hit, miss and eviction counts.
+   */
+  public synchronized void resetStatistics() {
+    hits = misses = evictions = 0;
+  }
+  /**
+   * Creates a string representation.
+   *
+   * @return	string representation
+   */
+  public synchronized String toString() {
+    StringBuffer sb = new StringBuffer();
+    sb.append("entries=").append(entries.size());
+    sb.append(" bytes=").append(totalBytes).append("/").append(maxBytes);
+    sb.append(" hits=").append(hits);
+    sb.append(" misses=").append(misses);
+    sb.append(" evictions=").append(evictions);
+    return sb.toString();
+  }
+}
@@ -54,6 +54,7 @@ implements CNUFileObject, ActionListener, ItemListener {
     private static final long serialVersionUID = 2340815103877216930L;
     private JLabel dataSlicerType = new JLabel();
     private JComboBox sliceViewModeCH = new JComboBox();
+    private JComboBox<String> interpolationCH = new JComboBox<String>();
 
     private JTextField r1c1TF = new JTextField(4);
     private JTextField r1c2TF = new JTextField(4);
@@ -84,8 +85,12 @@ implements CNUFileObject, ActionListener, ItemListener {
       for(int i=0; i<CNUDimensions.ORIENTATIONS.length; i++)
 	sliceViewModeCH.addItem(CNUDimensions.orientationToString(CNUDimensions.ORIENTATIONS[i]));
       sliceViewModeCH.setSelectedIndex(0);
+      for(int i=0; i<ResliceEngine.INTERPOLATION_TYPES.length; i++)
+	interpolationCH.addItem(ResliceEngine.interpolationToString(ResliceEngine.INTERPOLATION_TYPES[i]));
+      interpolationCH.setSelectedIndex(0);
       this.add(dataSlicerType);
       this.add(sliceViewModeCH);
+      this.add(interpolationCH);
       this.add(matrixBox);
       Box box = Box.createHorizontalBox();
       matrixBox.add(box);
@@ -115,6 +120,8 @@ implements CNUFileObject, ActionListener, ItemListener {
     }
     public void init(CNUDataSlicer ds) {
       int sliceViewMode = CNUDimensions.ORIENTATIONS[0];
+      int interpolationType = ResliceEngine.NEAREST_NEIGHBOR;
+      interpolationCH.setVisible(false);
       if(ds == null) {
 	dataSlicerType.setVisible(false);
 	sliceViewModeCH.setVisible(false);
@@ -130,6 +137,8 @@ implements CNUFileObject, ActionListener, ItemListener {
 	else if(ds instanceof AffineDataSlicer) {
 	  sliceViewMode = ((AffineDataSlicer) ds).getSliceViewMode();
 	  sliceViewModeCH.setVisible(true);
+	  interpolationType = ((AffineDataSlicer) ds).getInterpolationType();
+	  interpolationCH.setVisible(true);
 	  AffineMatrix am = ((AffineDataSlicer) ds).getAffineMatrix();
 	  r1c1TF.setText(Double.toString(am.value(0,0)));
 	  r1c2TF.setText(Double.toString(am.value(0,1)));
@@ -161,10 +170,27 @@ implements CNUFileObject, ActionListener, ItemListener {
 	}
       }
       sliceViewModeCH.setEnabled(false);
+      for(int i=0; i<ResliceEngine.INTERPOLATION_TYPES.length; i++) {
+	if(ResliceEngine.INTERPOLATION_TYPES[i] == interpolationType) {
+	  interpolationCH.setSelectedIndex(i);
+	  break;
+	}
+      }
+    }
+    /**
+     * Gets the interpolation type selected.
+     *
+     * @return	interpolation type
+     */
+    public int getInterpolationType() {
+      int index = interpolationCH.getSelectedIndex();
+      if(index < 0) return ResliceEngine.NEAREST_NEIGHBOR;
+      return ResliceEngine.INTERPOLATION_TYPES[index];
     }
 
   }
   private Box slicerValuesBox = Box.createVerticalBox();
+  private SlicerValueComponent slicerValues = null;
   private JCheckBox enableEditsCB = new JCheckBox("Enable Edits", false);
   private JButton saveB = new JButton("Save");
   private JButton acceptB = new JButton("Accept");
@@ -334,13 +360,15 @@ implements CNUFileObject, ActionListener, ItemListener {
   private void updateFields() {
     CNUDataSlicer dataSlicer = getDataSlicer();
     slicerValuesBox.removeAll();
+    slicerValues = null;
     if(dataSlicer == null) {
       sliceTextA.setText("");
       slicerValuesBox.setVisible(false);
     }
     else {
       if(dataSlicer != null) sliceTextA.setText(dataSlicer.toScript(null));
-      slicerValuesBox.add(new SlicerValueComponent(dataSlicer));
+      slicerValues = new SlicerValueComponent(dataSlicer);
+      slicerValuesBox.add(slicerValues);
       slicerValuesBox.setVisible(true);
     }
     
@@ -663,7 +691,14 @@ implements CNUFileObject, ActionListener, ItemListener {
       //      else if (e.getSource() == acceptB) setDataSlicer(getMapFromFields());
       else if (e.getSource() == saveB) saveDataSlicer(getDataSlicer());
       else if (e.getSource() == applySlicerB) {
-        getCNUDisplay().setFeature("DataSlicer", getDataSlicer());
+	CNUDataSlicer dataSlicer = getDataSlicer();
+	if((dataSlicer instanceof AffineDataSlicer) && (slicerValues != null)) {
+	  // interpolation is the only slicer value editable in place
+	  ((AffineDataSlicer) dataSlicer).setInterpolationType(
+	    slicerValues.getInterpolationType());
+	  sliceTextA.setText(dataSlicer.toScript(null));
+	}
+        getCNUDisplay().setFeature("DataSlicer", dataSlicer);
       }
       else if (e.getSource() == browseDataSlicerB) browseFiles();
       else if(e.getSource() == dismissB) {
@@ -1,6 +1,7 @@
 package iiv.dialog;
 import iiv.*;
 import iiv.data.*;
+import iiv.display.*;
 import iiv.util.*;
 import iiv.gui.*;
 import java.awt.*;
@@ -63,6 +64,9 @@ implements ActionListener, ItemListener {
   private JButton setPositiveB = new JButton("Set to Positive");
   private JButton setNegativeB = new JButton("Set to Negative");
   private JButton setRangeB = new JButton("Set to Range");
+  private JTextField clipPercentTF = new JTextField("0.5");
+  private JButton setDataB = new JButton("Set to Data");
+  private JButton setDataClippedB = new JButton("Set to Data Clipped");
   private JButton applyB = new JButton("Apply");
   private JButton applyToDefaultB = new JButton("Apply to Default Only");
   private JButton dismissB = new JButton("Dismiss");
@@ -138,6 +142,15 @@ implements ActionListener, ItemListener {
     contentPane.add(setNegativeB);
     setNegativeB.setToolTipText("<html><font size=1>Reset scale values to show only<p>negative values for the data type</font>");
     setNegativeB.addActionListener(this);
+    contentPane.add(new JLabel("Data Clip Percent:"));
+    clipPercentTF.setToolTipText("<html><font size=1>Percent of voxels at each end of the data<p>left out by Set to Data Clipped</font>");
+    contentPane.add(clipPercentTF);
+    setDataB.setToolTipText("<html><font size=1>Reset scale values to map the data minimum to<p>maximum to the minimum to maximum color values</font>");
+    contentPane.add(setDataB);
+    setDataB.addActionListener(this);
+    setDataClippedB.setToolTipText("<html><font size=1>Reset scale values to map the data between the clip<p>percentiles to the minimum to maximum color values</font>");
+    contentPane.add(setDataClippedB);
+    setDataClippedB.addActionListener(this);
     setRangeB.setToolTipText("<html><font size=1>Reset scale values to map voxels from the minimum to<p>maximum to the minimum to maximum color values</font>");
     contentPane.add(setRangeB);
     setRangeB.addActionListener(this);
@@ -253,6 +266,54 @@ implements ActionListener, ItemListener {
     sc.setToFitDataInRange(getDataType());
     setValues(sc);
   }
+  /**
+   * Gets the statistics of the data the scale will be applied to,
+   * the scale dialog user or the currently selected display component.
+   *
+   * @return	statistics or <code>null</code> if no data is selected
+   */
+  public CNUDataStatistics getDataStatistics() {
+    Object obj = getScaleDialogUser();
+    if(obj instanceof CNUDisplay) obj = ((CNUDisplay) obj).getCurrentComponent();
+    if(obj instanceof SingleImg) {
+      CNUData data = ((SingleImg) obj).getData();
+      if(data != null) return data.getStatistics();
+    }
+    return null;
+  }
+  /**
+   * Sets values to map the selected data between percentiles to the
+   * minimum to maximum values.
+   *
+   * @param clipPercent	percent of voxels at each end left out
+   */
+  public void setToData(double clipPercent) {
+    CNUScale sc = getScale();
+    CNUDataStatistics stats = getDataStatistics();
+    if(sc == null || stats == null || stats.getCount() == 0) {
+      Toolkit.getDefaultToolkit().beep();
+      return;
+    }
+    sc.setToFitDataInRange(stats, clipPercent, 100 - clipPercent);
+    setValues(sc);
+  }
+  /**
+   * Gets the percent of voxels left out at each end by clipped data
+   * ranges.
+   *
+   * @return	clip percent
+   */
+  public double getClipPercent() {
+    try {
+      double clipPercent =
+	Double.valueOf(clipPercentTF.getText().trim()).doubleValue();
+      if(clipPercent >= 0 && clipPercent < 50) return clipPercent;
+    } catch (NumberFormatException nfe) {
+    }
+    Toolkit.getDefaultToolkit().beep();
+    clipPercentTF.setText("0.5");
+    return 0.5;
+  }
   /**
    * Sets values to given CNUScale.
    *
@@ -491,6 +552,8 @@ implements ActionListener, ItemListener {
       else if(source == setPositiveB) setToPositive();
       else if(source == setNegativeB) setToNegative();
       else if(source == setRangeB) setToRange();
+      else if(source == setDataB) setToData(0);
+      else if(source == setDataClippedB) setToData(getClipPercent());
       else if(source == applyB) apply();
       else if(source == applyToDefaultB) applyToDefaultOnly();
       else if(source == dismissB) this.setVisible(false);
@@ -1,5 +1,6 @@
 package iiv.dialog;
 import iiv.*;
+import iiv.io.*;
 import java.awt.*;
 import javax.swing.*;
 import java.awt.image.*;
@@ -24,12 +25,16 @@ implements ActionListener {
   private long newFree = 0;
   private long total = 0;
   private long newTotal = 0;
+  private String cacheStatus = "";
+  private String newCacheStatus = "";
   private Thread smt = null;
   private boolean threadContinue = false;
 
   private JLabel freeMemoryL = new JLabel("              ", JLabel.RIGHT);
   private JLabel totalMemoryL = new JLabel("             ", JLabel.RIGHT);
+  private JLabel dataCacheL = new JLabel("             ", JLabel.RIGHT);
   private JButton garbageCollectB = new JButton("Garbage Collect");
+  private JButton clearCacheB = new JButton("Clear Data Cache");
   private JButton dismissB = new JButton("Dismiss");
 
   /**
@@ -69,12 +74,23 @@ implements ActionListener {
     box.add(new JLabel("bytes"));
     box.add(Box.createHorizontalStrut(5));
 
+    box = Box.createHorizontalBox();
+    contentPane.add(box);
+    box.add(Box.createHorizontalStrut(5));
+    box.add(new JLabel("data cache:"));
+    box.add(Box.createHorizontalGlue());
+    box.add(dataCacheL);
+    box.add(Box.createHorizontalStrut(5));
+
     box = Box.createHorizontalBox();
     contentPane.add(box);
     box.add(Box.createHorizontalStrut(5));
     box.add(garbageCollectB);
     garbageCollectB.addActionListener(this);
     box.add(Box.createHorizontalGlue());
+    box.add(clearCacheB);
+    clearCacheB.addActionListener(this);
+    box.add(Box.createHorizontalGlue());
     box.add(dismissB);
     dismissB.addActionListener(this);
     box.add(Box.createHorizontalStrut(5));
@@ -89,6 +105,9 @@ implements ActionListener {
   private Runnable runShowTotal = new Runnable() {
     public void run() { totalMemoryL.setText(Long.toString(total)); }
   };
+  private Runnable runShowCache = new Runnable() {
+    public void run() { dataCacheL.setText(cacheStatus); }
+  };
   /**
    * Displays the current memory usage.
    *
@@ -123,6 +142,11 @@ implements ActionListener {
 		  SwingUtilities.invokeLater(runShowTotal);
 		  //totalMemoryL.setText(Long.toString(total));
 		}
+		newCacheStatus = CNUDataCache.getSharedCache().toString();
+		if(! newCacheStatus.equals(cacheStatus)) {
+		  cacheStatus = newCacheStatus;
+		  SwingUtilities.invokeLater(runShowCache);
+		}
 	      }
 	      try {
 	        Thread.sleep(1000);
@@ -154,6 +178,7 @@ implements ActionListener {
     getCNUViewer().setWaitCursor();
     try {
       if (e.getSource() == garbageCollectB) System.gc();
+      else if(e.getSource() == clearCacheB) CNUDataCache.getSharedCache().clear();
       else if(e.getSource() == dismissB) setVisible(false);
     } finally {
       getCNUViewer().setNormalCursor();
@@ -13,6 +13,7 @@ import java.awt.image.*;
 import java.awt.event.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.text.*;
 import java.lang.reflect.*;
 import java.awt.datatransfer.*;
@@ -53,6 +54,9 @@ public class CNUDisplay extends JComponent
   // holds undo redo handler
   private UndoRedo undoRedo = null;
 
+  // renders only components near the scrolled view
+  private DisplayVirtualizer virtualizer = new DisplayVirtualizer(this);
+
   // layout variables
   public static final int DEFAULT_NUMBER_OF_COLUMNS = 6;
   private DefaultBoundedRangeModel numberOfColumnsModel =
@@ -323,6 +327,30 @@ public class CNUDisplay extends JComponent
     restoreMouseListeners(null);
     addDisplayBackgroundColorComponent(this);
   }
+  /**
+   * Notifies this display it has a parent, tracking the viewport it
+   * is scrolled in.
+   */
+  public void addNotify() {
+    super.addNotify();
+    Container parent = getParent();
+    virtualizer.setViewport((parent instanceof JViewport) ?
+			    (JViewport) parent : null);
+  }
+  /**
+   * Notifies this display it is losing its parent.
+   */
+  public void removeNotify() {
+    virtualizer.setViewport(null);
+    super.removeNotify();
+  }
+  /**
+   * Gets the virtualizer that keeps only components near the scrolled
+   * view rendered.
+   *
+   * @return	virtualizer
+   */
+  public DisplayVirtualizer getVirtualizer() { return virtualizer; }
   /**
    * Shows the image popup menu over a component.
    *
@@ -1256,37 +1284,125 @@ public class CNUDisplay extends JComponent
     // Set the default scale factor for re-use
     CNUScale.setDefaultScale(sc);
     // Get the current display values
-    boolean sliceLabelOn = getCNUViewer().getSliceLabelOn();
-    boolean iValueLabelOn = getCNUViewer().getIValueLabelOn();
-    boolean orientationLabelsOn = getCNUViewer().getOrientationLabelsOn();
-    // Create Single images for each slice and add them to this display
-    Vector<Object> addList = new Vector<Object>();
+    final boolean sliceLabelOn = getCNUViewer().getSliceLabelOn();
+    final boolean iValueLabelOn = getCNUViewer().getIValueLabelOn();
+    final boolean orientationLabelsOn = getCNUViewer().getOrientationLabelsOn();
+    // Create Single images for each slice on worker threads
+    final CNUData fInImg = inImg;
+    final int fSliceViewMode = sliceViewMode;
+    final int fFirstSlice = firstSlice;
+    final int fLastSlice = lastSlice;
+    final CNUScale fsc = sc;
+    // slices lay out as placeholders rendered once near view
+    final boolean deferImages = virtualizer.isActive();
+    Vector<Callable<Component>> builders = new Vector<Callable<Component>>();
     int iValue = firstDimI;
     for( int i=0; i<cntI; i++, iValue += incI) {
+      final int fiValue = iValue;
       int slice = firstSlice;
       if(! intensityProj) {
 	  for( int z=0; z<cnt; z++, slice += inc) {
 	      if(slice >= nslices || slice < 0)continue;
-	      SingleImg si = new SingleImg(inImg, sliceViewMode,
-					   slice, iValue, sc);
-	      si.setSliceLabelOn(sliceLabelOn);
-	      si.setOrientationLabelsOn(orientationLabelsOn);
-	      si.setIValueLabelOn(iValueLabelOn);
-	      addList.addElement(si);
+	      final int fslice = slice;
+	      builders.addElement(new Callable<Component>() {
+		public Component call() {
+		  SingleImg si = new SingleImg();
+		  si.setDeferImage(deferImages);
+		  si.init(fInImg, fSliceViewMode, fslice, fiValue, fsc);
+		  si.setSliceLabelOn(sliceLabelOn);
+		  si.setOrientationLabelsOn(orientationLabelsOn);
+		  si.setIValueLabelOn(iValueLabelOn);
+		  return si;
+		}
+	      });
 	  }
       }
       else {
-	  IntensityProjectionImage ipi =
-	      new IntensityProjectionImage(inImg, sliceViewMode,
-					   firstSlice, lastSlice,
-					   iValue, sc);
-	  ipi.setSliceLabelOn(sliceLabelOn);
-	  ipi.setOrientationLabelsOn(orientationLabelsOn);
-	  ipi.setIValueLabelOn(iValueLabelOn);
-	  addList.addElement(ipi);
+	  builders.addElement(new Callable<Component>() {
+	    public Component call() {
+	      IntensityProjectionImage ipi =
+		new IntensityProjectionImage(fInImg, fSliceViewMode,
+					     fFirstSlice, fLastSlice,
+					     fiValue, fsc);
+	      ipi.setSliceLabelOn(sliceLabelOn);
+	      ipi.setOrientationLabelsOn(orientationLabelsOn);
+	      ipi.setIValueLabelOn(iValueLabelOn);
+	      return ipi;
+	    }
+	  });
+      }
+    }
+    buildAndAddComponents(builders);
+  }
+  /**
+   * Builds components on the shared worker pool and adds them to the
+   * display in order, each run of leading components as soon as it
+   * completes so a large montage appears while the rest still render.
+   * All additions are one undo step.  Components are built on the
+   * calling thread if it is itself a shared pool worker.
+   *
+   * @param builders	tasks creating the components in display order
+   */
+  public void buildAndAddComponents(Vector<Callable<Component>> builders) {
+    int n = builders.size();
+    if(n == 0) return;
+    final UndoRedo undoRedo = getUndoRedo();
+    // keep the batches one undo step by starting and finishing steps
+    // in the same event queue order as the additions
+    invokeOnEventThread(new Runnable() {
+      public void run() { undoRedo.startSteps(); }
+    });
+    try {
+      if(n == 1 || WorkerPool.getNumberOfThreads() < 2 ||
+	 WorkerPool.isSharedWorker()) {
+	Vector<Object> addList = new Vector<Object>(n);
+	for(int i = 0; i < n; i++) addList.addElement(builders.elementAt(i).call());
+	addComponents(addList);
+	return;
       }
+      ExecutorService pool = WorkerPool.getSharedPool();
+      Vector<Future<Component>> futures = new Vector<Future<Component>>(n);
+      for(int i = 0; i < n; i++) futures.addElement(pool.submit(builders.elementAt(i)));
+      Vector<Object> addList = new Vector<Object>();
+      try {
+	for(int i = 0; i < n; i++) {
+	  addList.addElement(futures.elementAt(i).get());
+	  if(i == n - 1 || ! futures.elementAt(i + 1).isDone()) {
+	    addComponents(addList);
+	    addList = new Vector<Object>();
+	  }
+	}
+      } catch (InterruptedException ie) {
+	for(int i = 0; i < n; i++) futures.elementAt(i).cancel(true);
+	Thread.currentThread().interrupt();
+      } catch (ExecutionException ee) {
+	for(int i = 0; i < n; i++) futures.elementAt(i).cancel(true);
+	if(! addList.isEmpty()) addComponents(addList);
+	Throwable cause = ee.getCause();
+	if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+	if(cause instanceof Error) throw (Error) cause;
+	throw new RuntimeException(cause);
+      }
+    } catch (RuntimeException re) {
+      throw re;
+    } catch (Exception e) {
+      // builders only throw runtime exceptions
+      throw new RuntimeException(e);
+    } finally {
+      invokeOnEventThread(new Runnable() {
+	public void run() { undoRedo.finishUndoSteps("add"); }
+      });
     }
-    addComponents(addList);
+  }
+  /**
+   * Runs a task on the event dispatch thread, now if already on it or
+   * later in event queue order.
+   *
+   * @param runnable	task to run
+   */
+  private static void invokeOnEventThread(Runnable runnable) {
+    if(SwingUtilities.isEventDispatchThread()) runnable.run();
+    else SwingUtilities.invokeLater(runnable);
   }
   /**
    * Add a list of components to the display area.
@@ -1327,6 +1443,7 @@ public class CNUDisplay extends JComponent
       repaint(repaintArea.x, repaintArea.y, repaintArea.width,
 	      repaintArea.height);
     }
+    virtualizer.scheduleUpdate();
   }
   /**
    * Displays a colormap as a new DisplayColorMap component.
@@ -5467,11 +5584,14 @@ public class CNUDisplay extends JComponent
     // reset drawing origin from region
     g.translate( -localRegion.x, -localRegion.y );
 
-    if(components == null) {
+    // copies need finished images instead of placeholders
+    boolean savedCompletePainting = DisplayComponent.setCompletePainting(true);
+    try {
+      if(components == null) {
 	// paint all components and other normally painted graphics
 	paintAll(g);
-    }
-    else {
+      }
+      else {
 	// paint only given components
 	for(int i = 0; i < components.length; i++) {
 	    Component comp = components[i];
@@ -5480,6 +5600,9 @@ public class CNUDisplay extends JComponent
 	    comp.paint(g);
 	    g.translate(-compBounds.x, -compBounds.y);
 	}
+      }
+    } finally {
+      DisplayComponent.setCompletePainting(savedCompletePainting);
     }
     g.dispose(); g = null;
     return tmpImage;
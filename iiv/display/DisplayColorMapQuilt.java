@@ -122,8 +122,7 @@ public class DisplayColorMapQuilt extends DisplayComponent
       setImage(null);
       ColorModel cm = getColorModel();
       if(cm == null) cm = DisplayComponentDefaults.getDefaultColorModel();
-      setImageProducer(new MemoryImageSource(width, height, cm,
-					     colorStripData, 0, width));
+      setImagePixels(width, height, cm, colorStripData, 0, width);
       initColorModel(cm);
     }
   }
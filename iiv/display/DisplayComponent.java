@@ -62,6 +62,21 @@ implements ShowStatus, CNUFileObject,
   private int[] grabbedPixels = null;
   private boolean pixelsGrabbed = false;
   private Rectangle displayImageBounds = new Rectangle();
+  // renders pixel sources without the image producer chain
+  private RasterRenderPipeline rasterPipeline = null;
+  private boolean rasterSource = false;
+  private boolean rasterRendered = false;
+  // pixels and rendered image dropped while keeping size and mapping
+  private boolean imageReleased = false;
+  // previous image shown until a requested render finishes
+  private Image placeholderImage = null;
+  private static boolean asyncRenderingDefault =
+    ! "false".equalsIgnoreCase(System.getProperty("CNU.asyncrender"));
+  // set while painting copies or prints that need finished images
+  private final static ThreadLocal<Boolean> completePainting =
+    new ThreadLocal<Boolean>();
+  private static boolean rasterRenderingDefault =
+    ! "false".equalsIgnoreCase(System.getProperty("CNU.rasterrender"));
   private ShowStatus showStatusParent = null;
   /**
    * Constructs a new instance of DisplayComponent with all default settings.
@@ -139,9 +154,278 @@ implements ShowStatus, CNUFileObject,
       this.image = image;
       ip = null;
       pixelsGrabbed = false;
-      if(image != null) setImageProducer(image.getSource());
+      imageReleased = false;
+      placeholderImage = null;
+      clearRasterSource();
+      if(image == null) return;
+      if(rasterRenderingDefault && (image instanceof BufferedImage)) {
+	BufferedImage bi = (BufferedImage) image;
+	if(getRasterPipeline().setSource(bi)) {
+	  // size is known so no image needs to be created and tracked
+	  rasterSource = true;
+	  ip = bi.getSource();
+	  ipSize.setSize(bi.getWidth(), bi.getHeight());
+	  synchronized (stateParameterLock) { renderRaster(); }
+	  return;
+	}
+      }
+      setImageProducer(image.getSource());
+    }
+  }
+  /**
+   * Sets the display image to an array of pixels.  Unless raster
+   * rendering is off the pixels are rendered straight from the array,
+   * which is kept without copying, otherwise through a MemoryImageSource.
+   *
+   * @param width	width of the image
+   * @param height	height of the image
+   * @param cm		color model of the pixels
+   * @param pixels	<code>byte[]</code> or <code>int[]</code> pixels
+   * @param offset	offset to the first pixel
+   * @param scan	distance between rows of pixels
+   */
+  public void setImagePixels(int width, int height, ColorModel cm,
+			     Object pixels, int offset, int scan) {
+    synchronized (imageLock) {
+      if(! rasterRenderingDefault) {
+	if(pixels instanceof byte[])
+	  setImageProducer(new MemoryImageSource(width, height, cm,
+						 (byte[]) pixels, offset, scan));
+	else
+	  setImageProducer(new MemoryImageSource(width, height, cm,
+						 (int[]) pixels, offset, scan));
+	return;
+      }
+      getRasterPipeline().setSource(width, height, cm, pixels, offset, scan);
+      rasterSource = true;
+      imageReleased = false;
+      placeholderImage = null;
+      image = null;
+      pixelsGrabbed = false;
+      // kept for users of the image producer
+      if(pixels instanceof byte[])
+	ip = new MemoryImageSource(width, height, cm, (byte[]) pixels,
+				   offset, scan);
+      else
+	ip = new MemoryImageSource(width, height, cm, (int[]) pixels,
+				   offset, scan);
+      ipSize.setSize(width, height);
+      // rendered again by updateFilters only if something changes
+      synchronized (stateParameterLock) { renderRaster(); }
+    }
+  }
+  /**
+   * Sets the display image to a placeholder for pixels not yet created.
+   * The component lays out and maps locations as if the pixels were set
+   * but draws no image until restoreImage recreates it.  Only possible
+   * with raster rendering.
+   *
+   * @param width	width of the image to come
+   * @param height	height of the image to come
+   * @param cm		color model of the pixels to come
+   * @return		<code>false</code> if raster rendering is off and
+   *			the image must be set now
+   * @see #restoreImage()
+   */
+  protected boolean setImagePlaceholder(int width, int height,
+					ColorModel cm) {
+    return setImagePlaceholder(width, height, cm, false);
+  }
+  /**
+   * Sets the display image to a placeholder for pixels not yet created,
+   * optionally showing the current image until the new one is set if
+   * they are the same size.
+   *
+   * @param width		width of the image to come
+   * @param height		height of the image to come
+   * @param cm			color model of the pixels to come
+   * @param keepPrevious	<code>true</code> to show the current image
+   *				in the mean time
+   * @return			<code>false</code> if raster rendering is off
+   *				and the image must be set now
+   */
+  protected boolean setImagePlaceholder(int width, int height,
+					ColorModel cm, boolean keepPrevious) {
+    synchronized (imageLock) {
+      if(! rasterRenderingDefault) return false;
+      if(! keepPrevious) placeholderImage = null;
+      else if(image != null) placeholderImage = image;
+      getRasterPipeline().setSourceSize(width, height, cm);
+      rasterSource = true;
+      imageReleased = true;
+      image = null;
+      ip = null;
+      grabbedPixels = null;
+      pixelsGrabbed = false;
+      ipSize.setSize(width, height);
+      synchronized (stateParameterLock) { renderRaster(); }
+      return true;
     }
   }
+  /**
+   * Releases the pixels and rendered image of a component far from
+   * view, keeping its size and location mapping.  Only components that
+   * can recreate their image release it.
+   *
+   * @return	<code>true</code> if released
+   * @see #restoreImage()
+   */
+  public boolean releaseImage() {
+    if(! canRecreateImage()) return false;
+    synchronized (imageLock) {
+      if(! rasterSource) return false;
+      if(imageReleased) {
+	// only a previous image may be left to drop
+	boolean dropped = placeholderImage != null;
+	placeholderImage = null;
+	return dropped;
+      }
+      rasterPipeline.releasePixels();
+      imageReleased = true;
+      image = null;
+      ip = null;
+      grabbedPixels = null;
+      pixelsGrabbed = false;
+      return true;
+    }
+  }
+  /**
+   * Checks if the image is released or not yet created.
+   *
+   * @return	<code>true</code> if released
+   */
+  public boolean isImageReleased() {
+    synchronized (imageLock) { return imageReleased; }
+  }
+  /**
+   * Recreates a released image.  May be called from any thread not
+   * holding this components locks.
+   */
+  public void restoreImage() {
+    synchronized (imageLock) {
+      if(! imageReleased) return;
+      imageReleased = false;
+    }
+    recreateImage();
+  }
+  /**
+   * Requests a released image be recreated on the render service,
+   * leaving the placeholder shown until it finishes.
+   *
+   * @see RenderService
+   */
+  public void requestRender() {
+    if(isImageReleased()) RenderService.getSharedService().requestRender(this);
+  }
+  /**
+   * Called by the render service on a render thread to recreate a
+   * released image.  Components may override this to render without
+   * holding their locks.
+   */
+  protected void renderRequested() { restoreImage(); }
+  /**
+   * Checks if images changed by state changes, such as a new slice, are
+   * rendered on the render service instead of on the calling thread.
+   * Released images are always rendered on the render service when
+   * painted on screen.
+   *
+   * @return	<code>true</code> if rendered asynchronously
+   */
+  protected boolean isAsyncRendering() {
+    return asyncRenderingDefault && canRecreateImage() && isShowing();
+  }
+  /**
+   * Sets the default for rendering images of components in view on the
+   * render service after state changes, showing the previous image
+   * until done.  Defaults to
+   * <code>true</code> unless the system property "CNU.asyncrender" is
+   * <code>false</code>.
+   *
+   * @param state	<code>true</code> to render asynchronously
+   */
+  public static void setAsyncRenderingDefault(boolean state) {
+    asyncRenderingDefault = state;
+  }
+  /**
+   * Gets the default for rendering images on the render service.
+   *
+   * @return	<code>true</code> if rendered asynchronously
+   */
+  public static boolean getAsyncRenderingDefault() {
+    return asyncRenderingDefault;
+  }
+  /**
+   * Sets whether painting on the current thread must show finished
+   * images, as for copies and prints, instead of placeholders.
+   *
+   * @param state	<code>true</code> to render released images
+   *			before painting them
+   * @return		the previous state
+   */
+  public static boolean setCompletePainting(boolean state) {
+    boolean previous = getCompletePainting();
+    completePainting.set(Boolean.valueOf(state));
+    return previous;
+  }
+  /**
+   * Checks whether painting on the current thread must show finished
+   * images.
+   *
+   * @return	<code>true</code> if complete painting
+   */
+  public static boolean getCompletePainting() {
+    return Boolean.TRUE.equals(completePainting.get());
+  }
+  /**
+   * Checks if this component can recreate its image after releasing it.
+   *
+   * @return	<code>true</code> if recreateImage is implemented
+   */
+  protected boolean canRecreateImage() { return false; }
+  /**
+   * Recreates the image of a released component.  Components returning
+   * <code>true</code> from canRecreateImage must set their image here.
+   */
+  protected void recreateImage() {}
+  /**
+   * Gets the raster render pipeline, creating it if needed.  Must be
+   * called while synchronized on imageLock.
+   *
+   * @return	pipeline
+   */
+  private RasterRenderPipeline getRasterPipeline() {
+    if(rasterPipeline == null) rasterPipeline = new RasterRenderPipeline();
+    return rasterPipeline;
+  }
+  /**
+   * Releases any raster source.  Must be called while synchronized on
+   * imageLock.
+   */
+  private void clearRasterSource() {
+    rasterSource = false;
+    rasterRendered = false;
+    if(rasterPipeline != null) rasterPipeline.clearSource();
+  }
+  /**
+   * Sets the default for rendering pixel sources and buffered images
+   * straight to images instead of through image filters.  Defaults to
+   * <code>true</code> unless the system property "CNU.rasterrender" is
+   * <code>false</code>.  Affects images set after the change.
+   *
+   * @param state	<code>true</code> to render rasters directly
+   */
+  public static void setRasterRenderingDefault(boolean state) {
+    rasterRenderingDefault = state;
+  }
+  /**
+   * Gets the default for rendering pixel sources and buffered images
+   * straight to images.
+   *
+   * @return	<code>true</code> if rendered directly
+   */
+  public static boolean getRasterRenderingDefault() {
+    return rasterRenderingDefault;
+  }
   /**
    * Gets the display image.
    *
@@ -157,6 +441,9 @@ implements ShowStatus, CNUFileObject,
    */
   public void setImageProducer( ImageProducer ip ) {
     synchronized (imageLock) {
+      clearRasterSource();
+      imageReleased = false;
+      placeholderImage = null;
       this.ip = ip;
       updateIpSize();
     }
@@ -617,6 +904,11 @@ implements ShowStatus, CNUFileObject,
    */
   public void updateFilters() {
     synchronized (imageLock) { synchronized (stateParameterLock) {
+      if(rasterSource) {
+	renderRaster();
+	return;
+      }
+      rasterRendered = false;
       if(ip != null) {
 	ImageProducer filtered_ip = ip;
 	if(grabColorModel && (cm == null)) {
@@ -683,31 +975,60 @@ implements ShowStatus, CNUFileObject,
       }
     } }
   }
+  /**
+   * Renders the raster source through crop, flips, zoom, rotation and
+   * color model in one pass.  Must be called while synchronized on
+   * imageLock and stateParameterLock.
+   */
+  private void renderRaster() {
+    RasterRenderPipeline pipeline = getRasterPipeline();
+    ColorModel sourceModel = pipeline.getSourceColorModel();
+    if(grabColorModel && (cm == null) && (sourceModel != null))
+      initColorModel(sourceModel);
+    // same color model replacement the color filter made
+    ColorModel renderModel = sourceModel;
+    if(colorFilterNeeded && (cm instanceof IndexColorModel) &&
+       (sourceModel instanceof IndexColorModel)) renderModel = cm;
+    pipeline.setColorModel(renderModel);
+    if(cropBox != null) {
+      // make sure cropBox fits inside image
+      if( (cropBox.x < 0) ||
+	  ((cropBox.x + cropBox.width) > ipSize.width) ||
+	  (cropBox.y < 0) ||
+	  ((cropBox.y + cropBox.height) > ipSize.height) ) cropBox = null;
+    }
+    pipeline.setCrop(cropBox);
+    pipeline.setTransform(flipV, flipH, zoomV, zoomH, rotation,
+			  filterSampleType);
+    if(filterChanged) pipeline.setChanged();
+    flipFilter = null;
+    linearFilter = null;
+    rasterRendered = true;
+    Image rendered = pipeline.render();
+    if(rendered != image || filterChanged) {
+      fixedCrosshair = null; // may no longer be valid
+      pixelsGrabbed = false; // need to regrab pixels
+      image = rendered;
+    }
+    filterChanged = false;
+  }
   /**
    * Uses MediaTracker to wait for an image to be fully loaded.
    *
    * @param image	image to wait on.
    */
   public boolean track(Image image) {
-    final MediaTracker tracker = new MediaTracker(this);
+    MediaTracker tracker = new MediaTracker(this);
     tracker.addImage(image, 0);
-    Thread trackerThread = new Thread() {
-      public void run() {
-	try {
-	  tracker.waitForID(0);
-	} catch (InterruptedException ie) {
-	  System.out.println(
-	    "DisplayComponent.track returning on interrupedException");
-	}
-      }
-    };
-    trackerThread.setDaemon(true);
-    trackerThread.start();
     try {
       // limit tracking to 5 seconds
-      trackerThread.join(5000);
-    } catch (InterruptedException ie) {} // ignore
-    if(trackerThread.isAlive()) trackerThread.interrupt();
+      tracker.waitForID(0, 5000);
+    } catch (InterruptedException ie) {
+      System.out.println(
+	"DisplayComponent.track returning on interrupedException");
+      Thread.currentThread().interrupt();
+    }
+    tracker.removeImage(image);
     if(tracker.isErrorAny()) return false;
     return tracker.checkAll();
   }
@@ -716,7 +1037,10 @@ implements ShowStatus, CNUFileObject,
    */
   public void updateIpSize() {
     synchronized (imageLock) {
-      if(ip == null) ipSize.setSize(0, 0);
+      if(rasterSource)
+	ipSize.setSize(rasterPipeline.getSourceWidth(),
+		       rasterPipeline.getSourceHeight());
+      else if(ip == null) ipSize.setSize(0, 0);
       else {
         Image tmpImage = null;
         if( image != null ) if(image.getSource() == ip) tmpImage = image;
@@ -751,7 +1075,10 @@ implements ShowStatus, CNUFileObject,
   public void updateSize() {
     synchronized (imageLock) {
       if((ipSize.width < 1) || (ipSize.height < 1)) updateIpSize();
-      if(image == null) setImageSize(0, 0);
+      if(image == null) {
+	if(imageReleased) setImageSize(rasterPipeline.getOutputSize());
+	else setImageSize(0, 0);
+      }
       else if(image.getSource() == ip) setImageSize(ipSize);
       else {
         setImageSize(image.getWidth(null), image.getHeight(null));
@@ -781,6 +1108,13 @@ implements ShowStatus, CNUFileObject,
    * @param g graphics context to paint on
    */
   public void paint(Graphics g) {
+    // anything painted is in view - rendered off the event thread unless
+    // painting a copy or print that needs the finished image
+    if(isImageReleased()) {
+      if(isShowing() && ! getCompletePainting() && ! isPaintingForPrint())
+	requestRender();
+      else restoreImage();
+    }
     synchronized (imageLock) {
       if((displayImageBounds.height < 1) || (displayImageBounds.width < 1)) {
 	showStatus("DisplayComponent.paint() - image size error calling updateSize()");
@@ -798,6 +1132,21 @@ implements ShowStatus, CNUFileObject,
 //	  throw npe;
 	}
       }
+      else if(imageReleased && (displayImageBounds.height > 0) &&
+	      (displayImageBounds.width > 0)) {
+	// placeholder until rendered
+	if((placeholderImage != null) &&
+	   (placeholderImage.getWidth(null) == displayImageBounds.width) &&
+	   (placeholderImage.getHeight(null) == displayImageBounds.height))
+	  g.drawImage(placeholderImage, displayImageBounds.x,
+		      displayImageBounds.y, this);
+	else {
+	  g.setColor(Color.gray);
+	  g.drawRect(displayImageBounds.x, displayImageBounds.y,
+		     displayImageBounds.width - 1,
+		     displayImageBounds.height - 1);
+	}
+      }
       if(fixedCrosshair != null) {
         Shape shape = g.getClip();  // save previous clipping
 	// clipping needed because crop not built into crosshair
@@ -827,6 +1176,8 @@ implements ShowStatus, CNUFileObject,
     synchronized (imageLock) { synchronized (stateParameterLock) {
       // correct for image location within component
       fixedPt.translate(-displayImageBounds.x, -displayImageBounds.y);
+      // correct for flips, zoom and rotation rendered together
+      if(rasterRendered) rasterPipeline.invertMap(fixedPt, fixedPt);
       // correct for linear filter
       if(linearFilter != null) linearFilter.invertMap(fixedPt, fixedPt);
       // correct for flips
@@ -837,7 +1188,7 @@ implements ShowStatus, CNUFileObject,
       // make sure the point fits in the input image ipSize
       // if no ip assume point can be anywhere over component
       Dimension size = ipSize;
-      if(ip == null) size = getSize();
+      if((ip == null) && ! rasterSource) size = getSize();
       if(fixedPt.x < 0) fixedPt.x = 0;
       else if(fixedPt.x >= size.width) fixedPt.x = size.width - 1;
       if(fixedPt.y < 0) fixedPt.y = 0;
@@ -858,7 +1209,7 @@ implements ShowStatus, CNUFileObject,
       // make sure the input point fits over the input image ipSize
       // if no ip assume point can be anywhere over component
       Dimension size = ipSize;
-      if(ip == null) size = getSize();
+      if((ip == null) && ! rasterSource) size = getSize();
       if(displayPt.x < 0) displayPt.x = 0;
       else if(displayPt.x >= size.width) displayPt.x = size.width - 1;
       if(displayPt.y < 0) displayPt.y = 0;
@@ -871,6 +1222,8 @@ implements ShowStatus, CNUFileObject,
       if(flipFilter != null) flipFilter.map(displayPt, displayPt);
       // correct for rotation
       if(linearFilter != null) linearFilter.map(displayPt, displayPt);
+      // correct for flips, zoom and rotation rendered together
+      if(rasterRendered) rasterPipeline.map(displayPt, displayPt);
       // correct for image location within component
       displayPt.translate(displayImageBounds.x, displayImageBounds.y);
     } }
@@ -1008,10 +1361,18 @@ implements ShowStatus, CNUFileObject,
    */
   public int getImageRGB(Point pt) {
     int pixel = 0;
+    if(isImageReleased()) restoreImage();
     synchronized (imageLock) {
       if(displayImageBounds.contains(pt) ) {
 	int w = displayImageBounds.width;
 	int h = displayImageBounds.height;
+	if(image instanceof BufferedImage) {
+	  BufferedImage bi = (BufferedImage) image;
+	  int x = pt.x - displayImageBounds.x;
+	  int y = pt.y - displayImageBounds.y;
+	  if(x < bi.getWidth() && y < bi.getHeight()) return bi.getRGB(x, y);
+	  return 0;
+	}
 	if(! pixelsGrabbed) {
 	  if(image != null) {
 	    grabbedPixels = new int[w * h];
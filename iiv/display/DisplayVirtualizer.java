@@ -0,0 +1,169 @@
+package iiv.display;
+import java.awt.*;
+import java.util.*;
+import javax.swing.*;
+import javax.swing.event.*;
+/**
+ * Keeps only the display components near the visible part of a
+ * scrolled CNUDisplay rendered.  Components scrolled within a look
+ * ahead margin of the viewport are rendered on the render service
+ * without blocking the event thread, each repainted when done, and
+ * components far outside it release their pixels, keeping only
+ * their layout size and location mapping.  Memory and first paint time
+ * then depend on the screen size instead of the number of slices
+ * displayed.  Defaults to on unless the system property
+ * "CNU.virtualdisplay" is <code>false</code>.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUDisplay
+ * @see		DisplayComponent#releaseImage()
+ * @see		DisplayComponent#requestRender()
+ * @see		RenderService
+ * @since	iiV1.187
+ */
+public class DisplayVirtualizer implements ChangeListener {
+  // margins beyond the visible area as fractions of its size
+  private final static double RESTORE_MARGIN = 0.5;
+  private final static double RELEASE_MARGIN = 2.0;
+  private static boolean virtualizedDefault =
+    ! "false".equalsIgnoreCase(System.getProperty("CNU.virtualdisplay"));
+
+  private final Container display;
+  private JViewport viewport = null;
+  private boolean updatePending = false;
+  /**
+   * Constructs a new instance of DisplayVirtualizer.
+   *
+   * @param display	container whose components are virtualized
+   */
+  public DisplayVirtualizer(Container display) {
+    this.display = display;
+  }
+  /**
+   * Sets the viewport the display is scrolled in.
+   *
+   * @param viewport	viewport or <code>null</code> if not scrolled
+   */
+  public synchronized void setViewport(JViewport viewport) {
+    if(viewport == this.viewport) return;
+    if(this.viewport != null) this.viewport.removeChangeListener(this);
+    this.viewport = viewport;
+    if(viewport != null) viewport.addChangeListener(this);
+  }
+  /**
+   * Gets the viewport the display is scrolled in.
+   *
+   * @return	viewport or <code>null</code>
+   */
+  public synchronized JViewport getViewport() { return viewport; }
+  /**
+   * Checks if new images should be deferred until near view.
+   *
+   * @return	<code>true</code> if virtualizing a scrolled display
+   */
+  public boolean isActive() {
+    return virtualizedDefault && (getViewport() != null) &&
+      DisplayComponent.getRasterRenderingDefault();
+  }
+  /**
+   * Sets the default for virtualizing displays.
+   *
+   * @param state	<code>true</code> to virtualize
+   */
+  public static void setVirtualizedDefault(boolean state) {
+    virtualizedDefault = state;
+  }
+  /**
+   * Gets the default for virtualizing displays.
+   *
+   * @return	<code>true</code> if virtualized
+   */
+  public static boolean getVirtualizedDefault() {
+    return virtualizedDefault;
+  }
+  /**
+   * Updates rendered components when the viewport scrolls or resizes.
+   *
+   * @param e	change event
+   */
+  public void stateChanged(ChangeEvent e) { update(); }
+  /**
+   * Schedules an update on the event thread after pending layout,
+   * combining requests made before it runs.
+   */
+  public void scheduleUpdate() {
+    synchronized (this) {
+      if(updatePending) return;
+      updatePending = true;
+    }
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+	synchronized (DisplayVirtualizer.this) { updatePending = false; }
+	update();
+      }
+    });
+  }
+  /**
+   * Requests released components near the visible area be rendered on
+   * the render service and releases components far from it.  Only called
+   * on the event thread, which never waits for the renders.
+   */
+  public void update() {
+    JViewport vp = getViewport();
+    if(vp == null) return;
+    Rectangle visible = vp.getViewRect();
+    boolean active = virtualizedDefault;
+    Vector<DisplayComponent> restoreList = new Vector<DisplayComponent>();
+    collect(display, 0, 0, grow(visible, RESTORE_MARGIN),
+	    grow(visible, RELEASE_MARGIN), active, restoreList);
+    // render threads fill in placeholders while scrolling continues
+    for(int i = 0; i < restoreList.size(); i++)
+      restoreList.elementAt(i).requestRender();
+  }
+  /**
+   * Walks components and groups releasing those outside the keep area
+   * and listing released ones inside the restore area.
+   *
+   * @param container	container to walk
+   * @param dx		x offset of the container in display coordinates
+   * @param dy		y offset of the container in display coordinates
+   * @param restoreArea	area to restore components within
+   * @param keepArea	area to keep components within
+   * @param active	if <code>false</code> all released components
+   *			are restored and none released
+   * @param restoreList	list to add components to restore to
+   */
+  private void collect(Container container, int dx, int dy,
+		       Rectangle restoreArea, Rectangle keepArea,
+		       boolean active, Vector<DisplayComponent> restoreList) {
+    Component[] comps = container.getComponents();
+    for(int i = 0; i < comps.length; i++) {
+      Rectangle bounds = comps[i].getBounds();
+      bounds.translate(dx, dy);
+      if(comps[i] instanceof DisplayComponent) {
+	DisplayComponent dc = (DisplayComponent) comps[i];
+	if(dc.isImageReleased()) {
+	  if(! active || bounds.intersects(restoreArea)) restoreList.addElement(dc);
+	}
+	else if(active && ! bounds.intersects(keepArea)) dc.releaseImage();
+      }
+      else if(comps[i] instanceof Container)
+	collect((Container) comps[i], bounds.x, bounds.y,
+		restoreArea, keepArea, active, restoreList);
+    }
+  }
+  /**
+   * Grows a rectangle by a fraction of its size on every side.
+   *
+   * @param r		rectangle
+   * @param fraction	fraction of the width and height to add per side
+   * @return		new grown rectangle
+   */
+  private static Rectangle grow(Rectangle r, double fraction) {
+    Rectangle grown = new Rectangle(r);
+    grown.grow((int) Math.ceil(r.width * fraction),
+	       (int) Math.ceil(r.height * fraction));
+    return grown;
+  }
+}
@@ -0,0 +1,215 @@
+package iiv.display;
+import iiv.data.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ * Renders raw slice data straight to ARGB pixels in one pass by mapping
+ * each voxel through a scale and an index color model, instead of
+ * scaling into an index plane and letting a MemoryImageSource and
+ * color filter convert it again.  8 and 16 bit data map through a
+ * single table of ARGB values for every possible voxel value, shared
+ * by equal scales and the same color model.  Other types are scaled a
+ * row at a time with the CNUTypes copy kernels and mapped to ARGB while
+ * the row is still in cache.  Colors match those of the index planes
+ * they replace: UNSIGNED_BYTE indices are clamped to 0 through 255 and
+ * UNSIGNED_INTEGER indices are masked to the color model pixel size.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		SingleImg
+ * @see		iiv.data.CNUScaleSnapshot#getIntLookupTable(int)
+ * @since	iiV1.187
+ */
+public class FusedSliceRenderer {
+  /** Maximum number of voxel to ARGB tables kept. */
+  public final static int MAX_SHARED_TABLES = 8;
+  // access ordered so the least recently used table is removed first
+  private static LinkedHashMap<TableKey, int[]> sharedTables =
+    new LinkedHashMap<TableKey, int[]>(16, 0.75f, true);
+
+  /**
+   * Key identifying a voxel to ARGB table.
+   */
+  private static class TableKey {
+    final CNUScaleSnapshot scs;
+    final IndexColorModel icm;
+    final int inType;
+    final int indexType;
+    TableKey(CNUScaleSnapshot scs, IndexColorModel icm, int inType,
+	     int indexType) {
+      this.scs = scs;
+      this.icm = icm;
+      this.inType = inType;
+      this.indexType = indexType;
+    }
+    public boolean equals(Object obj) {
+      if(! (obj instanceof TableKey)) return false;
+      TableKey key = (TableKey) obj;
+      // color models are immutable so identity is enough and cheap
+      if(key.icm != icm || key.inType != inType ||
+	 key.indexType != indexType) return false;
+      return (scs == null) ? key.scs == null : scs.equals(key.scs);
+    }
+    public int hashCode() {
+      return System.identityHashCode(icm) ^ inType * 31 ^ indexType * 17 ^
+	((scs == null) ? 0 : scs.hashCode());
+    }
+  }
+  /**
+   * Constructs a new instance of FusedSliceRenderer.  Not used - all
+   * methods are static.
+   */
+  private FusedSliceRenderer() {}
+  /**
+   * Checks if a color model can be rendered by this class.
+   *
+   * @param cm	color model
+   * @return	<code>true</code> for index color models
+   */
+  public static boolean isRenderable(ColorModel cm) {
+    return cm instanceof IndexColorModel;
+  }
+  /**
+   * Gets the ARGB value of every index of a color model the same way
+   * IndexColorModel does, with zero beyond the map size.
+   *
+   * @param icm	color model
+   * @return	ARGB values
+   */
+  public static int[] getARGBTable(IndexColorModel icm) {
+    int mapSize = icm.getMapSize();
+    int size = Math.max(256, Math.max(1 << icm.getPixelSize(), mapSize));
+    int[] argb = new int[size];
+    icm.getRGBs(argb);
+    return argb;
+  }
+  /**
+   * Gets the ARGB value of a scaled value the same way an index plane
+   * displayed with a color model would.
+   *
+   * @param index	scaled value
+   * @param argbTable	ARGB values of the color model
+   * @param indexType	UNSIGNED_BYTE to clamp to a byte otherwise
+   *			masked to the color model pixel size
+   * @param mask	pixel size mask of the color model
+   * @return	ARGB value
+   */
+  private static int indexToARGB(int index, int[] argbTable,
+				 int indexType, int mask) {
+    if(indexType == CNUTypes.UNSIGNED_BYTE) {
+      if(index < 0) index = 0;
+      else if(index > 255) index = 255;
+      return argbTable[index];
+    }
+    return argbTable[index & mask];
+  }
+  /**
+   * Gets the table of ARGB values for every value of an 8 or 16 bit
+   * input type, building it if needed.  Entry
+   * <code>value + CNUScaleSnapshot.getLookupOffset(inType)</code> holds the
+   * ARGB value.  The returned table must not be modified.
+   *
+   * @param scs		scale snapshot or <code>null</code> for no scaling
+   * @param icm		color model
+   * @param inType	CNU data type
+   * @param indexType	CNU type of the index plane replaced,
+   *			UNSIGNED_BYTE or UNSIGNED_INTEGER
+   * @return	the table or <code>null</code> if the type is not 8 or 16 bit
+   */
+  public static int[] getVoxelARGBTable(CNUScaleSnapshot scs,
+					IndexColorModel icm, int inType,
+					int indexType) {
+    int size = CNUScaleSnapshot.getLookupSize(inType);
+    if(size <= 0) return null;
+    TableKey key = new TableKey(scs, icm, inType, indexType);
+    synchronized (sharedTables) {
+      int[] table = sharedTables.get(key);
+      if(table != null) return table;
+    }
+    int offset = CNUScaleSnapshot.getLookupOffset(inType);
+    int[] argbTable = getARGBTable(icm);
+    int mask = (1 << icm.getPixelSize()) - 1;
+    int[] indices = (scs == null) ? null : scs.getIntLookupTable(inType);
+    int[] table = new int[size];
+    for(int i = 0; i < size; i++)
+      table[i] = indexToARGB((indices == null) ? i - offset : indices[i],
+			     argbTable, indexType, mask);
+    synchronized (sharedTables) {
+      int[] shared = sharedTables.get(key);
+      if(shared != null) return shared;
+      sharedTables.put(key, table);
+      if(sharedTables.size() > MAX_SHARED_TABLES) {
+	Iterator<TableKey> it = sharedTables.keySet().iterator();
+	it.next();
+	it.remove();
+      }
+    }
+    return table;
+  }
+  /**
+   * Renders a 2 dimensional plane of raw data into ARGB pixels.
+   *
+   * @param plane	raw data plane with x and y dimensions
+   * @param sc		scale to apply or <code>null</code> for no scaling
+   * @param icm		color model mapping scaled values to colors
+   * @param indexType	CNU type of the index plane replaced,
+   *			UNSIGNED_BYTE or UNSIGNED_INTEGER
+   * @param argb	ARGB pixels to fill with xdim by ydim values
+   * @param argbOffset	location in argb of the first pixel
+   * @param scansize	distance in argb between rows
+   */
+  public static void render(CNUData plane, CNUScale sc, IndexColorModel icm,
+			    int indexType,
+			    int[] argb, int argbOffset, int scansize) {
+    CNUDimensions dims = plane.getDimensions();
+    int xdim = dims.xdim();
+    int ydim = dims.ydim();
+    int inType = dims.getType();
+    int inOffset = dims.getOffset();
+    Object inArray = plane.getDataArray();
+    CNUScaleSnapshot scs = (sc == null) ? null : sc.getSnapshot();
+    if(scs != null && scs.identity()) scs = null;
+    int[] table = getVoxelARGBTable(scs, icm, inType, indexType);
+    if(table != null) {
+      int offset = CNUScaleSnapshot.getLookupOffset(inType);
+      switch (inType) {
+      case CNUTypes.BYTE:
+      case CNUTypes.UNSIGNED_BYTE:
+	{
+	  byte[] in = (byte[]) inArray;
+	  int mask = (inType == CNUTypes.BYTE) ? -1 : 0xff;
+	  for(int y = 0; y < ydim; y++) {
+	    int i = inOffset + y * xdim;
+	    int o = argbOffset + y * scansize;
+	    for(int end = o + xdim; o < end; o++, i++)
+	      argb[o] = table[(in[i] & mask) + offset];
+	  }
+	}
+	return;
+      default:
+	{
+	  short[] in = (short[]) inArray;
+	  int mask = (inType == CNUTypes.SHORT) ? -1 : 0xffff;
+	  for(int y = 0; y < ydim; y++) {
+	    int i = inOffset + y * xdim;
+	    int o = argbOffset + y * scansize;
+	    for(int end = o + xdim; o < end; o++, i++)
+	      argb[o] = table[(in[i] & mask) + offset];
+	  }
+	}
+	return;
+      }
+    }
+    // other types scale a row at a time with the copy kernels
+    int[] argbTable = getARGBTable(icm);
+    int mask = (1 << icm.getPixelSize()) - 1;
+    int[] row = new int[xdim];
+    for(int y = 0; y < ydim; y++) {
+      CNUTypes.copyArray(inArray, inOffset + y * xdim, inType, 1,
+			 row, 0, CNUTypes.INTEGER, xdim, sc);
+      int o = argbOffset + y * scansize;
+      for(int x = 0; x < xdim; x++, o++)
+	argb[o] = indexToARGB(row[x], argbTable, indexType, mask);
+    }
+  }
+}
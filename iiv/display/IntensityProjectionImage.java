@@ -7,13 +7,16 @@ import java.awt.*;
 
 
 /**
- * Component to display a maximum intensity projection of CNUData as an image with
- * flip, zoom and show point abilities.
+ * Component to display a maximum, minimum, mean or sum intensity projection
+ * of CNUData as an image with flip, zoom and show point abilities.  The
+ * slab projected may be moved with setSlab, reusing the projections of
+ * whole blocks of slices it still covers.
  *
  * @author	Joel T. Lee
  * @version %I%, %G%
  * @see		iiv.CNUViewer
  * @see		java.awt.Container
+ * @see		iiv.data.ProjectionEngine
  * @since	iiV1.117a
  */
 public class IntensityProjectionImage extends SingleImg implements CNUTypesConstants {
@@ -26,6 +29,11 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
   private CNUDimensions planeRawDataDims = null;
   private CNUData planeIndices = null;
   private CNUDimensions planeIndicesDims = null;
+  private ProjectionEngine projector = null;
+  private boolean slabMoved = false;
+  // slab the raw plane holds, -1 when invalid
+  private int projectedFirstSlice = -1;
+  private int projectedLastSlice = -1;
 
   private CNUDimensions inDims = null;
   private int sliceViewMode = CNUDimensions.TRANSVERSE;
@@ -34,7 +42,7 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
 
   private int firstslice = 0;
   private int lastslice = -1;
-  private double factor = 1d;
+  private int projectionType = ProjectionEngine.MAXIMUM_PROJECTION;
 
   /**
    * Constructs a new instance of IntensityProjectionImage.
@@ -86,9 +94,68 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
   public IntensityProjectionImage(CNUData inImg, int sliceViewMode,
 				  int firstslice, int lastslice,
 				  int iValue, CNUScale sc, double factor) {
+    this(inImg, sliceViewMode, firstslice, lastslice, iValue,
+	 (factor < 0) ? ProjectionEngine.MINIMUM_PROJECTION :
+	 ProjectionEngine.MAXIMUM_PROJECTION, sc);
+  }
+  /**
+   * Creates a new instance of IntensityProjectionImage with a projection
+   * type.  A factory so integer factors passed to the constructor still
+   * select maximum or minimum projections.
+   *
+   * @param inImg		the data to retrieve image pixels from
+   * @param sliceViewMode	the slice orientation to display
+   *				<code>CNUDimensions.TRANSVERSE</code>,
+   *				<code>CNUDimensions.CORONAL</code>,
+   *				<code>CNUDimensions.SAGITTAL</code>...
+   * @param firstslice		slice number in the range from 0 to
+   *				the number of slices for the sliceViewMode.
+   *                            Intensity projection includes values only from
+   *                            firstslice to lastslice.
+   * @param lastslice		the slice number in the range from 0 to
+   *				the number of slices for the sliceViewMode.
+   *                            If less than 0 last slice for mode used instead.
+   * @param iValue		the 4th or i dimension to use for displaying
+   *				a slice from 4 dimensional data
+   * @param sc			the scale object for mapping pixel values
+   *				to indices in the color lookup table
+   * @param projectionType	<code>ProjectionEngine.MAXIMUM_PROJECTION</code>,
+   *				<code>ProjectionEngine.MINIMUM_PROJECTION</code>,
+   *				<code>ProjectionEngine.MEAN_PROJECTION</code> or
+   *				<code>ProjectionEngine.SUM_PROJECTION</code>
+   * @return			the new image
+   * @exception IllegalArgumentException	if the projection type is invalid
+   */
+  public static IntensityProjectionImage
+    createProjection(CNUData inImg, int sliceViewMode,
+		     int firstslice, int lastslice,
+		     int iValue, CNUScale sc, int projectionType) {
+    return new IntensityProjectionImage(inImg, sliceViewMode,
+					firstslice, lastslice,
+					iValue, projectionType, sc);
+  }
+  /**
+   * Constructs a new instance of IntensityProjectionImage.
+   *
+   * @param inImg		the data to retrieve image pixels from
+   * @param sliceViewMode	the slice orientation to display
+   * @param firstslice		first slice included in the projection
+   * @param lastslice		last slice included in the projection
+   * @param iValue		the 4th or i dimension to use for displaying
+   *				a slice from 4 dimensional data
+   * @param projectionType	type of projection
+   * @param sc			the scale object for mapping pixel values
+   *				to indices in the color lookup table
+   * @exception IllegalArgumentException	if the projection type is invalid
+   */
+  private IntensityProjectionImage(CNUData inImg, int sliceViewMode,
+				   int firstslice, int lastslice,
+				   int iValue, int projectionType, CNUScale sc) {
+    if(ProjectionEngine.projectionToString(projectionType).equals("UNKNOWN_PROJECTION"))
+      throw new IllegalArgumentException("invalid projection type=" + projectionType);
     this.firstslice = firstslice;
     this.lastslice = lastslice;
-    this.factor = factor;
+    this.projectionType = projectionType;
     this.inDims = inImg.getDimensions();
     this.sliceViewMode = sliceViewMode;
     //    this.inInc = getInputToDisplayIncrements(inDims, sliceViewMode);
@@ -103,7 +170,9 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
     StringBuffer sb = new StringBuffer();
     sb.append(super.toString()).append("\n");
     sb.append("firstSlice=").append(firstslice);
-    sb.append("lastSlice=").append(lastslice);
+    sb.append(" lastSlice=").append(lastslice).append("\n");
+    sb.append("projectionType=");
+    sb.append(ProjectionEngine.projectionToString(projectionType));
     return sb.toString();
   }
   /**
@@ -132,7 +201,8 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
 	  sb.append("scaletmp=script_rtn;\n");
 	}
 
-	sb.append(variableName).append(" = new ").append(className).append("(");
+	sb.append(variableName).append(" = ").append(className);
+	sb.append(".createProjection(");
 	sb.append(inImgVariableName).append(", ");
 	sb.append("iiv.data.CNUDimensions.orientationValueOf(\"");
 	sb.append(CNUDimensions.orientationToString(getSliceViewMode()));
@@ -141,7 +211,9 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
 	sb.append(firstslice).append(", ").append(lastslice).append(", ");
 	sb.append(getIValue());
 	sb.append(", scaletmp, ");
-	sb.append(factor).append(");\n");
+	sb.append("iiv.data.ProjectionEngine.projectionValueOf(\"");
+	sb.append(ProjectionEngine.projectionToString(projectionType));
+	sb.append("\"));\n");
 
 	sb.append("unset(\"scaletmp\");\n");
 	sb.append(postObjectToScript(scriptedObjects));
@@ -154,6 +226,85 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
     return sb.toString();
   }
 
+  /**
+   * Gets the projection type.
+   *
+   * @return	<code>ProjectionEngine.MAXIMUM_PROJECTION</code>,
+   *		<code>ProjectionEngine.MINIMUM_PROJECTION</code>,
+   *		<code>ProjectionEngine.MEAN_PROJECTION</code> or
+   *		<code>ProjectionEngine.SUM_PROJECTION</code>
+   */
+  public int getProjectionType() {
+    synchronized (stateParameterLock) {
+      return projectionType;
+    }
+  }
+  /**
+   * Sets and displays a new projection type.
+   *
+   * @param projectionType	<code>ProjectionEngine.MAXIMUM_PROJECTION</code>,
+   *				<code>ProjectionEngine.MINIMUM_PROJECTION</code>,
+   *				<code>ProjectionEngine.MEAN_PROJECTION</code> or
+   *				<code>ProjectionEngine.SUM_PROJECTION</code>
+   * @exception IllegalArgumentException	if the projection type is invalid
+   */
+  public void setProjectionType(int projectionType) {
+    if(ProjectionEngine.projectionToString(projectionType).equals("UNKNOWN_PROJECTION"))
+      throw new IllegalArgumentException("invalid projection type=" + projectionType);
+    synchronized (stateParameterLock) {
+      if(this.projectionType == projectionType) return;
+      this.projectionType = projectionType;
+    }
+    setSliceLabel();
+    createRawIp();
+    invalidateFilters();
+  }
+  /**
+   * Gets the first slice of the slab projected.
+   *
+   * @return	first slice
+   */
+  public int getFirstSlice() {
+    synchronized (stateParameterLock) {
+      return firstslice;
+    }
+  }
+  /**
+   * Gets the last slice of the slab projected.
+   *
+   * @return	last slice
+   */
+  public int getLastSlice() {
+    synchronized (stateParameterLock) {
+      return lastslice;
+    }
+  }
+  /**
+   * Sets and displays a new slab of slices to project, such as a thick
+   * slab dragged through the data.  Once a slab is moved projections of
+   * whole blocks of slices are kept so following moves only grab the
+   * slices near the slab ends.
+   *
+   * @param firstslice	first slice of the slab
+   * @param lastslice	last slice of the slab, if less than 0 the last
+   *			slice for the view mode
+   */
+  public void setSlab(int firstslice, int lastslice) {
+    synchronized (stateParameterLock) {
+      this.firstslice = firstslice;
+      this.lastslice = lastslice;
+      slabMoved = true;
+      if(projector != null) projector.setBlockCaching(true);
+    }
+    createRawIp();
+    invalidateFilters();
+  }
+  /**
+   * Projections are costly to compute again so are never released.
+   *
+   * @return	<code>false</code>
+   */
+  protected boolean canRecreateImage() { return false; }
   /**
    * Converts the input image into a raw image producer.
    */
@@ -162,73 +313,61 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
     synchronized (stateParameterLock) {
 
       setImage(null);
-      if(planeRawData == null) {
-	CNUData inImg = getData();
-	
-	// sliceDims 2-D
-	//	sliceDim = getSliceNumberDimension(inDims, sliceViewMode);
-	//	sliceDims = getSliceDimensions(inDims, sliceViewMode, getColorModel());
-	CNUDataSlicer dataSlicer = getDataSlicer();
-	sliceDims = dataSlicer.getSliceDimensions();
+      CNUData inImg = getData();
+      CNUDataSlicer dataSlicer = getDataSlicer();
+      int iValue = getIValue();
+      if(projector == null || projector.getDataSlicer() != dataSlicer ||
+	 projector.getData() != inImg || projector.getIValue() != iValue ||
+	 projector.getProjectionType() != projectionType) {
+	projector = new ProjectionEngine(dataSlicer, inImg, iValue, projectionType);
+	projector.setBlockCaching(slabMoved);
+	planeRawData = null;
+      }
+
+      int numberOfSlices = dataSlicer.getNumberOfSlices();
+      if(firstslice < 0) firstslice = 0;
+      else if(firstslice >= numberOfSlices) firstslice = numberOfSlices - 1;
+      if(lastslice < 0 || lastslice >= numberOfSlices) lastslice = numberOfSlices - 1;
 
+      sliceDims = dataSlicer.getSliceDimensions();
+      if(singlePlane == null || ! sliceDims.sameSize(singlePlane.getDimensions()) ||
+	 sliceDims.getType() != singlePlane.getDimensions().getType()) {
 	singlePlane = new CNUData();
 	singlePlane.initDataArray(sliceDims);
+      }
 
-	planeRawDataDims = (CNUDimensions) sliceDims.clone();
-	planeRawDataDims.setType(inDims.getType());
-	planeRawData = new CNUData();
-	planeRawData.initDataArray(planeRawDataDims);
-
-	planeIndicesDims = (CNUDimensions) sliceDims.clone();
-	planeIndicesDims.setType(INTEGER);
-	planeIndices = new CNUData();
-	planeIndices.initDataArray(planeIndicesDims);
-
-	//	int[] sliceOrig = getSliceOrigin();
-
-	//	int numberOfSlices = inDims.getDim(sliceDim);
-	int numberOfSlices = dataSlicer.getNumberOfSlices();
-
-	if(firstslice < 0) firstslice = 0;
-	else if(firstslice >= numberOfSlices) firstslice = numberOfSlices - 1;
-	if(lastslice < 0 || lastslice >= numberOfSlices) lastslice = numberOfSlices - 1;
-	int sliceinc = 1;
-	if(lastslice < firstslice) sliceinc = -1;
-	int slice = firstslice;
-
-	// initialize plane to values from first slice
-	//	sliceOrig[sliceDim] = slice;
-	//	CNUTypes.copyRegion(inImg.getDataArray(),
-	//			    inDims.getIndex(sliceOrig),
-	//			    inDims.getType(), inInc,
-	//			    planeRawData.getDataArray(), 0, planeRawDataDims.getType(),
-	//			    planeRawDataDims.getDimensions(),
-	//			    planeRawDataDims.getNumberOfDimensions() - 1, null);
-	int iValue = getIValue();
-	dataSlicer.grabSliceData(inImg, slice, iValue, planeRawData, null);
-
-	CNUData currentSliceRawData = new CNUData();
-	currentSliceRawData.initDataArray(planeRawDataDims);
+      if(planeRawData == null || projectedFirstSlice != firstslice ||
+	 projectedLastSlice != lastslice) {
+	if(planeRawData == null || ! planeRawDataDims.sameSize(sliceDims) ||
+	   planeRawDataDims.getType() != projector.getProjectionDataType()) {
+	  planeRawDataDims = (CNUDimensions) sliceDims.clone();
+	  planeRawDataDims.setType(projector.getProjectionDataType());
+	  planeRawData = new CNUData();
+	  planeRawData.initDataArray(planeRawDataDims);
+	}
 
-	// search for greater or lesser values in remaining slices
-	for(slice += sliceinc;
-	    ((sliceinc < 0) ? slice >= lastslice : slice <= lastslice);
-	    slice += sliceinc) {
-	  dataSlicer.grabSliceData(inImg, slice, iValue, currentSliceRawData, null);
+	if(! projector.tracksSlices()) {
+	  // mean and sum map points to the slab start
+	  planeIndices = null;
+	  planeIndicesDims = null;
+	}
+	else if(planeIndices == null || ! planeIndicesDims.sameSize(sliceDims)) {
+	  planeIndicesDims = (CNUDimensions) sliceDims.clone();
+	  planeIndicesDims.setType(INTEGER);
+	  planeIndices = new CNUData();
+	  planeIndices.initDataArray(planeIndicesDims);
+	}
 
-	  //	  sliceOrig[sliceDim] = slice;
-	  findGreaterValues(currentSliceRawData.getDataArray(),
-			    0,
-			    planeRawDataDims.getType(), planeRawDataDims.getIncrements(),
-			    planeRawData.getDataArray(), 0,
-			    planeRawDataDims.getDimensions(),
-			    planeRawDataDims.getNumberOfDimensions() - 1,
-			    (int [])planeIndices.getDataArray(), slice,
-			    factor);
+	if(projector.project(firstslice, lastslice, planeRawData,
+			     (planeIndices == null) ? null :
+			     (int[]) planeIndices.getDataArray())) {
+	  projectedFirstSlice = firstslice;
+	  projectedLastSlice = lastslice;
 	}
+	else projectedFirstSlice = -1; // interrupted - project again next time
       }
 
-      // scale maximum projection data to base raw ip on
+      // scale projection data to base raw ip on
       CNUTypes.copyRegion(planeRawData.getDataArray(),
 			  0,
 			  planeRawDataDims.getType(), planeRawDataDims.getIncrements(),
@@ -238,18 +377,9 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
 
       ColorModel cm = getColorModel();
       if(cm == null) cm = DisplayComponentDefaults.getDefaultColorModel();
-      if(CNUTypes.bytesPerWord(sliceDims.getType()) == 1)
-	setImageProducer(new MemoryImageSource(sliceDims.xdim(),
-					       sliceDims.ydim(), cm,
-					       (byte[])singlePlane.getDataArray(),
-					       sliceDims.getOffset(),
-					       sliceDims.xdim()));
-      else
-	setImageProducer(new MemoryImageSource(sliceDims.xdim(),
-					       sliceDims.ydim(), cm,
-					       (int[])singlePlane.getDataArray(),
-					       sliceDims.getOffset(),
-					       sliceDims.xdim()));
+      setImagePixels(sliceDims.xdim(), sliceDims.ydim(), cm,
+		     singlePlane.getDataArray(), sliceDims.getOffset(),
+		     sliceDims.xdim());
       initColorModel(cm);  // sets color map filter not needed
     }
   }
@@ -344,7 +474,7 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
     case BYTE:
       for(; outindex < endoutindex; outindex++,
 	    inindex += inInc) {
-	if( (p_n_fac * ((byte [])inarray)[inindex]) > (p_n_fac * ((byte [])inarray)[inindex]) ) {
+	if( (p_n_fac * ((byte [])inarray)[inindex]) > (p_n_fac * ((byte [])outarray)[outindex]) ) {
 	  ((byte [])outarray)[outindex] = ((byte [])inarray)[inindex];
 	  indiceSaveArray[outindex] = indice;
 	}
@@ -371,11 +501,14 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
       }
       return;
     case UNSIGNED_SHORT:
-      inInt = p_n_fac * CNUTypes.UnsignedShortToInt(((short [])inarray)[inindex]);
-      outInt = p_n_fac * CNUTypes.UnsignedShortToInt(((short []) outarray)[outindex]);
-      if(inInt > outInt) {
-	((short []) outarray)[outindex] = ((short [])inarray)[inindex];
-	indiceSaveArray[outindex] = indice;
+      for(; outindex < endoutindex; outindex++,
+	    inindex += inInc) {
+	inInt = p_n_fac * CNUTypes.UnsignedShortToInt(((short [])inarray)[inindex]);
+	outInt = p_n_fac * CNUTypes.UnsignedShortToInt(((short []) outarray)[outindex]);
+	if(inInt > outInt) {
+	  ((short []) outarray)[outindex] = ((short [])inarray)[inindex];
+	  indiceSaveArray[outindex] = indice;
+	}
       }
       return;
     case INTEGER:
@@ -447,6 +580,7 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
     int localiValue = getIValue();
     synchronized (stateParameterLock) {
       if(planeIndices != null) localslice = planeIndices.getPixelAsInt(new int[] {pt.x, pt.y});
+      else if(projector != null) localslice = firstslice;
       //      int index = inDims.getIndex(sliceOrig) + pt.x * inInc[0] +
       //		  pt.y * inInc[1];
       //      return inDims.getPoint(index);
@@ -502,6 +636,7 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
       if(! planeIndicesDims.contains(point)) return false;
       localslice = planeIndices.getPixelAsInt(point);
     }
+    else if(projector != null) localslice = firstslice;
     if(localslice != getDataSlicer().getSliceNumberFromDataIndices(indices)) return false;
     return true;
 
@@ -539,7 +674,19 @@ public class IntensityProjectionImage extends SingleImg implements CNUTypesConst
    * Sets the default slice label.
    */
   public void setSliceLabel() {
-    if(factor < 0) setSliceLabel("MinProj");
-    else setSliceLabel("MaxProj");
+    switch (getProjectionType()) {
+    case ProjectionEngine.MINIMUM_PROJECTION:
+      setSliceLabel("MinProj");
+      break;
+    case ProjectionEngine.MEAN_PROJECTION:
+      setSliceLabel("MeanProj");
+      break;
+    case ProjectionEngine.SUM_PROJECTION:
+      setSliceLabel("SumProj");
+      break;
+    default:
+      setSliceLabel("MaxProj");
+      break;
+    }
   }
 }
@@ -0,0 +1,509 @@
+package iiv.display;
+import iiv.filter.*;
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+/**
+ * Renders a displayed image by pulling pixels straight from a source
+ * array.  Crop, flips, zoom and rotation compose a single affine
+ * transform, applied by one LinearImageFilter pass, and colors are
+ * applied with a lookup table into an ARGB BufferedImage.  Replaces the
+ * chain of FilteredImageSources that pushed pixels through per consumer
+ * callbacks and intermediate buffers, so a changed component renders
+ * synchronously with no image tracking.  Flipped regions are read in
+ * reverse before zooming, as FlipFilter did, so replicated pixels and
+ * mapped locations land exactly where they did through the chain.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		DisplayComponent
+ * @see		iiv.filter.LinearImageFilter#filterPixels(int, int, ColorModel, Object, int, int)
+ * @since	iiV1.187
+ */
+public class RasterRenderPipeline implements Mapping2D {
+  private Object pixels = null;
+  private int width = 0;
+  private int height = 0;
+  private int offset = 0;
+  private int scan = 0;
+  private ColorModel sourceColorModel = null;
+  private BufferedImage sourceImage = null;
+  private ColorModel colorModel = null;
+  private Rectangle cropBox = null;
+  // geometry and sampling of the flips, zoom and rotation
+  private LinearImageFilter linearFilter = new LinearImageFilter();
+  private boolean flipV = false;
+  private boolean flipH = false;
+  private double zoomV = 1;
+  private double zoomH = 1;
+  private double rotation = 0;
+  private int sampleType = FilterSampling.REPLICATE;
+  // reused to hold flipped regions
+  private Object flipBuffer = null;
+  private BufferedImage image = null;
+  private boolean changed = true;
+  /**
+   * Constructs a new instance of RasterRenderPipeline.
+   */
+  public RasterRenderPipeline() {}
+  /**
+   * Sets the source pixels.  The pixels are kept without copying and
+   * are read again on the next render.
+   *
+   * @param width	width of the image
+   * @param height	height of the image
+   * @param cm		color model of the pixels
+   * @param pixels	<code>byte[]</code> or <code>int[]</code> pixels
+   * @param offset	offset to the first pixel
+   * @param scan	distance between rows of pixels
+   */
+  public synchronized void setSource(int width, int height, ColorModel cm,
+				     Object pixels, int offset, int scan) {
+    if(! (pixels instanceof byte[] || pixels instanceof int[]))
+      throw new IllegalArgumentException("pixels must be a byte or int array");
+    this.width = width;
+    this.height = height;
+    this.sourceColorModel = cm;
+    this.pixels = pixels;
+    this.offset = offset;
+    this.scan = scan;
+    sourceImage = null;
+    changed = true;
+  }
+  /**
+   * Sets the size of a source whose pixels are not loaded.  Nothing is
+   * rendered but sizes and locations map as if the pixels were set.
+   *
+   * @param width	width of the image
+   * @param height	height of the image
+   * @param cm		color model of the pixels
+   */
+  public synchronized void setSourceSize(int width, int height,
+					 ColorModel cm) {
+    clearSource();
+    this.width = width;
+    this.height = height;
+    this.sourceColorModel = cm;
+  }
+  /**
+   * Releases the source pixels, rendered image and working buffers
+   * keeping the source size, color model and transform.
+   */
+  public synchronized void releasePixels() {
+    pixels = null;
+    sourceImage = null;
+    image = null;
+    flipBuffer = null;
+    linearFilter.releaseBuffers();
+    changed = true;
+  }
+  /**
+   * Sets the source to the pixels of a buffered image.  An image needing
+   * no changes is displayed as is.
+   *
+   * @param bi	image with pixels readable by isRenderable
+   * @return	<code>true</code> if the image is renderable
+   */
+  public synchronized boolean setSource(BufferedImage bi) {
+    if(! isRenderable(bi)) return false;
+    WritableRaster raster = bi.getRaster();
+    DataBuffer db = raster.getDataBuffer();
+    int scan = (db instanceof DataBufferInt) ?
+      ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() :
+      ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+    Object pixels = (db instanceof DataBufferInt) ?
+      (Object) ((DataBufferInt) db).getData() :
+      (Object) ((DataBufferByte) db).getData();
+    setSource(bi.getWidth(), bi.getHeight(), bi.getColorModel(), pixels,
+	      db.getOffset(), scan);
+    sourceImage = bi;
+    return true;
+  }
+  /**
+   * Determines if the pixels of a buffered image can be read directly,
+   * integer pixels packed one per element or byte indices into an index
+   * color model.
+   *
+   * @param bi	image
+   * @return	<code>true</code> if renderable
+   */
+  public static boolean isRenderable(BufferedImage bi) {
+    if(bi == null) return false;
+    WritableRaster raster = bi.getRaster();
+    // sub images start elsewhere in the data buffer
+    if(raster.getSampleModelTranslateX() != 0 ||
+       raster.getSampleModelTranslateY() != 0) return false;
+    if(raster.getDataBuffer().getNumBanks() != 1) return false;
+    switch (bi.getType()) {
+    case BufferedImage.TYPE_INT_ARGB:
+    case BufferedImage.TYPE_INT_ARGB_PRE:
+    case BufferedImage.TYPE_INT_RGB:
+    case BufferedImage.TYPE_INT_BGR:
+      return true;
+    case BufferedImage.TYPE_BYTE_INDEXED:
+      return bi.getColorModel().getPixelSize() == 8;
+    default:
+      return false;
+    }
+  }
+  /**
+   * Releases the source pixels and rendered image.
+   */
+  public synchronized void clearSource() {
+    pixels = null;
+    sourceImage = null;
+    sourceColorModel = null;
+    image = null;
+    width = height = 0;
+    changed = true;
+  }
+  /**
+   * Gets the width of the source.
+   *
+   * @return	width
+   */
+  public synchronized int getSourceWidth() { return width; }
+  /**
+   * Gets the height of the source.
+   *
+   * @return	height
+   */
+  public synchronized int getSourceHeight() { return height; }
+  /**
+   * Gets the color model of the source.
+   *
+   * @return	source color model
+   */
+  public synchronized ColorModel getSourceColorModel() {
+    return sourceColorModel;
+  }
+  /**
+   * Sets the color model to map pixels with in place of the source
+   * color model.
+   *
+   * @param cm	color model or <code>null</code> for the source color model
+   */
+  public synchronized void setColorModel(ColorModel cm) {
+    if(cm != colorModel) {
+      colorModel = cm;
+      changed = true;
+    }
+  }
+  /**
+   * Sets the region of the source to display.
+   *
+   * @param cropBox	region or <code>null</code> for the whole source
+   */
+  public synchronized void setCrop(Rectangle cropBox) {
+    if(cropBox == null ? this.cropBox != null : ! cropBox.equals(this.cropBox)) {
+      this.cropBox = (cropBox == null) ? null : cropBox.getBounds();
+      changed = true;
+    }
+  }
+  /**
+   * Sets the flips, zoom, rotation and sampling applied after cropping.
+   *
+   * @param flipV		<code>true</code> to flip vertically
+   * @param flipH		<code>true</code> to flip horizontally
+   * @param zoomV		vertical zoom
+   * @param zoomH		horizontal zoom
+   * @param rotation		rotation in degrees
+   * @param sampleType		filter sample type
+   */
+  public synchronized void setTransform(boolean flipV, boolean flipH,
+					double zoomV, double zoomH,
+					double rotation, int sampleType) {
+    if(flipV == this.flipV && flipH == this.flipH && zoomV == this.zoomV &&
+       zoomH == this.zoomH && rotation == this.rotation &&
+       sampleType == this.sampleType) return;
+    this.flipV = flipV;
+    this.flipH = flipH;
+    this.zoomV = zoomV;
+    this.zoomH = zoomH;
+    this.rotation = rotation;
+    this.sampleType = sampleType;
+    linearFilter.setZoom(zoomV, zoomH);
+    linearFilter.setAngle(rotation * Math.PI / 180.0);
+    linearFilter.setFilterSampleType(sampleType);
+    changed = true;
+  }
+  /**
+   * Forces the next render to read the source pixels again.
+   */
+  public synchronized void setChanged() { changed = true; }
+  /**
+   * Gets the source region displayed.
+   *
+   * @return	region
+   */
+  private Rectangle getRegion() {
+    if(cropBox != null) return cropBox;
+    return new Rectangle(0, 0, width, height);
+  }
+  /**
+   * Gets the transform from source pixel locations to rendered pixel
+   * locations including the crop.
+   *
+   * @return	transform
+   */
+  public synchronized AffineTransform getTransform() {
+    Rectangle region = getRegion();
+    linearFilter.setDimensions(region.width, region.height);
+    AffineTransform flip =
+      new AffineTransform(flipH ? -1 : 1, 0, 0, flipV ? -1 : 1,
+			  flipH ? region.width - 1 : 0,
+			  flipV ? region.height - 1 : 0);
+    double[] in = {0, 0};
+    double[] origin = linearFilter.map(in);
+    in[0] = 1;
+    double[] xAxis = linearFilter.map(in);
+    in[0] = 0; in[1] = 1;
+    double[] yAxis = linearFilter.map(in);
+    AffineTransform at =
+      new AffineTransform(xAxis[0] - origin[0], xAxis[1] - origin[1],
+			  yAxis[0] - origin[0], yAxis[1] - origin[1],
+			  origin[0], origin[1]);
+    at.concatenate(flip);
+    at.translate(-region.x, -region.y);
+    return at;
+  }
+  /**
+   * Gets the size of the image render creates, without rendering.
+   *
+   * @return	size
+   */
+  public synchronized Dimension getOutputSize() {
+    if(width < 1 || height < 1) return new Dimension(0, 0);
+    Rectangle region = getRegion();
+    linearFilter.setDimensions(region.width, region.height);
+    if(linearFilter.getIsIdentity()) return region.getSize();
+    return new Dimension(linearFilter.getOutputWidth(),
+			 linearFilter.getOutputHeight());
+  }
+  /**
+   * Renders the source into an ARGB image, reusing the last image if
+   * nothing changed.
+   *
+   * @return	rendered image or <code>null</code> if no source
+   */
+  public synchronized BufferedImage render() {
+    if(! changed && image != null) return image;
+    if(width < 1 || height < 1) return null;
+    Rectangle region = getRegion();
+    linearFilter.setDimensions(region.width, region.height);
+    // sizes and mapping are set even without pixels
+    if(pixels == null) return null;
+    ColorModel cm = (colorModel == null) ? sourceColorModel : colorModel;
+    boolean identity = linearFilter.getIsIdentity();
+    if(identity && ! flipV && ! flipH && cropBox == null &&
+       cm == sourceColorModel && sourceImage != null) {
+      // displayed as given
+      image = sourceImage;
+      changed = false;
+      return image;
+    }
+    Object inPixels = pixels;
+    int inOffset = offset + region.y * scan + region.x;
+    int inScan = scan;
+    if(flipV || flipH) {
+      inPixels = flipRegion(inOffset, region.width, region.height);
+      inOffset = 0;
+      inScan = region.width;
+    }
+    Object outPixels;
+    int outWidth, outHeight, outOffset, outScan;
+    ColorModel outColorModel;
+    if(identity) {
+      outPixels = inPixels;
+      outWidth = region.width;
+      outHeight = region.height;
+      outOffset = inOffset;
+      outScan = inScan;
+      outColorModel = cm;
+    }
+    else {
+      outPixels = linearFilter.filterPixels(region.width, region.height, cm,
+					    inPixels, inOffset, inScan);
+      outWidth = linearFilter.getOutputWidth();
+      outHeight = linearFilter.getOutputHeight();
+      outOffset = 0;
+      outScan = outWidth;
+      outColorModel = linearFilter.getOutputColorModel();
+    }
+    if(outPixels == null || outWidth < 1 || outHeight < 1) return null;
+    BufferedImage bi =
+      new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_ARGB);
+    int[] argb = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+    toARGB(outPixels, outOffset, outScan, outColorModel,
+	   argb, outWidth, outHeight);
+    image = bi;
+    changed = false;
+    return image;
+  }
+  /**
+   * Copies a region of the source into the flip buffer reversing rows
+   * and columns as flipped.
+   *
+   * @param inOffset	offset to the first pixel of the region
+   * @param w		width of the region
+   * @param h		height of the region
+   * @return	flipped pixels starting at 0 with rows w apart
+   */
+  private Object flipRegion(int inOffset, int w, int h) {
+    int length = w * h;
+    if(pixels instanceof byte[]) {
+      if(! (flipBuffer instanceof byte[]) ||
+	 ((byte[]) flipBuffer).length < length) flipBuffer = new byte[length];
+    }
+    else if(! (flipBuffer instanceof int[]) ||
+	    ((int[]) flipBuffer).length < length) flipBuffer = new int[length];
+    for(int y = 0; y < h; y++) {
+      int i = inOffset + (flipV ? h - 1 - y : y) * scan;
+      int o = y * w;
+      if(! flipH) System.arraycopy(pixels, i, flipBuffer, o, w);
+      else if(pixels instanceof byte[]) {
+	byte[] in = (byte[]) pixels;
+	byte[] out = (byte[]) flipBuffer;
+	for(int x = w - 1; x >= 0; x--, o++) out[o] = in[i + x];
+      }
+      else {
+	int[] in = (int[]) pixels;
+	int[] out = (int[]) flipBuffer;
+	for(int x = w - 1; x >= 0; x--, o++) out[o] = in[i + x];
+      }
+    }
+    return flipBuffer;
+  }
+  /**
+   * Maps pixels through a color model into ARGB values.
+   *
+   * @param pixels	<code>byte[]</code> or <code>int[]</code> pixels
+   * @param offset	offset to the first pixel
+   * @param scan	distance between rows of pixels
+   * @param cm		color model of the pixels
+   * @param argb	ARGB values to fill
+   * @param width	width of pixels
+   * @param height	height of pixels
+   */
+  public static void toARGB(Object pixels, int offset, int scan, ColorModel cm,
+			    int[] argb, int width, int height) {
+    if(cm instanceof IndexColorModel) {
+      IndexColorModel icm = (IndexColorModel) cm;
+      int[] table = FusedSliceRenderer.getARGBTable(icm);
+      if(pixels instanceof byte[]) {
+	byte[] in = (byte[]) pixels;
+	for(int y = 0, o = 0; y < height; y++) {
+	  int i = offset + y * scan;
+	  for(int end = o + width; o < end; o++, i++)
+	    argb[o] = table[in[i] & 0xff];
+	}
+      }
+      else {
+	int[] in = (int[]) pixels;
+	int mask = (1 << icm.getPixelSize()) - 1;
+	for(int y = 0, o = 0; y < height; y++) {
+	  int i = offset + y * scan;
+	  for(int end = o + width; o < end; o++, i++)
+	    argb[o] = table[in[i] & mask];
+	}
+      }
+    }
+    else if(pixels instanceof int[] && isDefaultRGB(cm)) {
+      for(int y = 0; y < height; y++)
+	System.arraycopy(pixels, offset + y * scan, argb, y * width, width);
+    }
+    else if(pixels instanceof byte[]) {
+      byte[] in = (byte[]) pixels;
+      for(int y = 0, o = 0; y < height; y++) {
+	int i = offset + y * scan;
+	for(int end = o + width; o < end; o++, i++)
+	  argb[o] = cm.getRGB(in[i] & 0xff);
+      }
+    }
+    else {
+      int[] in = (int[]) pixels;
+      for(int y = 0, o = 0; y < height; y++) {
+	int i = offset + y * scan;
+	for(int end = o + width; o < end; o++, i++)
+	  argb[o] = cm.getRGB(in[i]);
+      }
+    }
+  }
+  /**
+   * Checks if a color model stores pixels the same as the default
+   * ARGB color model.
+   *
+   * @param cm	color model
+   * @return	<code>true</code> if pixels are already ARGB values
+   */
+  private static boolean isDefaultRGB(ColorModel cm) {
+    if(cm == ColorModel.getRGBdefault()) return true;
+    if(! (cm instanceof DirectColorModel)) return false;
+    DirectColorModel dcm = (DirectColorModel) cm;
+    return dcm.getAlphaMask() == 0xff000000 && dcm.getRedMask() == 0xff0000 &&
+      dcm.getGreenMask() == 0xff00 && dcm.getBlueMask() == 0xff &&
+      ! dcm.isAlphaPremultiplied();
+  }
+  /**
+   * Flips a precise location within the cropped region.
+   *
+   * @param in	array containing the input location
+   * @param out	array to contain the output location
+   */
+  private void flip(double[] in, double[] out) {
+    Rectangle region = getRegion();
+    out[0] = flipH ? region.width - 1 - in[0] : in[0];
+    out[1] = flipV ? region.height - 1 - in[1] : in[1];
+  }
+  /**
+   * Flips a point within the cropped region.
+   *
+   * @param inPt	point containing the input location
+   * @param outPt	point to contain the output location
+   */
+  private void flip(Point inPt, Point outPt) {
+    Rectangle region = getRegion();
+    outPt.x = flipH ? region.width - 1 - inPt.x : inPt.x;
+    outPt.y = flipV ? region.height - 1 - inPt.y : inPt.y;
+  }
+  /**
+   * Maps a precise cropped location to a rendered location.
+   *
+   * @param in	array containing the input location
+   * @param out	array to contain the output location
+   */
+  public synchronized void map(double[] in, double[] out) {
+    flip(in, out);
+    linearFilter.map(out, out);
+  }
+  /**
+   * Maps a cropped point to the nearest rendered point.
+   *
+   * @param inPt	point containing the input location
+   * @param outPt	point to contain the output location
+   */
+  public synchronized void map(Point inPt, Point outPt) {
+    flip(inPt, outPt);
+    linearFilter.map(outPt, outPt);
+  }
+  /**
+   * Maps a precise rendered location to a cropped location.
+   *
+   * @param in	array containing the input location
+   * @param out	array to contain the output location
+   */
+  public synchronized void invertMap(double[] in, double[] out) {
+    linearFilter.invertMap(in, out);
+    flip(out, out);
+  }
+  /**
+   * Maps a rendered point to the nearest cropped point.
+   *
+   * @param inPt	point containing the input location
+   * @param outPt	point to contain the output location
+   */
+  public synchronized void invertMap(Point inPt, Point outPt) {
+    linearFilter.invertMap(inPt, outPt);
+    flip(outPt, outPt);
+  }
+}
@@ -0,0 +1,112 @@
+package iiv.display;
+import iiv.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * Renders display component images on background threads so the event
+ * thread only paints.  A component requesting a render shows its
+ * placeholder or previous image until the render finishes and it is
+ * repainted.  Requests for a component already waiting are combined,
+ * and a component requesting again while rendering is rendered once
+ * more afterwards, so superseded states are skipped.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		DisplayComponent#requestRender()
+ * @since	iiV1.187
+ */
+public class RenderService {
+  private final static Object staticLock = new Object();
+  private static RenderService sharedService = null;
+
+  private final ExecutorService executor;
+  private final HashSet<DisplayComponent> pending =
+    new HashSet<DisplayComponent>();
+  private final HashSet<DisplayComponent> running =
+    new HashSet<DisplayComponent>();
+  private final HashSet<DisplayComponent> rerun =
+    new HashSet<DisplayComponent>();
+  /**
+   * Constructs a new instance of RenderService.
+   *
+   * @param numberOfThreads	number of render threads
+   */
+  public RenderService(int numberOfThreads) {
+    executor =
+      Executors.newFixedThreadPool(Math.max(1, numberOfThreads),
+				   WorkerPool.createDaemonThreadFactory("iiV render"));
+  }
+  /**
+   * Gets the shared render service, creating it on first use with one
+   * thread per shared worker pool thread.
+   *
+   * @return	shared render service
+   */
+  public static RenderService getSharedService() {
+    if(sharedService == null) synchronized (staticLock) {
+      if(sharedService == null)
+	sharedService = new RenderService(WorkerPool.getNumberOfThreads());
+    }
+    return sharedService;
+  }
+  /**
+   * Requests a component be rendered.
+   *
+   * @param dc	component to render
+   */
+  public void requestRender(final DisplayComponent dc) {
+    synchronized (this) {
+      if(running.contains(dc)) {
+	rerun.add(dc);
+	return;
+      }
+      // already waiting renders the latest state
+      if(! pending.add(dc)) return;
+    }
+    executor.execute(new Runnable() {
+      public void run() { render(dc); }
+    });
+  }
+  /**
+   * Renders a component on a render thread and repaints it.
+   *
+   * @param dc	component to render
+   */
+  private void render(DisplayComponent dc) {
+    synchronized (this) {
+      pending.remove(dc);
+      running.add(dc);
+    }
+    boolean again;
+    try {
+      dc.renderRequested();
+    } catch (RuntimeException re) {
+      System.out.println("RenderService failed rendering " + dc);
+      re.printStackTrace();
+    } finally {
+      synchronized (this) {
+	running.remove(dc);
+	again = rerun.remove(dc);
+      }
+    }
+    dc.repaint();
+    if(again) requestRender(dc);
+  }
+  /**
+   * Checks if a component is waiting for or being rendered.
+   *
+   * @param dc	component
+   * @return	<code>true</code> if rendering is pending
+   */
+  public synchronized boolean isPending(DisplayComponent dc) {
+    return pending.contains(dc) || running.contains(dc);
+  }
+  /**
+   * Gets the number of components waiting for or being rendered.
+   *
+   * @return	number of components
+   */
+  public synchronized int getNumberPending() {
+    return pending.size() + running.size();
+  }
+}
@@ -66,6 +66,17 @@ implements ScaleInterface, CoordinateMappable, SliceNumbering,
   private CNUData inImg = null;
   private CNUDataSlicer dataSlicer = null;
 
+  private static boolean fusedRenderingDefault =
+    ! "false".equalsIgnoreCase(System.getProperty("CNU.fusedrender"));
+  // reused between renders of the same slice size
+  private CNUData rawPlane = null;
+  private BufferedImage argbImage = null;
+  private boolean fusedRendered = false;
+  // lay out without rendering until painted or restored
+  private boolean deferImage = false;
+  // counts image changes so superseded background renders are dropped
+  private int renderGeneration = 0;
+
   /**
    * Constructs a new instance of SingleImg with no initialization.  The init routine
    * should be called soon after.
@@ -440,9 +451,40 @@ implements ScaleInterface, CoordinateMappable, SliceNumbering,
    * Converts the input image into a raw image producer.
    */
   protected void createRawIp() {
+    synchronized (stateParameterLock) {
+      renderGeneration++;
+      // released or deferred images stay placeholders until restored
+      // and images in view are rendered by the render service
+      boolean async = isAsyncRendering();
+      if(deferImage || async || isImageReleased()) {
+	deferImage = false;
+	if(createPlaceholder(async)) {
+	  if(async) requestRender();
+	  return;
+	}
+      }
+      createImageNow();
+    }
+  }
+  /**
+   * Grabs and renders the current slice on this thread.
+   */
+  private void createImageNow() {
     CNUData singlePlane = new CNUData();
     synchronized (stateParameterLock) {
       setImage(null);
+      ColorModel fcm = getColorModel();
+      if(fcm == null) fcm = DisplayComponentDefaults.getDefaultColorModel();
+      // other slicers fill voxels outside the data with the index 0
+      // which raw planes can not represent
+      if(fusedRenderingDefault && FusedSliceRenderer.isRenderable(fcm) &&
+	 dataSlicer instanceof PrimaryOrthoDataSlicer) {
+	createFusedImage((IndexColorModel) fcm);
+	return;
+      }
+      fusedRendered = false;
+      rawPlane = null;
+      argbImage = null;
       //      singlePlane.initDataArray(sliceDims);
       //      CNUTypes.copyRegion(inImg.getDataArray(),
       //			  inDims.getIndex(sliceOrig),
@@ -450,25 +492,229 @@ implements ScaleInterface, CoordinateMappable, SliceNumbering,
       //			  singlePlane.getDataArray(), 0, sliceDims.getType(),
       //			  sliceDims.getDimensions(),
       //			  sliceDims.getNumberOfDimensions() - 1, getScale());
-      dataSlicer.grabSliceData(inImg, slice, iValue, singlePlane, getScale());
+      SlicePlaneCache.getSharedCache().grabSliceData(dataSlicer, inImg, slice,
+						     iValue, singlePlane, getScale());
       ColorModel cm = getColorModel();
       if(cm == null) cm = DisplayComponentDefaults.getDefaultColorModel();
       CNUDimensions singlePlaneDims = singlePlane.getDimensions();
-      if(CNUTypes.bytesPerWord(singlePlaneDims.getType()) == 1)
-	setImageProducer(new MemoryImageSource(singlePlaneDims.xdim(),
-					       singlePlaneDims.ydim(), cm,
-					       (byte[])singlePlane.getDataArray(),
-					       singlePlaneDims.getOffset(),
-					       singlePlaneDims.xdim()));
-      else
-	setImageProducer(new MemoryImageSource(singlePlaneDims.xdim(),
-					       singlePlaneDims.ydim(), cm,
-					       (int[])singlePlane.getDataArray(),
-					       singlePlaneDims.getOffset(),
-					       singlePlaneDims.xdim()));
+      setImagePixels(singlePlaneDims.xdim(), singlePlaneDims.ydim(), cm,
+		     singlePlane.getDataArray(), singlePlaneDims.getOffset(),
+		     singlePlaneDims.xdim());
       initColorModel(cm);  // sets color map filter not needed
     }
   }
+  /**
+   * Sets a placeholder the size of the current slice instead of
+   * grabbing and rendering it.
+   *
+   * @param keepPrevious	<code>true</code> to show the current image
+   *				until the new one is rendered
+   * @return	<code>false</code> if the image must be created now
+   */
+  private boolean createPlaceholder(boolean keepPrevious) {
+    synchronized (stateParameterLock) {
+      ColorModel cm = getColorModel();
+      if(cm == null) cm = DisplayComponentDefaults.getDefaultColorModel();
+      CNUDimensions sliceDims = dataSlicer.getSliceDimensions();
+      if(! setImagePlaceholder(sliceDims.xdim(), sliceDims.ydim(), cm,
+			       keepPrevious))
+	return false;
+      fusedRendered = false;
+      rawPlane = null;
+      argbImage = null;
+      initColorModel(cm);
+      return true;
+    }
+  }
+  /**
+   * Sets whether init lays this image out without rendering it, leaving
+   * a placeholder until it is painted or restored.  Must be set before
+   * init.
+   *
+   * @param deferImage	<code>true</code> to defer rendering
+   * @see DisplayComponent#restoreImage()
+   */
+  public void setDeferImage(boolean deferImage) {
+    synchronized (stateParameterLock) { this.deferImage = deferImage; }
+  }
+  /**
+   * Releases the slice pixels and rendered image keeping the size.
+   *
+   * @return	<code>true</code> if released
+   */
+  public boolean releaseImage() {
+    if(! super.releaseImage()) return false;
+    synchronized (stateParameterLock) {
+      renderGeneration++;
+      rawPlane = null;
+      argbImage = null;
+    }
+    return true;
+  }
+  /**
+   * Slices can be grabbed and rendered again.
+   *
+   * @return	<code>true</code>
+   */
+  protected boolean canRecreateImage() { return true; }
+  /**
+   * Grabs and renders the current slice again.
+   */
+  protected void recreateImage() {
+    synchronized (stateParameterLock) {
+      renderGeneration++;
+      createImageNow();
+    }
+  }
+  /**
+   * Grabs and renders the current slice for the render service.  The
+   * slice is grabbed and fused rendering done without holding locks,
+   * so painting and state changes continue meanwhile, and the result is
+   * dropped if the state changed before it was done.
+   */
+  protected void renderRequested() {
+    int generation;
+    CNUData data;
+    CNUDataSlicer slicer;
+    int sliceNumber, iValueNumber;
+    CNUScale scale;
+    ColorModel setCm, cm;
+    synchronized (stateParameterLock) {
+      if(! isImageReleased()) return;
+      generation = renderGeneration;
+      data = inImg;
+      slicer = dataSlicer;
+      sliceNumber = slice;
+      iValueNumber = iValue;
+      scale = (sc == null) ? null : sc.ScaleDuplicate();
+      setCm = getColorModel();
+      cm = (setCm == null) ? DisplayComponentDefaults.getDefaultColorModel() : setCm;
+    }
+    CNUData plane = new CNUData();
+    BufferedImage bi = null;
+    CNUDimensions sliceDims = slicer.getSliceDimensions();
+    boolean fused = fusedRenderingDefault &&
+      FusedSliceRenderer.isRenderable(cm) &&
+      slicer instanceof PrimaryOrthoDataSlicer;
+    if(fused) {
+      CNUDimensions rawDims = (CNUDimensions) sliceDims.clone();
+      rawDims.setType(data.getDimensions().getType());
+      plane.initDataArray(rawDims);
+      // interrupted grabs leave the placeholder
+      if(SlicePlaneCache.getSharedCache().grabSliceData(slicer, data, sliceNumber,
+							iValueNumber, plane,
+							null) == null) return;
+      int width = rawDims.xdim();
+      int height = rawDims.ydim();
+      bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      int[] argb = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+      FusedSliceRenderer.render(plane, scale, (IndexColorModel) cm,
+				sliceDims.getType(), argb, 0, width);
+    }
+    else if(SlicePlaneCache.getSharedCache().grabSliceData(slicer, data,
+							    sliceNumber,
+							    iValueNumber, plane,
+							    scale) == null)
+      return;
+    synchronized (stateParameterLock) {
+      // superseded by a later state or already restored
+      if(generation != renderGeneration || ! isImageReleased() ||
+	 getColorModel() != setCm) return;
+      if(fused) {
+	fusedRendered = true;
+	rawPlane = plane;
+	argbImage = bi;
+	setImage(bi);
+      }
+      else {
+	fusedRendered = false;
+	rawPlane = null;
+	argbImage = null;
+	CNUDimensions planeDims = plane.getDimensions();
+	setImagePixels(planeDims.xdim(), planeDims.ydim(), cm,
+		       plane.getDataArray(), planeDims.getOffset(),
+		       planeDims.xdim());
+      }
+      initColorModel(cm);
+    }
+  }
+  /**
+   * Renders the current slice straight to a reused ARGB image, scaling
+   * and color mapping each voxel in one pass.
+   *
+   * @param icm	color model to map scaled values with
+   * @see FusedSliceRenderer
+   */
+  private void createFusedImage(IndexColorModel icm) {
+    synchronized (stateParameterLock) {
+      CNUDimensions sliceDims = dataSlicer.getSliceDimensions();
+      int inType = inImg.getDimensions().getType();
+      CNUDimensions rawDims = (rawPlane == null) ? null : rawPlane.getDimensions();
+      if(rawDims == null || rawDims.getType() != inType ||
+	 ! rawDims.sameSize(sliceDims)) {
+	rawDims = (CNUDimensions) sliceDims.clone();
+	rawDims.setType(inType);
+	rawPlane = new CNUData();
+	rawPlane.initDataArray(rawDims);
+      }
+      SlicePlaneCache.getSharedCache().grabSliceData(dataSlicer, inImg, slice,
+						     iValue, rawPlane, null);
+      int width = rawDims.xdim();
+      int height = rawDims.ydim();
+      if(argbImage == null || argbImage.getWidth() != width ||
+	 argbImage.getHeight() != height)
+	argbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      int[] argb =
+	((DataBufferInt) argbImage.getRaster().getDataBuffer()).getData();
+      FusedSliceRenderer.render(rawPlane, getScale(), icm, sliceDims.getType(),
+				argb, 0, width);
+      fusedRendered = true;
+      setImage(argbImage);
+      initColorModel(icm);  // colors already applied so no filter needed
+    }
+  }
+  /**
+   * Sets the color model.  Slices rendered straight to ARGB are
+   * rendered again instead of color filtered.
+   *
+   * @param cm	new color model
+   */
+  public void setColorModel(ColorModel cm) {
+    boolean rerender, released;
+    synchronized (stateParameterLock) {
+      // background renders started with the old color model are dropped
+      renderGeneration++;
+      rerender = fusedRendered;
+      released = isImageReleased();
+    }
+    if(! rerender) {
+      super.setColorModel(cm);
+      if(released) requestRender();
+    }
+    else if(cm != getColorModel()) {
+      initColorModel(cm);
+      createRawIp();
+      invalidateFilters();
+    }
+  }
+  /**
+   * Sets the default for rendering slices straight to ARGB images with
+   * index color models.  Defaults to <code>true</code> unless the system
+   * property "CNU.fusedrender" is <code>false</code>.
+   *
+   * @param state	<code>true</code> to render straight to ARGB
+   */
+  public static void setFusedRenderingDefault(boolean state) {
+    fusedRenderingDefault = state;
+  }
+  /**
+   * Gets the default for rendering slices straight to ARGB images.
+   *
+   * @return	<code>true</code> if rendered straight to ARGB
+   */
+  public static boolean getFusedRenderingDefault() {
+    return fusedRenderingDefault;
+  }
   /**
    * Sets both slice and orientation labels mode.
    *
@@ -16,19 +16,25 @@ public interface FilterSampling {
   public final static int ALPHA_WEIGHTED_INTERPOLATE = 3;
   public final static int INDEX_INTERPOLATE = 4;
   public final static int ALPHA_WEIGHTED_INDEX_INTERPOLATE = 5;
+  public final static int BILINEAR = 6;
+  public final static int BICUBIC = 7;
   public final static int[] SAMPLING_TYPES = {
     REPLICATE,
     INTERPOLATE,
     ALPHA_WEIGHTED_INTERPOLATE,
     INDEX_INTERPOLATE,
-    ALPHA_WEIGHTED_INDEX_INTERPOLATE
+    ALPHA_WEIGHTED_INDEX_INTERPOLATE,
+    BILINEAR,
+    BICUBIC
   };
   public final static String[] SAMPLING_NAMES = {
     "REPLICATE",
     "INTERPOLATE",
     "ALPHA_WEIGHTED_INTERPOLATE",
     "INDEX_INTERPOLATE",
-    "ALPHA_WEIGHTED_INDEX_INTERPOLATE"
+    "ALPHA_WEIGHTED_INDEX_INTERPOLATE",
+    "BILINEAR",
+    "BICUBIC"
   };
   /**
    * Sets the filter sampling type.
@@ -1,5 +1,6 @@
 package iiv.filter;
 import iiv.data.*;
+import iiv.util.*;
 import java.awt.*;
 import java.awt.image.*;
 import java.util.*;
@@ -19,10 +20,22 @@ public class LinearImageFilter implements ImageConsumer,
 					  ImageProducer, Mapping2D,
 					  FilterSampling {
 
+  // fewest output pixels times cost per row tile worth a pool task
+  private final static int MIN_PARALLEL_PIXELS = 16384;
+  // row kernel kinds
+  private final static int REPLICATE_ROWS = 0;
+  private final static int AVERAGE_INDEX_ROWS = 1;
+  private final static int AVERAGE_RGB_ROWS = 2;
+  private final static int ALPHA_WEIGHTED_INDEX_ROWS = 3;
+  private final static int ALPHA_WEIGHTED_RGB_ROWS = 4;
+  private final static int RESAMPLE_ROWS = 5;
   private Object parameterLock = new Object();
   private int sampleType = REPLICATE;
   private int inWidth = 0;
   private int inHeight = 0;
+  // location of the first input pixel and distance between input rows
+  private int inOffset = 0;
+  private int inScan = 0;
   private int outWidth = 0;
   private int outHeight = 0;
   private boolean isIdentity = true;
@@ -46,6 +59,13 @@ public class LinearImageFilter implements ImageConsumer,
   private byte bbuffer[] = null;
   private int ioutbuffer[] = null;
   private byte boutbuffer[] = null;
+  // set when a fill was interrupted leaving the output buffer partial
+  private boolean fillInterrupted = false;
+  // bilinear and bicubic resampling state set before row tiles start
+  private int resampleTaps = 2;
+  private int[] sourceRGB = null;
+  private int[] columnIndex = null;
+  private double[] columnWeight = null;
 
   private Object IP_consumerLock = new Object();
   private Vector<ImageConsumer> consumers = new Vector<ImageConsumer>();
@@ -339,6 +359,7 @@ public class LinearImageFilter implements ImageConsumer,
         inWidth = w; inHeight = h;
         ibuffer = null; bbuffer = null;
       }
+      inOffset = 0; inScan = w;
       setShift(0, 0);
       // calculate extremes
       double[] in = {0, 0};
@@ -512,6 +533,98 @@ public class LinearImageFilter implements ImageConsumer,
     setImageProducer(ip);
     produce();
   }
+  /**
+   * Output row tile filling rows with one of the sampling kernels.
+   * Tiles only read fields set before they start and keep their own
+   * positions so they run concurrently without locks.
+   */
+  private class RowTile implements Runnable {
+    private final int kind;
+    private final int firstRow;
+    private final int endRow;
+    private final double[] origin;
+    private final double[] incX;
+    private final double[] incY;
+    /**
+     * Constructs a new instance of RowTile.
+     *
+     * @param kind	one of the row kernel kinds
+     * @param firstRow	first output row to fill
+     * @param endRow	output row after the last to fill
+     * @param origin	input location of output pixel 0, 0
+     * @param incX	input increment per output column
+     * @param incY	input increment per output row
+     */
+    RowTile(int kind, int firstRow, int endRow, double[] origin,
+	    double[] incX, double[] incY) {
+      this.kind = kind;
+      this.firstRow = firstRow;
+      this.endRow = endRow;
+      this.origin = origin;
+      this.incX = incX;
+      this.incY = incY;
+    }
+    public void run() {
+      switch(kind) {
+      default:
+      case REPLICATE_ROWS:
+	replicateRows(firstRow, endRow, origin, incX, incY);
+	break;
+      case AVERAGE_INDEX_ROWS:
+	averageIndexRows(firstRow, endRow, origin, incX, incY);
+	break;
+      case AVERAGE_RGB_ROWS:
+	averageRGBRows(firstRow, endRow, origin, incX, incY);
+	break;
+      case ALPHA_WEIGHTED_INDEX_ROWS:
+	alphaWeightedIndexRows(firstRow, endRow, origin, incX, incY);
+	break;
+      case ALPHA_WEIGHTED_RGB_ROWS:
+	alphaWeightedRGBRows(firstRow, endRow, origin, incX, incY);
+	break;
+      case RESAMPLE_ROWS:
+	resampleRows(firstRow, endRow, origin, incX, incY);
+	break;
+      }
+    }
+  }
+  /**
+   * Fills the output buffer by splitting output rows into tiles run
+   * on the shared worker pool.  Must be called while synchronized on
+   * parameterLock with the output buffer allocated.  If interrupted
+   * the fill is marked incomplete with the interrupt state kept.
+   *
+   * @param kind	row kernel kind
+   * @param cost	relative cost per output pixel
+   */
+  private void fillRowTiles(int kind, int cost) {
+    // calculate double precision locations and increments
+    double[] outTmp = new double[2];
+    outTmp[0] = 0; outTmp[1] = 0;
+    double[] origin = invertMap(outTmp);
+    outTmp[0] = 1; outTmp[1] = 0;
+    double[] incX = invertMap(outTmp);
+    incX[0] = incX[0] - origin[0]; incX[1] = incX[1] - origin[1];
+    outTmp[0] = 0; outTmp[1] = 1;
+    double[] incY = invertMap(outTmp);
+    incY[0] = incY[0] - origin[0]; incY[1] = incY[1] - origin[1];
+    // without rotation resampling weights per column are shared by all rows
+    if(kind == RESAMPLE_ROWS && incX[1] == 0 && incY[0] == 0)
+      buildColumnTables(origin, incX);
+    // enough work per tile to be worth a task
+    long work = (long) outWidth * outHeight * cost;
+    int ntiles = (int) Math.min(Math.min(outHeight,
+					 4 * WorkerPool.getNumberOfThreads()),
+				Math.max(1, work / MIN_PARALLEL_PIXELS));
+    if(ntiles < 1) return;
+    Runnable[] tiles = new Runnable[ntiles];
+    for(int tile = 0; tile < ntiles; tile++)
+      tiles[tile] = new RowTile(kind, tile * outHeight / ntiles,
+				(tile + 1) * outHeight / ntiles,
+				origin, incX, incY);
+    // runAll restores the interrupt state
+    if(! WorkerPool.runAll(tiles)) fillInterrupted = true;
+  }
   /**
    * Creates (if needed) and fills the output buffer
    * using nearest pixel replication.
@@ -519,61 +632,58 @@ public class LinearImageFilter implements ImageConsumer,
    */
   public void fillBuffer() {
     synchronized (parameterLock) {
-      // calculate double precision locations and increments
-      double[] outTmp = new double[2];
-      outTmp[0] = 0; outTmp[1] = 0;
-      double[] inYpos = invertMap(outTmp);
-      outTmp[0] = 1; outTmp[1] = 0;
-      double[] incX = invertMap(outTmp);
-      incX[0] = incX[0] - inYpos[0]; incX[1] = incX[1] - inYpos[1];
-      outTmp[0] = 0; outTmp[1] = 1;
-      double[] incY = invertMap(outTmp);
-      incY[0] = incY[0] - inYpos[0]; incY[1] = incY[1] - inYpos[1];
-      double[] inXpos = new double[2];
-      // integer locations
-      Point out = new Point(0, 0);
-      Point in = new Point(0, 0);
-      int outIndex = 0;
-
       produceColorModel = sourceColorModel;
       int outLength = outWidth * outHeight;
       if(bbuffer != null) {
 	if((boutbuffer == null) || (boutbuffer.length < outLength))
 	  boutbuffer = new byte[outLength];
-
-	for(out.y = 0; out.y < outHeight; out.y++,
-	      inYpos[0] += incY[0], inYpos[1] += incY[1]) {
-	  inXpos[0] = inYpos[0]; inXpos[1] = inYpos[1];
-	  for(out.x = 0; out.x < outWidth; out.x++, outIndex++,
-		inXpos[0] += incX[0], inXpos[1] += incX[1]) {
-	    in.x = (int) Math.round(inXpos[0]);
-	    in.y = (int) Math.round(inXpos[1]);
-	    if((in.x < 0) || (in.y < 0) ||
-	       (in.x >= inWidth) || (in.y >= inHeight))
-	      boutbuffer[outIndex] = 0;
-	    else boutbuffer[outIndex] = bbuffer[in.x + (in.y * inWidth)];
-	  }
-	}
       }
       else if(ibuffer != null) {
 	if((ioutbuffer == null) || (ioutbuffer.length < outLength))
 	  ioutbuffer = new int[outLength];
-	for( out.y = 0; out.y < outHeight; out.y++,
-	       inYpos[0] += incY[0], inYpos[1] += incY[1] ) {
-	  inXpos[0] = inYpos[0]; inXpos[1] = inYpos[1];
-	  for( out.x = 0; out.x < outWidth; out.x++, outIndex++,
-		 inXpos[0] += incX[0], inXpos[1] += incX[1] ) {
-	    in.x = (int) Math.round(inXpos[0]);
-	    in.y = (int) Math.round(inXpos[1]);
-	    if((in.x < 0) || (in.y < 0) ||
-	       (in.x >= inWidth) || (in.y >= inHeight)) ioutbuffer[outIndex] = 0;
-	    else ioutbuffer[outIndex] = ibuffer[in.x + (in.y * inWidth)];
-	  }
-	}
       }
       else {
 	boutbuffer = null;
 	ioutbuffer = null;
+	return;
+      }
+      fillRowTiles(REPLICATE_ROWS, 1);
+    }
+  }
+  /**
+   * Fills output rows with the nearest input pixel.
+   *
+   * @param firstRow	first output row to fill
+   * @param endRow	output row after the last to fill
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   * @param incY	input increment per output row
+   */
+  private void replicateRows(int firstRow, int endRow, double[] origin,
+			     double[] incX, double[] incY) {
+    for(int y = firstRow; y < endRow; y++) {
+      double inX = origin[0] + y * incY[0];
+      double inY = origin[1] + y * incY[1];
+      int outIndex = y * outWidth;
+      if(bbuffer != null) {
+	for(int x = 0; x < outWidth; x++, outIndex++,
+	      inX += incX[0], inY += incX[1]) {
+	  int ix = (int) Math.round(inX);
+	  int iy = (int) Math.round(inY);
+	  if((ix < 0) || (iy < 0) || (ix >= inWidth) || (iy >= inHeight))
+	    boutbuffer[outIndex] = 0;
+	  else boutbuffer[outIndex] = bbuffer[inOffset + ix + (iy * inScan)];
+	}
+      }
+      else {
+	for(int x = 0; x < outWidth; x++, outIndex++,
+	      inX += incX[0], inY += incX[1]) {
+	  int ix = (int) Math.round(inX);
+	  int iy = (int) Math.round(inY);
+	  if((ix < 0) || (iy < 0) || (ix >= inWidth) || (iy >= inHeight))
+	    ioutbuffer[outIndex] = 0;
+	  else ioutbuffer[outIndex] = ibuffer[inOffset + ix + (iy * inScan)];
+	}
       }
     }
   }
@@ -584,196 +694,185 @@ public class LinearImageFilter implements ImageConsumer,
    */
   public void averageFillBuffer(boolean rgbonly) {
     synchronized (parameterLock) {
-      // calculate double precision locations and increments
-      double[] outTmp = new double[2];
-      outTmp[0] = 0; outTmp[1] = 0;
-      double[] inYpos = invertMap(outTmp);
-      outTmp[0] = 1;
-      double[] incX = invertMap(outTmp);
-      incX[0] = incX[0] - inYpos[0]; incX[1] = incX[1] - inYpos[1];
-      outTmp[0] = 0; outTmp[1] = 1;
-      double[] incY = invertMap(outTmp);
-      incY[0] = incY[0] - inYpos[0]; incY[1] = incY[1] - inYpos[1];
-      double[] inXpos = new double[2];
-      // integer locations
-      Point out = new Point(0, 0);
-      int outIndex = 0;
-
       int outLength = outWidth * outHeight;
-      Object inarray;
-      int intype;
-      if(bbuffer != null) {
-	inarray = bbuffer;
-	intype = CNUTypes.UNSIGNED_BYTE;
-      }
-      else if(ibuffer != null) {
-	inarray = ibuffer;
-	intype = CNUTypes.INTEGER;
-      }
-      else {
+      if((bbuffer == null) && (ibuffer == null)) {
 	boutbuffer = null;
 	ioutbuffer = null;
 	return;
       }
-
       if((! rgbonly) && (sourceColorModel instanceof IndexColorModel)) {
 	// average index value and output input color model
 	produceColorModel = sourceColorModel;
-	int outtype;
-	Object outarray;
 	if(bbuffer != null) {
 	  if((boutbuffer == null) || (boutbuffer.length < outLength))
 	    boutbuffer = new byte[outLength];
-	  outarray = boutbuffer;
-	  outtype = CNUTypes.UNSIGNED_BYTE;
 	}
 	else {
 	  if((ioutbuffer == null) || (ioutbuffer.length < outLength))
 	    ioutbuffer = new int[outLength];
-	  outarray = ioutbuffer;
-	  outtype = CNUTypes.INTEGER;
-	}
-
-	for(out.y = 0; out.y < outHeight;
-	    out.y++, inYpos[0] += incY[0], inYpos[1] += incY[1] ) {
-	  inXpos[0] = inYpos[0]; inXpos[1] = inYpos[1];
-	  for(out.x = 0; out.x < outWidth;
-	      out.x++, outIndex++, inXpos[0] += incX[0], inXpos[1] += incX[1] ) {
-	    if((inXpos[0] < 0) || (inXpos[1] < 0) ||
-	       (inXpos[0] >= inWidth) || (inXpos[1] >= inHeight)) {
-	      CNUTypes.setArrayValue(0, outarray, outIndex, outtype);
-	    }
-	    else {
-	      int xLesserIndex = (int) inXpos[0];
-	      int xGreaterIndex = xLesserIndex + 1;
-	      if( xGreaterIndex >= inWidth ) {
-		xGreaterIndex = inWidth - 1;
-		if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
-	      }
-	      double xGreaterFactor = inXpos[0] - ((double) xLesserIndex);
-	      double xLesserFactor = 1.0 - xGreaterFactor;
-	      int yLesser = (int) inXpos[1];
-	      int yGreater = yLesser + 1;
-	      if(yGreater >= inHeight) {
-		yGreater = inHeight - 1;
-		if(yLesser >= inHeight) yLesser = inHeight - 1;
-	      }
-	      int yLesserIndex = yLesser * inWidth;
-	      int yGreaterIndex = yGreater * inWidth;
-	      double yGreaterFactor = inXpos[1] - ((double) yLesser);
-	      double yLesserFactor = 1.0 - yGreaterFactor;
-
-	      double ll =
-		CNUTypes.getArrayValueAsDouble(inarray,
-					       yLesserIndex + xLesserIndex,
-					       intype);
-	      double lg =
-		CNUTypes.getArrayValueAsDouble(inarray,
-					       yLesserIndex + xGreaterIndex,
-					       intype);
-	      double gl =
-		CNUTypes.getArrayValueAsDouble(inarray,
-					       yGreaterIndex + xLesserIndex,
-					       intype);
-	      double gg =
-		CNUTypes.getArrayValueAsDouble(inarray,
-					       yGreaterIndex + xGreaterIndex,
-					       intype);
-	      double outvalue =
-		yLesserFactor  * ((xLesserFactor * ll) + (xGreaterFactor * lg)) +
-		yGreaterFactor * ((xLesserFactor * gl) + (xGreaterFactor * gg));
-	      CNUTypes.setArrayValue(outvalue, outarray, outIndex, outtype);
-	    }
-	  }
 	}
+	fillRowTiles(AVERAGE_INDEX_ROWS, 4);
       }
       else {
 	// average rgb values and output default rgb color model
+	boutbuffer = null;
 	if((ioutbuffer == null) || (ioutbuffer.length < outLength))
 	  ioutbuffer = new int[outLength];
 	// ioutbuffer stored as rgbdefault model
 	produceColorModel = ColorModel.getRGBdefault();
+	fillRowTiles(AVERAGE_RGB_ROWS, 16);
+      }
+    }
+  }
+  /**
+   * Fills output rows with the bilinear average of surrounding index
+   * values.
+   *
+   * @param firstRow	first output row to fill
+   * @param endRow	output row after the last to fill
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   * @param incY	input increment per output row
+   */
+  private void averageIndexRows(int firstRow, int endRow, double[] origin,
+				double[] incX, double[] incY) {
+    Object inarray = (bbuffer != null) ? (Object) bbuffer : (Object) ibuffer;
+    int intype = (bbuffer != null) ? CNUTypes.UNSIGNED_BYTE : CNUTypes.INTEGER;
+    Object outarray = (bbuffer != null) ? (Object) boutbuffer : (Object) ioutbuffer;
+    int outtype = intype;
+    for(int y = firstRow; y < endRow; y++) {
+      double inX = origin[0] + y * incY[0];
+      double inY = origin[1] + y * incY[1];
+      int outIndex = y * outWidth;
+      for(int x = 0; x < outWidth; x++, outIndex++,
+	    inX += incX[0], inY += incX[1]) {
+	if((inX < 0) || (inY < 0) || (inX >= inWidth) || (inY >= inHeight)) {
+	  CNUTypes.setArrayValue(0, outarray, outIndex, outtype);
+	  continue;
+	}
+	int xLesserIndex = (int) inX;
+	int xGreaterIndex = xLesserIndex + 1;
+	if( xGreaterIndex >= inWidth ) {
+	  xGreaterIndex = inWidth - 1;
+	  if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
+	}
+	double xGreaterFactor = inX - ((double) xLesserIndex);
+	double xLesserFactor = 1.0 - xGreaterFactor;
+	int yLesser = (int) inY;
+	int yGreater = yLesser + 1;
+	if(yGreater >= inHeight) {
+	  yGreater = inHeight - 1;
+	  if(yLesser >= inHeight) yLesser = inHeight - 1;
+	}
+	int yLesserIndex = inOffset + yLesser * inScan;
+	int yGreaterIndex = inOffset + yGreater * inScan;
+	double yGreaterFactor = inY - ((double) yLesser);
+	double yLesserFactor = 1.0 - yGreaterFactor;
 
-	for(out.y = 0; out.y < outHeight;
-	    out.y++, inYpos[0] += incY[0], inYpos[1] += incY[1] ) {
-	  inXpos[0] = inYpos[0]; inXpos[1] = inYpos[1];
-	  for(out.x = 0; out.x < outWidth;
-	      out.x++, outIndex++, inXpos[0] += incX[0], inXpos[1] += incX[1] ) {
-	    if((inXpos[0] < 0) || (inXpos[1] < 0) ||
-	       (inXpos[0] >= inWidth) || (inXpos[1] >= inHeight)) {
-	      ioutbuffer[outIndex] = 0;
-	    }
-	    else {
-	      int xLesserIndex = (int) inXpos[0];
-	      int xGreaterIndex = xLesserIndex + 1;
-	      if( xGreaterIndex >= inWidth ) {
-		xGreaterIndex = inWidth - 1;
-		if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
-	      }
-	      double xGreaterFactor = inXpos[0] - ((double) xLesserIndex);
-	      double xLesserFactor = 1.0 - xGreaterFactor;
-	      int yLesser = (int) inXpos[1];
-	      int yGreater = yLesser + 1;
-	      if(yGreater >= inHeight) {
-		yGreater = inHeight - 1;
-		if(yLesser >= inHeight) yLesser = inHeight - 1;
-	      }
-	      int yLesserIndex = yLesser * inWidth;
-	      int yGreaterIndex = yGreater * inWidth;
-	      double yGreaterFactor = inXpos[1] - ((double) yLesser);
-	      double yLesserFactor = 1.0 - yGreaterFactor;
+	double ll =
+	  CNUTypes.getArrayValueAsDouble(inarray, yLesserIndex + xLesserIndex,
+					 intype);
+	double lg =
+	  CNUTypes.getArrayValueAsDouble(inarray, yLesserIndex + xGreaterIndex,
+					 intype);
+	double gl =
+	  CNUTypes.getArrayValueAsDouble(inarray, yGreaterIndex + xLesserIndex,
+					 intype);
+	double gg =
+	  CNUTypes.getArrayValueAsDouble(inarray, yGreaterIndex + xGreaterIndex,
+					 intype);
+	double outvalue =
+	  yLesserFactor  * ((xLesserFactor * ll) + (xGreaterFactor * lg)) +
+	  yGreaterFactor * ((xLesserFactor * gl) + (xGreaterFactor * gg));
+	CNUTypes.setArrayValue(outvalue, outarray, outIndex, outtype);
+      }
+    }
+  }
+  /**
+   * Fills output rows with the bilinear average of surrounding colors
+   * as default rgb values.
+   *
+   * @param firstRow	first output row to fill
+   * @param endRow	output row after the last to fill
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   * @param incY	input increment per output row
+   */
+  private void averageRGBRows(int firstRow, int endRow, double[] origin,
+			      double[] incX, double[] incY) {
+    Object inarray = (bbuffer != null) ? (Object) bbuffer : (Object) ibuffer;
+    int intype = (bbuffer != null) ? CNUTypes.UNSIGNED_BYTE : CNUTypes.INTEGER;
+    for(int y = firstRow; y < endRow; y++) {
+      double inX = origin[0] + y * incY[0];
+      double inY = origin[1] + y * incY[1];
+      int outIndex = y * outWidth;
+      for(int x = 0; x < outWidth; x++, outIndex++,
+	    inX += incX[0], inY += incX[1]) {
+	if((inX < 0) || (inY < 0) || (inX >= inWidth) || (inY >= inHeight)) {
+	  ioutbuffer[outIndex] = 0;
+	  continue;
+	}
+	int xLesserIndex = (int) inX;
+	int xGreaterIndex = xLesserIndex + 1;
+	if( xGreaterIndex >= inWidth ) {
+	  xGreaterIndex = inWidth - 1;
+	  if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
+	}
+	double xGreaterFactor = inX - ((double) xLesserIndex);
+	double xLesserFactor = 1.0 - xGreaterFactor;
+	int yLesser = (int) inY;
+	int yGreater = yLesser + 1;
+	if(yGreater >= inHeight) {
+	  yGreater = inHeight - 1;
+	  if(yLesser >= inHeight) yLesser = inHeight - 1;
+	}
+	int yLesserIndex = inOffset + yLesser * inScan;
+	int yGreaterIndex = inOffset + yGreater * inScan;
+	double yGreaterFactor = inY - ((double) yLesser);
+	double yLesserFactor = 1.0 - yGreaterFactor;
 
-	      int color =
-		CNUTypes.getArrayValueAsInt(inarray,
-					    yLesserIndex + xLesserIndex,
-					    intype);
-	      double factor = yLesserFactor * xLesserFactor;
-	      double ad = factor * ( (double) sourceColorModel.getAlpha(color) );
-	      double rd = factor * ( (double) sourceColorModel.getRed(color) );
-	      double gd = factor * ( (double) sourceColorModel.getGreen(color) );
-	      double bd = factor * ( (double) sourceColorModel.getBlue(color) );
-	      
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
-					    yLesserIndex + xGreaterIndex,
-					    intype);
-	      factor = yLesserFactor * xGreaterFactor;
-	      ad += factor * ( (double) sourceColorModel.getAlpha(color) );
-	      rd += factor * ( (double) sourceColorModel.getRed(color) );
-	      gd += factor * ( (double) sourceColorModel.getGreen(color) );
-	      bd += factor * ( (double) sourceColorModel.getBlue(color) );
+	int color =
+	  CNUTypes.getArrayValueAsInt(inarray, yLesserIndex + xLesserIndex,
+				      intype);
+	double factor = yLesserFactor * xLesserFactor;
+	double ad = factor * ( (double) sourceColorModel.getAlpha(color) );
+	double rd = factor * ( (double) sourceColorModel.getRed(color) );
+	double gd = factor * ( (double) sourceColorModel.getGreen(color) );
+	double bd = factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
-					    yGreaterIndex + xLesserIndex,
-					    intype);
-	      
-	      factor = yGreaterFactor * xLesserFactor;
-	      ad += factor * ( (double) sourceColorModel.getAlpha(color) );
-	      rd += factor * ( (double) sourceColorModel.getRed(color) );
-	      gd += factor * ( (double) sourceColorModel.getGreen(color) );
-	      bd += factor * ( (double) sourceColorModel.getBlue(color) );
+	color =
+	  CNUTypes.getArrayValueAsInt(inarray, yLesserIndex + xGreaterIndex,
+				      intype);
+	factor = yLesserFactor * xGreaterFactor;
+	ad += factor * ( (double) sourceColorModel.getAlpha(color) );
+	rd += factor * ( (double) sourceColorModel.getRed(color) );
+	gd += factor * ( (double) sourceColorModel.getGreen(color) );
+	bd += factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
-					    yGreaterIndex + xGreaterIndex,
-					    intype);
+	color =
+	  CNUTypes.getArrayValueAsInt(inarray, yGreaterIndex + xLesserIndex,
+				      intype);
+	factor = yGreaterFactor * xLesserFactor;
+	ad += factor * ( (double) sourceColorModel.getAlpha(color) );
+	rd += factor * ( (double) sourceColorModel.getRed(color) );
+	gd += factor * ( (double) sourceColorModel.getGreen(color) );
+	bd += factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      factor = yGreaterFactor * xGreaterFactor;
-	      ad += factor * ( (double) sourceColorModel.getAlpha(color) );
-	      rd += factor * ( (double) sourceColorModel.getRed(color) );
-	      gd += factor * ( (double) sourceColorModel.getGreen(color) );
-	      bd += factor * ( (double) sourceColorModel.getBlue(color) );
+	color =
+	  CNUTypes.getArrayValueAsInt(inarray, yGreaterIndex + xGreaterIndex,
+				      intype);
+	factor = yGreaterFactor * xGreaterFactor;
+	ad += factor * ( (double) sourceColorModel.getAlpha(color) );
+	rd += factor * ( (double) sourceColorModel.getRed(color) );
+	gd += factor * ( (double) sourceColorModel.getGreen(color) );
+	bd += factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      // recombine the colors into as the default rgb color model
-	      int a = ((int) Math.round(ad)) & 255;
-	      int r = ((int) Math.round(rd)) & 255;
-	      int g = ((int) Math.round(gd)) & 255;
-	      int b = ((int) Math.round(bd)) & 255;
-	      ioutbuffer[outIndex] = (a << 24) | (r << 16) | (g << 8) | b;
-	    }
-	  }
-	}
+	// recombine the colors into as the default rgb color model
+	int a = ((int) Math.round(ad)) & 255;
+	int r = ((int) Math.round(rd)) & 255;
+	int g = ((int) Math.round(gd)) & 255;
+	int b = ((int) Math.round(bd)) & 255;
+	ioutbuffer[outIndex] = (a << 24) | (r << 16) | (g << 8) | b;
       }
     }
   }
@@ -785,138 +884,23 @@ public class LinearImageFilter implements ImageConsumer,
   public void averageAlphaWeightedFillBuffer(boolean rgbonly) {
     synchronized (parameterLock) {
       int outLength = outWidth * outHeight;
-
-      // calculate double precision locations and increments
-      double[] outTmp = new double[2];
-      outTmp[0] = 0; outTmp[1] = 0;
-      double[] inYpos = invertMap(outTmp);
-      outTmp[0] = 1;
-      double[] incX = invertMap(outTmp);
-      incX[0] = incX[0] - inYpos[0]; incX[1] = incX[1] - inYpos[1];
-      outTmp[0] = 0; outTmp[1] = 1;
-      double[] incY = invertMap(outTmp);
-      incY[0] = incY[0] - inYpos[0]; incY[1] = incY[1] - inYpos[1];
-      double[] inXpos = new double[2];
-      // integer locations
-      Point out = new Point(0, 0);
-      int outIndex = 0;
-
-      Object inarray;
-      int intype;
-      if(bbuffer != null) {
-	inarray = bbuffer;
-	intype = CNUTypes.UNSIGNED_BYTE;
-      }
-      else if(ibuffer != null) {
-	inarray = ibuffer;
-	intype = CNUTypes.INTEGER;
-      }
-      else {
+      if((bbuffer == null) && (ibuffer == null)) {
 	boutbuffer = null;
 	ioutbuffer = null;
 	return;
       }
-
       if((! rgbonly) && (sourceColorModel instanceof IndexColorModel)) {
 	// averaging index value and output input color model
 	produceColorModel = sourceColorModel;
-	int outtype;
-	Object outarray;
 	if(bbuffer != null) {
 	  if((boutbuffer == null) || (boutbuffer.length < outLength))
 	    boutbuffer = new byte[outLength];
-	  outarray = boutbuffer;
-	  outtype = CNUTypes.UNSIGNED_BYTE;
 	}
 	else {
 	  if((ioutbuffer == null) || (ioutbuffer.length < outLength))
 	    ioutbuffer = new int[outLength];
-	  outarray = ioutbuffer;
-	  outtype = CNUTypes.INTEGER;
-	}
-
-	int transparentPixel =
-	  ((IndexColorModel) sourceColorModel).getTransparentPixel();
-
-	for( out.y = 0; out.y < outHeight; out.y++,
-	       inYpos[0] += incY[0], inYpos[1] += incY[1] ) {
-	  inXpos[0] = inYpos[0]; inXpos[1] = inYpos[1];
-	  for( out.x = 0; out.x < outWidth; out.x++, outIndex++,
-		 inXpos[0] += incX[0], inXpos[1] += incX[1] ) {
-	    if((inXpos[0] < 0) || (inXpos[1] < 0) ||
-	       (inXpos[0] >= inWidth) || (inXpos[1] >= inHeight)) {
-	      CNUTypes.setArrayValue(0, outarray, outIndex, outtype);
-	    }
-	    else {
-	      int xLesserIndex = (int) inXpos[0];
-	      int xGreaterIndex = xLesserIndex + 1;
-	      if( xGreaterIndex >= inWidth ) {
-		xGreaterIndex = inWidth - 1;
-		if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
-	      }
-	      double xGreaterFactor = inXpos[0] - ((double) xLesserIndex);
-	      double xLesserFactor = 1.0 - xGreaterFactor;
-	      int yLesser = (int) inXpos[1];
-	      int yGreater = yLesser + 1;
-	      if(yGreater >= inHeight) {
-		yGreater = inHeight - 1;
-		if(yLesser >= inHeight) yLesser = inHeight - 1;
-	      }
-	      int yLesserIndex = yLesser * inWidth;
-	      int yGreaterIndex = yGreater * inWidth;
-	      double yGreaterFactor = inXpos[1] - ((double) yLesser);
-	      double yLesserFactor = 1.0 - yGreaterFactor;
-
-	      double factor = yLesserFactor * xLesserFactor;
-	      int color = CNUTypes.getArrayValueAsInt(inarray,
-						      yLesserIndex + xLesserIndex,
-						      intype);
-	      double alpha;
-	      if(color == transparentPixel) alpha = 0.0;
-	      else alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      double total_factor = factor;
-
-	      double newcolor = factor * (double) color;
-
-	      factor = yLesserFactor * xGreaterFactor;
-	      color = CNUTypes.getArrayValueAsInt(inarray,
-						  yLesserIndex + xGreaterIndex,
-						  intype);
-	      if(color == transparentPixel) alpha = 0.0;
-	      else alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      total_factor += factor;
-	      newcolor += factor * (double) color;
-
-	      factor = yGreaterFactor * xLesserFactor;
-	      color = CNUTypes.getArrayValueAsInt(inarray,
-						  yGreaterIndex + xLesserIndex,
-						  intype);
-	      if(color == transparentPixel) alpha = 0.0;
-	      else alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      total_factor += factor;
-	      newcolor += factor * (double) color;
-
-	      factor = yGreaterFactor * xGreaterFactor;
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
-					    yGreaterIndex + xGreaterIndex,
-					    intype);
-	      if(color == transparentPixel) alpha = 0.0;
-	      else alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      total_factor += factor;
-
-	      newcolor += factor * (double) color;
-
-	      if(total_factor > 1e-16) newcolor /= total_factor;
-
-	      CNUTypes.setArrayValue(newcolor, outarray, outIndex, outtype);
-	    }
-	  }
 	}
+	fillRowTiles(ALPHA_WEIGHTED_INDEX_ROWS, 8);
       }
       else {
 	// average rgb values and output default rgb color model
@@ -924,110 +908,424 @@ public class LinearImageFilter implements ImageConsumer,
 	boutbuffer = null;
 	if((ioutbuffer == null) || (ioutbuffer.length < outLength))
 	  ioutbuffer = new int[outLength];
+	fillRowTiles(ALPHA_WEIGHTED_RGB_ROWS, 16);
+      }
+    }
+  }
+  /**
+   * Fills output rows with the alpha weighted bilinear average of
+   * surrounding index values.
+   *
+   * @param firstRow	first output row to fill
+   * @param endRow	output row after the last to fill
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   * @param incY	input increment per output row
+   */
+  private void alphaWeightedIndexRows(int firstRow, int endRow,
+				      double[] origin, double[] incX,
+				      double[] incY) {
+    Object inarray = (bbuffer != null) ? (Object) bbuffer : (Object) ibuffer;
+    int intype = (bbuffer != null) ? CNUTypes.UNSIGNED_BYTE : CNUTypes.INTEGER;
+    Object outarray = (bbuffer != null) ? (Object) boutbuffer : (Object) ioutbuffer;
+    int outtype = intype;
+    int transparentPixel =
+      ((IndexColorModel) sourceColorModel).getTransparentPixel();
+    for(int y = firstRow; y < endRow; y++) {
+      double inX = origin[0] + y * incY[0];
+      double inY = origin[1] + y * incY[1];
+      int outIndex = y * outWidth;
+      for(int x = 0; x < outWidth; x++, outIndex++,
+	    inX += incX[0], inY += incX[1]) {
+	if((inX < 0) || (inY < 0) || (inX >= inWidth) || (inY >= inHeight)) {
+	  CNUTypes.setArrayValue(0, outarray, outIndex, outtype);
+	  continue;
+	}
+	int xLesserIndex = (int) inX;
+	int xGreaterIndex = xLesserIndex + 1;
+	if( xGreaterIndex >= inWidth ) {
+	  xGreaterIndex = inWidth - 1;
+	  if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
+	}
+	double xGreaterFactor = inX - ((double) xLesserIndex);
+	double xLesserFactor = 1.0 - xGreaterFactor;
+	int yLesser = (int) inY;
+	int yGreater = yLesser + 1;
+	if(yGreater >= inHeight) {
+	  yGreater = inHeight - 1;
+	  if(yLesser >= inHeight) yLesser = inHeight - 1;
+	}
+	int yLesserIndex = inOffset + yLesser * inScan;
+	int yGreaterIndex = inOffset + yGreater * inScan;
+	double yGreaterFactor = inY - ((double) yLesser);
+	double yLesserFactor = 1.0 - yGreaterFactor;
 
-	for( out.y = 0; out.y < outHeight; out.y++,
-	       inYpos[0] += incY[0], inYpos[1] += incY[1] ) {
-	  inXpos[0] = inYpos[0]; inXpos[1] = inYpos[1];
-	  for( out.x = 0; out.x < outWidth; out.x++, outIndex++,
-		 inXpos[0] += incX[0], inXpos[1] += incX[1] ) {
-	    if((inXpos[0] < 0) || (inXpos[1] < 0) ||
-	       (inXpos[0] >= inWidth) || (inXpos[1] >= inHeight)) {
-	      ioutbuffer[outIndex] = 0;
-	    }
-	    else {
-	      int xLesserIndex = (int) inXpos[0];
-	      int xGreaterIndex = xLesserIndex + 1;
-	      if( xGreaterIndex >= inWidth ) {
-		xGreaterIndex = inWidth - 1;
-		if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
-	      }
-	      double xGreaterFactor = inXpos[0] - ((double) xLesserIndex);
-	      double xLesserFactor = 1.0 - xGreaterFactor;
-	      int yLesser = (int) inXpos[1];
-	      int yGreater = yLesser + 1;
-	      if(yGreater >= inHeight) {
-		yGreater = inHeight - 1;
-		if(yLesser >= inHeight) yLesser = inHeight - 1;
-	      }
-	      int yLesserIndex = yLesser * inWidth;
-	      int yGreaterIndex = yGreater * inWidth;
-	      double yGreaterFactor = inXpos[1] - ((double) yLesser);
-	      double yLesserFactor = 1.0 - yGreaterFactor;
-
-	      int color =
-		CNUTypes.getArrayValueAsInt(inarray,
-					    yLesserIndex + xLesserIndex,
-					    intype);
-	      
-	      double factor = yLesserFactor * xLesserFactor;
-	      double alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      double total_factor = factor;
-	      
-	      double ad = factor * alpha;
-	      double rd = factor * ( (double) sourceColorModel.getRed(color) );
-	      double gd = factor * ( (double) sourceColorModel.getGreen(color) );
-	      double bd = factor * ( (double) sourceColorModel.getBlue(color) );
+	double factor = yLesserFactor * xLesserFactor;
+	int color = CNUTypes.getArrayValueAsInt(inarray,
+						yLesserIndex + xLesserIndex,
+						intype);
+	double alpha;
+	if(color == transparentPixel) alpha = 0.0;
+	else alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	double total_factor = factor;
+	double newcolor = factor * (double) color;
 
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
+	factor = yLesserFactor * xGreaterFactor;
+	color = CNUTypes.getArrayValueAsInt(inarray,
 					    yLesserIndex + xGreaterIndex,
 					    intype);
+	if(color == transparentPixel) alpha = 0.0;
+	else alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	total_factor += factor;
+	newcolor += factor * (double) color;
 
-	      factor = yLesserFactor * xGreaterFactor;
-	      alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      total_factor += factor;
-
-	      ad += factor * alpha;
-	      rd += factor * ( (double) sourceColorModel.getRed(color) );
-	      gd += factor * ( (double) sourceColorModel.getGreen(color) );
-	      bd += factor * ( (double) sourceColorModel.getBlue(color) );
-
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
+	factor = yGreaterFactor * xLesserFactor;
+	color = CNUTypes.getArrayValueAsInt(inarray,
 					    yGreaterIndex + xLesserIndex,
 					    intype);
-	      factor = yGreaterFactor * xLesserFactor;
-	      alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      total_factor += factor;
+	if(color == transparentPixel) alpha = 0.0;
+	else alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	total_factor += factor;
+	newcolor += factor * (double) color;
 
-	      ad += factor * alpha;
-	      rd += factor * ( (double) sourceColorModel.getRed(color) );
-	      gd += factor * ( (double) sourceColorModel.getGreen(color) );
-	      bd += factor * ( (double) sourceColorModel.getBlue(color) );
-
-	      color =
-		CNUTypes.getArrayValueAsInt(inarray,
+	factor = yGreaterFactor * xGreaterFactor;
+	color = CNUTypes.getArrayValueAsInt(inarray,
 					    yGreaterIndex + xGreaterIndex,
 					    intype);
+	if(color == transparentPixel) alpha = 0.0;
+	else alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	total_factor += factor;
+	newcolor += factor * (double) color;
+
+	if(total_factor > 1e-16) newcolor /= total_factor;
+
+	CNUTypes.setArrayValue(newcolor, outarray, outIndex, outtype);
+      }
+    }
+  }
+  /**
+   * Fills output rows with the alpha weighted bilinear average of
+   * surrounding colors as default rgb values.
+   *
+   * @param firstRow	first output row to fill
+   * @param endRow	output row after the last to fill
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   * @param incY	input increment per output row
+   */
+  private void alphaWeightedRGBRows(int firstRow, int endRow,
+				    double[] origin, double[] incX,
+				    double[] incY) {
+    Object inarray = (bbuffer != null) ? (Object) bbuffer : (Object) ibuffer;
+    int intype = (bbuffer != null) ? CNUTypes.UNSIGNED_BYTE : CNUTypes.INTEGER;
+    for(int y = firstRow; y < endRow; y++) {
+      double inX = origin[0] + y * incY[0];
+      double inY = origin[1] + y * incY[1];
+      int outIndex = y * outWidth;
+      for(int x = 0; x < outWidth; x++, outIndex++,
+	    inX += incX[0], inY += incX[1]) {
+	if((inX < 0) || (inY < 0) || (inX >= inWidth) || (inY >= inHeight)) {
+	  ioutbuffer[outIndex] = 0;
+	  continue;
+	}
+	int xLesserIndex = (int) inX;
+	int xGreaterIndex = xLesserIndex + 1;
+	if( xGreaterIndex >= inWidth ) {
+	  xGreaterIndex = inWidth - 1;
+	  if( xLesserIndex >= inWidth ) xLesserIndex = inWidth - 1;
+	}
+	double xGreaterFactor = inX - ((double) xLesserIndex);
+	double xLesserFactor = 1.0 - xGreaterFactor;
+	int yLesser = (int) inY;
+	int yGreater = yLesser + 1;
+	if(yGreater >= inHeight) {
+	  yGreater = inHeight - 1;
+	  if(yLesser >= inHeight) yLesser = inHeight - 1;
+	}
+	int yLesserIndex = inOffset + yLesser * inScan;
+	int yGreaterIndex = inOffset + yGreater * inScan;
+	double yGreaterFactor = inY - ((double) yLesser);
+	double yLesserFactor = 1.0 - yGreaterFactor;
 
-	      factor = yGreaterFactor * xGreaterFactor;
-	      alpha = (double) sourceColorModel.getAlpha(color);
-	      factor *= alpha/255.0;
-	      total_factor += factor;
+	int color =
+	  CNUTypes.getArrayValueAsInt(inarray, yLesserIndex + xLesserIndex,
+				      intype);
+	double factor = yLesserFactor * xLesserFactor;
+	double alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	double total_factor = factor;
+	double ad = factor * alpha;
+	double rd = factor * ( (double) sourceColorModel.getRed(color) );
+	double gd = factor * ( (double) sourceColorModel.getGreen(color) );
+	double bd = factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      ad += factor * alpha;
-	      rd += factor * ( (double) sourceColorModel.getRed(color) );
-	      gd += factor * ( (double) sourceColorModel.getGreen(color) );
-	      bd += factor * ( (double) sourceColorModel.getBlue(color) );
+	color =
+	  CNUTypes.getArrayValueAsInt(inarray, yLesserIndex + xGreaterIndex,
+				      intype);
+	factor = yLesserFactor * xGreaterFactor;
+	alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	total_factor += factor;
+	ad += factor * alpha;
+	rd += factor * ( (double) sourceColorModel.getRed(color) );
+	gd += factor * ( (double) sourceColorModel.getGreen(color) );
+	bd += factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      if(total_factor > 1e-16) total_factor = 1.0/total_factor;
-	      else total_factor = 1.0;
+	color =
+	  CNUTypes.getArrayValueAsInt(inarray, yGreaterIndex + xLesserIndex,
+				      intype);
+	factor = yGreaterFactor * xLesserFactor;
+	alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	total_factor += factor;
+	ad += factor * alpha;
+	rd += factor * ( (double) sourceColorModel.getRed(color) );
+	gd += factor * ( (double) sourceColorModel.getGreen(color) );
+	bd += factor * ( (double) sourceColorModel.getBlue(color) );
 
-	      // recombine the colors into as the default rgb color model
-	      int a = ((int) Math.round(ad * total_factor)) & 255;
-	      int r = ((int) Math.round(rd * total_factor)) & 255;
-	      int g = ((int) Math.round(gd * total_factor)) & 255;
-	      int b = ((int) Math.round(bd * total_factor)) & 255;
-	      ioutbuffer[outIndex] = (a << 24) | (r << 16) | (g << 8) | b;
-	    }
+	color =
+	  CNUTypes.getArrayValueAsInt(inarray, yGreaterIndex + xGreaterIndex,
+				      intype);
+	factor = yGreaterFactor * xGreaterFactor;
+	alpha = (double) sourceColorModel.getAlpha(color);
+	factor *= alpha/255.0;
+	total_factor += factor;
+	ad += factor * alpha;
+	rd += factor * ( (double) sourceColorModel.getRed(color) );
+	gd += factor * ( (double) sourceColorModel.getGreen(color) );
+	bd += factor * ( (double) sourceColorModel.getBlue(color) );
+
+	if(total_factor > 1e-16) total_factor = 1.0/total_factor;
+	else total_factor = 1.0;
+
+	// recombine the colors into as the default rgb color model
+	int a = ((int) Math.round(ad * total_factor)) & 255;
+	int r = ((int) Math.round(rd * total_factor)) & 255;
+	int g = ((int) Math.round(gd * total_factor)) & 255;
+	int b = ((int) Math.round(bd * total_factor)) & 255;
+	ioutbuffer[outIndex] = (a << 24) | (r << 16) | (g << 8) | b;
+      }
+    }
+  }
+  /**
+   * Fills (creates if needed) an output integer buffer with
+   * bilinear or bicubic resampling of surrounding colors as default rgb
+   * values.  Colors are weighted by alpha.  When the transform has no
+   * rotation the input columns and weights for each output column are
+   * computed once per fill.
+   *
+   * @param bicubic	if <code>true</code> uses bicubic (Catmull-Rom)
+   *			weights over 4x4 pixels, otherwise bilinear
+   *			weights over 2x2 pixels
+   */
+  public void resampleFillBuffer(boolean bicubic) {
+    synchronized (parameterLock) {
+      int outLength = outWidth * outHeight;
+      if((bbuffer == null) && (ibuffer == null)) {
+	boutbuffer = null;
+	ioutbuffer = null;
+	return;
+      }
+      produceColorModel = ColorModel.getRGBdefault();
+      boutbuffer = null;
+      if((ioutbuffer == null) || (ioutbuffer.length < outLength))
+	ioutbuffer = new int[outLength];
+      buildSourceRGB();
+      resampleTaps = bicubic ? 4 : 2;
+      fillRowTiles(RESAMPLE_ROWS, bicubic ? 48 : 16);
+      sourceRGB = null;
+      columnIndex = null;
+      columnWeight = null;
+    }
+  }
+  /**
+   * Builds the input columns and weights sampled by each output column.
+   * Columns outside the input get index <code>-1</code>.
+   *
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   */
+  private void buildColumnTables(double[] origin, double[] incX) {
+    int taps = resampleTaps;
+    columnIndex = new int[outWidth * taps];
+    columnWeight = new double[outWidth * taps];
+    for(int x = 0; x < outWidth; x++) {
+      double inX = origin[0] + x * incX[0];
+      if((inX < 0) || (inX >= inWidth)) columnIndex[x * taps] = -1;
+      else sampleIndices(inX, inWidth, taps, columnIndex, columnWeight,
+			 x * taps);
+    }
+  }
+  /**
+   * Calculates the input indices and weights to sample at a location
+   * along one dimension.  Indices beyond the edges are clamped.
+   *
+   * @param location	input location
+   * @param size	input size along the dimension
+   * @param taps	2 for bilinear or 4 for bicubic
+   * @param indices	array to put indices into
+   * @param weights	array to put weights into
+   * @param offset	offset into the arrays
+   */
+  private static void sampleIndices(double location, int size, int taps,
+				    int[] indices, double[] weights,
+				    int offset) {
+    int base = (int) Math.floor(location);
+    double f = location - base;
+    if(taps == 2) {
+      weights[offset] = 1.0 - f;
+      weights[offset + 1] = f;
+    }
+    else {
+      // Catmull-Rom cubic convolution
+      double f2 = f * f;
+      double f3 = f2 * f;
+      weights[offset] = 0.5 * (-f3 + 2.0 * f2 - f);
+      weights[offset + 1] = 0.5 * (3.0 * f3 - 5.0 * f2 + 2.0);
+      weights[offset + 2] = 0.5 * (-3.0 * f3 + 4.0 * f2 + f);
+      weights[offset + 3] = 0.5 * (f3 - f2);
+    }
+    int first = base - (taps / 2) + 1;
+    for(int k = 0; k < taps; k++) {
+      int index = first + k;
+      if(index < 0) index = 0;
+      else if(index >= size) index = size - 1;
+      indices[offset + k] = index;
+    }
+  }
+  /**
+   * Converts the input pixels to default rgb colors once so each
+   * output pixel reads its samples without color model lookups.
+   */
+  private void buildSourceRGB() {
+    int inLength = inWidth * inHeight;
+    if((sourceRGB == null) || (sourceRGB.length < inLength))
+      sourceRGB = new int[inLength];
+    int[] rgbTable = null;
+    if(sourceColorModel instanceof IndexColorModel) {
+      IndexColorModel icm = (IndexColorModel) sourceColorModel;
+      rgbTable = new int[icm.getMapSize()];
+      icm.getRGBs(rgbTable);
+    }
+    boolean rgbDefault = ColorModel.getRGBdefault().equals(sourceColorModel);
+    for(int y = 0, outIndex = 0; y < inHeight; y++) {
+      int inIndex = inOffset + y * inScan;
+      for(int x = 0; x < inWidth; x++, inIndex++, outIndex++) {
+	int pixel = (bbuffer != null) ? (bbuffer[inIndex] & 0xff) :
+	  ibuffer[inIndex];
+	if(rgbTable != null)
+	  sourceRGB[outIndex] =
+	    ((pixel < 0) || (pixel >= rgbTable.length)) ? 0 : rgbTable[pixel];
+	else if(rgbDefault) sourceRGB[outIndex] = pixel;
+	else sourceRGB[outIndex] = sourceColorModel.getRGB(pixel);
+      }
+    }
+  }
+  /**
+   * Fills output rows with bilinear or bicubic resampling of
+   * surrounding colors as default rgb values.
+   *
+   * @param firstRow	first output row to fill
+   * @param endRow	output row after the last to fill
+   * @param origin	input location of output pixel 0, 0
+   * @param incX	input increment per output column
+   * @param incY	input increment per output row
+   */
+  private void resampleRows(int firstRow, int endRow, double[] origin,
+			    double[] incX, double[] incY) {
+    int taps = resampleTaps;
+    int[] rowIndex = new int[taps];
+    double[] rowWeight = new double[taps];
+    int[] colIndex = columnIndex;
+    double[] colWeight = columnWeight;
+    if(colIndex == null) {
+      colIndex = new int[taps];
+      colWeight = new double[taps];
+    }
+    for(int y = firstRow; y < endRow; y++) {
+      double inX = origin[0] + y * incY[0];
+      double inY = origin[1] + y * incY[1];
+      int outIndex = y * outWidth;
+      if(columnIndex != null) {
+	// no rotation - row weights are constant along the row
+	if((inY < 0) || (inY >= inHeight)) {
+	  for(int x = 0; x < outWidth; x++, outIndex++) ioutbuffer[outIndex] = 0;
+	  continue;
+	}
+	sampleIndices(inY, inHeight, taps, rowIndex, rowWeight, 0);
+	for(int x = 0, col = 0; x < outWidth; x++, outIndex++, col += taps) {
+	  if(colIndex[col] < 0) ioutbuffer[outIndex] = 0;
+	  else ioutbuffer[outIndex] =
+		 resamplePixel(taps, colIndex, colWeight, col,
+			       rowIndex, rowWeight);
+	}
+      }
+      else {
+	for(int x = 0; x < outWidth; x++, outIndex++,
+	      inX += incX[0], inY += incX[1]) {
+	  if((inX < 0) || (inY < 0) || (inX >= inWidth) || (inY >= inHeight)) {
+	    ioutbuffer[outIndex] = 0;
+	    continue;
 	  }
+	  sampleIndices(inX, inWidth, taps, colIndex, colWeight, 0);
+	  sampleIndices(inY, inHeight, taps, rowIndex, rowWeight, 0);
+	  ioutbuffer[outIndex] =
+	    resamplePixel(taps, colIndex, colWeight, 0, rowIndex, rowWeight);
 	}
       }
     }
   }
+  /**
+   * Combines the alpha weighted colors of taps by taps input pixels.
+   *
+   * @param taps	2 for bilinear or 4 for bicubic
+   * @param colIndex	input columns
+   * @param colWeight	column weights
+   * @param colOffset	offset to this pixels columns and weights
+   * @param rowIndex	input rows
+   * @param rowWeight	row weights
+   * @return		default rgb color
+   */
+  private int resamplePixel(int taps, int[] colIndex, double[] colWeight,
+			    int colOffset, int[] rowIndex,
+			    double[] rowWeight) {
+    double ad = 0, rd = 0, gd = 0, bd = 0;
+    for(int ky = 0; ky < taps; ky++) {
+      int rowStart = rowIndex[ky] * inWidth;
+      for(int kx = 0; kx < taps; kx++) {
+	int color = sourceRGB[rowStart + colIndex[colOffset + kx]];
+	double factor = rowWeight[ky] * colWeight[colOffset + kx] *
+	  (color >>> 24);
+	ad += factor;
+	rd += factor * ((color >> 16) & 255);
+	gd += factor * ((color >> 8) & 255);
+	bd += factor * (color & 255);
+      }
+    }
+    if(ad < 0.5) return 0;
+    int a = clampToByte(ad);
+    int r = clampToByte(rd / ad);
+    int g = clampToByte(gd / ad);
+    int b = clampToByte(bd / ad);
+    return (a << 24) | (r << 16) | (g << 8) | b;
+  }
+  /**
+   * Rounds a color component limiting it to 0 through 255, since
+   * bicubic weights may overshoot.
+   *
+   * @param value	color component
+   * @return		value in the range 0 through 255
+   */
+  private static int clampToByte(double value) {
+    int i = (int) Math.round(value);
+    if(i < 0) return 0;
+    if(i > 255) return 255;
+    return i;
+  }
   /**
    * Completes one frame of an image - called by image producer.
    *
@@ -1049,29 +1347,121 @@ public class LinearImageFilter implements ImageConsumer,
 	    }
 	  }
         }
-	switch(sampleType) {
-	default:
-	case REPLICATE:
-	  fillBuffer();
-	  break;
-	case INTERPOLATE:
-	  averageFillBuffer(true);
-	  break;
-	case ALPHA_WEIGHTED_INTERPOLATE:
-	  averageAlphaWeightedFillBuffer(true);
-	  break;
-	case INDEX_INTERPOLATE:
-	  averageFillBuffer(false);
-	  break;
-	case ALPHA_WEIGHTED_INDEX_INTERPOLATE:
-	  averageAlphaWeightedFillBuffer(false);
-	  break;
-	}
+	fillBufferBySampleType();
       }
       if(saveIP != null) saveIP.removeConsumer(this);
     }
     produce();
   }
+  /**
+   * Fills the output buffer with the current sample type.
+   */
+  private void fillBufferBySampleType() {
+    synchronized (parameterLock) {
+      fillInterrupted = false;
+      switch(sampleType) {
+      default:
+      case REPLICATE:
+	fillBuffer();
+	break;
+      case INTERPOLATE:
+	averageFillBuffer(true);
+	break;
+      case ALPHA_WEIGHTED_INTERPOLATE:
+	averageAlphaWeightedFillBuffer(true);
+	break;
+      case INDEX_INTERPOLATE:
+	averageFillBuffer(false);
+	break;
+      case ALPHA_WEIGHTED_INDEX_INTERPOLATE:
+	averageAlphaWeightedFillBuffer(false);
+	break;
+      case BILINEAR:
+	resampleFillBuffer(false);
+	break;
+      case BICUBIC:
+	resampleFillBuffer(true);
+	break;
+      }
+    }
+  }
+  /**
+   * Filters a whole image of pixels directly instead of receiving them
+   * from an image producer.  The pixels are read in place, not copied.
+   *
+   * @param w		width of the pixels
+   * @param h		height of the pixels
+   * @param model	color model of the pixels
+   * @param pixels	<code>byte[]</code> or <code>int[]</code> pixels
+   * @param off		offset to the first pixel
+   * @param scan	distance between rows of pixels
+   * @return	<code>byte[]</code> or <code>int[]</code> output pixels
+   *		getOutputWidth wide and getOutputHeight high with color
+   *		model getOutputColorModel, reused by the next call, or
+   *		<code>null</code> if interrupted before filled
+   */
+  public Object filterPixels(int w, int h, ColorModel model, Object pixels,
+			     int off, int scan) {
+    synchronized (parameterLock) {
+      setDimensions(w, h);
+      sourceColorModel = model;
+      if(pixels instanceof byte[]) {
+	bbuffer = (byte[]) pixels;
+	ibuffer = null;
+      }
+      else {
+	ibuffer = (int[]) pixels;
+	bbuffer = null;
+      }
+      inOffset = off;
+      inScan = scan;
+      fillBufferBySampleType();
+      Object outPixels = ioutbuffer;
+      if(bbuffer != null && produceColorModel == sourceColorModel)
+	outPixels = boutbuffer;
+      if(fillInterrupted) outPixels = null;
+      // the pixels belong to the caller
+      bbuffer = null;
+      ibuffer = null;
+      inOffset = 0;
+      inScan = inWidth;
+      return outPixels;
+    }
+  }
+  /**
+   * Releases the output buffers.  They are created again by the next
+   * fill.
+   */
+  public void releaseBuffers() {
+    synchronized (parameterLock) {
+      boutbuffer = null;
+      ioutbuffer = null;
+    }
+  }
+  /**
+   * Gets the width of filtered pixels.
+   *
+   * @return	output width
+   */
+  public int getOutputWidth() {
+    synchronized (parameterLock) { return outWidth; }
+  }
+  /**
+   * Gets the height of filtered pixels.
+   *
+   * @return	output height
+   */
+  public int getOutputHeight() {
+    synchronized (parameterLock) { return outHeight; }
+  }
+  /**
+   * Gets the color model of filtered pixels.
+   *
+   * @return	output color model
+   */
+  public ColorModel getOutputColorModel() {
+    synchronized (parameterLock) { return produceColorModel; }
+  }
   /**
    * Sends current frame on to image consumers.
    */
@@ -1080,6 +1470,7 @@ public class LinearImageFilter implements ImageConsumer,
     synchronized (parameterLock) {
       if((hints & SINGLEFRAME) != 0) status = ImageConsumer.STATICIMAGEDONE;
       if((outWidth < 1) || (outHeight < 1)) status = ImageConsumer.IMAGEERROR;
+      else if(fillInterrupted) status = ImageConsumer.IMAGEABORTED;
       else if(produceColorModel == null) {
 	System.out.println("LinearImageFilter.produce() - missing produce color model");
 	status = ImageConsumer.IMAGEERROR;
@@ -1093,7 +1484,8 @@ public class LinearImageFilter implements ImageConsumer,
           if(! consumers.contains(consumer)) consumers.addElement(consumer);
         for(int i=consumers.size()-1; i>=0; i--) {
           consumer = consumers.elementAt(i);
-          if(status != ImageConsumer.IMAGEERROR) {
+          if((status != ImageConsumer.IMAGEERROR) &&
+	     (status != ImageConsumer.IMAGEABORTED)) {
 	    consumer.setDimensions(outWidth, outHeight);
 	    consumer.setProperties(properties);
 	    consumer.setColorModel(produceColorModel);
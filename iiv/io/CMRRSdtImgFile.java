@@ -337,6 +337,19 @@ public class CMRRSdtImgFile extends CNUImgFile {
     }
     return filename;
   }
+  /**
+   * Checks if a file has an spr header declaring numDim.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.MATCH or FileTypeProbe.NO_MATCH
+   */
+  public static int probe(FileTypeProbe probe) {
+    byte[] head = probe.getHead(buildSprFileName(probe.getFileName()));
+    if(head == null) return FileTypeProbe.NO_MATCH;
+    String text = new String(head, 0, head.length).toLowerCase();
+    if(text.indexOf("numdim") >= 0) return FileTypeProbe.MATCH;
+    return FileTypeProbe.NO_MATCH;
+  }
   /**
    * Reads and prints an CMRR SDT header as a standalone java program.
    *
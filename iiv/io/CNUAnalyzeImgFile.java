@@ -61,6 +61,22 @@ public class CNUAnalyzeImgFile extends CNUImgFile {
     if(colorModel != null) sb.append("\n").append(colorModel.toString());
     return sb.toString();
   }
+  /**
+   * Checks if a file has an ANALYZE header by its size.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.MATCH, FileTypeProbe.LIKELY for NIFTI
+   *		headers or FileTypeProbe.NO_MATCH
+   */
+  public static int probe(FileTypeProbe probe) {
+    byte[] head = probe.getHead(buildHdrFileName(probe.getFileName()));
+    if(FileTypeProbe.getInt(head, 0, true) != 348 &&
+       FileTypeProbe.getInt(head, 0, false) != 348) return FileTypeProbe.NO_MATCH;
+    // NIFTI headers are readable as ANALYZE but less completely
+    if(FileTypeProbe.matches(head, 344, "n+1") ||
+       FileTypeProbe.matches(head, 344, "ni1")) return FileTypeProbe.LIKELY;
+    return FileTypeProbe.MATCH;
+  }
   /**
    * Reads and prints an ANALYZE header as a standalone java program.
    *
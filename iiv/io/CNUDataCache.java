@@ -0,0 +1,354 @@
+package iiv.io;
+import iiv.data.*;
+import java.io.*;
+import java.util.*;
+/**
+ * Process wide cache of data read from files so reopening a recently
+ * viewed file does not read it again.  Entries are keyed by the files
+ * canonical path, modification time and the class that read it, so a
+ * changed file is never served stale.  Files opened by another name
+ * than the data file read, like an Analyze header, are recorded as
+ * aliases of the data file.  The estimated bytes of cached
+ * data are kept below a limit by evicting the least recently used
+ * entries.  The limit defaults to the system property "CNU.cache.mb"
+ * (megabytes) or a quarter of the maximum heap.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		iiv.CNUViewer#getFileObject(Object)
+ * @since	iiV1.187
+ */
+public class CNUDataCache {
+  /** Bytes charged for objects whose size is unknown. */
+  public final static long MIN_ENTRY_BYTES = 1024;
+  private final static Object staticLock = new Object();
+  private static CNUDataCache sharedCache = null;
+
+  private long maxBytes;
+  private long totalBytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  // access ordered so iteration starts at the least recently used
+  private LinkedHashMap<String, CacheEntry> entries =
+    new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+  // most recent full key for each path and modification time
+  private Hashtable<String, String> latestKeys = new Hashtable<String, String>();
+  // data file read for each requested file key that differs from it
+  private Hashtable<String, Alias> aliases = new Hashtable<String, Alias>();
+
+  /**
+   * Entry holding a cached object and its size.
+   */
+  private static class CacheEntry {
+    final String fileKey;
+    final Object fileObject;
+    final long bytes;
+    CacheEntry(String fileKey, Object fileObject, long bytes) {
+      this.fileKey = fileKey;
+      this.fileObject = fileObject;
+      this.bytes = bytes;
+    }
+  }
+  /**
+   * Data file an object was read from when requested by another name.
+   */
+  private static class Alias {
+    final String dataFileKey;
+    final CNUFile dataFile;
+    Alias(String dataFileKey, CNUFile dataFile) {
+      this.dataFileKey = dataFileKey;
+      this.dataFile = dataFile;
+    }
+  }
+  /**
+   * Constructs a new instance of CNUDataCache.
+   *
+   * @param maxBytes	maximum estimated bytes to hold
+   */
+  public CNUDataCache(long maxBytes) { this.maxBytes = maxBytes; }
+  /**
+   * Gets the shared cache, creating it on first use.
+   *
+   * @return	the shared cache
+   */
+  public static CNUDataCache getSharedCache() {
+    if(sharedCache == null) synchronized (staticLock) {
+      if(sharedCache == null) {
+	long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+	String mb = System.getProperty("CNU.cache.mb");
+	if(mb != null) try {
+	  maxBytes = Long.parseLong(mb.trim()) * 1024L * 1024L;
+	} catch (NumberFormatException nfe) {
+	  System.out.println("invalid CNU.cache.mb=" + mb);
+	}
+	sharedCache = new CNUDataCache(maxBytes);
+      }
+    }
+    return sharedCache;
+  }
+  /**
+   * Sets the maximum estimated bytes to hold evicting entries if needed.
+   *
+   * @param maxBytes	maximum bytes, <code>0</code> disables caching
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict(0);
+  }
+  /**
+   * Gets the maximum estimated bytes to hold.
+   *
+   * @return	maximum bytes
+   */
+  public synchronized long getMaxBytes() { return maxBytes; }
+  /**
+   * Gets the key identifying the current version of a file.
+   *
+   * @param cnufile	file
+   * @return	canonical path and modification time for local files,
+   *		the name for URLs or <code>null</code> if the file does
+   *		not exist
+   */
+  public static String getFileKey(CNUFile cnufile) {
+    if(cnufile == null) return null;
+    File file = cnufile.getFile();
+    if(file == null) return cnufile.toString();
+    if(! file.exists()) return null;
+    try {
+      return file.getCanonicalPath() + "|" + file.lastModified();
+    } catch (IOException ioe) {
+      return null;
+    }
+  }
+  /**
+   * Gets the most recently cached object read from a file by any class.
+   *
+   * @param filename	file name
+   * @return	cached object or <code>null</code>
+   */
+  public Object get(String filename) {
+    return get(filename, null);
+  }
+  /**
+   * Gets a cached object read from a file.
+   *
+   * @param filename	file name
+   * @param readerClass	class that read the file or <code>null</code>
+   *			for the most recently cached of any class
+   * @return	cached object or <code>null</code>
+   */
+  public Object get(String filename, Class<?> readerClass) {
+    if(filename == null) return null;
+    String fileKey = resolveFileKey(filename);
+    synchronized (this) {
+      CacheEntry entry = null;
+      if(fileKey != null) {
+	String key = (readerClass == null) ? latestKeys.get(fileKey) :
+	  fileKey + "|" + readerClass.getName();
+	if(key != null) entry = entries.get(key);
+      }
+      if(entry == null) {
+	misses++;
+	return null;
+      }
+      hits++;
+      return entry.fileObject;
+    }
+  }
+  /**
+   * Checks if an object read from a file is cached without counting
+   * a hit or miss or changing the use order.
+   *
+   * @param filename	file name
+   * @param readerClass	class that read the file or <code>null</code>
+   *			for any class
+   * @return	<code>true</code> if cached
+   */
+  public boolean contains(String filename, Class<?> readerClass) {
+    if(filename == null) return false;
+    String fileKey = resolveFileKey(filename);
+    if(fileKey == null) return false;
+    synchronized (this) {
+      if(readerClass == null) return latestKeys.containsKey(fileKey);
+      return entries.containsKey(fileKey + "|" + readerClass.getName());
+    }
+  }
+  /**
+   * Gets the key of the data file cached for a requested file name,
+   * following an alias if the data file has not changed since.
+   *
+   * @param filename	file name
+   * @return	file key or <code>null</code> if the file does not exist
+   */
+  private String resolveFileKey(String filename) {
+    String fileKey = getFileKey(new CNUFile(filename.trim()));
+    if(fileKey == null) return null;
+    Alias alias = aliases.get(fileKey);
+    if(alias != null && alias.dataFileKey.equals(getFileKey(alias.dataFile)))
+      return alias.dataFileKey;
+    return fileKey;
+  }
+  /**
+   * Adds an object read from a file to the cache.  Only data
+   * objects associated with a file are cached.
+   *
+   * @param fileObject	object read from a file
+   * @return	<code>true</code> if cached
+   */
+  public boolean put(Object fileObject) {
+    return put(fileObject, null);
+  }
+  /**
+   * Adds an object read from a file to the cache also recording the
+   * name it was requested by, so later lookups by that name find it
+   * when the reader reads another data file, like an Analyze .img
+   * file opened by its .hdr name.
+   *
+   * @param fileObject	object read from a file
+   * @param filename	name the file was requested by or
+   *			<code>null</code>
+   * @return	<code>true</code> if cached
+   */
+  public boolean put(Object fileObject, String filename) {
+    if(! (fileObject instanceof CNUImgFile)) return false;
+    CNUImgFile imgFile = (CNUImgFile) fileObject;
+    CNUFile dataFile = imgFile.getCNUFile();
+    String fileKey = getFileKey(dataFile);
+    if(fileKey == null) return false;
+    String requestedKey = (filename == null) ? null :
+      getFileKey(new CNUFile(filename.trim()));
+    long bytes = estimateBytes(imgFile);
+    String key = fileKey + "|" + fileObject.getClass().getName();
+    synchronized (this) {
+      if(bytes > maxBytes) return false;
+      CacheEntry old = entries.remove(key);
+      if(old != null) totalBytes -= old.bytes;
+      evict(bytes);
+      entries.put(key, new CacheEntry(fileKey, fileObject, bytes));
+      latestKeys.put(fileKey, key);
+      if(requestedKey != null && ! requestedKey.equals(fileKey))
+	aliases.put(requestedKey, new Alias(fileKey, dataFile));
+      totalBytes += bytes;
+    }
+    return true;
+  }
+  /**
+   * Removes an object from the cache.
+   *
+   * @param fileObject	object to remove
+   */
+  public synchronized void remove(Object fileObject) {
+    Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+    while(it.hasNext()) {
+      Map.Entry<String, CacheEntry> me = it.next();
+      if(me.getValue().fileObject == fileObject) {
+	it.remove();
+	removed(me.getKey(), me.getValue());
+      }
+    }
+  }
+  /**
+   * Removes all entries.  Statistics are not reset.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    latestKeys.clear();
+    aliases.clear();
+    totalBytes = 0;
+  }
+  /**
+   * Evicts least recently used entries until an additional number of
+   * bytes fits.  Must be called while synchronized.
+   *
+   * @param neededBytes	bytes to make room for
+   */
+  private void evict(long neededBytes) {
+    Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+    while(totalBytes + neededBytes > maxBytes && it.hasNext()) {
+      Map.Entry<String, CacheEntry> me = it.next();
+      it.remove();
+      removed(me.getKey(), me.getValue());
+      evictions++;
+    }
+  }
+  /**
+   * Updates accounting after an entry is removed.  Must be called while
+   * synchronized.
+   *
+   * @param key		key removed
+   * @param entry	entry removed
+   */
+  private void removed(String key, CacheEntry entry) {
+    totalBytes -= entry.bytes;
+    if(key.equals(latestKeys.get(entry.fileKey))) latestKeys.remove(entry.fileKey);
+    // drop aliases once no object read from the data file is left
+    Iterator<CacheEntry> ei = entries.values().iterator();
+    while(ei.hasNext()) if(ei.next().fileKey.equals(entry.fileKey)) return;
+    Iterator<Alias> it = aliases.values().iterator();
+    while(it.hasNext()) if(it.next().dataFileKey.equals(entry.fileKey)) it.remove();
+  }
+  /**
+   * Estimates the bytes used by a data object.
+   *
+   * @param data	data object
+   * @return	estimated bytes
+   */
+  public static long estimateBytes(CNUData data) {
+    CNUDimensions dims = data.getDimensions();
+    if(dims == null) return MIN_ENTRY_BYTES;
+    int bytesPerWord = CNUTypes.bytesPerWord(dims.getType());
+    if(bytesPerWord < 1) bytesPerWord = 1;
+    return Math.max(MIN_ENTRY_BYTES, (long) dims.lengthInWords() * bytesPerWord);
+  }
+  /**
+   * Gets the estimated bytes currently held.
+   *
+   * @return	bytes held
+   */
+  public synchronized long getTotalBytes() { return totalBytes; }
+  /**
+   * Gets the number of cached objects.
+   *
+   * @return	number of entries
+   */
+  public synchronized int getNumberOfEntries() { return entries.size(); }
+  /**
+   * Gets the number of lookups that found an object.
+   *
+   * @return	hits
+   */
+  public synchronized long getHits() { return hits; }
+  /**
+   * Gets the number of lookups that did not find an object.
+   *
+   * @return	misses
+   */
+  public synchronized long getMisses() { return misses; }
+  /**
+   * Gets the number of entries evicted to stay within the limit.
+   *
+   * @return	evictions
+   */
+  public synchronized long getEvictions() { return evictions; }
+  /**
+   * Resets the hit, miss and eviction counts.
+   */
+  public synchronized void resetStatistics() {
+    hits = misses = evictions = 0;
+  }
+  /**
+   * Creates a string representation.
+   *
+   * @return	string representation
+   */
+  public synchronized String toString() {
+    StringBuffer sb = new StringBuffer();
+    sb.append("entries=").append(entries.size());
+    sb.append(" bytes=").append(totalBytes).append("/").append(maxBytes);
+    sb.append(" hits=").append(hits);
+    sb.append(" misses=").append(misses);
+    sb.append(" evictions=").append(evictions);
+    return sb.toString();
+  }
+}
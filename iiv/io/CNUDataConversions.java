@@ -1,6 +1,8 @@
 package iiv.io;
 import iiv.data.*;
 import iiv.script.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 /**
  * Manages conversion parameters.
  *
@@ -235,6 +237,69 @@ public class CNUDataConversions implements CNUConversionTypes,
 	(longConvert != NO_CONVERSION) |
 	(doubleConvert != NO_CONVERSION);
    }
+  /**
+   * Gets the byte order equivalent to the conversion for the given data type.
+   * Only conversions that are a plain byte reordering of whole words
+   * have an equivalent.
+   *
+   * @param dataType	type of data to get byte order for
+   * @return	byte order or <code>null</code> if the conversion can not
+   *		be done by reordering bytes
+   */
+  public ByteOrder getByteOrder(int dataType) {
+    switch(dataType) {
+    case BYTE:
+    case UNSIGNED_BYTE:
+      return ByteOrder.BIG_ENDIAN;
+    case SHORT:
+    case UNSIGNED_SHORT:
+      switch(shortConvert) {
+      case NO_CONVERSION:
+	return ByteOrder.BIG_ENDIAN;
+      case SWAP_BYTES:
+      case REVERSE_BYTES:
+      case VAX_TO_SUN:
+	return ByteOrder.LITTLE_ENDIAN;
+      default:
+	return null;
+      }
+    case INTEGER:
+      switch(intConvert) {
+      case NO_CONVERSION:
+	return ByteOrder.BIG_ENDIAN;
+      case REVERSE_BYTES:
+      case VAX_TO_SUN:
+	return ByteOrder.LITTLE_ENDIAN;
+      default:
+	return null;
+      }
+    case LONG:
+      return wordByteOrder(longConvert);
+    case FLOAT:
+      return wordByteOrder(floatConvert);
+    case DOUBLE:
+      return wordByteOrder(doubleConvert);
+    default:
+      return null;
+    }
+  }
+  /**
+   * Gets the byte order equivalent to a conversion type for words
+   * with no special conversions.
+   *
+   * @param convertType	conversion type
+   * @return	byte order or <code>null</code> if no equivalent
+   */
+  private final static ByteOrder wordByteOrder(int convertType) {
+    switch(convertType) {
+    case NO_CONVERSION:
+      return ByteOrder.BIG_ENDIAN;
+    case REVERSE_BYTES:
+      return ByteOrder.LITTLE_ENDIAN;
+    default:
+      return null;
+    }
+  }
   /**
    * Creates a script that may be used to recreate this display component.
    *
@@ -602,6 +667,124 @@ public class CNUDataConversions implements CNUConversionTypes,
 					 " not implemented for double data");
     }
   }
+  /**
+   * Wraps a section of a byte array in a buffer with the byte order
+   * equivalent to the conversion for the given type.
+   *
+   * @param dataType	type of data the bytes represent
+   * @param b		array of bytes
+   * @param offset	offset to first byte
+   * @param length	number of bytes
+   * @return	buffer or <code>null</code> if conversion is not
+   *		a reordering of bytes
+   */
+  private ByteBuffer wrapBytes(int dataType, byte[] b,
+			       int offset, int length) {
+    ByteOrder byteOrder = getByteOrder(dataType);
+    if(byteOrder == null) return null;
+    return ByteBuffer.wrap(b, offset, length).order(byteOrder);
+  }
+  /**
+   * Use the short conversion type to convert a set of bytes
+   * to an array of shorts.
+   *
+   * @param b array of bytes
+   * @param offset offset to first byte of first short
+   * @param s array to store shorts in
+   * @param soffset offset to first short to store
+   * @param count number of shorts to convert
+   * @exception  IllegalArgumentException thrown on invalid conversion type
+   */
+  public void bytesToShorts(byte[] b, int offset,
+			    short[] s, int soffset, int count) {
+    ByteBuffer bb = wrapBytes(SHORT, b, offset, count * 2);
+    if(bb != null) bb.asShortBuffer().get(s, soffset, count);
+    else for(int end = soffset + count; soffset < end; offset += 2)
+      s[soffset++] = bytesToShort(b, offset);
+  }
+  /**
+   * Use the integer conversion type to convert a set of bytes
+   * to an array of integers.
+   *
+   * @param b array of bytes
+   * @param offset offset to first byte of first integer
+   * @param i array to store integers in
+   * @param ioffset offset to first integer to store
+   * @param count number of integers to convert
+   * @exception  IllegalArgumentException thrown on invalid conversion type
+   */
+  public void bytesToInts(byte[] b, int offset,
+			  int[] i, int ioffset, int count) {
+    int bytesPerInt = bytesPerInt();
+    ByteBuffer bb = wrapBytes(INTEGER, b, offset, count * bytesPerInt);
+    if(bb != null) bb.asIntBuffer().get(i, ioffset, count);
+    else for(int end = ioffset + count; ioffset < end; offset += bytesPerInt)
+      i[ioffset++] = bytesToInt(b, offset);
+  }
+  /**
+   * Use the long conversion type to convert a set of bytes
+   * to an array of longs.
+   *
+   * @param b array of bytes
+   * @param offset offset to first byte of first long
+   * @param l array to store longs in
+   * @param loffset offset to first long to store
+   * @param count number of longs to convert
+   * @exception  IllegalArgumentException thrown on invalid conversion type
+   */
+  public void bytesToLongs(byte[] b, int offset,
+			   long[] l, int loffset, int count) {
+    ByteBuffer bb = wrapBytes(LONG, b, offset, count * 8);
+    if(bb != null) bb.asLongBuffer().get(l, loffset, count);
+    else for(int end = loffset + count; loffset < end; offset += 8)
+      l[loffset++] = bytesToLong(b, offset);
+  }
+  /**
+   * Use the float conversion type to convert a set of bytes
+   * to an array of floats.
+   *
+   * @param b array of bytes
+   * @param offset offset to first byte of first float
+   * @param f array to store floats in
+   * @param foffset offset to first float to store
+   * @param count number of floats to convert
+   * @exception  IllegalArgumentException thrown on invalid conversion type
+   */
+  public void bytesToFloats(byte[] b, int offset,
+			    float[] f, int foffset, int count) {
+    ByteBuffer bb = wrapBytes(FLOAT, b, offset, count * 4);
+    if(bb != null) bb.asFloatBuffer().get(f, foffset, count);
+    else if(floatConvert == VAX_TO_SUN) {
+      for(int end = foffset + count; foffset < end; offset += 4) {
+	// swap  0,1,2,3 -> 1,0,3,2
+	f[foffset++] =
+	  vaxExpFixIntToFloat( ((((int) b[offset + 1]) & 0xff) << 24) |
+			       ((((int) b[offset + 0]) & 0xff) << 16) |
+			       ((((int) b[offset + 3]) & 0xff) << 8) |
+			       (((int) b[offset + 2]) & 0xff) );
+      }
+    }
+    else for(int end = foffset + count; foffset < end; offset += 4)
+      f[foffset++] = bytesToFloat(b, offset);
+  }
+  /**
+   * Use the double conversion type to convert a set of bytes
+   * to an array of doubles.
+   *
+   * @param b array of bytes
+   * @param offset offset to first byte of first double
+   * @param d array to store doubles in
+   * @param doffset offset to first double to store
+   * @param count number of doubles to convert
+   * @exception  IllegalArgumentException thrown on invalid conversion type
+   */
+  public void bytesToDoubles(byte[] b, int offset,
+			     double[] d, int doffset, int count) {
+    ByteBuffer bb = wrapBytes(DOUBLE, b, offset, count * 8);
+    if(bb != null) bb.asDoubleBuffer().get(d, doffset, count);
+    else for(int end = doffset + count; doffset < end; offset += 8)
+      d[doffset++] = bytesToDouble(b, offset);
+  }
   /**
    * Convert vax floating point formatted bits to our floating point format.
    *
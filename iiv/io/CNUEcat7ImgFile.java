@@ -68,6 +68,17 @@ public class CNUEcat7ImgFile extends CNUImgFile {
     else s += "null ECAT 7 header\n";
     return s;
   }
+  /**
+   * Checks if a file starts with the ECAT 7 magic number.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.MATCH or FileTypeProbe.NO_MATCH
+   */
+  public static int probe(FileTypeProbe probe) {
+    if(FileTypeProbe.matches(probe.getHead(), 0, "MATRIX"))
+      return FileTypeProbe.MATCH;
+    return FileTypeProbe.NO_MATCH;
+  }
   /**
    * Reads and prints an ECAT7 header as a standalone java program.
    *
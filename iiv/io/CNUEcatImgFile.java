@@ -48,6 +48,12 @@ public class CNUEcatImgFile extends CNUImgFile {
     }
     return null;
   }
+  /**
+   * Regions are never read directly from the file for this format.
+   *
+   * @return	<code>false</code>
+   */
+  public boolean isRegionReadable() { return false; }
   /**
    * Overides readData to call ReadImg.
    *
@@ -89,6 +95,23 @@ public class CNUEcatImgFile extends CNUImgFile {
     }
     return filename;
   }
+  /**
+   * Checks if a file has an ECAT main header with a valid file type.
+   * ECAT 6 has no magic number so a match is only likely.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.LIKELY or FileTypeProbe.NO_MATCH
+   */
+  public static int probe(FileTypeProbe probe) {
+    byte[] head = probe.getHead(buildEcatFileName(probe.getFileName()));
+    if(head == null || head.length < CNUEcatHeader.MatBLKSIZE ||
+       FileTypeProbe.matches(head, 0, "MATRIX")) return FileTypeProbe.NO_MATCH;
+    // file_type is a VAX short at byte 54
+    int fileType = FileTypeProbe.getShort(head, 54, false);
+    if(fileType >= CNUEcatHeader.SCAN_FILE && fileType <= CNUEcatHeader.NORM_FILE)
+      return FileTypeProbe.LIKELY;
+    return FileTypeProbe.NO_MATCH;
+  }
   /**
    * Creates a string representation of this object.
    */
@@ -43,6 +43,25 @@ public class CNUFile {
   public boolean isURL() {
     return (ufile != null);
   }
+/** Check if this is an uncompressed local file that may be memory mapped */
+  public boolean isMappable() {
+    if( (ufile != null) || gzip || (file == null) ) return false;
+    return file.isFile();
+  }
+/** Check if this is an existing local file that may be read at any offset */
+  public boolean isLocalFile() {
+    if( (ufile != null) || (file == null) ) return false;
+    return file.isFile();
+  }
+/** Check if this file is gzip compressed */
+  public boolean isGzip() {
+    return gzip;
+  }
+/** Returns the local file or <code>null</code> if this is a URL */
+  public File getFile() {
+    if( ufile != null ) return null;
+    return file;
+  }
 /** Check if this is a directory */
   public boolean isDirectory() {
     if( ufile != null ) return false;  // don't consider urls directories
@@ -160,6 +179,40 @@ public class CNUFile {
     if(gzip) inS = new GZIPInputStream(inS);
     return inS;
   }
+/** Get an input stream for this file positioned at an uncompressed byte
+    offset.  Local gzip files use a GZIPIndex to avoid inflating from the
+    beginning of the file */
+  public InputStream getInputStream(long offset) throws IOException {
+    if(gzip && isLocalFile())
+      return GZIPIndex.getIndex(file).getInputStream(offset);
+    InputStream inS = getInputStream();
+    long toSkip = offset;
+    while(toSkip > 0) {
+      long skipped = inS.skip(toSkip);
+      if(skipped <= 0) {
+	inS.close();
+	throw new EOFException("offset beyond end of " + toString());
+      }
+      toSkip -= skipped;
+    }
+    return inS;
+  }
+/** Get the uncompressed length of a local file.  Builds or loads a
+    GZIPIndex for gzip files */
+  public long getUncompressedLength() throws IOException {
+    if(! isLocalFile()) throw new IOException("length of non-local file unknown");
+    if(gzip) return GZIPIndex.getIndex(file).getUncompressedLength();
+    return file.length();
+  }
+/** Get an input stream for reading a whole file that inflates gzip files
+    ahead of the reader on other threads.  Must be closed when done. */
+  public InputStream getReadAheadInputStream() throws IOException {
+    InputStream inS = null;
+    if(ufile != null) inS = ufile.openStream();
+    else if(file != null) inS = new FileInputStream(file);
+    if(gzip) inS = new ParallelGZIPInputStream(new BufferedInputStream(inS, 64 * 1024));
+    return inS;
+  }
 /** Get an input reader for this file */
   public Reader getReader() throws IOException {
     Reader rd = null;
@@ -3,6 +3,8 @@ import iiv.data.*;
 import iiv.script.*;
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
 
 /**
  * Treats a file as raw image data.
@@ -15,12 +17,25 @@ import java.net.*;
  * @see		CNUStdImgFile
  */
 public class CNUImgFile extends CNUData
-  implements CNUFileObject, CNUConversionTypes, iiVScriptable {
+  implements CNUFileObject, CNUConversionTypes, iiVScriptable,
+	     RegionReadable {
 
   private Object privateLock = new Object();
   private CNUFile cnufile = null;
   private long skipBytes = 0;
   private CNUDataConversions cnuDataConv = new CNUDataConversions();
+  /**
+   * Maximum number of bytes mapped at one time when reading local files.
+   */
+  public final static int MAX_MAP_BYTES = 1 << 30;
+  /**
+   * Number of words decoded between checks for interruption when
+   * reading from a stream.
+   */
+  public final static int BULK_READ_WORDS = 256 * 1024;
+  private static boolean defaultLazyRead =
+    Boolean.valueOf(System.getProperty("CNU.lazyread", "false")).booleanValue();
+  private boolean lazyRead = defaultLazyRead;
 
   /**
    * Constructs an instance of CNUImgFile.
@@ -48,7 +63,9 @@ public class CNUImgFile extends CNUData
       Object dataArray = super.getDataArray();
       if(dataArray != null) return dataArray;
       try {
-        readData();
+	// lazy readData() only validates so read everything here
+	if(isRegionReadable()) readAllData();
+	else readData();
         return(super.getDataArray());
       } catch (IOException ioe) {
         System.out.println(ioe);
@@ -82,23 +99,147 @@ public class CNUImgFile extends CNUData
     return getDataInput(getCNUFile(), getCNUDataConversions());
   }
   /**
-   * Reads data from the file.
+   * Sets the default for reading data only as regions are needed
+   * for new instances.  Initially set from the system property
+   * "CNU.lazyread".
+   *
+   * @param lazyRead	<code>true</code> to read data as needed
+   */
+  public static void setDefaultLazyRead(boolean lazyRead) {
+    defaultLazyRead = lazyRead;
+  }
+  /**
+   * Gets the default for reading data only as regions are needed.
+   *
+   * @return	<code>true</code> if new instances read data as needed
+   */
+  public static boolean getDefaultLazyRead() { return defaultLazyRead; }
+  /**
+   * Sets whether to read data only as regions are needed instead of
+   * reading the whole data array.  Only applies to uncompressed
+   * local files.
+   *
+   * @param lazyRead	<code>true</code> to read data as needed
+   */
+  public void setLazyRead(boolean lazyRead) { this.lazyRead = lazyRead; }
+  /**
+   * Gets whether to read data only as regions are needed.
+   *
+   * @return	<code>true</code> if reading data as needed
+   */
+  public boolean getLazyRead() { return lazyRead; }
+  /**
+   * Checks if regions should currently be read from the file instead
+   * of getting the whole data array.
+   *
+   * @return	<code>true</code> if lazy reading is set, the data array
+   *		has not been read and the file is local
+   */
+  public boolean isRegionReadable() {
+    if(! lazyRead) return false;
+    if(super.getDataArray() != null) return false;
+    CNUFile cnufile = getCNUFile();
+    if(cnufile == null || ! cnufile.isLocalFile()) return false;
+    return getDimensions() != null;
+  }
+  /**
+   * Gets the number of bytes each word of a data type occupies in the file.
+   *
+   * @param type	data type
+   * @return	number of bytes per word in the file
+   */
+  private int getFileBytesPerWord(int type) {
+    if(type == CNUTypes.INTEGER && cnuDataConv.getConversionsNeeded())
+      return cnuDataConv.bytesPerInt();
+    return CNUTypes.bytesPerWord(type);
+  }
+  /**
+   * Reads a contiguous range of words directly from the file.
+   * Uncompressed files are mapped when the conversions allow, other
+   * files are read from a stream positioned at the region which for
+   * gzip files uses a GZIPIndex.
+   *
+   * @param offset	index in words of the first word to read
+   * @param length	number of words to read
+   * @return	array of the data type containing the words or
+   *		<code>null</code> if the region could not be read
+   */
+  public Object readRegion(int offset, int length) {
+    CNUFile cnufile = getCNUFile();
+    CNUDimensions dims = getDimensions();
+    if(cnufile == null || dims == null) return null;
+    int type = dims.getType();
+    try {
+      if(cnufile.isMappable()) {
+	Object dataArray =
+	  ReadMappedRawRegion(cnufile.getFile(), type, getSkipBytes(),
+			      offset, length, cnuDataConv);
+	if(dataArray != null) return dataArray;
+      }
+      long startByte = getSkipBytes() +
+	((long) offset * (long) getFileBytesPerWord(type));
+      InputStream inS = null;
+      try {
+	inS = cnufile.getInputStream(startByte);
+	if(cnuDataConv.getConversionsNeeded())
+	  inS = new ConvertDataInputStream(inS, cnuDataConv);
+	return ReadRawImg(inS, new CNUDimensions(new int[] {length}, type, 0), 0);
+      } finally {
+	if(inS != null) inS.close();
+      }
+    } catch (IOException ioe) {
+      System.out.println(ioe);
+    }
+    return null;
+  }
+  /**
+   * Reads data from the file.  When regions may be read as needed
+   * this only verifies the file is large enough to contain the data.
    *
    * @exception IOException thrown on errors reading from the file.
    */
   public void readData() throws IOException {
+    synchronized (privateLock) {
+      if(isRegionReadable()) {
+	CNUDimensions dims = getDimensions();
+	CNUFile cnufile = getCNUFile();
+	long totalBytes = (long) dims.lengthInWords() *
+	  (long) getFileBytesPerWord(dims.getType());
+	if(cnufile.getUncompressedLength() < getSkipBytes() + totalBytes)
+	  throw new EOFException("file " + cnufile + " too short for dimensions");
+      }
+      else readAllData();
+    }
+  }
+  /**
+   * Reads the whole data array from the file.
+   *
+   * @exception IOException thrown on errors reading from the file.
+   */
+  protected void readAllData() throws IOException {
     synchronized (privateLock) {
       CNUFile cnufile = getCNUFile();
       if(cnufile != null) {
+	if(cnufile.isMappable()) {
+	  // local uncompressed files are decoded directly from a mapping
+	  Object dataArray = ReadMappedRawImg(cnufile.getFile(), getDimensions(),
+					      getSkipBytes(), cnuDataConv);
+	  if(dataArray != null) {
+	    setDataArray(dataArray);
+	    startStatistics();
+	    return;
+	  }
+	}
         InputStream inS = null;
         try {
-          inS = cnufile.getInputStream();
+          inS = cnufile.getReadAheadInputStream();
           if(inS != null)  {
 	    if(cnuDataConv.getConversionsNeeded()) {
 	      // replace inS with ConversionDataInputStream
 	      inS = new ConvertDataInputStream(inS, cnuDataConv);
 	    }
             setDataArray(ReadRawImg(inS, getDimensions(), getSkipBytes()));
+	    startStatistics();
           }
         } finally {
           if(inS != null)inS.close();
@@ -298,15 +439,113 @@ public class CNUImgFile extends CNUData
   static public Object ReadRawImg(CNUFile cnufile, CNUDimensions dims,
 				  long skipBytes)
     throws IOException {
+    if(cnufile.isMappable()) {
+      Object dataArray = ReadMappedRawImg(cnufile.getFile(), dims, skipBytes,
+					  null);
+      if(dataArray != null) return dataArray;
+    }
     InputStream inS = null;
     try {
-      inS = cnufile.getInputStream();
+      inS = cnufile.getReadAheadInputStream();
       if(inS != null) return ReadRawImg(inS, dims, skipBytes);
     } finally {
       if(inS != null)inS.close();
     }
     return null;
   }
+  /**
+   * Reads raw data from a local file by memory mapping it and decoding
+   * whole buffers at once.  Files larger than MAX_MAP_BYTES are mapped
+   * in pieces.
+   *
+   * @param file	local file to read from
+   * @param dims	dimensions of data in the file
+   * @param skipBytes	number of bytes to skip at beginning of file
+   * @param cdc		data conversions to apply or <code>null</code>
+   *			for none
+   * @return	array object containing data read or <code>null</code>
+   *		if the conversions can not be done by reordering bytes
+   * @exception IOException thrown on errors reading from the file.
+   */
+  static public Object ReadMappedRawImg(File file, CNUDimensions dims,
+					long skipBytes, CNUDataConversions cdc)
+    throws IOException {
+    return ReadMappedRawRegion(file, dims.getType(), skipBytes,
+			       0, dims.lengthInWords(), cdc);
+  }
+  /**
+   * Reads a contiguous range of raw words from a local file by memory
+   * mapping it.
+   *
+   * @param file	local file to read from
+   * @param type	data type of the words in the file
+   * @param skipBytes	number of bytes to skip at beginning of file
+   * @param offset	index in words of the first word to read
+   * @param length	number of words to read
+   * @param cdc		data conversions to apply or <code>null</code>
+   *			for none
+   * @return	array object containing data read or <code>null</code>
+   *		if the conversions can not be done by reordering bytes
+   * @exception IOException thrown on errors reading from the file.
+   */
+  static public Object ReadMappedRawRegion(File file, int type, long skipBytes,
+					   int offset, int length,
+					   CNUDataConversions cdc)
+    throws IOException {
+    ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+    if(cdc != null) byteOrder = cdc.getByteOrder(type);
+    if(byteOrder == null) return null;
+    int bytesPerWord = CNUTypes.bytesPerWord(type);
+    if(bytesPerWord < 1) return null;
+    long startByte = skipBytes + ((long) offset * (long) bytesPerWord);
+    long totalBytes = (long) length * (long) bytesPerWord;
+    Thread currentThread = Thread.currentThread();
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel fc = raf.getChannel();
+      if(fc.size() < startByte + totalBytes)
+	throw new EOFException("file " + file + " too short for dimensions");
+      Object dataArray = CNUTypes.arrayOf(type, length);
+      int maxWordsPerMap = MAX_MAP_BYTES / bytesPerWord;
+      int nword = 0;
+      while(nword < length) {
+	if(currentThread.isInterrupted()) throw new IOException("Interrupted");
+	int nwords = Math.min(length - nword, maxWordsPerMap);
+	ByteBuffer bb = fc.map(FileChannel.MapMode.READ_ONLY,
+			       startByte + ((long) nword * bytesPerWord),
+			       (long) nwords * bytesPerWord);
+	bb.order(byteOrder);
+	switch(type) {
+	case CNUTypes.BYTE:
+	case CNUTypes.UNSIGNED_BYTE:
+	  bb.get((byte[]) dataArray, nword, nwords);
+	  break;
+	case CNUTypes.SHORT:
+	case CNUTypes.UNSIGNED_SHORT:
+	  bb.asShortBuffer().get((short[]) dataArray, nword, nwords);
+	  break;
+	case CNUTypes.INTEGER:
+	  bb.asIntBuffer().get((int[]) dataArray, nword, nwords);
+	  break;
+	case CNUTypes.LONG:
+	  bb.asLongBuffer().get((long[]) dataArray, nword, nwords);
+	  break;
+	case CNUTypes.FLOAT:
+	  bb.asFloatBuffer().get((float[]) dataArray, nword, nwords);
+	  break;
+	case CNUTypes.DOUBLE:
+	  bb.asDoubleBuffer().get((double[]) dataArray, nword, nwords);
+	  break;
+	default:
+	  return null;
+	}
+	nword += nwords;
+      }
+      return dataArray;
+    } finally {
+      raf.close();
+    }
+  }
   /**
    * Reads raw data from an input stream.
    *
@@ -318,13 +557,15 @@ public class CNUImgFile extends CNUData
    */
   static public Object ReadRawImg(InputStream inS, CNUDimensions dims,
     long skipBytes) throws IOException {
-    DataInput di = null;
     if(skipBytes != 0) inS.skip(skipBytes);
-    if(inS instanceof DataInput) di = (DataInput) inS;
     int length=dims.lengthInWords();
     Thread currentThread = Thread.currentThread();
-    int firstlooplength = length - 16;
     int nword = 0;
+    int nwords = 0;
+    // multibyte words are decoded a block at a time with the conversions
+    // of a ConvertDataInputStream, a plain stream needs no conversions
+    ConvertDataInputStream cdi = null;
+    if(inS instanceof ConvertDataInputStream) cdi = (ConvertDataInputStream) inS;
 
     switch( dims.getType() ) {
     case CNUTypes.BYTE:
@@ -341,89 +582,49 @@ public class CNUImgFile extends CNUData
       return((Object) data);
     case CNUTypes.SHORT:
     case CNUTypes.UNSIGNED_SHORT:
-      if(di == null) di = new DataInputStream(inS);
+      if(cdi == null) cdi = new ConvertDataInputStream(inS);
       short[] sdata = new short[length];
-      for( ; nword < firstlooplength && ! currentThread.isInterrupted(); ) {
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
-        sdata[nword++] = di.readShort(); sdata[nword++] = di.readShort();
+      for( ; nword < length; nword += nwords) {
+	if(currentThread.isInterrupted()) throw new IOException("Interrupted");
+	nwords = Math.min(length - nword, BULK_READ_WORDS);
+	cdi.readShorts(sdata, nword, nwords);
       }
-      if(currentThread.isInterrupted()) throw new IOException("Interrupted");
-      for( ; nword < length; ) sdata[nword++] = di.readShort();
       return((Object) sdata);
     case CNUTypes.INTEGER:
-      if(di == null) di = new DataInputStream(inS);
+      if(cdi == null) cdi = new ConvertDataInputStream(inS);
       int[] idata = new int[length];
-      for( ; nword < firstlooplength && ! currentThread.isInterrupted(); ) {
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
-        idata[nword++] = di.readInt(); idata[nword++] = di.readInt();
+      for( ; nword < length; nword += nwords) {
+	if(currentThread.isInterrupted()) throw new IOException("Interrupted");
+	nwords = Math.min(length - nword, BULK_READ_WORDS);
+	cdi.readInts(idata, nword, nwords);
       }
-      if(currentThread.isInterrupted()) throw new IOException("Interrupted");
-      for( ; nword < length; ) idata[nword++] = di.readInt();
       return((Object) idata);
     case CNUTypes.LONG:
-      if(di == null) di = new DataInputStream(inS);
+      if(cdi == null) cdi = new ConvertDataInputStream(inS);
       long[] ldata = new long[length];
-      for( ; nword < firstlooplength && ! currentThread.isInterrupted(); ) {
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
-        ldata[nword++] = di.readLong(); ldata[nword++] = di.readLong();
+      for( ; nword < length; nword += nwords) {
+	if(currentThread.isInterrupted()) throw new IOException("Interrupted");
+	nwords = Math.min(length - nword, BULK_READ_WORDS);
+	cdi.readLongs(ldata, nword, nwords);
       }
-      if(currentThread.isInterrupted()) throw new IOException("Interrupted");
-      for( ; nword < length; ) ldata[nword++] = di.readLong();
       return((Object) ldata);
     case CNUTypes.FLOAT:
-      if(di == null) di = new DataInputStream(inS);
+      if(cdi == null) cdi = new ConvertDataInputStream(inS);
       float[] fdata = new float[length];
-      for( ; nword < firstlooplength && ! currentThread.isInterrupted(); ) {
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
-        fdata[nword++] = di.readFloat(); fdata[nword++] = di.readFloat();
+      for( ; nword < length; nword += nwords) {
+	if(currentThread.isInterrupted()) throw new IOException("Interrupted");
+	nwords = Math.min(length - nword, BULK_READ_WORDS);
+	cdi.readFloats(fdata, nword, nwords);
       }
-      if(currentThread.isInterrupted()) throw new IOException("Interrupted");
-      for( ; nword < length; ) fdata[nword++] = di.readFloat();
       return((Object) fdata);
     case CNUTypes.DOUBLE:
-      if(di == null) di = new DataInputStream(inS);
+      if(cdi == null) cdi = new ConvertDataInputStream(inS);
       double[] ddata = new double[length];
-      for( ; nword < firstlooplength && ! currentThread.isInterrupted(); ) {
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
-	ddata[nword++] = di.readDouble(); ddata[nword++] = di.readDouble();
+      for( ; nword < length; nword += nwords) {
+	if(currentThread.isInterrupted()) throw new IOException("Interrupted");
+	nwords = Math.min(length - nword, BULK_READ_WORDS);
+	cdi.readDoubles(ddata, nword, nwords);
       }
-      if(currentThread.isInterrupted()) throw new IOException("Interrupted");
-      for( ; nword < length; ) ddata[nword++] = di.readDouble();
       return((Object) ddata);
     default:
       throw new IOException("Unable to read raw file of type = " +
@@ -112,6 +112,24 @@ public class CNUNiftiImgFile extends CNUImgFile {
     if(colorModel != null) sb.append("\n").append(colorModel.toString());
     return sb.toString();
   }
+  /**
+   * Checks if a file looks like NIFTI by its header size and magic.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.MATCH or FileTypeProbe.NO_MATCH
+   */
+  public static int probe(FileTypeProbe probe) {
+    String[] hdrnames = NiftiHeader.buildNiftiHdrFileNames(probe.getFileName());
+    for(int i = 0; hdrnames != null && i < hdrnames.length; i++) {
+      byte[] head = probe.getHead(hdrnames[i]);
+      if(head == null) continue;
+      if(FileTypeProbe.getInt(head, 0, true) != 348 &&
+	 FileTypeProbe.getInt(head, 0, false) != 348) continue;
+      if(FileTypeProbe.matches(head, 344, "n+1") ||
+	 FileTypeProbe.matches(head, 344, "ni1")) return FileTypeProbe.MATCH;
+    }
+    return FileTypeProbe.NO_MATCH;
+  }
   /**
    * Reads and prints an NIFTI header as a standalone java program.
    *
@@ -171,6 +171,26 @@ implements iiVScriptable, CNUFileObject, Cloneable {
     }
     super.updateFilters();
   }
+  /**
+   * Checks if a file starts with the magic number of a common image format.
+   * Other formats may still be readable by installed image readers.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.MATCH or FileTypeProbe.UNKNOWN
+   */
+  public static int probe(FileTypeProbe probe) {
+    byte[] head = probe.getHead();
+    if(FileTypeProbe.matches(head, 0, "GIF8") ||
+       FileTypeProbe.matches(head, 0, "\u00ff\u00d8\u00ff") ||
+       FileTypeProbe.matches(head, 0, "\u0089PNG") ||
+       FileTypeProbe.matches(head, 0, "BM") ||
+       FileTypeProbe.matches(head, 0, "II*\u0000") ||
+       FileTypeProbe.matches(head, 0, "MM\u0000*")) return FileTypeProbe.MATCH;
+    // portable pixmaps P1 through P6
+    if(head != null && head.length > 1 && head[0] == 'P' &&
+       head[1] >= '1' && head[1] <= '6') return FileTypeProbe.MATCH;
+    return FileTypeProbe.UNKNOWN;
+  }
   /**
    * Reads and sets the image.
    *
@@ -0,0 +1,464 @@
+package iiv.io;
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * Inflates gzip data with a decoder whose state can be saved at deflate
+ * block boundaries and later restored.  Used by GZIPIndex to record
+ * checkpoints while inflating a whole file once and to resume inflating
+ * from a checkpoint instead of from the beginning of the file.
+ * Handles concatenated gzip members.  CRCs are not checked because
+ * inflating may start in the middle of a member.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		GZIPIndex
+ * @since	iiV1.187
+ */
+public class CheckpointInflaterInputStream extends InputStream {
+  /** Size of the deflate history window. */
+  public final static int WINDOW_SIZE = 32768;
+  private final static int WINDOW_MASK = WINDOW_SIZE - 1;
+
+  private final static int MEMBER_HEADER = 0;
+  private final static int BLOCK_HEADER = 1;
+  private final static int STORED = 2;
+  private final static int CODES = 3;
+  private final static int TRAILER = 4;
+  private final static int DONE = 5;
+
+  private final static int[] LENGTH_BASE = {
+    3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+    35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+  private final static int[] LENGTH_EXTRA = {
+    0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+    3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+  private final static int[] DIST_BASE = {
+    1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+    257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+    8193, 12289, 16385, 24577 };
+  private final static int[] DIST_EXTRA = {
+    0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+    7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+  private final static int[] CODE_LENGTH_ORDER = {
+    16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+  private final static Object staticLock = new Object();
+  private static Huffman fixedLitLen = null;
+  private static Huffman fixedDist = null;
+
+  private final InputStream in;
+  private final byte[] inBuf = new byte[64 * 1024];
+  private int inBufPos = 0;
+  private int inBufLen = 0;
+  private long inPosition;
+  private long bitBuf = 0;
+  private int bitCnt = 0;
+
+  private final byte[] window = new byte[WINDOW_SIZE];
+  private int windowPos = 0;
+  private long outPosition;
+
+  private int state;
+  private boolean lastBlock = false;
+  private int storedRemaining = 0;
+  private int copyRemaining = 0;
+  private int copyDistance = 0;
+  private Huffman litLen = null;
+  private Huffman dist = null;
+
+  private long checkpointSpan = 0;
+  private long lastCheckpoint = 0;
+  private final byte[] single = new byte[1];
+
+  /**
+   * Canonical Huffman decoding table with a direct lookup for short codes.
+   */
+  private final static class Huffman {
+    final static int FAST_BITS = 10;
+    final int[] count = new int[16];
+    final int[] symbol;
+    final int[] fast = new int[1 << FAST_BITS];
+    Huffman(int[] lengths, int offset, int n) throws ZipException {
+      symbol = new int[n];
+      for(int i = 0; i < n; i++) count[lengths[offset + i]]++;
+      count[0] = 0;
+      int left = 1;
+      for(int len = 1; len < 16; len++) {
+	left = (left << 1) - count[len];
+	if(left < 0) throw new ZipException("Over subscribed Huffman code");
+      }
+      int[] offs = new int[16];
+      for(int len = 1; len < 15; len++) offs[len + 1] = offs[len] + count[len];
+      for(int i = 0; i < n; i++)
+	if(lengths[offset + i] != 0) symbol[offs[lengths[offset + i]]++] = i;
+      // fill the direct lookup with bit reversed canonical codes
+      int code = 0;
+      int index = 0;
+      for(int len = 1; len < 16; len++) {
+	for(int k = 0; k < count[len]; k++, code++, index++) {
+	  if(len <= FAST_BITS) {
+	    int rev = 0;
+	    for(int b = 0; b < len; b++) rev |= ((code >> b) & 1) << (len - 1 - b);
+	    int entry = (len << 16) | symbol[index];
+	    for(int j = rev; j < fast.length; j += (1 << len)) fast[j] = entry;
+	  }
+	}
+	code <<= 1;
+      }
+    }
+  }
+  /**
+   * Constructs a new instance inflating from the beginning of a gzip stream.
+   *
+   * @param in	compressed input stream positioned at a gzip header
+   */
+  public CheckpointInflaterInputStream(InputStream in) {
+    this.in = in;
+    inPosition = 0;
+    outPosition = 0;
+    state = MEMBER_HEADER;
+  }
+  /**
+   * Constructs a new instance resuming inflation at a checkpoint.
+   *
+   * @param in		compressed input stream positioned at the byte
+   *			containing the checkpoint bit position
+   * @param bitPosition	bit position in the compressed stream of the
+   *			deflate block header to resume at
+   * @param outPosition	uncompressed position corresponding to the
+   *			checkpoint
+   * @param history	up to the last WINDOW_SIZE bytes inflated before
+   *			the checkpoint
+   * @exception IOException thrown on errors reading
+   */
+  public CheckpointInflaterInputStream(InputStream in, long bitPosition,
+				       long outPosition, byte[] history)
+    throws IOException {
+    this.in = in;
+    this.inPosition = bitPosition >> 3;
+    this.outPosition = outPosition;
+    this.lastCheckpoint = outPosition;
+    int n = Math.min(history.length, WINDOW_SIZE);
+    System.arraycopy(history, history.length - n, window, 0, n);
+    windowPos = n & WINDOW_MASK;
+    int skipBits = (int) (bitPosition & 7);
+    if(skipBits != 0) bits(skipBits);
+    state = BLOCK_HEADER;
+  }
+  /**
+   * Sets the minimum number of uncompressed bytes between calls to
+   * checkpoint.
+   *
+   * @param span	bytes between checkpoints or <code>0</code> for none
+   */
+  public void setCheckpointSpan(long span) { checkpointSpan = span; }
+  /**
+   * Called at deflate block boundaries after at least the checkpoint
+   * span of bytes has been inflated since the last checkpoint.
+   * Does nothing and should be overridden to record checkpoints.
+   *
+   * @param bitPosition	bit position in the compressed stream
+   * @param outPosition	uncompressed position
+   * @param history	copy of the last bytes inflated
+   */
+  protected void checkpoint(long bitPosition, long outPosition, byte[] history) {
+  }
+  /**
+   * Gets the number of uncompressed bytes inflated including the
+   * position this stream started at.
+   *
+   * @return	uncompressed position
+   */
+  public long getOutPosition() { return outPosition; }
+  /**
+   * Gets the next compressed byte.
+   *
+   * @return	byte value or <code>-1</code> at end of file
+   * @exception IOException thrown on errors reading
+   */
+  private int nextByte() throws IOException {
+    if(inBufPos == inBufLen) {
+      inBufLen = in.read(inBuf, 0, inBuf.length);
+      inBufPos = 0;
+      if(inBufLen <= 0) {
+	inBufLen = 0;
+	return -1;
+      }
+    }
+    inPosition++;
+    return inBuf[inBufPos++] & 0xff;
+  }
+  /**
+   * Gets bits from the compressed stream least significant first.
+   *
+   * @param n	number of bits from 0 to 32
+   * @return	bits
+   * @exception IOException thrown on errors or end of file
+   */
+  private int bits(int n) throws IOException {
+    while(bitCnt < n) {
+      int b = nextByte();
+      if(b < 0) throw new EOFException("Unexpected end of deflate data");
+      bitBuf |= ((long) b) << bitCnt;
+      bitCnt += 8;
+    }
+    int value = (int) (bitBuf & ((1L << n) - 1));
+    bitBuf >>>= n;
+    bitCnt -= n;
+    return value;
+  }
+  /**
+   * Discards bits to the next byte boundary.
+   */
+  private void alignToByte() {
+    int n = bitCnt & 7;
+    bitBuf >>>= n;
+    bitCnt -= n;
+  }
+  /**
+   * Decodes one symbol.
+   *
+   * @param h	Huffman table
+   * @return	symbol
+   * @exception IOException thrown on errors or invalid codes
+   */
+  private int decode(Huffman h) throws IOException {
+    while(bitCnt < 15) {
+      int b = nextByte();
+      if(b < 0) break;
+      bitBuf |= ((long) b) << bitCnt;
+      bitCnt += 8;
+    }
+    int entry = h.fast[(int) (bitBuf & ((1 << Huffman.FAST_BITS) - 1))];
+    int len = entry >>> 16;
+    if(entry != 0 && len <= bitCnt) {
+      bitBuf >>>= len;
+      bitCnt -= len;
+      return entry & 0xffff;
+    }
+    // slow canonical decode for long codes
+    int code = 0;
+    int first = 0;
+    int index = 0;
+    for(len = 1; len < 16; len++) {
+      code |= bits(1);
+      int count = h.count[len];
+      if(code - count < first) return h.symbol[index + (code - first)];
+      index += count;
+      first += count;
+      first <<= 1;
+      code <<= 1;
+    }
+    throw new ZipException("Invalid Huffman code");
+  }
+  /**
+   * Reads a gzip member header.
+   *
+   * @return	<code>false</code> if there are no more members
+   * @exception IOException thrown on errors or invalid header
+   */
+  private boolean readMemberHeader() throws IOException {
+    // bytes may already be buffered after the previous member trailer
+    int id1 = (bitCnt >= 8) ? bits(8) : nextByte();
+    if(id1 != 0x1f) return false; // end of file or trailing garbage
+    if(bits(8) != 0x8b || bits(8) != 8)
+      throw new ZipException("Not in GZIP format");
+    int flg = bits(8);
+    for(int i = 0; i < 6; i++) bits(8);
+    if((flg & 4) != 0) {
+      int xlen = bits(16);
+      for(int i = 0; i < xlen; i++) bits(8);
+    }
+    if((flg & 8) != 0) while(bits(8) != 0);
+    if((flg & 16) != 0) while(bits(8) != 0);
+    if((flg & 2) != 0) bits(16);
+    return true;
+  }
+  /**
+   * Reads the dynamic Huffman tables for a block.
+   *
+   * @exception IOException thrown on errors or invalid tables
+   */
+  private void readDynamicTables() throws IOException {
+    int nlen = bits(5) + 257;
+    int ndist = bits(5) + 1;
+    int ncode = bits(4) + 4;
+    if(nlen > 286 || ndist > 30) throw new ZipException("Bad deflate counts");
+    int[] lengths = new int[320];
+    for(int i = 0; i < ncode; i++) lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+    Huffman lencode = new Huffman(lengths, 0, 19);
+    int index = 0;
+    while(index < nlen + ndist) {
+      int symbol = decode(lencode);
+      if(symbol < 16) lengths[index++] = symbol;
+      else {
+	int len = 0;
+	int repeat;
+	if(symbol == 16) {
+	  if(index == 0) throw new ZipException("Repeat with no first length");
+	  len = lengths[index - 1];
+	  repeat = 3 + bits(2);
+	}
+	else if(symbol == 17) repeat = 3 + bits(3);
+	else repeat = 11 + bits(7);
+	if(index + repeat > nlen + ndist) throw new ZipException("Too many lengths");
+	while(repeat-- > 0) lengths[index++] = len;
+      }
+    }
+    if(lengths[256] == 0) throw new ZipException("No end of block code");
+    litLen = new Huffman(lengths, 0, nlen);
+    dist = new Huffman(lengths, nlen, ndist);
+  }
+  /**
+   * Sets the fixed Huffman tables creating them on first use.
+   *
+   * @exception IOException never thrown for fixed tables
+   */
+  private void setFixedTables() throws IOException {
+    synchronized (staticLock) {
+      if(fixedLitLen == null) {
+	int[] lengths = new int[288];
+	int i = 0;
+	for(; i < 144; i++) lengths[i] = 8;
+	for(; i < 256; i++) lengths[i] = 9;
+	for(; i < 280; i++) lengths[i] = 7;
+	for(; i < 288; i++) lengths[i] = 8;
+	fixedLitLen = new Huffman(lengths, 0, 288);
+	for(i = 0; i < 30; i++) lengths[i] = 5;
+	fixedDist = new Huffman(lengths, 0, 30);
+      }
+      litLen = fixedLitLen;
+      dist = fixedDist;
+    }
+  }
+  /**
+   * Copies the window into linear order ending with the last byte inflated.
+   *
+   * @param position	current uncompressed position
+   * @return	history bytes
+   */
+  private byte[] getHistory(long position) {
+    int n = (int) Math.min(position, WINDOW_SIZE);
+    byte[] history = new byte[n];
+    for(int i = 0; i < n; i++)
+      history[i] = window[(windowPos - n + i) & WINDOW_MASK];
+    return history;
+  }
+  public int read() throws IOException {
+    int n = read(single, 0, 1);
+    if(n < 1) return -1;
+    return single[0] & 0xff;
+  }
+  public int read(byte[] b, int off, int len) throws IOException {
+    int start = off;
+    int end = off + len;
+    while(off < end) {
+      switch(state) {
+      case MEMBER_HEADER:
+	state = readMemberHeader() ? BLOCK_HEADER : DONE;
+	break;
+      case BLOCK_HEADER:
+	if(checkpointSpan > 0) {
+	  // outPosition is only updated at the end of each read
+	  long position = outPosition + (off - start);
+	  if(position - lastCheckpoint >= checkpointSpan) {
+	    lastCheckpoint = position;
+	    checkpoint((inPosition << 3) - bitCnt, position, getHistory(position));
+	  }
+	}
+	lastBlock = bits(1) == 1;
+	int type = bits(2);
+	if(type == 0) {
+	  alignToByte();
+	  int length = bits(16);
+	  if((~bits(16) & 0xffff) != length)
+	    throw new ZipException("Stored block length mismatch");
+	  storedRemaining = length;
+	  state = STORED;
+	}
+	else if(type == 1) {
+	  setFixedTables();
+	  state = CODES;
+	}
+	else if(type == 2) {
+	  readDynamicTables();
+	  state = CODES;
+	}
+	else throw new ZipException("Invalid deflate block type");
+	break;
+      case STORED:
+	while(storedRemaining > 0 && off < end) {
+	  byte value = (byte) bits(8);
+	  window[windowPos] = value;
+	  windowPos = (windowPos + 1) & WINDOW_MASK;
+	  b[off++] = value;
+	  storedRemaining--;
+	}
+	if(storedRemaining == 0) state = lastBlock ? TRAILER : BLOCK_HEADER;
+	break;
+      case CODES:
+	while(off < end) {
+	  if(copyRemaining > 0) {
+	    int n = Math.min(copyRemaining, end - off);
+	    copyRemaining -= n;
+	    int from = windowPos - copyDistance;
+	    for(; n > 0; n--) {
+	      byte value = window[from++ & WINDOW_MASK];
+	      window[windowPos] = value;
+	      windowPos = (windowPos + 1) & WINDOW_MASK;
+	      b[off++] = value;
+	    }
+	    continue;
+	  }
+	  int symbol = decode(litLen);
+	  if(symbol < 256) {
+	    window[windowPos] = (byte) symbol;
+	    windowPos = (windowPos + 1) & WINDOW_MASK;
+	    b[off++] = (byte) symbol;
+	  }
+	  else if(symbol == 256) {
+	    state = lastBlock ? TRAILER : BLOCK_HEADER;
+	    break;
+	  }
+	  else {
+	    symbol -= 257;
+	    if(symbol >= 29) throw new ZipException("Invalid length code");
+	    copyRemaining = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+	    int dsymbol = decode(dist);
+	    if(dsymbol >= 30) throw new ZipException("Invalid distance code");
+	    copyDistance = DIST_BASE[dsymbol] + bits(DIST_EXTRA[dsymbol]);
+	    if(copyDistance > outPosition + (off - start))
+	      throw new ZipException("Distance too far back");
+	  }
+	}
+	break;
+      case TRAILER:
+	alignToByte();
+	bits(32); // crc
+	bits(32); // isize
+	state = MEMBER_HEADER;
+	break;
+      case DONE:
+      default:
+	if(off == start) return -1;
+	outPosition += off - start;
+	return off - start;
+      }
+    }
+    outPosition += off - start;
+    return off - start;
+  }
+  public long skip(long n) throws IOException {
+    byte[] buf = new byte[(int) Math.min(n, 64 * 1024)];
+    long skipped = 0;
+    while(skipped < n) {
+      int count = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+      if(count < 0) break;
+      skipped += count;
+    }
+    return skipped;
+  }
+  public void close() throws IOException {
+    in.close();
+  }
+}
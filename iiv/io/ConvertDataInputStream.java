@@ -15,6 +15,11 @@ public class ConvertDataInputStream extends FilterInputStream
   // this stream is not multi-thread save
   private CNUDataConversions cnuDataConv = new CNUDataConversions();
   private byte b[] = new byte[8];
+  private byte bulkBuffer[] = null;
+  /**
+   * Size of the scratch buffer used by the bulk read methods.
+   */
+  public final static int BULK_BUFFER_BYTES = 64 * 1024;
   /**
    * Constructs a new instance.
    *
@@ -87,6 +92,106 @@ public class ConvertDataInputStream extends FilterInputStream
     ( (DataInputStream) in).readFully(b, 0, 8);
     return cnuDataConv.bytesToDouble(b, 0);
   }
+  /**
+   * Gets the scratch buffer used by the bulk read methods.
+   *
+   * @return	scratch buffer
+   */
+  private byte[] getBulkBuffer() {
+    if(bulkBuffer == null) bulkBuffer = new byte[BULK_BUFFER_BYTES];
+    return bulkBuffer;
+  }
+  /**
+   * Reads an array of shorts converting whole buffers at a time.
+   *
+   * @param s	array to read into
+   * @param off	offset to first short to store
+   * @param len	number of shorts to read
+   * @exception IOException thrown on errors reading
+   */
+  public void readShorts(short s[], int off, int len) throws IOException {
+    byte buf[] = getBulkBuffer();
+    int maxWords = buf.length / 2;
+    while(len > 0) {
+      int n = Math.min(len, maxWords);
+      ( (DataInputStream) in).readFully(buf, 0, n * 2);
+      cnuDataConv.bytesToShorts(buf, 0, s, off, n);
+      off += n; len -= n;
+    }
+  }
+  /**
+   * Reads an array of ints converting whole buffers at a time.
+   *
+   * @param i	array to read into
+   * @param off	offset to first int to store
+   * @param len	number of ints to read
+   * @exception IOException thrown on errors reading
+   */
+  public void readInts(int i[], int off, int len) throws IOException {
+    byte buf[] = getBulkBuffer();
+    int bytesPerInt = cnuDataConv.bytesPerInt();
+    int maxWords = buf.length / bytesPerInt;
+    while(len > 0) {
+      int n = Math.min(len, maxWords);
+      ( (DataInputStream) in).readFully(buf, 0, n * bytesPerInt);
+      cnuDataConv.bytesToInts(buf, 0, i, off, n);
+      off += n; len -= n;
+    }
+  }
+  /**
+   * Reads an array of longs converting whole buffers at a time.
+   *
+   * @param l	array to read into
+   * @param off	offset to first long to store
+   * @param len	number of longs to read
+   * @exception IOException thrown on errors reading
+   */
+  public void readLongs(long l[], int off, int len) throws IOException {
+    byte buf[] = getBulkBuffer();
+    int maxWords = buf.length / 8;
+    while(len > 0) {
+      int n = Math.min(len, maxWords);
+      ( (DataInputStream) in).readFully(buf, 0, n * 8);
+      cnuDataConv.bytesToLongs(buf, 0, l, off, n);
+      off += n; len -= n;
+    }
+  }
+  /**
+   * Reads an array of floats converting whole buffers at a time.
+   *
+   * @param f	array to read into
+   * @param off	offset to first float to store
+   * @param len	number of floats to read
+   * @exception IOException thrown on errors reading
+   */
+  public void readFloats(float f[], int off, int len) throws IOException {
+    byte buf[] = getBulkBuffer();
+    int maxWords = buf.length / 4;
+    while(len > 0) {
+      int n = Math.min(len, maxWords);
+      ( (DataInputStream) in).readFully(buf, 0, n * 4);
+      cnuDataConv.bytesToFloats(buf, 0, f, off, n);
+      off += n; len -= n;
+    }
+  }
+  /**
+   * Reads an array of doubles converting whole buffers at a time.
+   *
+   * @param d	array to read into
+   * @param off	offset to first double to store
+   * @param len	number of doubles to read
+   * @exception IOException thrown on errors reading
+   */
+  public void readDoubles(double d[], int off, int len) throws IOException {
+    byte buf[] = getBulkBuffer();
+    int maxWords = buf.length / 8;
+    while(len > 0) {
+      int n = Math.min(len, maxWords);
+      ( (DataInputStream) in).readFully(buf, 0, n * 8);
+      cnuDataConv.bytesToDoubles(buf, 0, d, off, n);
+      off += n; len -= n;
+    }
+  }
   public String readLine() throws IOException {
     throw new IOException("readLine not implemented because deprecated");
   }
@@ -43,9 +43,11 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
   private static final int PATIENT_NAME = 0x00100010;
   private static final int PATIENT_ID = 0x00100020;
   private static final int SERIES_NUMBER = 0x00200011;
+  private static final int SERIES_INSTANCE_UID = 0x0020000E;
   private static final int SERIES_DESCRIPTION = 0x0008103e;
   private static final int IMAGE_NUMBER = 0x00200013;
   private static final int IMAGE_POSITION = 0x00200032;
+  private static final int IMAGE_ORIENTATION = 0x00200037;
   private static final int REFERENCED_FILE_ID = 0x00041500;
   private static final int REFERENCED_IMAGE_SEQUENCE = 0x00081140;
   private static final int ICON_IMAGE_SEQUENCE = 0x880200;
@@ -54,12 +56,16 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
   private static final int keyOffset = 128;  //location of "DICM"
   private static final String DICOM_Key = "DICM";
 
+  private boolean headerRead = false;
   private boolean dataRead = false;
+  private boolean DICMFound = true;
   private Object dataReadLock = new Object();
-  private Vector<DICOM_DataElement> dataElements = new Vector<DICOM_DataElement>();
+  private LinkedHashMap<Integer, DICOM_DataElement> dataElements =
+    new LinkedHashMap<Integer, DICOM_DataElement>();
   private Vector<String> ignoredFormatErrors = new Vector<String>();
   private ColorModel colorModel = null;
   private CNUScale cnuScale = null;
+  private DICOM_readDataInfo readDataInfo = null;
 
   /**
    * Constructs an instance of DICOMImgFile with a given file name.
@@ -101,18 +107,26 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
   }
 
   /**
-   * Reads data from the file.
+   * Regions are never read directly from the file for this format.
+   *
+   * @return	<code>false</code>
+   */
+  public boolean isRegionReadable() { return false; }
+  /**
+   * Reads the header stopping at the pixel data element.  The pixel data
+   * offset and length are recorded so readData only needs to read the
+   * pixel data.
    *
    * @exception IOException thrown on errors reading from the file.
    */
-  public void readData() throws IOException {
-    if(dataRead) return;
+  public void readHeader() throws IOException {
+    if(headerRead) return;
     synchronized (dataReadLock) {
-      if(dataRead) return;
+      if(headerRead) return;
       DataInput dataInput = null;
       long currentOffset = 0;
       try {
-	dataInput = getDataInput();
+	dataInput = getDataInput(0);
 	CNUDataConversions cdc = getCNUDataConversions();
 	DICOM_readDataInfo rdi = new DICOM_readDataInfo();
 
@@ -124,7 +138,7 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
         dataInput.readFully(keyBytes);
         currentOffset += keyBytes.length;
         String readKey = new String(keyBytes);
-        boolean DICMFound = true;
+        DICMFound = true;
         if( ! DICOM_Key.equals(readKey)) {
 	  // some DICOM files don't have key so still try reading
 	  // readData will throw IOException if unknown data tag found with large data size
@@ -136,14 +150,40 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
             dataInput = null;
             inputStream.close();
           }
-          dataInput = getDataInput();
+          dataInput = getDataInput(0);
           currentOffset = 0;
         }
 
 	readData(dataInput, cdc, currentOffset, -1,
-		 dataElements, ignoredFormatErrors,
-		 DICMFound, rdi);
-
+		 null, dataElements, ignoredFormatErrors,
+		 DICMFound, rdi, true);
+	readDataInfo = rdi;
+	headerRead = true;
+      } finally {
+	if(dataInput instanceof InputStream) ((InputStream) dataInput).close();
+      }
+    }
+  }
+  /**
+   * Reads data from the file.  Reads the header first if not already read
+   * then only the pixel data.
+   *
+   * @exception IOException thrown on errors reading from the file.
+   */
+  public void readData() throws IOException {
+    if(dataRead) return;
+    synchronized (dataReadLock) {
+      if(dataRead) return;
+      readHeader();
+      DICOM_readDataInfo rdi = readDataInfo;
+      if(rdi.pixel_data_offset < 0)
+	throw new IOException("read data failure -- pixel data not found");
+      DataInput dataInput = null;
+      try {
+	dataInput = getDataInput(rdi.pixel_data_offset);
+	readData(dataInput, getCNUDataConversions(), rdi.pixel_data_offset, -1,
+		 null, dataElements, ignoredFormatErrors,
+		 DICMFound, rdi, false);
 
 	if(rdi.dataArray != null) {
 	  setDataArray(rdi.dims, rdi.dataArray);
@@ -158,7 +198,49 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
       }
     }
   }
-
+  /**
+   * Open a new buffered data input stream with conversions if needed
+   * positioned at an offset.
+   *
+   * @param offset	byte offset to start at
+   * @return newly open data input stream
+   * @exception IOException thrown on errors opening the file.
+   */
+  private DataInput getDataInput(long offset) throws IOException {
+    InputStream inS = new BufferedInputStream(getCNUFile().getInputStream(), 16 * 1024);
+    try {
+      long toSkip = offset;
+      while(toSkip > 0) {
+	long skipped = inS.skip(toSkip);
+	if(skipped <= 0) throw new EOFException("offset beyond end of " + getFileName());
+	toSkip -= skipped;
+      }
+    } catch (IOException ioe) {
+      inS.close();
+      throw ioe;
+    }
+    CNUDataConversions cdc = getCNUDataConversions();
+    if(cdc.getConversionsNeeded()) return new ConvertDataInputStream(inS, cdc);
+    else return new DataInputStream(inS);
+  }
+  /**
+   * Checks if the header has been read.
+   *
+   * @return	<code>true</code> if the header has been read
+   */
+  public boolean getHeaderRead() { return headerRead; }
+  /**
+   * Gets a data element read from the header.
+   *
+   * @param tag	combined group and element of the tag
+   * @return	the data element or <code>null</code> if not found or
+   *		the header has not been read
+   */
+  public DICOM_DataElement getDataElement(int tag) {
+    synchronized (dataReadLock) {
+      return dataElements.get(Integer.valueOf(tag));
+    }
+  }
   /**
    * Sets the color model.
    *
@@ -185,6 +267,13 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
    * @return	the scaling object
    */
   public CNUScale getScale() { return cnuScale; }
+  /**
+   * Gets the info used building the image, including series and position
+   * values needed to assemble a series of files.
+   *
+   * @return	the info or <code>null</code> if the header is not read
+   */
+  public DICOM_readDataInfo getReadDataInfo() { return readDataInfo; }
   /**
    * Creates a string representation of the object
    *
@@ -193,18 +282,21 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
   public String toString() {
     StringBuffer sb = new StringBuffer();
     sb.append(super.toString()).append("\n");
-    Enumeration e = dataElements.elements();
-    while(e.hasMoreElements()) {
-      sb.append(e.nextElement().toString());
-      sb.append('\n');
+    synchronized (dataReadLock) {
+      Iterator<DICOM_DataElement> it = dataElements.values().iterator();
+      while(it.hasNext()) {
+	sb.append(it.next().toString());
+	sb.append('\n');
+      }
     }
+    sb.append("headerRead=").append(headerRead).append("\n");
     sb.append("dataRead=").append(dataRead).append("\n");
     sb.append("colorModel=");
     sb.append((colorModel == null) ? "null" : colorModel.toString());
     sb.append("\n");
     if(ignoredFormatErrors.size() > 0) {
       sb.append("The following DICOM format errors were ignored:\n");
-      e = ignoredFormatErrors.elements();
+      Enumeration e = ignoredFormatErrors.elements();
       while(e.hasMoreElements()) {
 	sb.append(e.nextElement().toString());
 	sb.append('\n');
@@ -246,7 +338,14 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
       public int bluePaletteTableDataBits = -1;
 
       public int series_number = -1;
+      public String series_instance_uid = null;
+      public int image_number = -1;
+      public double[] image_position = null;
+      public double[] image_orientation = null;
       public String referenced_file_id = null;
+      // offset to the pixel data element header and its value length
+      public long pixel_data_offset = -1;
+      public long pixel_data_length = -1;
   }
 
   /**
@@ -267,6 +366,60 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
 			      Vector<DICOM_DataElement> dataElements, Vector<String> ignoredFormatErrors,
 			      boolean DICMFound, DICOM_readDataInfo rdi)
       throws IOException {
+    return readData(dataInput, cdc, currentOffset, endOffset,
+		    dataElements, null, ignoredFormatErrors, DICMFound, rdi, false);
+  }
+  /**
+   * Reads header data elements stopping at the pixel data element.
+   * The offset of the pixel data element is stored in
+   * rdi.pixel_data_offset so it may be read later by resuming
+   * readData there with the same rdi.
+   *
+   * @param dataInput input to read from
+   * @param cdc data conversions
+   * @param currentOffset offset to input
+   * @param dataElements map for storing DICOM_DataElement keyed by combined
+   *			 group and element as we read them
+   * @param ignoredFormatErrors for storing ignored errors may be <code>null</code>
+   * @param DICMFound <code>true</code> if DICM value was found in header
+   * @param rdi storage for info needed when building an image
+   * @return currentOffset
+   * @exception IOException thrown on errors reading from the file.
+   */
+  public static long readHeader(DataInput dataInput, CNUDataConversions cdc,
+				long currentOffset,
+				Map<Integer, DICOM_DataElement> dataElements,
+				Vector<String> ignoredFormatErrors,
+				boolean DICMFound, DICOM_readDataInfo rdi)
+      throws IOException {
+    return readData(dataInput, cdc, currentOffset, -1,
+		    null, dataElements, ignoredFormatErrors, DICMFound, rdi, true);
+  }
+  /**
+   * Reads data elements storing them in a list or a map.
+   *
+   * @param dataInput input to read from
+   * @param cdc data conversions
+   * @param currentOffset offset to input mainly for debugging
+   * @param elementList Vector for storing DICOM_DataElement as we read them
+   *			may be <code>null</code>
+   * @param elementMap map for storing DICOM_DataElement keyed by tag
+   *			may be <code>null</code>
+   * @param ignoredFormatErrors for storing ignored errors may be <code>null</code>
+   * @param DICMFound <code>true</code> if DICM value was found in header
+   * @param rdi storage for info needed when building an image
+   * @param headerOnly <code>true</code> to stop before reading pixel data
+   * @return currentOffset
+   * @exception IOException thrown on errors reading from the file.
+   */
+  private static long readData(DataInput dataInput, CNUDataConversions cdc,
+			       long currentOffset, long endOffset,
+			       Vector<DICOM_DataElement> elementList,
+			       Map<Integer, DICOM_DataElement> elementMap,
+			       Vector<String> ignoredFormatErrors,
+			       boolean DICMFound, DICOM_readDataInfo rdi,
+			       boolean headerOnly)
+      throws IOException {
     int vrMode = DICOM_DataElement.UNKNOWN_VR_MODE;
     int lastVrMode = DICOM_DataElement.UNKNOWN_VR_MODE;
     int storageType = UNSIGNED_SHORT;
@@ -279,14 +432,18 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
 
     try {
       if(endOffset < 0) endOffset = Long.MAX_VALUE; // stop loop on EOF or other error
-      while(currentOffset < endOffset && ! currentThread.isInterrupted()) {
+      boolean pixelDataFound = false;
+      while(currentOffset < endOffset && ! pixelDataFound &&
+	    ! currentThread.isInterrupted()) {
 	ddeOffset = currentOffset;
 	// read the next data elements header
 	DICOM_DataElement dde =
 	    DICOM_DataElement.getDICOM_DataElement(dataInput, currentOffset, vrMode, cdc,
 						   ignoredFormatErrors);
 	currentOffset += dde.getHeaderLength();
-	dataElements.addElement(dde);
+	if(elementList != null) elementList.addElement(dde);
+	if(elementMap != null)
+	  elementMap.put(Integer.valueOf(dde.getTag().getCombinedGroupAndElement()), dde);
 	// note mode errors
 	if(lastVrMode == DICOM_DataElement.UNKNOWN_VR_MODE) {
 	  lastVrMode = dde.getVRMode();
@@ -340,6 +497,40 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
 	    1.2.840.10008.1.2.2 "Explicit VR Big Endian"
 	  */
 	  break;
+	// type 2 elements that may be empty or invalid are left at
+	// their defaults instead of failing the read
+	case SERIES_NUMBER:
+	  dde.readValue(dataInput);
+	  currentOffset += dde.getDataLength();
+	  rdi.series_number = optionalIntValue(dde, rdi.series_number,
+					       ddeOffset, ignoredFormatErrors);
+	  break;
+	case SERIES_INSTANCE_UID:
+	  dde.readValue(dataInput);
+	  currentOffset += dde.getDataLength();
+	  rdi.series_instance_uid =
+	    optionalStringValue(dde, ddeOffset, ignoredFormatErrors);
+	  break;
+	case IMAGE_NUMBER:
+	  dde.readValue(dataInput);
+	  currentOffset += dde.getDataLength();
+	  rdi.image_number = optionalIntValue(dde, rdi.image_number,
+					      ddeOffset, ignoredFormatErrors);
+	  break;
+	case IMAGE_POSITION:
+	  dde.readValue(dataInput);
+	  currentOffset += dde.getDataLength();
+	  // x, y and z of the first voxel in millimeters
+	  rdi.image_position =
+	    optionalDoubleValues(dde, 3, ddeOffset, ignoredFormatErrors);
+	  break;
+	case IMAGE_ORIENTATION:
+	  dde.readValue(dataInput);
+	  currentOffset += dde.getDataLength();
+	  // direction cosines of the rows followed by the columns
+	  rdi.image_orientation =
+	    optionalDoubleValues(dde, 6, ddeOffset, ignoredFormatErrors);
+	  break;
 	case NUMBER_OF_FRAMES:
 	  dde.readValue(dataInput);
 	  currentOffset += dde.getDataLength();
@@ -382,6 +573,7 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
 	  break;
 	case BITS_STORED:
 	  dde.readValue(dataInput);
+	  currentOffset += dde.getDataLength();
 	  // number of bits allocated per pixel <= bits_allocated
 	  rdi.bitsStored = (int) dde.getLongValue();
 	  break;
@@ -512,6 +704,13 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
 	  rdi.largestPixelValue = dde.getDoubleValue();
 	  break;
 	case PIXEL_DATA:
+	  rdi.pixel_data_offset = ddeOffset;
+	  rdi.pixel_data_length = dde.getDataLength();
+	  if(headerOnly) {
+	    // leave pixel data to be read later
+	    pixelDataFound = true;
+	    break;
+	  }
 	  // may be OW or OB - how to know?
 	  // base OW or OB on bitsAllocated or dimensions
 	  if(rdi.bitsAllocated < 1) {
@@ -975,6 +1174,96 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
 
 
 
+  /**
+   * Gets the integer value of an element that may be empty.
+   *
+   * @param dde			data element with value read
+   * @param defaultValue	value returned if empty or invalid
+   * @param ddeOffset		offset of the element for error messages
+   * @param ignoredFormatErrors	for storing ignored errors
+   * @return	element value or the default
+   */
+  private static int optionalIntValue(DICOM_DataElement dde,
+				      int defaultValue, long ddeOffset,
+				      Vector<String> ignoredFormatErrors) {
+    Object value = dde.getValue();
+    if(value == null) return defaultValue;
+    if((value instanceof String) && (((String) value).trim().length() == 0))
+      return defaultValue;
+    try {
+      return (int) dde.getLongValue();
+    } catch (NumberFormatException nfe) {
+      ignoredFormatErrors.addElement(ddeOffset +
+	" ignoring invalid integer value: element=" + dde.toString());
+      return defaultValue;
+    }
+  }
+  /**
+   * Gets the trimmed string value of an element that may be empty.
+   *
+   * @param dde			data element with value read
+   * @param ddeOffset		offset of the element for error messages
+   * @param ignoredFormatErrors	for storing ignored errors
+   * @return	trimmed value or <code>null</code> if empty or not a string
+   */
+  private static String optionalStringValue(DICOM_DataElement dde,
+					    long ddeOffset,
+					    Vector<String> ignoredFormatErrors) {
+    Object value = dde.getValue();
+    if(value == null) return null;
+    if(! (value instanceof String)) {
+      ignoredFormatErrors.addElement(ddeOffset +
+	" ignoring non string value: element=" + dde.toString());
+      return null;
+    }
+    String s = ((String) value).trim();
+    return (s.length() == 0) ? null : s;
+  }
+  /**
+   * Gets the values of a multiple value decimal string element that
+   * may be empty.
+   *
+   * @param dde			data element with value read
+   * @param count		number of values expected
+   * @param ddeOffset		offset of the element for error messages
+   * @param ignoredFormatErrors	for storing ignored errors
+   * @return	values or <code>null</code> if empty or invalid
+   */
+  private static double[] optionalDoubleValues(DICOM_DataElement dde,
+					       int count, long ddeOffset,
+					       Vector<String> ignoredFormatErrors) {
+    String s = optionalStringValue(dde, ddeOffset, ignoredFormatErrors);
+    if(s == null) return null;
+    try {
+      double[] values = decimalStringsToDoubles(s, count);
+      if(values == null) ignoredFormatErrors.addElement(ddeOffset +
+	" ignoring wrong number of values: element=" + dde.toString());
+      return values;
+    } catch (NumberFormatException nfe) {
+      ignoredFormatErrors.addElement(ddeOffset +
+	" ignoring invalid decimal values: element=" + dde.toString());
+      return null;
+    }
+  }
+  /**
+   * Parses a backslash separated multiple value decimal string.
+   *
+   * @param values	decimal strings separated by backslashes
+   * @param count	number of values expected
+   * @return	array of values or <code>null</code> if there are not
+   *		count values
+   * @exception NumberFormatException thrown if a value is not a number
+   */
+  public static double[] decimalStringsToDoubles(String values, int count)
+    throws NumberFormatException {
+    if(values == null) return null;
+    StringTokenizer tokens = new StringTokenizer(values, "\\");
+    if(tokens.countTokens() != count) return null;
+    double[] doubles = new double[count];
+    for(int i = 0; i < count; i++)
+      doubles[i] = Double.parseDouble(tokens.nextToken().trim());
+    return doubles;
+  }
   /**
    * Makes sure an array of shorts or bytes is an array of bytes
    * by converting a short array to byte using only the most
@@ -994,6 +1283,21 @@ public class DICOMImgFile extends CNUImgFile implements CNUTypesConstants {
     }
     else throw new IllegalArgumentException("color values not 8 bit or 16 bit");
   }
+  /**
+   * Checks if a file has the DICOM part 10 preamble.  Files without the
+   * preamble are still possible DICOM files.
+   *
+   * @param probe	probe of the file
+   * @return	FileTypeProbe.MATCH, FileTypeProbe.LIKELY for ".dcm"
+   *		files or FileTypeProbe.UNKNOWN
+   */
+  public static int probe(FileTypeProbe probe) {
+    if(FileTypeProbe.matches(probe.getHead(), 128, "DICM")) return FileTypeProbe.MATCH;
+    String filename = probe.getFileName().toLowerCase();
+    if(filename.endsWith(".gz")) filename = filename.substring(0, filename.length() - 3);
+    if(filename.endsWith(".dcm")) return FileTypeProbe.LIKELY;
+    return FileTypeProbe.UNKNOWN;
+  }
   /**
    * Runs DICOMImgFile as a standalone program to print out header
    * information.
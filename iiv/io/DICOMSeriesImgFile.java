@@ -0,0 +1,486 @@
+package iiv.io;
+import iiv.data.*;
+import iiv.util.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * DICOMSeriesImgFile assembles a directory of single image DICOM files
+ * into one 3D or 4D volume.  File headers are read in parallel on the
+ * shared worker pool and grouped by series instance UID (or series number
+ * when the UID is missing).  Only pixel data for the chosen series is
+ * read, also in parallel, with slices sorted by distance along the normal
+ * from image position and orientation, falling back to image number.
+ * Series with several files at each position become 4D with the files
+ * at each position ordered by image number.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		DICOMImgFile
+ * @see		iiv.util.WorkerPool
+ * @since	iiV1.187
+ */
+public class DICOMSeriesImgFile extends CNUImgFile implements CNUTypesConstants {
+  /** Distance in millimeters positions may differ and still be the same slice. */
+  public final static double POSITION_TOLERANCE = 1e-3;
+
+  private boolean dataRead = false;
+  private Object dataReadLock = new Object();
+  private String seriesId = null;
+  private String[] seriesIds = new String[0];
+  private String[] sliceFileNames = new String[0];
+  private ColorModel colorModel = null;
+  private CNUScale cnuScale = null;
+  private CoordinateMap coordinateMap = null;
+
+  /**
+   * Constructs an instance of DICOMSeriesImgFile with a given directory.
+   *
+   * @param dirname	directory containing the DICOM files
+   */
+  public DICOMSeriesImgFile(String dirname) {
+    setFileName(dirname);
+  }
+  /**
+   * Constructs an instance of DICOMSeriesImgFile with a given directory.
+   *
+   * @param dirname	directory containing the DICOM files
+   * @param ignored	added for compatibility
+   */
+  public DICOMSeriesImgFile(String dirname, Object ignored) {
+    this(dirname);
+  }
+  /**
+   * Sets the series to read.  Must be set before data is read.
+   *
+   * @param seriesId	series instance UID or series number or
+   *			<code>null</code> to read the series with the most files
+   */
+  public void setSeriesId(String seriesId) { this.seriesId = seriesId; }
+  /**
+   * Gets the series to read.
+   *
+   * @return	series instance UID, series number or <code>null</code>
+   */
+  public String getSeriesId() { return seriesId; }
+  /**
+   * Gets the ids of all series found in the directory when data was read.
+   *
+   * @return	series ids
+   */
+  public String[] getSeriesIds() { return seriesIds.clone(); }
+  /**
+   * Gets the names of the files assembled into the volume in order.
+   *
+   * @return	file names
+   */
+  public String[] getSliceFileNames() { return sliceFileNames.clone(); }
+  /**
+   * Overrides getDimensions to read data if not read.
+   *
+   * @return	the dimensions of the image data
+   */
+  public synchronized CNUDimensions getDimensions(){
+    // dimensions not set until data read
+    CNUDimensions dims = super.getDimensions();
+    if(dims != null) return dims;
+    try {
+      readData();
+      return(super.getDimensions());
+    } catch (IOException ioe) {
+      System.out.println(ioe);
+    }
+    return null;
+  }
+  /**
+   * Regions are never read directly from the file for this format.
+   *
+   * @return	<code>false</code>
+   */
+  public boolean isRegionReadable() { return false; }
+  /**
+   * Reads and assembles the series.
+   *
+   * @exception IOException thrown on errors reading the directory or if
+   *		no matching series is found
+   */
+  public void readData() throws IOException {
+    if(dataRead) return;
+    synchronized (dataReadLock) {
+      if(dataRead) return;
+      File dir = getCNUFile().getFile();
+      if(dir == null || ! dir.isDirectory())
+	throw new IOException("not a local directory " + getFileName());
+      File[] files = dir.listFiles();
+      if(files == null) throw new IOException("error listing directory " + getFileName());
+      Arrays.sort(files);
+      // index headers of every file but only read pixels of the chosen series
+      DICOMImgFile[] slices = readHeaders(files);
+
+      // group by series
+      Hashtable<String, Vector<DICOMImgFile>> series =
+	new Hashtable<String, Vector<DICOMImgFile>>();
+      for(int i = 0; i < slices.length; i++) {
+	if(slices[i] == null) continue;
+	String id = getSeriesId(slices[i].getReadDataInfo());
+	Vector<DICOMImgFile> v = series.get(id);
+	if(v == null) {
+	  v = new Vector<DICOMImgFile>();
+	  series.put(id, v);
+	}
+	v.addElement(slices[i]);
+      }
+      if(series.isEmpty()) throw new IOException("no DICOM images found in " + getFileName());
+      seriesIds = series.keySet().toArray(new String[series.size()]);
+      Arrays.sort(seriesIds);
+      Vector<DICOMImgFile> selected = null;
+      if(seriesId != null) {
+	selected = series.get(seriesId);
+	if(selected == null) {
+	  // allow selecting by series number
+	  for(int i = 0; i < slices.length && selected == null; i++) {
+	    if(slices[i] == null) continue;
+	    DICOMImgFile.DICOM_readDataInfo rdi = slices[i].getReadDataInfo();
+	    if(seriesId.equals(Integer.toString(rdi.series_number)))
+	      selected = series.get(getSeriesId(rdi));
+	  }
+	}
+	if(selected == null)
+	  throw new IOException("series " + seriesId + " not found in " + getFileName());
+      }
+      else {
+	for(int i = 0; i < seriesIds.length; i++) {
+	  Vector<DICOMImgFile> v = series.get(seriesIds[i]);
+	  if(selected == null || v.size() > selected.size()) selected = v;
+	}
+      }
+      DICOMImgFile[] selectedSlices = selected.toArray(new DICOMImgFile[selected.size()]);
+      readPixelData(selectedSlices);
+      assemble(selectedSlices);
+      dataRead = true;
+    }
+  }
+  /**
+   * Reads the headers of all files in parallel on the shared worker pool.
+   *
+   * @param files	files to read
+   * @return	array of files with headers read and <code>null</code>
+   *		entries for files that are not DICOM images
+   * @exception IOException thrown if interrupted
+   */
+  private static DICOMImgFile[] readHeaders(File[] files) throws IOException {
+    Vector<Callable<DICOMImgFile>> tasks = new Vector<Callable<DICOMImgFile>>(files.length);
+    for(int i = 0; i < files.length; i++) {
+      if(! files[i].isFile()) continue;
+      final String filename = files[i].getPath();
+      tasks.addElement(new Callable<DICOMImgFile>() {
+	  public DICOMImgFile call() {
+	    DICOMImgFile dicomImgFile = new DICOMImgFile(filename);
+	    try {
+	      dicomImgFile.readHeader();
+	      if(dicomImgFile.getReadDataInfo().pixel_data_offset < 0)
+		return null; // no image
+	      return dicomImgFile;
+	    } catch (Exception e) {
+	      return null; // not a DICOM file
+	    }
+	  }
+	});
+    }
+    return invokeAll(tasks);
+  }
+  /**
+   * Reads the pixel data of files in parallel on the shared worker pool.
+   *
+   * @param slices	files with headers read
+   * @exception IOException thrown on errors reading any file
+   */
+  private static void readPixelData(DICOMImgFile[] slices) throws IOException {
+    Vector<Callable<DICOMImgFile>> tasks = new Vector<Callable<DICOMImgFile>>(slices.length);
+    for(int i = 0; i < slices.length; i++) {
+      final DICOMImgFile dicomImgFile = slices[i];
+      tasks.addElement(new Callable<DICOMImgFile>() {
+	  public DICOMImgFile call() throws IOException {
+	    dicomImgFile.readData();
+	    return dicomImgFile;
+	  }
+	});
+    }
+    invokeAll(tasks);
+  }
+  /**
+   * Runs tasks on the shared worker pool and waits for them.
+   *
+   * @param tasks	tasks to run
+   * @return	results in the same order as tasks
+   * @exception IOException thrown if a task fails or if interrupted
+   */
+  private static DICOMImgFile[] invokeAll(Vector<Callable<DICOMImgFile>> tasks)
+    throws IOException {
+    ExecutorService pool = WorkerPool.getSharedPool();
+    Vector<Future<DICOMImgFile>> futures = new Vector<Future<DICOMImgFile>>(tasks.size());
+    for(int i = 0; i < tasks.size(); i++) futures.addElement(pool.submit(tasks.elementAt(i)));
+    DICOMImgFile[] results = new DICOMImgFile[futures.size()];
+    try {
+      for(int i = 0; i < results.length; i++) results[i] = futures.elementAt(i).get();
+    } catch (InterruptedException ie) {
+      for(int i = 0; i < results.length; i++) futures.elementAt(i).cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted");
+    } catch (ExecutionException ee) {
+      for(int i = 0; i < results.length; i++) futures.elementAt(i).cancel(true);
+      Throwable cause = ee.getCause();
+      if(cause instanceof IOException) throw (IOException) cause;
+      IOException ioe = new IOException(String.valueOf(cause));
+      ioe.initCause(cause);
+      throw ioe;
+    }
+    return results;
+  }
+  /**
+   * Gets the id used to group a file into a series.
+   *
+   * @param rdi	info read from the file
+   * @return	series instance UID or series number
+   */
+  private static String getSeriesId(DICOMImgFile.DICOM_readDataInfo rdi) {
+    if(rdi.series_instance_uid != null && rdi.series_instance_uid.length() > 0)
+      return rdi.series_instance_uid;
+    return Integer.toString(rdi.series_number);
+  }
+  /**
+   * Sorts the files of one series and copies their data into one volume.
+   *
+   * @param slices	files in the series
+   * @exception IOException thrown if the files do not match in size or type
+   */
+  private void assemble(DICOMImgFile[] slices) throws IOException {
+    final DICOMImgFile.DICOM_readDataInfo first = slices[0].getReadDataInfo();
+    final CNUDimensions firstDims = slices[0].getDimensions();
+    int xdim = firstDims.xdim();
+    int ydim = firstDims.ydim();
+    int frames = firstDims.zdim();
+    int type = firstDims.getType();
+
+    // positions are only usable if every file has them
+    boolean usePositions = first.image_orientation != null;
+    for(int i = 0; i < slices.length && usePositions; i++) {
+      DICOMImgFile.DICOM_readDataInfo rdi = slices[i].getReadDataInfo();
+      usePositions = rdi.image_position != null;
+      CNUDimensions dims = slices[i].getDimensions();
+      if(dims.xdim() != xdim || dims.ydim() != ydim || dims.zdim() != frames ||
+	 dims.getType() != type)
+	throw new IOException("series files differ in size or type " +
+			      slices[i].getFileName());
+    }
+    final double[] normal = usePositions ? sliceNormal(first.image_orientation) : null;
+    // distance along the normal orders the slices
+    final Hashtable<DICOMImgFile, Double> distanceTable = new Hashtable<DICOMImgFile, Double>();
+    for(int i = 0; i < slices.length; i++) {
+      double distance = usePositions ?
+	dot(slices[i].getReadDataInfo().image_position, normal) : 0;
+      distanceTable.put(slices[i], Double.valueOf(distance));
+    }
+    DICOMImgFile[] sorted = slices.clone();
+    Arrays.sort(sorted, new Comparator<DICOMImgFile>() {
+	public int compare(DICOMImgFile a, DICOMImgFile b) {
+	  double da = distanceTable.get(a).doubleValue();
+	  double db = distanceTable.get(b).doubleValue();
+	  if(Math.abs(da - db) > POSITION_TOLERANCE) return (da < db) ? -1 : 1;
+	  int ia = a.getReadDataInfo().image_number;
+	  int ib = b.getReadDataInfo().image_number;
+	  if(ia != ib) return (ia < ib) ? -1 : 1;
+	  return a.getFileName().compareTo(b.getFileName());
+	}
+      });
+
+    // count files at the first position to find the 4th dimension
+    int nt = 1;
+    double zspacing = 0;
+    if(usePositions && frames == 1) {
+      double d0 = distanceTable.get(sorted[0]).doubleValue();
+      while(nt < sorted.length &&
+	    Math.abs(distanceTable.get(sorted[nt]).doubleValue() - d0) <= POSITION_TOLERANCE)
+	nt++;
+      if(sorted.length % nt != 0) nt = 1;
+      else {
+	// every position must have the same number of files
+	for(int i = 0; i < sorted.length && nt > 1; i += nt) {
+	  double di = distanceTable.get(sorted[i]).doubleValue();
+	  double dl = distanceTable.get(sorted[i + nt - 1]).doubleValue();
+	  if(Math.abs(dl - di) > POSITION_TOLERANCE) nt = 1;
+	  else if(i + nt < sorted.length &&
+		  Math.abs(distanceTable.get(sorted[i + nt]).doubleValue() - di) <= POSITION_TOLERANCE)
+	    nt = 1;
+	}
+      }
+      if(sorted.length > nt)
+	zspacing = distanceTable.get(sorted[nt]).doubleValue() - d0;
+    }
+    int nz = (sorted.length / nt) * frames;
+
+    // copy each file into its place in the volume
+    int sliceWords = xdim * ydim * frames;
+    Object dataArray = CNUTypes.arrayOf(type, sliceWords * sorted.length);
+    sliceFileNames = new String[sorted.length];
+    for(int i = 0; i < sorted.length; i++) {
+      int z = i / nt;
+      int t = i % nt;
+      Object sliceArray = sorted[i].getDataArray();
+      if(sliceArray == null)
+	throw new IOException("missing data for " + sorted[i].getFileName());
+      System.arraycopy(sliceArray, 0, dataArray, (t * nz + z * frames) * xdim * ydim,
+		       sliceWords);
+      sliceFileNames[i] = sorted[i].getFileName();
+    }
+
+    double xres = firstDims.getSpatialRes(0);
+    double yres = firstDims.getSpatialRes(1);
+    double zres = (zspacing > 0) ? zspacing * 1e-3 : firstDims.getSpatialRes(2);
+    CNUDimensions dims = new CNUDimensions();
+    if(nt > 1) {
+      dims.set4DValues(xdim, ydim, nz, nt, type, 0);
+      dims.set4DSpatialResolutions(xres, yres, zres, 1.0);
+    }
+    else {
+      dims.set3DValues(xdim, ydim, nz, type, 0);
+      dims.set3DSpatialResolutions(xres, yres, zres);
+    }
+    dims.setOrientation(firstDims.getOrientation());
+    dims.setOrientationOrder(firstDims.getOrientationOrder());
+    setDataArray(dims, dataArray);
+    setColorModel(sorted[0].getColorModel());
+    setScale(sorted[0].getScale());
+    if(usePositions)
+      setCoordinateMap(buildCoordinateMap(getName(), first.image_orientation, normal,
+					  sorted[0].getReadDataInfo().image_position));
+  }
+  /**
+   * Builds a coordinate map from patient based DICOM (LPS) coordinates
+   * to right, anterior, superior positive coordinates as used by NIfTI.
+   *
+   * @param name	name for the map
+   * @param orientation	row and column direction cosines
+   * @param normal	slice normal direction
+   * @param position	position in millimeters of the first voxel
+   * @return	coordinate map
+   */
+  private static CoordinateMap buildCoordinateMap(String name, double[] orientation,
+						  double[] normal, double[] position) {
+    double[][] matrix = new double[3][4];
+    for(int i = 0; i < 3; i++) {
+      double sign = (i < 2) ? -1.0 : 1.0;
+      matrix[i][0] = sign * orientation[i];
+      matrix[i][1] = sign * orientation[3 + i];
+      matrix[i][2] = sign * normal[i];
+      matrix[i][3] = sign * position[i];
+    }
+    return new AffineCoordinateMap(name, matrix, CoordinateMap.MILLIMETERS);
+  }
+  /**
+   * Calculates the slice normal as the cross product of the row and
+   * column direction cosines.
+   *
+   * @param orientation	row and column direction cosines
+   * @return	slice normal
+   */
+  private static double[] sliceNormal(double[] orientation) {
+    return new double[] {
+      orientation[1] * orientation[5] - orientation[2] * orientation[4],
+      orientation[2] * orientation[3] - orientation[0] * orientation[5],
+      orientation[0] * orientation[4] - orientation[1] * orientation[3]
+    };
+  }
+  /**
+   * Calculates a dot product.
+   *
+   * @param a	first vector
+   * @param b	second vector
+   * @return	dot product
+   */
+  private static double dot(double[] a, double[] b) {
+    return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+  }
+  /**
+   * Sets the color model.
+   *
+   * @param cm	a new color model to use with this data
+   *            or <code>null</code> to use standard default
+   */
+  public void setColorModel(ColorModel cm) { colorModel = cm; }
+  /**
+   * Gets the color model that should be used to display this data.
+   *
+   * @return	the color model or <null> if default should be used.
+   */
+  public ColorModel getColorModel() { return colorModel; }
+  /**
+   * Sets the scale object for converting voxel values to lookup table indices.
+   *
+   * @param sc	the scaling object
+   */
+  public void setScale(CNUScale sc) { cnuScale = sc; }
+  /**
+   * Gets the scale object that is used for converting voxel values to
+   * lookup table indices.
+   *
+   * @return	the scaling object
+   */
+  public CNUScale getScale() { return cnuScale; }
+  /**
+   * Sets the coordinate mapping object that should be the default for this data.
+   *
+   * @param coorMap	coordinate mapping object
+   */
+  public void setCoordinateMap(CoordinateMap coorMap) {
+    this.coordinateMap = coorMap;
+  }
+  /**
+   * Gets the coordinate mapping object that should be the default for this data.
+   *
+   * @return	coordinate mapping object
+   */
+  public CoordinateMap getCoordinateMap() {
+    return(coordinateMap);
+  }
+  /**
+   * Creates a string representation of the object
+   *
+   * @return the string representation
+   */
+  public String toString() {
+    StringBuffer sb = new StringBuffer();
+    sb.append(super.toString());
+    sb.append("seriesId=").append(seriesId).append("\n");
+    sb.append("series found=");
+    for(int i = 0; i < seriesIds.length; i++) {
+      if(i > 0) sb.append(", ");
+      sb.append(seriesIds[i]);
+    }
+    sb.append("\n");
+    sb.append("files=").append(sliceFileNames.length).append("\n");
+    sb.append("dataRead=").append(dataRead).append("\n");
+    return sb.toString();
+  }
+  /**
+   * Runs DICOMSeriesImgFile as a standalone program to print out
+   * information about a series.
+   *
+   * @param args	array of arguments from the command line
+   * @exception IOException thrown on errors reading the series
+   */
+  static public void main(String[] args) throws IOException {
+    String usage = "usage:  java DICOMSeriesImgFile directory [seriesId]";
+    if(args.length < 1 || args.length > 2) {
+      System.out.println(usage);
+      System.exit(0);
+    }
+    DICOMSeriesImgFile series = new DICOMSeriesImgFile(args[0]);
+    if(args.length > 1) series.setSeriesId(args[1]);
+    long start = System.currentTimeMillis();
+    series.readData();
+    System.out.println(series.toString());
+    System.out.println("read time(ms)=" + (System.currentTimeMillis() - start));
+  }
+}
@@ -261,7 +261,9 @@ public class DICOM_DataElement implements CNUTypesConstants {
       else if(outArray instanceof short[]) shorts = (short[])outArray;
       else throw new IOException("DICOM_DataElement::readWords - outArray not a short array");
 
-      for(int i=outOffset; i<endIndex; i++) shorts[i] = dataInput.readShort();
+      if(dataInput instanceof ConvertDataInputStream)
+	((ConvertDataInputStream) dataInput).readShorts(shorts, outOffset, totalWords);
+      else for(int i=outOffset; i<endIndex; i++) shorts[i] = dataInput.readShort();
       return shorts;
     case INTEGER:
     case UNSIGNED_INTEGER:
@@ -270,7 +272,9 @@ public class DICOM_DataElement implements CNUTypesConstants {
       else if(outArray instanceof int[]) integers = (int[])outArray;
       else throw new IOException("DICOM_DataElement::readWords - outArray not an integer array");
 
-      for(int i=outOffset; i<endIndex; i++) integers[i] = dataInput.readInt();
+      if(dataInput instanceof ConvertDataInputStream)
+	((ConvertDataInputStream) dataInput).readInts(integers, outOffset, totalWords);
+      else for(int i=outOffset; i<endIndex; i++) integers[i] = dataInput.readInt();
       return integers;
     case FLOAT:
       float floats[];
@@ -278,7 +282,9 @@ public class DICOM_DataElement implements CNUTypesConstants {
       else if(outArray instanceof float[]) floats = (float[])outArray;
       else throw new IOException("DICOM_DataElement::readWords - outArray not an integer array");
 
-      for(int i=outOffset; i<endIndex; i++) floats[i] = dataInput.readFloat();
+      if(dataInput instanceof ConvertDataInputStream)
+	((ConvertDataInputStream) dataInput).readFloats(floats, outOffset, totalWords);
+      else for(int i=outOffset; i<endIndex; i++) floats[i] = dataInput.readFloat();
       return floats;
     case DOUBLE:
       double doubles[];
@@ -286,7 +292,9 @@ public class DICOM_DataElement implements CNUTypesConstants {
       else if(outArray instanceof double[]) doubles = (double[])outArray;
       else throw new IOException("DICOM_DataElement::readWords - outArray not a double array");
 
-      for(int i=outOffset; i<endIndex; i++) doubles[i] = dataInput.readDouble();
+      if(dataInput instanceof ConvertDataInputStream)
+	((ConvertDataInputStream) dataInput).readDoubles(doubles, outOffset, totalWords);
+      else for(int i=outOffset; i<endIndex; i++) doubles[i] = dataInput.readDouble();
       return doubles;
     }
   }
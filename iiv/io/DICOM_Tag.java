@@ -1,6 +1,7 @@
 package iiv.io;
 import java.lang.*;
 import java.io.*;
+import java.util.*;
 /**
  * DICOM_Tag is a class to handle known DICOM Tag values.
  *
@@ -84,8 +85,8 @@ public class DICOM_Tag {
    */
   public static DICOM_Tag getDICOM_Tag(int group, int element) {
     int groupNelement = ((group << 16) & 0xFFFF0000) | (element & 0xFFFF);
-    for(int i=0; i < tagList.length; i++)
-      if(tagList[i].groupNelement == groupNelement) return tagList[i];
+    DICOM_Tag tag = tagTable.get(Integer.valueOf(groupNelement));
+    if(tag != null) return tag;
     return new DICOM_Tag(groupNelement, DICOM_VR.UN, "oh, oh, unknown tag", false);
   };
   /** List of known tags with value representation for implicit mode and descriptive name. */
@@ -1756,4 +1757,19 @@ public class DICOM_Tag {
     new DICOM_Tag(0xFFFEE00D, DICOM_VR.UN, "Item Delimitation Item"),
     new DICOM_Tag(0xFFFEE0DD, DICOM_VR.UN, "Sequence Delimitation Item"),
   };
+  /** Known tags keyed by combined group and element for fast lookup. */
+  private static final Hashtable<Integer, DICOM_Tag> tagTable = buildTagTable();
+  /**
+   * Builds the table of known tags keeping the first of any duplicates.
+   *
+   * @return table of known tags
+   */
+  private static Hashtable<Integer, DICOM_Tag> buildTagTable() {
+    Hashtable<Integer, DICOM_Tag> table = new Hashtable<Integer, DICOM_Tag>(2 * tagList.length);
+    for(int i=0; i < tagList.length; i++) {
+      Integer key = Integer.valueOf(tagList[i].groupNelement);
+      if(! table.containsKey(key)) table.put(key, tagList[i]);
+    }
+    return table;
+  }
 }
@@ -0,0 +1,212 @@
+package iiv.io;
+import iiv.script.*;
+import iiv.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * Reads files expected to be viewed next on a background thread into
+ * the shared data cache.  Prefetches no longer wanted are cancelled when
+ * a new list of files is requested, and no prefetch starts while the heap
+ * in use is above a ceiling.  Only data file classes are prefetched,
+ * never scripts.  The number of files prefetched defaults to the system
+ * property "CNU.prefetch.count" (default 2) and the ceiling to
+ * "CNU.prefetch.mb" (megabytes, default three quarters of the maximum
+ * heap).
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUDataCache
+ * @see		iiv.CNUViewer#setFileFromList(int)
+ * @since	iiV1.187
+ */
+public class FilePrefetcher {
+  private final static Object staticLock = new Object();
+  private static FilePrefetcher sharedPrefetcher = null;
+
+  private int prefetchCount;
+  private long memoryCeiling;
+  private CNUDataCache cache;
+  // separate from the shared worker pool because reads may use it
+  private ExecutorService pool =
+    Executors.newSingleThreadExecutor(WorkerPool.createDaemonThreadFactory("iiV prefetch"));
+  private Hashtable<FileListElement, Future<?>> pending =
+    new Hashtable<FileListElement, Future<?>>();
+  /**
+   * Constructs a new instance of FilePrefetcher.
+   *
+   * @param cache		cache to read files into
+   * @param prefetchCount	number of files to prefetch
+   * @param memoryCeiling	heap bytes in use above which no prefetch starts
+   */
+  public FilePrefetcher(CNUDataCache cache, int prefetchCount, long memoryCeiling) {
+    this.cache = cache;
+    this.prefetchCount = prefetchCount;
+    this.memoryCeiling = memoryCeiling;
+  }
+  /**
+   * Gets the shared prefetcher, creating it on first use.
+   *
+   * @return	the shared prefetcher
+   */
+  public static FilePrefetcher getSharedPrefetcher() {
+    if(sharedPrefetcher == null) synchronized (staticLock) {
+      if(sharedPrefetcher == null) {
+	int count = 2;
+	long ceiling = Runtime.getRuntime().maxMemory() / 4 * 3;
+	String value = System.getProperty("CNU.prefetch.count");
+	if(value != null) try {
+	  count = Integer.parseInt(value.trim());
+	} catch (NumberFormatException nfe) {
+	  System.out.println("invalid CNU.prefetch.count=" + value);
+	}
+	value = System.getProperty("CNU.prefetch.mb");
+	if(value != null) try {
+	  ceiling = Long.parseLong(value.trim()) * 1024L * 1024L;
+	} catch (NumberFormatException nfe) {
+	  System.out.println("invalid CNU.prefetch.mb=" + value);
+	}
+	sharedPrefetcher = new FilePrefetcher(CNUDataCache.getSharedCache(), count, ceiling);
+      }
+    }
+    return sharedPrefetcher;
+  }
+  /**
+   * Sets the number of files to prefetch.
+   *
+   * @param prefetchCount	number of files, <code>0</code> disables prefetching
+   */
+  public synchronized void setPrefetchCount(int prefetchCount) {
+    this.prefetchCount = Math.max(0, prefetchCount);
+  }
+  /**
+   * Gets the number of files to prefetch.
+   *
+   * @return	number of files
+   */
+  public synchronized int getPrefetchCount() { return prefetchCount; }
+  /**
+   * Sets the heap bytes in use above which no prefetch starts.
+   *
+   * @param memoryCeiling	bytes
+   */
+  public synchronized void setMemoryCeiling(long memoryCeiling) {
+    this.memoryCeiling = memoryCeiling;
+  }
+  /**
+   * Gets the heap bytes in use above which no prefetch starts.
+   *
+   * @return	bytes
+   */
+  public synchronized long getMemoryCeiling() { return memoryCeiling; }
+  /**
+   * Requests prefetching files following a current file, cancelling
+   * outstanding prefetches of other files.  A pending prefetch of the
+   * current file is kept so the reader can wait for it.
+   *
+   * @param current	file being viewed, may be <code>null</code>
+   * @param next	files to prefetch in order, only the first
+   *			prefetch count are used
+   */
+  public synchronized void prefetch(FileListElement current, FileListElement[] next) {
+    int count = (next == null) ? 0 : Math.min(next.length, prefetchCount);
+    Vector<FileListElement> wanted = new Vector<FileListElement>(count + 1);
+    if(current != null) wanted.addElement(current);
+    for(int i = 0; i < count; i++) if(next[i] != null) wanted.addElement(next[i]);
+    // cancel prefetches no longer wanted
+    Enumeration<FileListElement> e = pending.keys();
+    while(e.hasMoreElements()) {
+      FileListElement fle = e.nextElement();
+      if(! wanted.contains(fle)) {
+	Future<?> future = pending.remove(fle);
+	if(future != null) future.cancel(true);
+      }
+    }
+    for(int i = 0; i < count; i++) {
+      final FileListElement fle = next[i];
+      if(fle == null || pending.containsKey(fle)) continue;
+      Class<?> fileClass = fle.getFileClass();
+      // only read data files - scripts and images have side effects
+      if(fileClass == null || ! CNUImgFile.class.isAssignableFrom(fileClass)) continue;
+      if(cache.contains(fle.getFileName(), fileClass)) continue;
+      FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+	  public void run() { read(fle); }
+	}, null) {
+	  protected void done() { removePending(fle, this); }
+	};
+      pending.put(fle, task);
+      pool.execute(task);
+    }
+  }
+  /**
+   * Reads a file into the cache if memory allows.  Runs on the prefetch
+   * thread.
+   *
+   * @param fle	file name and class to read
+   */
+  private void read(FileListElement fle) {
+    Thread currentThread = Thread.currentThread();
+    if(currentThread.isInterrupted()) return;
+    Runtime rt = Runtime.getRuntime();
+    if(rt.totalMemory() - rt.freeMemory() > getMemoryCeiling()) return;
+    if(cache.contains(fle.getFileName(), fle.getFileClass())) return;
+    try {
+      Vector<Object> params = new Vector<Object>(1);
+      params.addElement(fle.getFileName());
+      Object obj = CNUDisplayScript.getObject(fle.getFileClass(), params);
+      if(obj instanceof CNUImgFile) {
+	((CNUImgFile) obj).readData();
+	if(! currentThread.isInterrupted()) cache.put(obj, fle.getFileName());
+      }
+    } catch (Exception e) {
+      // the viewer reports errors if the file is actually displayed
+    }
+  }
+  /**
+   * Removes a finished prefetch from the pending list.
+   *
+   * @param fle		file prefetched
+   * @param future	future that finished
+   */
+  private synchronized void removePending(FileListElement fle, Future<?> future) {
+    if(pending.get(fle) == future) pending.remove(fle);
+  }
+  /**
+   * Waits for a pending prefetch of a file by any class to finish.
+   *
+   * @param filename	name of file
+   * @return	<code>true</code> if a prefetch was waited for,
+   *		<code>false</code> if none was pending or interrupted
+   */
+  public boolean waitFor(String filename) {
+    if(filename == null) return false;
+    filename = filename.trim();
+    Future<?> future = null;
+    synchronized (this) {
+      Enumeration<FileListElement> e = pending.keys();
+      while(future == null && e.hasMoreElements()) {
+	FileListElement fle = e.nextElement();
+	if(filename.equals(fle.getFileName())) future = pending.get(fle);
+      }
+    }
+    if(future == null) return false;
+    try {
+      future.get();
+      return true;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (CancellationException ce) {
+      return false;
+    } catch (ExecutionException ee) {
+      return false;
+    }
+  }
+  /**
+   * Cancels all pending prefetches.
+   */
+  public synchronized void cancelAll() {
+    Enumeration<Future<?>> e = pending.elements();
+    while(e.hasMoreElements()) e.nextElement().cancel(true);
+    pending.clear();
+  }
+}
@@ -0,0 +1,217 @@
+package iiv.io;
+import iiv.script.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+/**
+ * Cheaply checks which file classes are likely to read a file before any
+ * of them fully reads it.  A file class takes part by defining
+ * <code>public static int probe(FileTypeProbe probe)</code> returning
+ * one of MATCH, LIKELY, UNKNOWN or NO_MATCH, usually by checking magic
+ * numbers in the first bytes of the file or of its related header file.
+ * The first bytes of each file are only read once per probe.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		iiv.CNUViewer#getDataOrImage(String, Object[])
+ * @since	iiV1.187
+ */
+public class FileTypeProbe {
+  /** File class can not read the file. */
+  public final static int NO_MATCH = 0;
+  /** File class has no opinion. */
+  public final static int UNKNOWN = 1;
+  /** File names or weak header values suggest the file class. */
+  public final static int LIKELY = 2;
+  /** Magic number identifies the file class. */
+  public final static int MATCH = 3;
+  /** Number of leading bytes read from each file. */
+  public final static int HEAD_SIZE = 1024;
+  private final static byte[] NO_HEAD = new byte[0];
+  private final static Class<?>[] PROBE_PARAMETERS = { FileTypeProbe.class };
+  private static Hashtable<Class<?>, Object> probeMethods =
+    new Hashtable<Class<?>, Object>();
+
+  private String filename;
+  private Hashtable<String, byte[]> heads = new Hashtable<String, byte[]>();
+  /**
+   * Constructs a new instance of FileTypeProbe.
+   *
+   * @param filename	name of file to probe
+   */
+  public FileTypeProbe(String filename) {
+    this.filename = filename;
+  }
+  /**
+   * Gets the name of the file probed.
+   *
+   * @return	file name
+   */
+  public String getFileName() { return filename; }
+  /**
+   * Gets the first bytes of the file probed.
+   *
+   * @return	up to HEAD_SIZE bytes or <code>null</code> if the file
+   *		could not be read
+   */
+  public byte[] getHead() { return getHead(filename); }
+  /**
+   * Gets the first bytes of a file, typically a header related to the
+   * file probed.  Compressed files are uncompressed.
+   *
+   * @param name	name of file
+   * @return	up to HEAD_SIZE bytes or <code>null</code> if the file
+   *		could not be read
+   */
+  public synchronized byte[] getHead(String name) {
+    if(name == null) return null;
+    byte[] head = heads.get(name);
+    if(head == null) {
+      head = NO_HEAD;
+      InputStream inS = null;
+      try {
+	CNUFile cnufile = new CNUFile(name);
+	if(! cnufile.isDirectory()) {
+	  inS = cnufile.getInputStream();
+	  byte[] buf = new byte[HEAD_SIZE];
+	  int length = 0;
+	  int n;
+	  while(length < buf.length &&
+		(n = inS.read(buf, length, buf.length - length)) > 0)
+	    length += n;
+	  if(length > 0) {
+	    head = new byte[length];
+	    System.arraycopy(buf, 0, head, 0, length);
+	  }
+	}
+      } catch (IOException ioe) {
+	head = NO_HEAD;
+      } finally {
+	if(inS != null) try { inS.close(); } catch (IOException ioe) {}
+      }
+      heads.put(name, head);
+    }
+    return (head == NO_HEAD) ? null : head;
+  }
+  /**
+   * Checks if bytes contain a string at an offset.
+   *
+   * @param head	bytes to check, may be <code>null</code>
+   * @param offset	offset in bytes
+   * @param magic	string of single byte characters
+   * @return	<code>true</code> if the string is found
+   */
+  public static boolean matches(byte[] head, int offset, String magic) {
+    if(head == null || offset + magic.length() > head.length) return false;
+    for(int i = 0; i < magic.length(); i++)
+      if((head[offset + i] & 0xff) != magic.charAt(i)) return false;
+    return true;
+  }
+  /**
+   * Gets a 4 byte integer from bytes.
+   *
+   * @param head	bytes
+   * @param offset	offset in bytes
+   * @param bigEndian	<code>true</code> for most significant byte first
+   * @return	the integer or <code>0</code> if beyond the bytes
+   */
+  public static int getInt(byte[] head, int offset, boolean bigEndian) {
+    if(head == null || offset + 4 > head.length) return 0;
+    int value = 0;
+    for(int i = 0; i < 4; i++) {
+      int b = head[offset + (bigEndian ? i : 3 - i)] & 0xff;
+      value = (value << 8) | b;
+    }
+    return value;
+  }
+  /**
+   * Gets a 2 byte unsigned integer from bytes.
+   *
+   * @param head	bytes
+   * @param offset	offset in bytes
+   * @param bigEndian	<code>true</code> for most significant byte first
+   * @return	the integer or <code>-1</code> if beyond the bytes
+   */
+  public static int getShort(byte[] head, int offset, boolean bigEndian) {
+    if(head == null || offset + 2 > head.length) return -1;
+    int b0 = head[offset] & 0xff;
+    int b1 = head[offset + 1] & 0xff;
+    return bigEndian ? ((b0 << 8) | b1) : ((b1 << 8) | b0);
+  }
+  /**
+   * Gets the probe method of a file class.
+   *
+   * @param fileClass	file class
+   * @return	static probe method or <code>null</code> if not defined
+   */
+  private static Method getProbeMethod(Class<?> fileClass) {
+    Object method = probeMethods.get(fileClass);
+    if(method == null) {
+      try {
+	Method m = fileClass.getMethod("probe", PROBE_PARAMETERS);
+	if(Modifier.isStatic(m.getModifiers()) &&
+	   m.getReturnType() == Integer.TYPE) method = m;
+      } catch (NoSuchMethodException nsme) {
+      } catch (SecurityException se) {
+      }
+      // remember classes without probes as well
+      if(method == null) method = Boolean.FALSE;
+      probeMethods.put(fileClass, method);
+    }
+    return (method instanceof Method) ? (Method) method : null;
+  }
+  /**
+   * Probes the file for a file class type.
+   *
+   * @param fileClassType	class or class name
+   * @return	MATCH, LIKELY, UNKNOWN or NO_MATCH
+   */
+  public int probe(Object fileClassType) {
+    Class<?> fileClass = null;
+    if(fileClassType instanceof Class) fileClass = (Class<?>) fileClassType;
+    else if(fileClassType instanceof String) try {
+      fileClass = CNUDisplayScript.findClass((String) fileClassType);
+    } catch (ClassNotFoundException cnfe) {
+      // left for the full read to report
+    } catch (LinkageError le) {
+    }
+    if(fileClass == null) return UNKNOWN;
+    Method method = getProbeMethod(fileClass);
+    if(method == null) return UNKNOWN;
+    try {
+      Object result = method.invoke(null, new Object[] { this });
+      if(result instanceof Integer) return ((Integer) result).intValue();
+    } catch (Exception e) {
+      // a failed probe is no opinion
+    }
+    return UNKNOWN;
+  }
+  /**
+   * Orders file class types from most to least likely to read a file.
+   * Types with equal results keep their original order and types that
+   * can not read the file are kept last so they are still tried if the
+   * probes are wrong.
+   *
+   * @param fileClassTypes	classes or class names
+   * @param filename		file to probe
+   * @return	new reordered array
+   */
+  public static Object[] rank(Object[] fileClassTypes, String filename) {
+    if(fileClassTypes == null || fileClassTypes.length < 2) return fileClassTypes;
+    FileTypeProbe fileTypeProbe = new FileTypeProbe(filename);
+    Vector<Vector<Object>> byResult = new Vector<Vector<Object>>(MATCH + 1);
+    for(int i = 0; i <= MATCH; i++) byResult.addElement(new Vector<Object>());
+    for(int i = 0; i < fileClassTypes.length; i++) {
+      int result = fileTypeProbe.probe(fileClassTypes[i]);
+      if(result < NO_MATCH || result > MATCH) result = UNKNOWN;
+      byResult.elementAt(result).addElement(fileClassTypes[i]);
+    }
+    Object[] ranked = new Object[fileClassTypes.length];
+    int n = 0;
+    for(int result = MATCH; result >= NO_MATCH; result--) {
+      Vector<Object> types = byResult.elementAt(result);
+      for(int i = 0; i < types.size(); i++) ranked[n++] = types.elementAt(i);
+    }
+    return ranked;
+  }
+}
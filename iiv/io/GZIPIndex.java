@@ -0,0 +1,420 @@
+package iiv.io;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Index of checkpoints into a gzip file allowing inflation to start near
+ * any uncompressed offset instead of at the beginning of the file.
+ * Each checkpoint records the compressed bit position of a deflate block,
+ * the matching uncompressed position and the preceding 32k of history.
+ * Indices are built by inflating the file once and are saved in a cache
+ * directory (system property "CNU.gzindex.dir", default ".cnu_gzindex"
+ * in the users home directory) keyed by the file path, modification
+ * time and length.  Index files unused for MAX_CACHE_AGE are removed,
+ * and the least recently used beyond MAX_CACHE_BYTES in total.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CheckpointInflaterInputStream
+ * @see		CNUFile
+ * @since	iiV1.187
+ */
+public class GZIPIndex {
+  /** Default number of uncompressed bytes between checkpoints. */
+  public final static long DEFAULT_SPAN = 4L * 1024 * 1024;
+  private final static int MAGIC = 0x69695a49; // "iiZI"
+  private final static int VERSION = 1;
+  private final static String INDEX_SUFFIX = ".gzi";
+  /** Milliseconds an unused index file is kept in the cache directory. */
+  public final static long MAX_CACHE_AGE = 30L * 24 * 60 * 60 * 1000;
+  /** Total bytes of index files kept in the cache directory. */
+  public final static long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+  private final static Object staticLock = new Object();
+  private static Hashtable<String, GZIPIndex> loadedIndices =
+    new Hashtable<String, GZIPIndex>();
+  // one lock per file being loaded or built so other files are not blocked
+  private static Hashtable<String, Object> pathLocks =
+    new Hashtable<String, Object>();
+
+  private final String path;
+  private final long lastModified;
+  private final long length;
+  private final long span;
+  private long uncompressedLength = 0;
+  private long[] bitPositions = new long[0];
+  private long[] outPositions = new long[0];
+  private byte[][] histories = new byte[0][];  // stored deflated
+  /**
+   * Constructs a new empty instance for a file.
+   *
+   * @param path		canonical path of the gzip file
+   * @param lastModified	modification time of the gzip file
+   * @param length		length of the gzip file
+   * @param span		bytes between checkpoints
+   */
+  private GZIPIndex(String path, long lastModified, long length, long span) {
+    this.path = path;
+    this.lastModified = lastModified;
+    this.length = length;
+    this.span = span;
+  }
+  /**
+   * Gets the index for a gzip file from memory, the cache directory, or by
+   * building it.
+   *
+   * @param file	local gzip file
+   * @return	the index
+   * @exception IOException thrown on errors reading the file
+   */
+  public static GZIPIndex getIndex(File file) throws IOException {
+    String path = file.getCanonicalPath();
+    Object pathLock;
+    synchronized (staticLock) {
+      GZIPIndex index = loadedIndices.get(path);
+      if(index != null && index.isValidFor(file)) return index;
+      pathLock = pathLocks.get(path);
+      if(pathLock == null) {
+	pathLock = new Object();
+	pathLocks.put(path, pathLock);
+      }
+    }
+    // only callers wanting the same file wait while it is loaded or built
+    synchronized (pathLock) {
+      try {
+	synchronized (staticLock) {
+	  GZIPIndex index = loadedIndices.get(path);
+	  if(index != null && index.isValidFor(file)) return index;
+	}
+	File indexFile = getIndexFile(path);
+	GZIPIndex index = null;
+	if(indexFile.isFile()) {
+	  try {
+	    index = load(indexFile);
+	    if(! path.equals(index.path) || ! index.isValidFor(file)) index = null;
+	    // modification time marks last use for cache cleanup
+	    else indexFile.setLastModified(System.currentTimeMillis());
+	  } catch (IOException ioe) {
+	    index = null;
+	  }
+	}
+	if(index == null) {
+	  index = buildIndex(file, DEFAULT_SPAN);
+	  try {
+	    index.save(indexFile);
+	    cleanCache(indexFile.getParentFile(), indexFile);
+	  } catch (IOException ioe) {
+	    // index still usable without saving
+	    System.out.println("unable to save gzip index " + indexFile + " " + ioe);
+	  }
+	}
+	synchronized (staticLock) {
+	  loadedIndices.put(path, index);
+	}
+	return index;
+      } finally {
+	synchronized (staticLock) {
+	  if(pathLocks.get(path) == pathLock) pathLocks.remove(path);
+	}
+      }
+    }
+  }
+  /**
+   * Removes index files from the cache directory that have not been used
+   * for MAX_CACHE_AGE, then the least recently used until the rest fit
+   * in MAX_CACHE_BYTES.
+   *
+   * @param dir		cache directory
+   * @param keepFile	index file never removed
+   */
+  private static void cleanCache(File dir, File keepFile) {
+    if(dir == null) return;
+    File[] files = dir.listFiles();
+    if(files == null) return;
+    long oldest = System.currentTimeMillis() - MAX_CACHE_AGE;
+    Vector<File> kept = new Vector<File>();
+    long totalBytes = 0;
+    for(int i = 0; i < files.length; i++) {
+      File f = files[i];
+      String name = f.getName();
+      if(! f.isFile() || f.equals(keepFile)) continue;
+      boolean isIndex = name.endsWith(INDEX_SUFFIX);
+      // left over temporary files are removed with old indices
+      if(! isIndex && ! name.endsWith(INDEX_SUFFIX + ".tmp")) continue;
+      if(f.lastModified() < oldest) {
+	f.delete();
+	continue;
+      }
+      if(! isIndex) continue;  // may still be being written
+      kept.addElement(f);
+      totalBytes += f.length();
+    }
+    if(keepFile != null) totalBytes += keepFile.length();
+    if(totalBytes <= MAX_CACHE_BYTES) return;
+    File[] byAge = new File[kept.size()];
+    kept.copyInto(byAge);
+    Arrays.sort(byAge, new Comparator<File>() {
+      public int compare(File a, File b) {
+	long am = a.lastModified();
+	long bm = b.lastModified();
+	return (am < bm) ? -1 : ((am == bm) ? 0 : 1);
+      }
+    });
+    for(int i = 0; i < byAge.length && totalBytes > MAX_CACHE_BYTES; i++) {
+      long bytes = byAge[i].length();
+      if(byAge[i].delete()) totalBytes -= bytes;
+    }
+  }
+  /**
+   * Builds an index by inflating a whole gzip file.
+   *
+   * @param file	local gzip file
+   * @param span	uncompressed bytes between checkpoints
+   * @return	the index
+   * @exception IOException thrown on errors reading the file
+   */
+  public static GZIPIndex buildIndex(File file, long span) throws IOException {
+    final GZIPIndex index = new GZIPIndex(file.getCanonicalPath(),
+					  file.lastModified(), file.length(),
+					  span);
+    final Vector<long[]> positions = new Vector<long[]>();
+    final Vector<byte[]> windows = new Vector<byte[]>();
+    CheckpointInflaterInputStream inS =
+      new CheckpointInflaterInputStream(new FileInputStream(file)) {
+	protected void checkpoint(long bitPosition, long outPosition,
+				  byte[] history) {
+	  positions.addElement(new long[] {bitPosition, outPosition});
+	  windows.addElement(deflate(history));
+	}
+      };
+    try {
+      inS.setCheckpointSpan(span);
+      byte[] buf = new byte[64 * 1024];
+      Thread currentThread = Thread.currentThread();
+      while(inS.read(buf, 0, buf.length) != -1) {
+	if(currentThread.isInterrupted()) throw new InterruptedIOException("Interrupted");
+      }
+      index.uncompressedLength = inS.getOutPosition();
+    } finally {
+      inS.close();
+    }
+    int n = positions.size();
+    index.bitPositions = new long[n];
+    index.outPositions = new long[n];
+    index.histories = new byte[n][];
+    for(int i = 0; i < n; i++) {
+      long[] pos = positions.elementAt(i);
+      index.bitPositions[i] = pos[0];
+      index.outPositions[i] = pos[1];
+      index.histories[i] = windows.elementAt(i);
+    }
+    return index;
+  }
+  /**
+   * Gets the cache file an index for a gzip file is stored in.
+   *
+   * @param path	canonical path of the gzip file
+   * @return	index file
+   */
+  public static File getIndexFile(String path) {
+    String dir = System.getProperty("CNU.gzindex.dir");
+    if(dir == null)
+      dir = System.getProperty("user.home", ".") + File.separator + ".cnu_gzindex";
+    String name = new File(path).getName();
+    return new File(dir, name + "_" + Integer.toHexString(path.hashCode()) +
+		    INDEX_SUFFIX);
+  }
+  /**
+   * Checks if this index still matches a file.
+   *
+   * @param file	gzip file
+   * @return	<code>true</code> if the modification time and length match
+   */
+  public boolean isValidFor(File file) {
+    return (file.lastModified() == lastModified) && (file.length() == length);
+  }
+  /**
+   * Gets the total uncompressed length.
+   *
+   * @return	number of uncompressed bytes
+   */
+  public long getUncompressedLength() { return uncompressedLength; }
+  /**
+   * Gets the number of checkpoints.
+   *
+   * @return	number of checkpoints
+   */
+  public int getNumberOfCheckpoints() { return outPositions.length; }
+  /**
+   * Opens a stream of uncompressed data starting at an offset by
+   * resuming inflation at the nearest preceding checkpoint.
+   *
+   * @param offset	uncompressed offset to start at
+   * @return	input stream positioned at offset
+   * @exception IOException thrown on errors reading the file
+   */
+  public InputStream getInputStream(long offset) throws IOException {
+    File file = new File(path);
+    // binary search for last checkpoint at or before offset
+    int low = 0;
+    int high = outPositions.length - 1;
+    int found = -1;
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      if(outPositions[mid] <= offset) {
+	found = mid;
+	low = mid + 1;
+      }
+      else high = mid - 1;
+    }
+    InputStream inS;
+    long position;
+    if(found < 0) {
+      inS = new GZIPInputStream(new FileInputStream(file), 64 * 1024);
+      position = 0;
+    }
+    else {
+      FileInputStream fis = new FileInputStream(file);
+      try {
+	fis.getChannel().position(bitPositions[found] >> 3);
+	inS = new CheckpointInflaterInputStream(fis, bitPositions[found],
+						outPositions[found],
+						inflate(histories[found]));
+      } catch (IOException ioe) {
+	fis.close();
+	throw ioe;
+      }
+      position = outPositions[found];
+    }
+    long toSkip = offset - position;
+    while(toSkip > 0) {
+      long skipped = inS.skip(toSkip);
+      if(skipped <= 0) {
+	inS.close();
+	throw new EOFException("offset beyond end of " + path);
+      }
+      toSkip -= skipped;
+    }
+    return inS;
+  }
+  /**
+   * Saves this index.
+   *
+   * @param indexFile	file to save to
+   * @exception IOException thrown on errors writing
+   */
+  private void save(File indexFile) throws IOException {
+    File dir = indexFile.getParentFile();
+    if(dir != null && ! dir.isDirectory()) dir.mkdirs();
+    File tmpFile = new File(indexFile.getPath() + ".tmp");
+    DataOutputStream out =
+      new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(path);
+      out.writeLong(lastModified);
+      out.writeLong(length);
+      out.writeLong(span);
+      out.writeLong(uncompressedLength);
+      out.writeInt(outPositions.length);
+      for(int i = 0; i < outPositions.length; i++) {
+	out.writeLong(bitPositions[i]);
+	out.writeLong(outPositions[i]);
+	out.writeInt(histories[i].length);
+	out.write(histories[i]);
+      }
+    } finally {
+      out.close();
+    }
+    if(! tmpFile.renameTo(indexFile)) {
+      indexFile.delete();
+      if(! tmpFile.renameTo(indexFile)) {
+	tmpFile.delete();
+	throw new IOException("failed renaming " + tmpFile);
+      }
+    }
+  }
+  /**
+   * Loads an index.
+   *
+   * @param indexFile	file to load from
+   * @return	the index
+   * @exception IOException thrown on errors reading or invalid format
+   */
+  private static GZIPIndex load(File indexFile) throws IOException {
+    DataInputStream in =
+      new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+    try {
+      if(in.readInt() != MAGIC || in.readInt() != VERSION)
+	throw new IOException("invalid gzip index file " + indexFile);
+      GZIPIndex index = new GZIPIndex(in.readUTF(), in.readLong(),
+				      in.readLong(), in.readLong());
+      index.uncompressedLength = in.readLong();
+      int n = in.readInt();
+      if(n < 0) throw new IOException("invalid gzip index file " + indexFile);
+      index.bitPositions = new long[n];
+      index.outPositions = new long[n];
+      index.histories = new byte[n][];
+      for(int i = 0; i < n; i++) {
+	index.bitPositions[i] = in.readLong();
+	index.outPositions[i] = in.readLong();
+	byte[] history = new byte[in.readInt()];
+	in.readFully(history);
+	index.histories[i] = history;
+      }
+      return index;
+    } finally {
+      in.close();
+    }
+  }
+  /**
+   * Compresses a history window for storage.
+   *
+   * @param history	history bytes
+   * @return	deflated bytes
+   */
+  private static byte[] deflate(byte[] history) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(history);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(history.length / 2 + 64);
+      byte[] buf = new byte[8192];
+      while(! deflater.finished()) {
+	int n = deflater.deflate(buf);
+	out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+  /**
+   * Uncompresses a stored history window.
+   *
+   * @param deflated	deflated history bytes
+   * @return	history bytes
+   * @exception IOException thrown if invalid
+   */
+  private static byte[] inflate(byte[] deflated) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(deflated);
+      ByteArrayOutputStream out =
+	new ByteArrayOutputStream(CheckpointInflaterInputStream.WINDOW_SIZE);
+      byte[] buf = new byte[8192];
+      while(! inflater.finished()) {
+	int n = inflater.inflate(buf);
+	if(n == 0 && inflater.needsInput())
+	  throw new ZipException("truncated gzip index history");
+	out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } catch (DataFormatException dfe) {
+      throw new ZipException(dfe.getMessage());
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package iiv.io;
+import iiv.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Reads gzip compressed data inflating ahead of the reader on another
+ * thread.  Multi-member files whose members record their compressed
+ * size in a "BC" extra field (as written by bgzip) have their members
+ * inflated in parallel on the shared worker pool.  Other gzip files are
+ * inflated by a single read ahead thread so inflating overlaps with
+ * whatever the reader does with the data.  Streams created on a shared
+ * pool worker, or when the pool has one thread, inflate members on the
+ * read ahead thread because the reader must not wait on shared pool tasks.
+ * The stream must be closed to stop the read ahead thread.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @see		CNUFile
+ * @see		iiv.util.WorkerPool
+ * @since	iiV1.187
+ */
+public class ParallelGZIPInputStream extends InputStream {
+  /** Size of chunks inflated by the read ahead thread. */
+  public final static int CHUNK_SIZE = 256 * 1024;
+  private final static int FHCRC = 2;
+  private final static int FEXTRA = 4;
+  private final static int FNAME = 8;
+  private final static int FCOMMENT = 16;
+  private final static FutureTask<byte[]> END =
+    new FutureTask<byte[]>(new Callable<byte[]>() {
+	public byte[] call() { return null; }
+      });
+
+  private final InputStream in;
+  private final BlockingQueue<Future<byte[]>> queue;
+  private final Thread readAheadThread;
+  private final boolean inflateOnPool;
+  private byte[] chunk = null;
+  private int chunkPos = 0;
+  private boolean eof = false;
+  private volatile boolean closed = false;
+  private final byte[] single = new byte[1];
+  /**
+   * Constructs a new instance and starts inflating.
+   *
+   * @param in	compressed input stream
+   */
+  public ParallelGZIPInputStream(InputStream in) {
+    this.in = in;
+    inflateOnPool =
+      WorkerPool.getNumberOfThreads() > 1 && ! WorkerPool.isSharedWorker();
+    queue = new ArrayBlockingQueue<Future<byte[]>>(2 * WorkerPool.getNumberOfThreads() + 2);
+    readAheadThread = new Thread(new Runnable() {
+	public void run() { readAhead(); }
+      }, "iiV gzip read ahead");
+    readAheadThread.setDaemon(true);
+    readAheadThread.start();
+  }
+  /**
+   * Runs on the read ahead thread queuing inflated chunks in order.
+   */
+  private void readAhead() {
+    try {
+      while(! closed) {
+	ByteArrayOutputStream header = new ByteArrayOutputStream(32);
+	int blockSize = readMemberHeader(in, header);
+	if(blockSize == -1) break; // end of file
+	else if(blockSize == -2) {
+	  // member size unknown so inflate the rest in order on this thread
+	  InputStream rest =
+	    new SequenceInputStream(new ByteArrayInputStream(header.toByteArray()), in);
+	  inflateSequentially(rest);
+	  break;
+	}
+	byte[] block = new byte[blockSize];
+	int headerLength = header.size();
+	System.arraycopy(header.toByteArray(), 0, block, 0, headerLength);
+	readFully(in, block, headerLength, blockSize - headerLength);
+	InflateMember inflate = new InflateMember(block, headerLength);
+	if(inflateOnPool) queue.put(WorkerPool.getSharedPool().submit(inflate));
+	else {
+	  FutureTask<byte[]> done = new FutureTask<byte[]>(inflate);
+	  done.run();
+	  queue.put(done);
+	}
+      }
+    } catch (final Exception e) {
+      if(! closed) {
+	FutureTask<byte[]> failed = new FutureTask<byte[]>(new Callable<byte[]>() {
+	    public byte[] call() throws Exception { throw e; }
+	  });
+	failed.run();
+	try { queue.put(failed); } catch (InterruptedException ie) { return; }
+      }
+      return;
+    }
+    try { queue.put(END); } catch (InterruptedException ie) { }
+  }
+  /**
+   * Inflates the remaining stream in chunks on the current thread.
+   *
+   * @param rest	compressed stream positioned at a member header
+   * @exception IOException thrown on errors reading or inflating
+   * @exception InterruptedException thrown if interrupted while
+   *		waiting for the reader
+   */
+  private void inflateSequentially(InputStream rest)
+    throws IOException, InterruptedException {
+    GZIPInputStream gzin = new GZIPInputStream(rest, 64 * 1024);
+    while(! closed) {
+      byte[] buf = new byte[CHUNK_SIZE];
+      int total = 0;
+      int n = 0;
+      while(total < buf.length && (n = gzin.read(buf, total, buf.length - total)) != -1)
+	total += n;
+      if(total > 0) {
+	if(total < buf.length) {
+	  byte[] tmp = new byte[total];
+	  System.arraycopy(buf, 0, tmp, 0, total);
+	  buf = tmp;
+	}
+	FutureTask<byte[]> done = new FutureTask<byte[]>(new Runnable() {
+	    public void run() { }
+	  }, buf);
+	done.run();
+	queue.put(done);
+      }
+      if(n == -1) break;
+    }
+  }
+  /**
+   * Reads a gzip member header.
+   *
+   * @param in		stream to read from
+   * @param header	buffer to store the header bytes in
+   * @return	total size of the member in bytes, <code>-1</code>
+   *		at end of file or <code>-2</code> if the header does not
+   *		contain the member size
+   * @exception IOException thrown on errors reading or invalid header
+   */
+  private static int readMemberHeader(InputStream in, ByteArrayOutputStream header)
+    throws IOException {
+    int id1 = in.read();
+    if(id1 == -1) return -1;
+    header.write(id1);
+    int id2 = readByte(in, header);
+    int cm = readByte(in, header);
+    if(id1 != 0x1f || id2 != 0x8b || cm != 8)
+      throw new ZipException("Not in GZIP format");
+    int flg = readByte(in, header);
+    for(int i = 0; i < 6; i++) readByte(in, header); // mtime, xfl, os
+    int blockSize = -2;
+    if((flg & FEXTRA) != 0) {
+      int xlen = readByte(in, header) | (readByte(in, header) << 8);
+      byte[] extra = new byte[xlen];
+      readFully(in, extra, 0, xlen);
+      header.write(extra, 0, xlen);
+      // look for bgzf subfield SI1='B', SI2='C', SLEN=2
+      for(int i = 0; i + 4 <= xlen; ) {
+	int slen = (extra[i + 2] & 0xff) | ((extra[i + 3] & 0xff) << 8);
+	if(extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2 && i + 6 <= xlen)
+	  blockSize = ((extra[i + 4] & 0xff) | ((extra[i + 5] & 0xff) << 8)) + 1;
+	i += 4 + slen;
+      }
+    }
+    if((flg & FNAME) != 0) while(readByte(in, header) != 0);
+    if((flg & FCOMMENT) != 0) while(readByte(in, header) != 0);
+    if((flg & FHCRC) != 0) { readByte(in, header); readByte(in, header); }
+    if(blockSize != -2 && blockSize < header.size() + 8)
+      throw new ZipException("Invalid GZIP block size");
+    return blockSize;
+  }
+  /**
+   * Reads a single byte saving it to the header buffer.
+   *
+   * @param in		stream to read from
+   * @param header	buffer to store the byte in
+   * @return	byte read
+   * @exception IOException thrown on errors or end of file
+   */
+  private static int readByte(InputStream in, ByteArrayOutputStream header)
+    throws IOException {
+    int b = in.read();
+    if(b == -1) throw new EOFException("Unexpected end of GZIP header");
+    header.write(b);
+    return b;
+  }
+  /**
+   * Reads exactly len bytes.
+   *
+   * @param in	stream to read from
+   * @param b	array to read into
+   * @param off	offset to first byte to store
+   * @param len	number of bytes to read
+   * @exception IOException thrown on errors or end of file
+   */
+  private static void readFully(InputStream in, byte[] b, int off, int len)
+    throws IOException {
+    while(len > 0) {
+      int n = in.read(b, off, len);
+      if(n == -1) throw new EOFException("Unexpected end of GZIP file");
+      off += n; len -= n;
+    }
+  }
+  /**
+   * Inflates a single complete gzip member.
+   */
+  private static class InflateMember implements Callable<byte[]> {
+    private final byte[] block;
+    private final int headerLength;
+    InflateMember(byte[] block, int headerLength) {
+      this.block = block;
+      this.headerLength = headerLength;
+    }
+    public byte[] call() throws IOException {
+      int trailer = block.length - 8;
+      int crc = (block[trailer] & 0xff) | ((block[trailer + 1] & 0xff) << 8) |
+	((block[trailer + 2] & 0xff) << 16) | ((block[trailer + 3] & 0xff) << 24);
+      int isize = (block[trailer + 4] & 0xff) | ((block[trailer + 5] & 0xff) << 8) |
+	((block[trailer + 6] & 0xff) << 16) | ((block[trailer + 7] & 0xff) << 24);
+      if(isize < 0) throw new ZipException("GZIP member too large");
+      byte[] out = new byte[isize];
+      Inflater inflater = new Inflater(true);
+      try {
+	inflater.setInput(block, headerLength, trailer - headerLength);
+	int total = 0;
+	while(total < isize) {
+	  int n = inflater.inflate(out, total, isize - total);
+	  if(n == 0 && (inflater.finished() || inflater.needsInput()))
+	    throw new ZipException("Corrupt GZIP member");
+	  total += n;
+	}
+      } catch (DataFormatException dfe) {
+	throw new ZipException(dfe.getMessage());
+      } finally {
+	inflater.end();
+      }
+      CRC32 crc32 = new CRC32();
+      crc32.update(out, 0, isize);
+      if((int) crc32.getValue() != crc) throw new ZipException("Corrupt GZIP trailer");
+      return out;
+    }
+  }
+  /**
+   * Moves to the next inflated chunk.
+   *
+   * @return	<code>false</code> at end of data
+   * @exception IOException thrown on inflate errors or interruption
+   */
+  private boolean nextChunk() throws IOException {
+    if(closed) throw new IOException("Stream closed");
+    while(! eof) {
+      Future<byte[]> future;
+      try {
+	future = queue.take();
+	if(future == END) {
+	  eof = true;
+	  break;
+	}
+	chunk = future.get();
+	chunkPos = 0;
+	if(chunk.length > 0) return true;
+      } catch (InterruptedException ie) {
+	Thread.currentThread().interrupt();
+	throw new InterruptedIOException("Interrupted");
+      } catch (ExecutionException ee) {
+	Throwable cause = ee.getCause();
+	if(cause instanceof IOException) throw (IOException) cause;
+	IOException ioe = new IOException(String.valueOf(cause));
+	ioe.initCause(cause);
+	throw ioe;
+      }
+    }
+    chunk = null;
+    return false;
+  }
+  public int read() throws IOException {
+    int n = read(single, 0, 1);
+    if(n < 1) return -1;
+    return single[0] & 0xff;
+  }
+  public int read(byte[] b, int off, int len) throws IOException {
+    if(len == 0) return 0;
+    if(chunk == null || chunkPos >= chunk.length) {
+      if(! nextChunk()) return -1;
+    }
+    int n = Math.min(len, chunk.length - chunkPos);
+    System.arraycopy(chunk, chunkPos, b, off, n);
+    chunkPos += n;
+    return n;
+  }
+  public int available() throws IOException {
+    if(chunk == null) return 0;
+    return chunk.length - chunkPos;
+  }
+  public void close() throws IOException {
+    if(closed) return;
+    closed = true;
+    readAheadThread.interrupt();
+    Future<byte[]> future;
+    while((future = queue.poll()) != null) future.cancel(true);
+    in.close();
+  }
+}
@@ -83,6 +83,12 @@ public class ThreeDSSPFile extends CNUImgFile {
        throws IOException {
     this(filename);
   }
+  /**
+   * Regions are never read directly from the file for this format.
+   *
+   * @return	<code>false</code>
+   */
+  public boolean isRegionReadable() { return false; }
   /**
    * Reads data from the file.
    *
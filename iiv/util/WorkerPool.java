@@ -0,0 +1,143 @@
+package iiv.util;
+import java.util.concurrent.*;
+/**
+ * Provides a shared pool of daemon worker threads for splitting up
+ * data intensive work like decompressing, decoding and slicing.
+ * Tasks run on the shared pool should never wait on other tasks
+ * submitted to the shared pool.
+ *
+ * @author	Joel T. Lee
+ * @version %I%, %G%
+ * @since	iiV1.187
+ */
+public class WorkerPool {
+  private final static Object staticLock = new Object();
+  private static ExecutorService sharedPool = null;
+  private static int numberOfThreads =
+    Math.max(1, Runtime.getRuntime().availableProcessors());
+  private final static ThreadLocal<Boolean> sharedWorker = new ThreadLocal<Boolean>();
+  /**
+   * Constructs a new instance of WorkerPool.  Not needed because
+   * all methods are static.
+   */
+  private WorkerPool() { }
+  /**
+   * Gets the number of threads in the shared pool.
+   *
+   * @return	number of threads
+   */
+  public final static int getNumberOfThreads() { return numberOfThreads; }
+  /**
+   * Gets the shared pool, creating it on first use.
+   *
+   * @return	the shared pool
+   */
+  public final static ExecutorService getSharedPool() {
+    if(sharedPool == null) synchronized(staticLock) {
+      if(sharedPool == null) {
+	final ThreadFactory daemonFactory = createDaemonThreadFactory("iiV worker");
+	sharedPool =
+	  Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+	      public Thread newThread(final Runnable r) {
+		return daemonFactory.newThread(new Runnable() {
+		    public void run() {
+		      sharedWorker.set(Boolean.TRUE);
+		      r.run();
+		    }
+		  });
+	      }
+	    });
+      }
+    }
+    return sharedPool;
+  }
+  /**
+   * Checks if the current thread is a shared pool worker.  Work split
+   * up on such a thread should run inline instead of waiting on
+   * other shared pool tasks.
+   *
+   * @return	<code>true</code> if running on a shared pool thread
+   */
+  public final static boolean isSharedWorker() {
+    return sharedWorker.get() != null;
+  }
+  /**
+   * Runs tasks on the shared pool and waits for them.  The first task
+   * runs on the calling thread.  All tasks run inline on the calling
+   * thread if it is a shared pool worker or the pool has one thread.
+   *
+   * @param tasks	tasks to run
+   * @return	<code>true</code> if all completed,
+   *		<code>false</code> if interrupted
+   */
+  public final static boolean runAll(Runnable[] tasks) {
+    if(tasks == null || tasks.length == 0) return true;
+    if(tasks.length == 1 || numberOfThreads < 2 || isSharedWorker()) {
+      for(int i = 0; i < tasks.length; i++) {
+	if(Thread.currentThread().isInterrupted()) return false;
+	tasks[i].run();
+      }
+      return true;
+    }
+    ExecutorService pool = getSharedPool();
+    Future<?>[] futures = new Future<?>[tasks.length];
+    for(int i = 1; i < tasks.length; i++) futures[i] = pool.submit(tasks[i]);
+    try {
+      tasks[0].run();
+    } catch (RuntimeException re) {
+      for(int i = 1; i < futures.length; i++) futures[i].cancel(true);
+      throw re;
+    } catch (Error e) {
+      for(int i = 1; i < futures.length; i++) futures[i].cancel(true);
+      throw e;
+    }
+    return waitForAll(futures);
+  }
+  /**
+   * Creates a thread factory for daemon threads with low priority
+   * so workers never keep the program running or starve the
+   * event dispatch thread.
+   *
+   * @param name	base name for threads created
+   * @return	the thread factory
+   */
+  public final static ThreadFactory createDaemonThreadFactory(final String name) {
+    return new ThreadFactory() {
+	private int count = 0;
+	public synchronized Thread newThread(Runnable r) {
+	  Thread thread = new Thread(r, name + "-" + (++count));
+	  thread.setDaemon(true);
+	  thread.setPriority(Thread.NORM_PRIORITY - 1);
+	  return thread;
+	}
+      };
+  }
+  /**
+   * Waits for all of a list of futures to complete, rethrowing the
+   * first failure as a runtime exception.  If interrupted the
+   * remaining futures are cancelled and the interrupt state restored.
+   *
+   * @param futures	futures to wait for
+   * @return	<code>true</code> if all completed,
+   *		<code>false</code> if interrupted
+   */
+  public final static boolean waitForAll(Future<?>[] futures) {
+    try {
+      for(int i = 0; i < futures.length; i++)
+	if(futures[i] != null) futures[i].get();
+      return true;
+    } catch (InterruptedException ie) {
+      for(int i = 0; i < futures.length; i++)
+	if(futures[i] != null) futures[i].cancel(true);
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException ee) {
+      for(int i = 0; i < futures.length; i++)
+	if(futures[i] != null) futures[i].cancel(true);
+      Throwable cause = ee.getCause();
+      if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if(cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    }
+  }
+}